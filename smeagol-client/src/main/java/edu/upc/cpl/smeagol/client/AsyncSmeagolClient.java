@@ -0,0 +1,329 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.joda.time.Interval;
+
+import edu.upc.cpl.smeagol.client.domain.Booking;
+import edu.upc.cpl.smeagol.client.domain.Event;
+import edu.upc.cpl.smeagol.client.domain.Resource;
+import edu.upc.cpl.smeagol.client.domain.Tag;
+import edu.upc.cpl.smeagol.client.exception.AlreadyExistsException;
+import edu.upc.cpl.smeagol.client.exception.NotFoundException;
+import edu.upc.cpl.smeagol.client.exception.SmeagolClientException;
+
+/**
+ * Asynchronous version of {@link SmeagolClient}.
+ * <p>
+ * Every operation of {@code SmeagolClient} is mirrored here by a method
+ * returning a {@link CompletableFuture}. Requests are run on the
+ * {@link Executor} provided on construction, so the calling thread does not
+ * wait for the server.
+ * <p>
+ * This is not non-blocking I/O: each request is a blocking call of the
+ * underlying {@code SmeagolClient} and holds an executor thread until the
+ * server answers. The number of requests in flight is therefore bounded by
+ * the number of threads of the executor, and further requests queue up in
+ * it: a few threads cannot keep hundreds of requests in flight, hundreds of
+ * requests in flight take hundreds of threads. Callers no longer need a pool
+ * of their own to wait on I/O, but the threads are still needed, in this
+ * executor. A truly non-blocking transport would need an asynchronous HTTP
+ * client, which the Jersey 1.x client used by {@code SmeagolClient} does not
+ * provide.
+ * <p>
+ * Errors are reported by completing the future exceptionally with the same
+ * exceptions thrown by {@code SmeagolClient} ({@link NotFoundException},
+ * {@link AlreadyExistsException}, {@link SmeagolClientException} or
+ * {@link IllegalArgumentException}), wrapped in a
+ * {@link java.util.concurrent.CompletionException} when retrieved with
+ * {@code join()}.
+ * <p>
+ * Use a {@code SmeagolClient} built with a {@link ConnectionPoolConfig} which
+ * allows at least as many connections as threads in the executor, so
+ * concurrent requests do not have to wait for a free connection:
+ *
+ * <pre>
+ * ConnectionPoolConfig pool = new ConnectionPoolConfig();
+ * pool.setMaxConnectionsPerHost(32);
+ * ExecutorService executor = Executors.newFixedThreadPool(32);
+ *
+ * AsyncSmeagolClient client = new AsyncSmeagolClient(new SmeagolClient(url, pool), executor);
+ * client.getTag(&quot;tag1&quot;).thenAccept(t -&gt; System.out.println(t.getDescription()));
+ * </pre>
+ *
+ */
+public class AsyncSmeagolClient {
+
+	private final SmeagolClient client;
+	private final Executor executor;
+
+	/**
+	 * Create an asynchronous client.
+	 *
+	 * @param client
+	 *            the client used to perform the requests. Not null.
+	 * @param executor
+	 *            the executor on which requests are run. Not null.
+	 */
+	public AsyncSmeagolClient(SmeagolClient client, Executor executor) {
+		if (client == null) {
+			throw new IllegalArgumentException("client cannot be null");
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("executor cannot be null");
+		}
+		this.client = client;
+		this.executor = executor;
+	}
+
+	/**
+	 * Get the underlying synchronous client.
+	 *
+	 * @return the client used to perform the requests.
+	 */
+	public SmeagolClient getClient() {
+		return client;
+	}
+
+	/**
+	 * @see SmeagolClient#getTags()
+	 */
+	public CompletableFuture<Collection<Tag>> getTags() {
+		return CompletableFuture.supplyAsync(() -> client.getTags(), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#getTag(String)
+	 */
+	public CompletableFuture<Tag> getTag(String id) {
+		return CompletableFuture.supplyAsync(() -> client.getTag(id), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#tryGetTag(String)
+	 */
+	public CompletableFuture<Optional<Tag>> tryGetTag(String id) {
+		return CompletableFuture.supplyAsync(() -> client.tryGetTag(id), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#createTag(String, String)
+	 */
+	public CompletableFuture<String> createTag(String id, String description) {
+		return CompletableFuture.supplyAsync(() -> client.createTag(id, description), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#updateTag(String, String)
+	 */
+	public CompletableFuture<Void> updateTag(String id, String newDescription) {
+		return CompletableFuture.runAsync(() -> client.updateTag(id, newDescription), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#deleteTag(String)
+	 */
+	public CompletableFuture<Void> deleteTag(String id) {
+		return CompletableFuture.runAsync(() -> client.deleteTag(id), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#getTags(Collection)
+	 */
+	public CompletableFuture<Collection<Tag>> getTags(Collection<String> identifiers) {
+		return CompletableFuture.supplyAsync(() -> client.getTags(identifiers), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#getResources()
+	 */
+	public CompletableFuture<Collection<Resource>> getResources() {
+		return CompletableFuture.supplyAsync(() -> client.getResources(), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#getResource(Long)
+	 */
+	public CompletableFuture<Resource> getResource(Long id) {
+		return CompletableFuture.supplyAsync(() -> client.getResource(id), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#tryGetResource(Long)
+	 */
+	public CompletableFuture<Optional<Resource>> tryGetResource(Long id) {
+		return CompletableFuture.supplyAsync(() -> client.tryGetResource(id), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#getResources(Collection)
+	 */
+	public CompletableFuture<Collection<Resource>> getResources(Collection<Long> identifiers) {
+		return CompletableFuture.supplyAsync(() -> client.getResources(identifiers), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#createResource(String, String)
+	 */
+	public CompletableFuture<Long> createResource(String description, String info) {
+		return CompletableFuture.supplyAsync(() -> client.createResource(description, info), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#deleteResource(Long)
+	 */
+	public CompletableFuture<Void> deleteResource(Long id) {
+		return CompletableFuture.runAsync(() -> client.deleteResource(id), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#updateResource(long, Resource)
+	 */
+	public CompletableFuture<Void> updateResource(long id, Resource newResource) {
+		return CompletableFuture.runAsync(() -> client.updateResource(id, newResource), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#getEvents()
+	 */
+	public CompletableFuture<Collection<Event>> getEvents() {
+		return CompletableFuture.supplyAsync(() -> client.getEvents(), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#getEvent(long)
+	 */
+	public CompletableFuture<Event> getEvent(long id) {
+		return CompletableFuture.supplyAsync(() -> client.getEvent(id), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#tryGetEvent(long)
+	 */
+	public CompletableFuture<Optional<Event>> tryGetEvent(long id) {
+		return CompletableFuture.supplyAsync(() -> client.tryGetEvent(id), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#getEvents(Collection)
+	 */
+	public CompletableFuture<Collection<Event>> getEvents(Collection<Long> identifiers) {
+		return CompletableFuture.supplyAsync(() -> client.getEvents(identifiers), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#createEvent(String, String, Interval)
+	 */
+	public CompletableFuture<Long> createEvent(String description, String info, Interval startEnd) {
+		return CompletableFuture.supplyAsync(() -> client.createEvent(description, info, startEnd), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#updateEvent(long, Event)
+	 */
+	public CompletableFuture<Void> updateEvent(long id, Event newEvent) {
+		return CompletableFuture.runAsync(() -> client.updateEvent(id, newEvent), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#deleteEvent(long)
+	 */
+	public CompletableFuture<Void> deleteEvent(long id) {
+		return CompletableFuture.runAsync(() -> client.deleteEvent(id), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#getBookings()
+	 */
+	public CompletableFuture<Collection<Booking>> getBookings() {
+		return CompletableFuture.supplyAsync(() -> client.getBookings(), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#getBookings(Long, Long, Interval)
+	 */
+	public CompletableFuture<Collection<Booking>> getBookings(Long idResource, Long idEvent, Interval window) {
+		return CompletableFuture.supplyAsync(() -> client.getBookings(idResource, idEvent, window), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#getBooking(long)
+	 */
+	public CompletableFuture<Booking> getBooking(long id) {
+		return CompletableFuture.supplyAsync(() -> client.getBooking(id), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#tryGetBooking(long)
+	 */
+	public CompletableFuture<Optional<Booking>> tryGetBooking(long id) {
+		return CompletableFuture.supplyAsync(() -> client.tryGetBooking(id), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#createBooking(Booking)
+	 */
+	public CompletableFuture<Long> createBooking(Booking booking) {
+		return CompletableFuture.supplyAsync(() -> client.createBooking(booking), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#updateBooking(long, Booking)
+	 */
+	public CompletableFuture<Void> updateBooking(long id, Booking newBooking) {
+		return CompletableFuture.runAsync(() -> client.updateBooking(id, newBooking), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#deleteBooking(long)
+	 */
+	public CompletableFuture<Void> deleteBooking(long id) {
+		return CompletableFuture.runAsync(() -> client.deleteBooking(id), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#tagResource(String, long)
+	 */
+	public CompletableFuture<Void> tagResource(String tagId, long resourceId) {
+		return CompletableFuture.runAsync(() -> client.tagResource(tagId, resourceId), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#getResourceTags(long)
+	 */
+	public CompletableFuture<Collection<Tag>> getResourceTags(long resourceId) {
+		return CompletableFuture.supplyAsync(() -> client.getResourceTags(resourceId), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#untagResource(String, long)
+	 */
+	public CompletableFuture<Void> untagResource(String tagId, long resourceId) {
+		return CompletableFuture.runAsync(() -> client.untagResource(tagId, resourceId), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#tagEvent(String, long)
+	 */
+	public CompletableFuture<Void> tagEvent(String tagId, long eventId) {
+		return CompletableFuture.runAsync(() -> client.tagEvent(tagId, eventId), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#getEventTags(long)
+	 */
+	public CompletableFuture<Collection<Tag>> getEventTags(long eventId) {
+		return CompletableFuture.supplyAsync(() -> client.getEventTags(eventId), executor);
+	}
+
+	/**
+	 * @see SmeagolClient#untagEvent(String, long)
+	 */
+	public CompletableFuture<Void> untagEvent(String tagId, long eventId) {
+		return CompletableFuture.runAsync(() -> client.untagEvent(tagId, eventId), executor);
+	}
+
+}
@@ -0,0 +1,156 @@
+package edu.upc.cpl.smeagol.client;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Settings for the pooled HTTP transport used by {@link SmeagolClient}.
+ * <p>
+ * When a {@code SmeagolClient} is built with a {@code ConnectionPoolConfig},
+ * all requests go through a multi-threaded connection manager which keeps
+ * connections to the Sméagol server alive and reuses them between requests,
+ * instead of opening a new TCP connection for every call.
+ * <p>
+ * For example, to allow up to 50 concurrent connections to the server and
+ * close connections which have been idle for more than 10 seconds:
+ *
+ * <pre>
+ * ConnectionPoolConfig pool = new ConnectionPoolConfig();
+ * pool.setMaxConnectionsPerHost(50);
+ * pool.setMaxTotalConnections(50);
+ * pool.setIdleConnectionTimeout(10000);
+ *
+ * SmeagolClient client = new SmeagolClient(&quot;http://localhost:3000&quot;, pool);
+ * </pre>
+ *
+ */
+public class ConnectionPoolConfig {
+
+	/**
+	 * Default maximum number of connections per host = {@value}
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
+	/**
+	 * Default maximum number of connections = {@value}
+	 */
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 100;
+
+	/**
+	 * Default time (in milliseconds) a connection may stay idle before being
+	 * closed = {@value}
+	 */
+	public static final long DEFAULT_IDLE_CONNECTION_TIMEOUT = 30000;
+
+	/**
+	 * Default time (in milliseconds) between checks for idle connections =
+	 * {@value}
+	 */
+	public static final long DEFAULT_IDLE_CHECK_INTERVAL = 5000;
+
+	/**
+	 * Default time (in milliseconds) to wait for a connection to be
+	 * established = {@value}
+	 */
+	public static final int DEFAULT_CONNECTION_TIMEOUT = 10000;
+
+	private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+	private long idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+	private long idleCheckInterval = DEFAULT_IDLE_CHECK_INTERVAL;
+	private int connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
+
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * Set the maximum number of connections kept open to the Sméagol server
+	 * (the per-route limit).
+	 *
+	 * @param maxConnectionsPerHost
+	 *            a value greater than zero.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxConnectionsPerHost} is not positive.
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		if (maxConnectionsPerHost < 1) {
+			throw new IllegalArgumentException("maxConnectionsPerHost must be greater than zero");
+		}
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	public int getMaxTotalConnections() {
+		return maxTotalConnections;
+	}
+
+	/**
+	 * Set the maximum number of connections kept open by the pool.
+	 *
+	 * @param maxTotalConnections
+	 *            a value greater than zero.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxTotalConnections} is not positive.
+	 */
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		if (maxTotalConnections < 1) {
+			throw new IllegalArgumentException("maxTotalConnections must be greater than zero");
+		}
+		this.maxTotalConnections = maxTotalConnections;
+	}
+
+	public long getIdleConnectionTimeout() {
+		return idleConnectionTimeout;
+	}
+
+	/**
+	 * Set the time a pooled connection may stay idle before it is evicted.
+	 *
+	 * @param idleConnectionTimeout
+	 *            time in milliseconds. Zero or a negative value disables idle
+	 *            eviction.
+	 */
+	public void setIdleConnectionTimeout(long idleConnectionTimeout) {
+		this.idleConnectionTimeout = idleConnectionTimeout;
+	}
+
+	public long getIdleCheckInterval() {
+		return idleCheckInterval;
+	}
+
+	/**
+	 * Set how often the pool looks for idle connections to evict.
+	 *
+	 * @param idleCheckInterval
+	 *            time in milliseconds, greater than zero.
+	 * @throws IllegalArgumentException
+	 *             if {@code idleCheckInterval} is not positive.
+	 */
+	public void setIdleCheckInterval(long idleCheckInterval) {
+		if (idleCheckInterval < 1) {
+			throw new IllegalArgumentException("idleCheckInterval must be greater than zero");
+		}
+		this.idleCheckInterval = idleCheckInterval;
+	}
+
+	public int getConnectionTimeout() {
+		return connectionTimeout;
+	}
+
+	/**
+	 * Set the time to wait until a connection to the server is established.
+	 *
+	 * @param connectionTimeout
+	 *            time in milliseconds. Zero means wait forever.
+	 */
+	public void setConnectionTimeout(int connectionTimeout) {
+		this.connectionTimeout = connectionTimeout < 0 ? 0 : connectionTimeout;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("maxConnectionsPerHost", maxConnectionsPerHost)
+				.append("maxTotalConnections", maxTotalConnections)
+				.append("idleConnectionTimeout", idleConnectionTimeout).append("idleCheckInterval", idleCheckInterval)
+				.append("connectionTimeout", connectionTimeout).toString();
+	}
+}
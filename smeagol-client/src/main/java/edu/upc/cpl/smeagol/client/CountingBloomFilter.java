@@ -0,0 +1,115 @@
+package edu.upc.cpl.smeagol.client;
+
+/**
+ * A counting Bloom filter of strings: a compact set which may answer that it
+ * contains a string it does not (a false positive, with a probability chosen
+ * when it is created), but never that it does not contain a string it does.
+ * <p>
+ * Each string sets {@code k} of the counters of the filter, chosen by double
+ * hashing. Counters, unlike the bits of a plain Bloom filter, allow strings to
+ * be removed. A counter which reaches its maximum value is never decremented
+ * again, so it can only cause false positives.
+ * <p>
+ * It is safe to use from several threads.
+ *
+ */
+class CountingBloomFilter {
+
+	private static final int MAX_COUNT = 0xff;
+
+	private final byte[] counters;
+	private final int hashes;
+
+	/**
+	 * Create a filter sized for a number of strings.
+	 *
+	 * @param expectedSize
+	 *            the number of strings the filter is expected to hold. Not
+	 *            negative.
+	 * @param falsePositiveRate
+	 *            the probability of false positives when the filter holds
+	 *            {@code expectedSize} strings, between 0 and 1 (exclusive).
+	 */
+	CountingBloomFilter(int expectedSize, double falsePositiveRate) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("expectedSize cannot be negative");
+		}
+		if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+			throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+		}
+		int n = Math.max(expectedSize, 1);
+		long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		this.counters = new byte[(int) Math.min(Math.max(m, 64), Integer.MAX_VALUE - 8)];
+		this.hashes = Math.max(1, (int) Math.round((double) counters.length / n * Math.log(2)));
+	}
+
+	synchronized void add(String s) {
+		int h1 = s.hashCode();
+		int h2 = secondHash(s);
+		for (int i = 0; i < hashes; i++) {
+			int index = index(h1, h2, i);
+			int count = counters[index] & MAX_COUNT;
+			if (count < MAX_COUNT) {
+				counters[index] = (byte) (count + 1);
+			}
+		}
+	}
+
+	/**
+	 * Remove a string, which must be known to have been added before and not
+	 * removed since. {@link #mightContain(String)} is no guarantee of that:
+	 * removing a string which is only a false positive decrements the
+	 * counters of strings which have been added, which might then be
+	 * reported as missing.
+	 */
+	synchronized void remove(String s) {
+		if (!mightContain(s)) {
+			return;
+		}
+		int h1 = s.hashCode();
+		int h2 = secondHash(s);
+		for (int i = 0; i < hashes; i++) {
+			int index = index(h1, h2, i);
+			int count = counters[index] & MAX_COUNT;
+			if (count < MAX_COUNT) {
+				counters[index] = (byte) (count - 1);
+			}
+		}
+	}
+
+	/**
+	 * @return <code>false</code> if {@code s} has definitely not been added,
+	 *         <code>true</code> if it probably has.
+	 */
+	synchronized boolean mightContain(String s) {
+		int h1 = s.hashCode();
+		int h2 = secondHash(s);
+		for (int i = 0; i < hashes; i++) {
+			if (counters[index(h1, h2, i)] == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int index(int h1, int h2, int i) {
+		return ((h1 + i * h2) & Integer.MAX_VALUE) % counters.length;
+	}
+
+	/**
+	 * A hash independent of {@link String#hashCode()} (FNV-1a, mixed), odd so
+	 * that the probes of double hashing do not repeat early.
+	 */
+	private static int secondHash(String s) {
+		int h = 0x811c9dc5;
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x01000193;
+		}
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h | 1;
+	}
+
+}
@@ -0,0 +1,263 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.joda.time.DateTimeUtils;
+
+/**
+ * Read-through cache of the entities retrieved by a {@link SmeagolClient},
+ * keyed by entity type and identifier.
+ * <p>
+ * Once a cache is {@link SmeagolClient#setCache(EntityCache) set}, lookups
+ * by id ({@code getTag}, {@code getResource}, {@code getEvent},
+ * {@code getBooking} and their multi-get variants) are answered from the
+ * cache while the entity is fresh, and the writes done through the client
+ * ({@code update*}, {@code delete*}, tagging and untagging) invalidate the
+ * entities they change. Writes done by other clients are seen when the
+ * cached entity expires.
+ * <p>
+ * The cache holds up to {@link EntityCacheConfig#getMaximumSize()} entities
+ * and evicts the least recently used one when full. Entities are kept as
+ * the JSON returned by the server and deserialized on every hit, so callers
+ * may modify the objects they get without affecting the cache. Lookups of
+ * entities which do not exist are also cached, for a shorter time (see
+ * {@link EntityCacheConfig#setNegativeTtl(long)}).
+ * <p>
+ * Time is read from {@link DateTimeUtils#currentTimeMillis()}. It is safe to
+ * use from several threads.
+ *
+ */
+public class EntityCache {
+
+	/**
+	 * The types of entity kept in the cache.
+	 */
+	public enum Type {
+		TAG, RESOURCE, EVENT, BOOKING;
+	}
+
+	/**
+	 * Returned by {@link #get(Type, Object)} for entities known not to exist.
+	 */
+	static final String ABSENT = new String("absent");
+
+	private final int maximumSize;
+	private final long[] ttls;
+	private final long negativeTtl;
+
+	private final LinkedHashMap<Key, Entry> entries;
+
+	/*
+	 * Incremented on every invalidation, so that responses requested before
+	 * it are not stored afterwards.
+	 */
+	private long generation;
+
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	/**
+	 * Create a cache with the default settings.
+	 */
+	public EntityCache() {
+		this(new EntityCacheConfig());
+	}
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param config
+	 *            the cache settings. Not null.
+	 */
+	public EntityCache(EntityCacheConfig config) {
+		if (config == null) {
+			throw new IllegalArgumentException("config cannot be null");
+		}
+		this.maximumSize = config.getMaximumSize();
+		this.ttls = new long[Type.values().length];
+		for (Type type : Type.values()) {
+			ttls[type.ordinal()] = config.getTtl(type);
+		}
+		this.negativeTtl = config.getNegativeTtl();
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				if (size() > maximumSize) {
+					evictionCount++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @return the JSON of a fresh cached entity, {@link #ABSENT} if it is
+	 *         known not to exist, or null if it is not cached or has expired.
+	 */
+	synchronized String get(Type type, Object id) {
+		Key key = new Key(type, id);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		if (entry.expires <= DateTimeUtils.currentTimeMillis()) {
+			entries.remove(key);
+			evictionCount++;
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return entry.json == null ? ABSENT : entry.json;
+	}
+
+	/**
+	 * @return a stamp to pass to {@link #put(Type, Object, String, long)},
+	 *         taken before requesting an entity to the server.
+	 */
+	synchronized long stamp() {
+		return generation;
+	}
+
+	/**
+	 * Store an entity read from the server, unless some entity has been
+	 * invalidated since {@code stamp} was taken (the response might be older
+	 * than the write which invalidated it).
+	 */
+	synchronized void put(Type type, Object id, String json, long stamp) {
+		long ttl = ttls[type.ordinal()];
+		if (ttl <= 0 || stamp != generation) {
+			return;
+		}
+		entries.put(new Key(type, id), new Entry(json, DateTimeUtils.currentTimeMillis() + ttl));
+	}
+
+	/**
+	 * Store that the server did not find an entity, under the same conditions
+	 * as {@link #put(Type, Object, String, long)}.
+	 */
+	synchronized void putAbsent(Type type, Object id, long stamp) {
+		if (negativeTtl <= 0 || stamp != generation) {
+			return;
+		}
+		entries.put(new Key(type, id), new Entry(null, DateTimeUtils.currentTimeMillis() + negativeTtl));
+	}
+
+	/**
+	 * Remove an entity from the cache.
+	 *
+	 * @param type
+	 *            the type of the entity. Not null.
+	 * @param id
+	 *            the identifier of the entity.
+	 */
+	public synchronized void invalidate(Type type, Object id) {
+		entries.remove(new Key(type, id));
+		generation++;
+	}
+
+	/**
+	 * Remove all the entities of a type from the cache.
+	 *
+	 * @param type
+	 *            the type of the entities. Not null.
+	 */
+	public synchronized void invalidateAll(Type type) {
+		for (Iterator<Key> it = entries.keySet().iterator(); it.hasNext();) {
+			if (it.next().type == type) {
+				it.remove();
+			}
+		}
+		generation++;
+	}
+
+	/**
+	 * Remove all the entities from the cache.
+	 */
+	public synchronized void invalidateAll() {
+		entries.clear();
+		generation++;
+	}
+
+	/**
+	 * @return the number of entities in the cache, including expired ones
+	 *         which have not been removed yet.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache, including those
+	 *         of entities known not to exist.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return the number of lookups which had to go to the server.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return the number of entities removed because the cache was full or
+	 *         they had expired (but not because they were invalidated).
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return new ToStringBuilder(this).append("size", entries.size()).append("maximumSize", maximumSize)
+				.append("hits", hitCount).append("misses", missCount).append("evictions", evictionCount).toString();
+	}
+
+	private static final class Key {
+		final Type type;
+		final Object id;
+
+		Key(Type type, Object id) {
+			this.type = type;
+			// so that int and long identifiers are equal
+			this.id = id instanceof Number ? (Object) ((Number) id).longValue() : id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return type == other.type && id.equals(other.id);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * type.hashCode() + id.hashCode();
+		}
+	}
+
+	private static final class Entry {
+		/* null if the entity does not exist */
+		final String json;
+		final long expires;
+
+		Entry(String json, long expires) {
+			this.json = json;
+			this.expires = expires;
+		}
+	}
+
+}
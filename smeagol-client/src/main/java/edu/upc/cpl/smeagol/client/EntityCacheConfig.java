@@ -0,0 +1,116 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Settings for the {@link EntityCache} of a {@link SmeagolClient}.
+ * <p>
+ * For example, to keep up to 50000 entities, tags for 10 minutes and events
+ * for 30 seconds:
+ *
+ * <pre>
+ * EntityCacheConfig config = new EntityCacheConfig();
+ * config.setMaximumSize(50000);
+ * config.setTtl(EntityCache.Type.TAG, 600000);
+ * config.setTtl(EntityCache.Type.EVENT, 30000);
+ *
+ * client.setCache(new EntityCache(config));
+ * </pre>
+ *
+ */
+public class EntityCacheConfig {
+
+	/**
+	 * Default maximum number of cached entities = {@value}
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+	/**
+	 * Default time (in milliseconds) an entity stays cached = {@value}
+	 */
+	public static final long DEFAULT_TTL = 60000;
+
+	/**
+	 * Default time (in milliseconds) an entity is known not to exist =
+	 * {@value}
+	 */
+	public static final long DEFAULT_NEGATIVE_TTL = 5000;
+
+	private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+	private long negativeTtl = DEFAULT_NEGATIVE_TTL;
+	private final Map<EntityCache.Type, Long> ttls = new EnumMap<EntityCache.Type, Long>(EntityCache.Type.class);
+
+	public EntityCacheConfig() {
+		for (EntityCache.Type type : EntityCache.Type.values()) {
+			ttls.put(type, DEFAULT_TTL);
+		}
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Set the maximum number of entities, of all types, kept in the cache.
+	 * When it is full, the least recently used entity is evicted.
+	 *
+	 * @param maximumSize
+	 *            a value greater than zero.
+	 * @throws IllegalArgumentException
+	 *             if {@code maximumSize} is not positive.
+	 */
+	public void setMaximumSize(int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("maximumSize must be greater than zero");
+		}
+		this.maximumSize = maximumSize;
+	}
+
+	public long getTtl(EntityCache.Type type) {
+		return ttls.get(type);
+	}
+
+	/**
+	 * Set the time entities of a type stay cached after they are read from
+	 * the server.
+	 *
+	 * @param type
+	 *            the type of entity. Not null.
+	 * @param ttl
+	 *            time in milliseconds. Zero or a negative value disables
+	 *            caching of {@code type}.
+	 */
+	public void setTtl(EntityCache.Type type, long ttl) {
+		if (type == null) {
+			throw new IllegalArgumentException("type cannot be null");
+		}
+		ttls.put(type, ttl);
+	}
+
+	public long getNegativeTtl() {
+		return negativeTtl;
+	}
+
+	/**
+	 * Set the time an entity which the server did not find is known not to
+	 * exist, so that lookups of it are answered without asking the server
+	 * again. Writes through the client which may create it (such as
+	 * {@code createTag}) forget it earlier.
+	 *
+	 * @param negativeTtl
+	 *            time in milliseconds. Zero or a negative value disables
+	 *            negative caching.
+	 */
+	public void setNegativeTtl(long negativeTtl) {
+		this.negativeTtl = negativeTtl;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("maximumSize", maximumSize).append("ttls", ttls)
+				.append("negativeTtl", negativeTtl).toString();
+	}
+}
@@ -0,0 +1,66 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with the same key: while a call is in flight,
+ * other callers with the same key wait for it and get its result (or its
+ * exception) instead of doing the work again.
+ * <p>
+ * Results are shared between callers, so they should be immutable.
+ *
+ */
+class SingleFlight<V> {
+
+	private final ConcurrentMap<String, CompletableFuture<V>> calls = new ConcurrentHashMap<String, CompletableFuture<V>>();
+
+	/**
+	 * Run {@code call}, unless a call with the same key is already in flight,
+	 * in which case wait for it and return its result.
+	 *
+	 * @throws RuntimeException
+	 *             the exception thrown by the call, also to the callers which
+	 *             waited for it.
+	 */
+	V execute(String key, Supplier<V> call) {
+		CompletableFuture<V> flight = new CompletableFuture<V>();
+		CompletableFuture<V> inFlight = calls.putIfAbsent(key, flight);
+		if (inFlight != null) {
+			try {
+				return inFlight.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw e;
+			}
+		}
+
+		try {
+			V result = call.get();
+			flight.complete(result);
+			return result;
+		} catch (RuntimeException | Error e) {
+			flight.completeExceptionally(e);
+			throw e;
+		} finally {
+			calls.remove(key, flight);
+		}
+	}
+
+	/**
+	 * Stop sharing the calls in flight: callers from now on start new calls.
+	 * Callers already waiting still get the result of the call they joined.
+	 */
+	void forgetAll() {
+		calls.clear();
+	}
+
+}
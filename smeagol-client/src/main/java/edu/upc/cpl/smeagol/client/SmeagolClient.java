@@ -1,15 +1,39 @@
 package edu.upc.cpl.smeagol.client;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.URI;
 import org.apache.commons.httpclient.URIException;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.joda.time.Interval;
@@ -21,7 +45,10 @@ import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.ClientResponse.Status;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.representation.Form;
+import com.sun.jersey.client.apache.ApacheHttpClient;
+import com.sun.jersey.client.apache.ApacheHttpClientHandler;
 
+import edu.upc.cpl.smeagol.client.domain.Booking;
 import edu.upc.cpl.smeagol.client.domain.Event;
 import edu.upc.cpl.smeagol.client.domain.Resource;
 import edu.upc.cpl.smeagol.client.domain.Tag;
@@ -39,7 +66,6 @@ import edu.upc.cpl.smeagol.json.DateTimeConverter;
  */
 public class SmeagolClient {
 
-	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(SmeagolClient.class);
 
 	private static final String TAG_PATH = "tag";
@@ -64,8 +90,58 @@ public class SmeagolClient {
 	public static final String EVENT_STARTS_ATTR_NAME = "starts";
 	public static final String EVENT_ENDS_ATTR_NAME = "ends";
 
+	public static final String BOOKING_ID_RESOURCE_ATTR_NAME = "id_resource";
+	public static final String BOOKING_ID_EVENT_ATTR_NAME = "id_event";
+	public static final String BOOKING_FROM_ATTR_NAME = "from";
+	public static final String BOOKING_TO_ATTR_NAME = "to";
+
+	/**
+	 * Default maximum number of concurrent requests issued by multi-get
+	 * methods such as {@link #getTags(Collection)} = {@value}
+	 */
+	public static final int DEFAULT_MULTI_GET_CONCURRENCY = 8;
+
 	private Client client;
 
+	/*
+	 * Only set when the client uses a pooled transport (see
+	 * ConnectionPoolConfig)
+	 */
+
+	private MultiThreadedHttpConnectionManager connectionManager;
+	private IdleConnectionTimeoutThread idleConnectionEvictor;
+
+	/* Worker threads for multi-get requests, created on first use */
+
+	private int multiGetConcurrency = DEFAULT_MULTI_GET_CONCURRENCY;
+	private ExecutorService multiGetExecutor;
+
+	/* Reads in flight, shared by concurrent callers of the same URL */
+
+	private final SingleFlight<String> reads = new SingleFlight<String>();
+
+	/* Optional read-through cache of entities retrieved by id */
+
+	private volatile EntityCache cache;
+
+	/* Optional filter of the ids of the tags known to exist */
+
+	private volatile CountingBloomFilter tagFilter;
+	private final Object tagFilterLock = new Object();
+
+	/* Ids added to the tag filter by createTag, the only ones it may remove */
+
+	private final Set<String> tagFilterCreated = new HashSet<String>();
+
+	/* Validators and parsed result of the last listing of each URL */
+
+	private volatile boolean conditionalGets;
+	private final ConcurrentMap<String, Listing<?>> listings = new ConcurrentHashMap<String, Listing<?>>();
+
+	/* Whether expected exceptions are created without stack traces */
+
+	private volatile boolean stacklessExceptions;
+
 	/* WebResource encapsulates a REST web resource */
 
 	private WebResource tagWr;
@@ -83,8 +159,54 @@ public class SmeagolClient {
 	 *             if the provided url is not a valid URL
 	 */
 	public SmeagolClient(String url) throws MalformedURLException {
+		init(url, Client.create());
+	}
+
+	/**
+	 * Sméagol client constructor using a pooled, keep-alive HTTP transport.
+	 * <p>
+	 * Connections to the server are reused between requests and may be shared
+	 * by several threads using this client concurrently. Call
+	 * {@link #close()} when the client is no longer needed in order to release
+	 * pooled connections.
+	 * 
+	 * @param url
+	 *            the base url of the Sméagol server. For instance:
+	 *            http://www.example.com:3000/
+	 * @param poolConfig
+	 *            the connection pool settings. Not null.
+	 * @throws MalformedURLException
+	 *             if the provided url is not a valid URL
+	 * @see ConnectionPoolConfig
+	 */
+	public SmeagolClient(String url, ConnectionPoolConfig poolConfig) throws MalformedURLException {
+		if (poolConfig == null) {
+			throw new IllegalArgumentException("poolConfig cannot be null");
+		}
+
+		connectionManager = new MultiThreadedHttpConnectionManager();
+		HttpConnectionManagerParams params = connectionManager.getParams();
+		params.setDefaultMaxConnectionsPerHost(poolConfig.getMaxConnectionsPerHost());
+		params.setMaxTotalConnections(poolConfig.getMaxTotalConnections());
+		params.setConnectionTimeout(poolConfig.getConnectionTimeout());
+		params.setStaleCheckingEnabled(true);
+
+		if (poolConfig.getIdleConnectionTimeout() > 0) {
+			idleConnectionEvictor = new IdleConnectionTimeoutThread();
+			idleConnectionEvictor.setName("smeagol-client-idle-connection-evictor");
+			idleConnectionEvictor.setConnectionTimeout(poolConfig.getIdleConnectionTimeout());
+			idleConnectionEvictor.setTimeoutInterval(poolConfig.getIdleCheckInterval());
+			idleConnectionEvictor.addConnectionManager(connectionManager);
+			idleConnectionEvictor.start();
+		}
+
+		logger.debug("using pooled HTTP transport: " + poolConfig);
+		init(url, new ApacheHttpClient(new ApacheHttpClientHandler(new HttpClient(connectionManager))));
+	}
+
+	private void init(String url, Client client) throws MalformedURLException {
 		URL serverUrl = new URL(url.endsWith("/") ? url : url + "/");
-		client = Client.create();
+		this.client = client;
 
 		try {
 			tagWr = client.resource(new URL(serverUrl, TAG_PATH).toURI());
@@ -101,6 +223,177 @@ public class SmeagolClient {
 		}
 	}
 
+	/**
+	 * Release the resources held by this client, such as pooled connections.
+	 * <p>
+	 * The client must not be used after calling this method.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (multiGetExecutor != null) {
+				multiGetExecutor.shutdown();
+				multiGetExecutor = null;
+			}
+		}
+		if (idleConnectionEvictor != null) {
+			idleConnectionEvictor.shutdown();
+		}
+		client.destroy();
+		if (connectionManager != null) {
+			connectionManager.shutdown();
+		}
+	}
+
+	/**
+	 * Get the maximum number of concurrent requests issued by a single call to
+	 * a multi-get method.
+	 * 
+	 * @return the concurrency limit
+	 */
+	public int getMultiGetConcurrency() {
+		return multiGetConcurrency;
+	}
+
+	/**
+	 * Set the maximum number of concurrent requests issued by a single call to
+	 * a multi-get method ({@link #getTags(Collection)},
+	 * {@link #getResources(Collection)} and {@link #getEvents(Collection)}).
+	 * <p>
+	 * A value of <code>1</code> makes multi-gets issue their requests
+	 * sequentially on the calling thread. When using a pooled transport, the
+	 * value should not exceed the number of connections allowed by the pool.
+	 * 
+	 * @param multiGetConcurrency
+	 *            a value greater than zero. Default is
+	 *            {@value #DEFAULT_MULTI_GET_CONCURRENCY}.
+	 * @throws IllegalArgumentException
+	 *             if {@code multiGetConcurrency} is not positive.
+	 */
+	public void setMultiGetConcurrency(int multiGetConcurrency) {
+		if (multiGetConcurrency < 1) {
+			throw new IllegalArgumentException("multiGetConcurrency must be greater than zero");
+		}
+		this.multiGetConcurrency = multiGetConcurrency;
+	}
+
+	/**
+	 * @return the cache of entities retrieved by id, or null if there is none.
+	 */
+	public EntityCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Set the cache of the entities retrieved by id. Lookups by id are
+	 * answered from the cache while the entity is fresh, and writes through
+	 * this client invalidate the entities they change.
+	 * 
+	 * @param cache
+	 *            the cache, or null to disable caching (the default).
+	 * @see EntityCache
+	 */
+	public void setCache(EntityCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Load a Bloom filter of the identifiers of all the tags in the server,
+	 * so that lookups of tags which are not in it ({@link #getTag(String)}
+	 * and {@link #getTags(Collection)}) are answered without a request.
+	 * <p>
+	 * Tags created through this client are added to the filter, and removed
+	 * from it when they are deleted through this client. Other deleted tags
+	 * stay in the filter (lookups of them are sent to the server) and tags
+	 * created by other clients after the filter is loaded are reported as
+	 * missing, until it is loaded again. The filter is
+	 * sized for the tags in the server when it is loaded; adding many more
+	 * raises the rate of false positives (which are lookups sent to the
+	 * server anyway).
+	 * 
+	 * @param falsePositiveRate
+	 *            the probability that a missing tag is looked up in the
+	 *            server, between 0 and 1 (exclusive). For instance, 0.01.
+	 */
+	public void loadTagFilter(double falsePositiveRate) {
+		synchronized (tagFilterLock) {
+			Collection<Tag> tags = getTags();
+			CountingBloomFilter filter = new CountingBloomFilter(tags.size() * 2, falsePositiveRate);
+			for (Tag t : tags) {
+				filter.add(t.getId());
+			}
+			tagFilter = filter;
+			tagFilterCreated.clear();
+		}
+	}
+
+	/**
+	 * Stop filtering tag lookups with the filter loaded by
+	 * {@link #loadTagFilter(double)}.
+	 */
+	public void clearTagFilter() {
+		synchronized (tagFilterLock) {
+			tagFilter = null;
+			tagFilterCreated.clear();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if listings are revalidated with conditional
+	 *         GETs.
+	 */
+	public boolean isConditionalGets() {
+		return conditionalGets;
+	}
+
+	/**
+	 * Enable or disable conditional GETs of listings ({@link #getTags()},
+	 * {@link #getResources()}, {@link #getEvents()} and
+	 * {@link #getBookings()}).
+	 * <p>
+	 * When enabled, the {@code ETag} and {@code Last-Modified} headers of each
+	 * listing are kept along with its parsed result, and sent back as
+	 * {@code If-None-Match} and {@code If-Modified-Since} the next time it is
+	 * requested. If the server answers 304 (Not Modified), the previous result
+	 * is returned without transferring or parsing the body again. Listings
+	 * are then unmodifiable collections shared by all the callers, so their
+	 * elements should not be modified either.
+	 * 
+	 * @param conditionalGets
+	 *            <code>true</code> to enable conditional GETs. Default is
+	 *            <code>false</code>.
+	 */
+	public void setConditionalGets(boolean conditionalGets) {
+		this.conditionalGets = conditionalGets;
+		if (!conditionalGets) {
+			listings.clear();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the exceptions this client throws for
+	 *         missing or existing entities have no stack traces.
+	 */
+	public boolean isStacklessExceptions() {
+		return stacklessExceptions;
+	}
+
+	/**
+	 * Create the {@link NotFoundException}s and
+	 * {@link AlreadyExistsException}s thrown by this client with or without
+	 * stack traces. Filling in the stack trace is most of the cost of a
+	 * lookup answered by the negative cache or the tag filter, so callers
+	 * which expect many of them may turn it off (or use the
+	 * <code>tryGet</code> methods, which throw no exception at all). Other
+	 * exceptions always have stack traces.
+	 * 
+	 * @param stacklessExceptions
+	 *            <code>true</code> to create these exceptions without stack
+	 *            traces. Default is <code>false</code>.
+	 */
+	public void setStacklessExceptions(boolean stacklessExceptions) {
+		this.stacklessExceptions = stacklessExceptions;
+	}
+
 	/**
 	 * Retrieve all tags defined in server.
 	 * 
@@ -108,8 +401,26 @@ public class SmeagolClient {
 	 *         server.
 	 */
 	public Collection<Tag> getTags() {
-		String tagJsonArray = tagWr.accept(MediaType.APPLICATION_JSON).get(String.class);
-		return Tag.deserializeCollection(tagJsonArray);
+		return getListing(tagWr, Tag::deserializeCollection);
+	}
+
+	/**
+	 * Retrieve all tags defined in server, deserializing them one at a time
+	 * while the server response is read.
+	 * <p>
+	 * The returned stream holds a connection to the server until it is
+	 * closed, so use it in a try-with-resources statement:
+	 * 
+	 * <pre>
+	 * try (Stream&lt;Tag&gt; tags = client.streamTags()) {
+	 * 	tags.forEach(t -&gt; process(t));
+	 * }
+	 * </pre>
+	 * 
+	 * @return a stream of all the <code>Tag</code>s defined on the server.
+	 */
+	public Stream<Tag> streamTags() {
+		return Tag.deserializeStream(openJsonArray(tagWr));
 	}
 
 	/**
@@ -123,14 +434,56 @@ public class SmeagolClient {
 	 *             provided id.
 	 */
 	public Tag getTag(String id) {
-		ClientResponse response = tagWr.path(id).accept(MediaType.APPLICATION_JSON).get(ClientResponse.class);
+		Tag result = findTag(id);
 
-		if (response.getClientResponseStatus().equals(Status.NOT_FOUND)) {
-			throw new NotFoundException("tag not found");
+		if (result == null) {
+			throw notFound("tag not found");
+		}
+		return result;
+	}
+
+	/**
+	 * Retrieve <code>Tag</code> by id, without throwing an exception when it
+	 * does not exist.
+	 * 
+	 * @param id
+	 *            the id of the tag to retrieve.
+	 * @return the tag, or an empty <code>Optional</code> if there is not a
+	 *         <code>Tag</code> in server with the provided id.
+	 */
+	public Optional<Tag> tryGetTag(String id) {
+		return Optional.ofNullable(findTag(id));
+	}
+
+	/**
+	 * @return a <code>NotFoundException</code> to throw, without stack trace
+	 *         if {@link #isStacklessExceptions()}.
+	 */
+	private NotFoundException notFound(String message) {
+		return new NotFoundException(message, !stacklessExceptions);
+	}
+
+	/**
+	 * @return an <code>AlreadyExistsException</code> to throw, without stack
+	 *         trace if {@link #isStacklessExceptions()}.
+	 */
+	private AlreadyExistsException alreadyExists(String message) {
+		return new AlreadyExistsException(message, !stacklessExceptions);
+	}
+
+	/**
+	 * Retrieve <code>Tag</code> by id, returning <code>null</code> when it
+	 * does not exist.
+	 */
+	private Tag findTag(String id) {
+		CountingBloomFilter filter = tagFilter;
+		if (filter != null && !filter.mightContain(id)) {
+			return null;
 		}
 
-		String json = response.getEntity(String.class);
-		return Tag.deserialize(json);
+		String json = getEntity(EntityCache.Type.TAG, id, tagWr.path(id));
+
+		return json == null ? null : Tag.deserialize(json);
 	}
 
 	/**
@@ -158,14 +511,22 @@ public class SmeagolClient {
 		f.add(TAG_DESCRIPTION_ATTR_NAME, description);
 
 		ClientResponse response = tagWr.accept(MediaType.APPLICATION_JSON).post(ClientResponse.class, f);
+		response.close();
+		invalidateListing(tagWr);
 
 		switch (response.getClientResponseStatus()) {
 		case CONFLICT:
-			throw new AlreadyExistsException();
+			throw alreadyExists(null);
 		case BAD_REQUEST:
 			throw new IllegalArgumentException();
 		case CREATED:
 			// tag was created successfully
+			invalidate(EntityCache.Type.TAG, id);
+			synchronized (tagFilterLock) {
+				if (tagFilter != null && tagFilterCreated.add(id)) {
+					tagFilter.add(id);
+				}
+			}
 			break;
 		default:
 			throw new SmeagolClientException("unexpected server status: " + response.getClientResponseStatus());
@@ -198,13 +559,15 @@ public class SmeagolClient {
 		f.add(TAG_DESCRIPTION_ATTR_NAME, newDescription);
 
 		ClientResponse response = tagWr.path(id).accept(MediaType.APPLICATION_JSON).put(ClientResponse.class, f);
+		response.close();
+		invalidate(EntityCache.Type.TAG, id);
 
 		switch (response.getClientResponseStatus()) {
 		case OK:
 			// tag successfully updated
 			break;
 		case NOT_FOUND:
-			throw new NotFoundException("tag not found");
+			throw notFound("tag not found");
 		default:
 			throw new SmeagolClientException("unexpected server status: " + response.getClientResponseStatus());
 		}
@@ -219,31 +582,37 @@ public class SmeagolClient {
 	 */
 	public void deleteTag(String id) {
 		ClientResponse response = tagWr.path(id).accept(MediaType.APPLICATION_JSON).delete(ClientResponse.class);
+		response.close();
+		invalidate(EntityCache.Type.TAG, id);
 
 		if (response.getClientResponseStatus().equals(Status.NOT_FOUND)) {
-			throw new NotFoundException("tag not found");
+			throw notFound("tag not found");
+		}
+		if (response.getClientResponseStatus().equals(Status.OK)) {
+			synchronized (tagFilterLock) {
+				// only ids known to be in the filter are removed: removing
+				// any other might clear the counters of tags which exist
+				if (tagFilter != null && tagFilterCreated.remove(id)) {
+					tagFilter.remove(id);
+				}
+			}
 		}
 	}
 
 	/**
 	 * Returns all tags defined in server whose identifiers are in the provided
 	 * list.
+	 * <p>
+	 * Up to {@link #getMultiGetConcurrency()} tags are requested concurrently.
 	 * 
 	 * @param identifiers
 	 *            a list of valid tag identifiers
-	 * @return a collection containing all the tags defined in the server.
+	 * @return a collection containing the tags defined in the server, in the
+	 *         same order as their identifiers in {@code identifiers}.
+	 *         Identifiers with no matching tag are skipped.
 	 */
 	public Collection<Tag> getTags(Collection<String> identifiers) {
-		Collection<Tag> result = new HashSet<Tag>();
-		for (String id : identifiers) {
-			try {
-				Tag t = getTag(id);
-				result.add(t);
-			} catch (NotFoundException e) {
-				// not found? OK. do nothing
-			}
-		}
-		return result;
+		return multiGet(identifiers, this::findTag);
 	}
 
 	/**
@@ -253,9 +622,21 @@ public class SmeagolClient {
 	 *         server.
 	 */
 	public Collection<Resource> getResources() {
-		String resourceJsonArray = resourceWr.accept(MediaType.APPLICATION_JSON).get(String.class);
+		return getListing(resourceWr, Resource::deserializeCollection);
+	}
 
-		return Resource.deserializeCollection(resourceJsonArray);
+	/**
+	 * Retrieve all <code>Resource</code>s defined in server, deserializing
+	 * them one at a time while the server response is read.
+	 * <p>
+	 * The returned stream holds a connection to the server until it is
+	 * closed.
+	 * 
+	 * @return a stream of all the resources defined in the server.
+	 * @see #streamTags()
+	 */
+	public Stream<Resource> streamResources() {
+		return Resource.deserializeStream(openJsonArray(resourceWr));
 	}
 
 	/**
@@ -268,15 +649,51 @@ public class SmeagolClient {
 	 *             if there is no resource with such identifier.
 	 */
 	public Resource getResource(Long id) {
-		ClientResponse response = resourceWr.path(id.toString()).accept(MediaType.APPLICATION_JSON)
-				.get(ClientResponse.class);
+		Resource result = findResource(id);
 
-		if (response.getClientResponseStatus().equals(Status.NOT_FOUND)) {
-			throw new NotFoundException("resource not found");
+		if (result == null) {
+			throw notFound("resource not found");
 		}
+		return result;
+	}
 
-		String json = response.getEntity(String.class);
-		return Resource.deserialize(json);
+	/**
+	 * Retrieve the resource with the provided identifier, without throwing
+	 * an exception when it does not exist.
+	 * 
+	 * @param id
+	 *            the resource identifier
+	 * @return the resource, or an empty <code>Optional</code> if there is no
+	 *         resource with such identifier.
+	 */
+	public Optional<Resource> tryGetResource(Long id) {
+		return Optional.ofNullable(findResource(id));
+	}
+
+	/**
+	 * Retrieve the resource with the provided identifier, returning
+	 * <code>null</code> when it does not exist.
+	 */
+	private Resource findResource(Long id) {
+		String json = getEntity(EntityCache.Type.RESOURCE, id, resourceWr.path(id.toString()));
+
+		return json == null ? null : Resource.deserialize(json);
+	}
+
+	/**
+	 * Retrieve the resources whose identifiers are in the provided list.
+	 * <p>
+	 * Up to {@link #getMultiGetConcurrency()} resources are requested
+	 * concurrently.
+	 * 
+	 * @param identifiers
+	 *            a list of resource identifiers
+	 * @return a collection containing the resources defined in the server, in
+	 *         the same order as their identifiers in {@code identifiers}.
+	 *         Identifiers with no matching resource are skipped.
+	 */
+	public Collection<Resource> getResources(Collection<Long> identifiers) {
+		return multiGet(identifiers, this::findResource);
 	}
 
 	/**
@@ -301,17 +718,19 @@ public class SmeagolClient {
 		f.add(RESOURCE_INFO_ATTR_NAME, info);
 
 		ClientResponse response = resourceWr.accept(MediaType.APPLICATION_JSON).post(ClientResponse.class, f);
+		response.close();
+		invalidateListing(resourceWr);
 
 		switch (response.getClientResponseStatus()) {
 		case CONFLICT:
-			throw new AlreadyExistsException("resource already exists");
+			throw alreadyExists("resource already exists");
 		case BAD_REQUEST:
 			throw new IllegalArgumentException();
 		case CREATED:
 			String id;
 			try {
 				id = getUriLastFragment(new URI(response.getHeaders().getFirst("Location"), false));
-				return Long.parseLong(id);
+				return created(EntityCache.Type.RESOURCE, Long.parseLong(id));
 			} catch (URIException e) {
 				// this will never happen: the server returns well-formed URIs
 			}
@@ -322,6 +741,271 @@ public class SmeagolClient {
 		return null;
 	}
 
+	/**
+	 * Fetch the entity for every distinct identifier, running at most
+	 * <code>multiGetConcurrency</code> requests at a time. Each worker takes
+	 * the next pending identifier until none is left; the calling thread acts
+	 * as one of the workers.
+	 */
+	private <K, V> List<V> multiGet(Collection<K> identifiers, Function<K, V> fetch) {
+		final List<K> ids = new ArrayList<K>(new LinkedHashSet<K>(identifiers));
+		final Object[] found = new Object[ids.size()];
+		final AtomicInteger next = new AtomicInteger();
+
+		Runnable worker = () -> {
+			for (int i = next.getAndIncrement(); i < found.length; i = next.getAndIncrement()) {
+				found[i] = fetch.apply(ids.get(i));
+			}
+		};
+
+		int workers = Math.min(multiGetConcurrency, ids.size());
+		List<Future<?>> pending = new ArrayList<Future<?>>(workers);
+		ExecutorService executor = workers > 1 ? getMultiGetExecutor() : null;
+
+		try {
+			for (int i = 1; i < workers; i++) {
+				pending.add(executor.submit(worker));
+			}
+			worker.run();
+			for (Future<?> f : pending) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SmeagolClientException("interrupted while waiting for server responses");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new SmeagolClientException(String.valueOf(e.getCause()));
+		} finally {
+			// stop the remaining workers as soon as possible on failure
+			next.set(found.length);
+		}
+
+		List<V> result = new ArrayList<V>(found.length);
+		for (Object o : found) {
+			if (o != null) {
+				@SuppressWarnings("unchecked")
+				V v = (V) o;
+				result.add(v);
+			}
+		}
+		return result;
+	}
+
+	private synchronized ExecutorService getMultiGetExecutor() {
+		if (multiGetExecutor == null) {
+			multiGetExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "smeagol-client-multi-get-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return multiGetExecutor;
+	}
+
+	/**
+	 * GET an entity, going through the cache if there is one. Concurrent
+	 * requests of the same entity share a single GET.
+	 * 
+	 * @return the JSON of the entity, or null if the server does not have it.
+	 */
+	private String getEntity(EntityCache.Type type, Object id, WebResource wr) {
+		EntityCache cache = this.cache;
+		if (cache != null) {
+			String json = cache.get(type, id);
+			if (json == EntityCache.ABSENT) {
+				return null;
+			}
+			if (json != null) {
+				return json;
+			}
+		}
+
+		return reads.execute(wr.getURI().toString(), () -> {
+			long stamp = cache == null ? 0 : cache.stamp();
+			ClientResponse response = wr.accept(MediaType.APPLICATION_JSON).get(ClientResponse.class);
+
+			if (response.getClientResponseStatus().equals(Status.NOT_FOUND)) {
+				response.close();
+				if (cache != null) {
+					cache.putAbsent(type, id, stamp);
+				}
+				return null;
+			}
+
+			String json = response.getEntity(String.class);
+			if (cache != null && response.getClientResponseStatus().equals(Status.OK)) {
+				cache.put(type, id, json, stamp);
+			}
+			return json;
+		});
+	}
+
+	/**
+	 * GET the tags applied to a resource or an event. Concurrent requests of
+	 * the same tags share a single GET.
+	 * 
+	 * @return the JSON array of the tags.
+	 * @throws NotFoundException
+	 *             with {@code notFoundMessage}, if the server answers 404.
+	 */
+	private String getTagsOf(WebResource wr, String notFoundMessage) {
+		return reads.execute(wr.getURI().toString(), () -> {
+			ClientResponse response = wr.accept(MediaType.APPLICATION_JSON).get(ClientResponse.class);
+
+			switch (response.getClientResponseStatus()) {
+			case OK:
+				return response.getEntity(String.class);
+			case NOT_FOUND:
+				response.close();
+				throw notFound(notFoundMessage);
+			default:
+				response.close();
+				throw new SmeagolClientException("unexpected server status: " + response.getClientResponseStatus());
+			}
+		});
+	}
+
+	/**
+	 * GET a listing, revalidating the previous one if conditional GETs are
+	 * enabled.
+	 */
+	private <T> Collection<T> getListing(WebResource wr, Function<String, Collection<T>> parse) {
+		if (!conditionalGets) {
+			return parse.apply(wr.accept(MediaType.APPLICATION_JSON).get(String.class));
+		}
+
+		String key = wr.getURI().toString();
+		@SuppressWarnings("unchecked")
+		Listing<T> previous = (Listing<T>) listings.get(key);
+		WebResource.Builder request = wr.accept(MediaType.APPLICATION_JSON);
+		if (previous != null) {
+			if (previous.etag != null) {
+				request = request.header(HttpHeaders.IF_NONE_MATCH, previous.etag);
+			}
+			if (previous.lastModified != null) {
+				request = request.header(HttpHeaders.IF_MODIFIED_SINCE, previous.lastModified);
+			}
+		}
+		ClientResponse response = request.get(ClientResponse.class);
+
+		Status status = response.getClientResponseStatus();
+		if (status == Status.NOT_MODIFIED && previous != null) {
+			response.close();
+			return previous.result;
+		}
+		if (status != Status.OK) {
+			response.close();
+			throw new SmeagolClientException("unexpected server status: " + status);
+		}
+
+		Collection<T> result = Collections.unmodifiableCollection(parse.apply(response.getEntity(String.class)));
+		String etag = response.getHeaders().getFirst(HttpHeaders.ETAG);
+		String lastModified = response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED);
+		if (etag != null || lastModified != null) {
+			listings.put(key, new Listing<T>(etag, lastModified, result));
+		} else {
+			listings.remove(key);
+		}
+		return result;
+	}
+
+	/**
+	 * Forget the listing of a type of entity, which has been changed by a
+	 * write, so that it is not revalidated against a stale validator (e.g. a
+	 * {@code Last-Modified} date within the same second).
+	 */
+	private void invalidateListing(WebResource wr) {
+		if (!listings.isEmpty()) {
+			listings.remove(wr.getURI().toString());
+		}
+		// reads started before the write must not be shared after it
+		reads.forgetAll();
+	}
+
+	/**
+	 * Remove an entity changed by a write from the cache, if there is one,
+	 * and forget the listing of its type.
+	 */
+	private void invalidate(EntityCache.Type type, Object id) {
+		EntityCache cache = this.cache;
+		if (cache != null) {
+			cache.invalidate(type, id);
+		}
+		switch (type) {
+		case TAG:
+			invalidateListing(tagWr);
+			break;
+		case RESOURCE:
+			invalidateListing(resourceWr);
+			break;
+		case EVENT:
+			invalidateListing(eventWr);
+			break;
+		case BOOKING:
+			invalidateListing(bookingWr);
+			break;
+		}
+	}
+
+	/**
+	 * Forget that a new entity did not exist, if it was looked up before.
+	 * 
+	 * @return {@code id}
+	 */
+	private Long created(EntityCache.Type type, Long id) {
+		invalidate(type, id);
+		return id;
+	}
+
+	/**
+	 * Remove all the entities of a type from the cache, if there is one.
+	 */
+	private void invalidateAll(EntityCache.Type type) {
+		EntityCache cache = this.cache;
+		if (cache != null) {
+			cache.invalidateAll(type);
+		}
+		if (type == EntityCache.Type.BOOKING) {
+			invalidateListing(bookingWr);
+		}
+	}
+
+	/**
+	 * The validators and parsed result of a listing.
+	 */
+	private static final class Listing<T> {
+		final String etag;
+		final String lastModified;
+		final Collection<T> result;
+
+		Listing(String etag, String lastModified, Collection<T> result) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * GET a JSON array, returning a reader over the response body. Closing the
+	 * reader releases the connection.
+	 */
+	private Reader openJsonArray(WebResource wr) {
+		ClientResponse response = wr.accept(MediaType.APPLICATION_JSON).get(ClientResponse.class);
+
+		if (!response.getClientResponseStatus().equals(Status.OK)) {
+			response.close();
+			throw new SmeagolClientException("unexpected server status: " + response.getClientResponseStatus());
+		}
+		return new InputStreamReader(response.getEntityInputStream(), StandardCharsets.UTF_8);
+	}
+
 	private String getUriLastFragment(URI locationHeader) {
 		String[] fragments = StringUtils.split(locationHeader.toString(), "/");
 		return fragments[fragments.length - 1];
@@ -338,9 +1022,13 @@ public class SmeagolClient {
 	public void deleteResource(Long id) {
 		ClientResponse response = resourceWr.path(id.toString()).accept(MediaType.APPLICATION_JSON)
 				.delete(ClientResponse.class);
+		response.close();
+		invalidate(EntityCache.Type.RESOURCE, id);
+		// bookings of the resource are deleted with it
+		invalidateAll(EntityCache.Type.BOOKING);
 
 		if (response.getClientResponseStatus().equals(Status.NOT_FOUND)) {
-			throw new NotFoundException("resource not found");
+			throw notFound("resource not found");
 		}
 	}
 
@@ -360,12 +1048,14 @@ public class SmeagolClient {
 
 		ClientResponse response = resourceWr.path("" + id).accept(MediaType.APPLICATION_JSON)
 				.put(ClientResponse.class, f);
+		response.close();
+		invalidate(EntityCache.Type.RESOURCE, id);
 
 		switch (response.getClientResponseStatus()) {
 		case NOT_FOUND:
-			throw new NotFoundException("resource not found");
+			throw notFound("resource not found");
 		case CONFLICT:
-			throw new AlreadyExistsException("resource already exists");
+			throw alreadyExists("resource already exists");
 		case BAD_REQUEST:
 			throw new IllegalArgumentException();
 		case OK:
@@ -382,9 +1072,21 @@ public class SmeagolClient {
 	 *         the Sméagol server.
 	 */
 	public Collection<Event> getEvents() {
-		String eventJsonArray = eventWr.accept(MediaType.APPLICATION_JSON).get(String.class);
+		return getListing(eventWr, Event::deserializeCollection);
+	}
 
-		return Event.deserializeCollection(eventJsonArray);
+	/**
+	 * Retrieve all {@code Event}s in server, deserializing them one at a time
+	 * while the server response is read.
+	 * <p>
+	 * The returned stream holds a connection to the server until it is
+	 * closed.
+	 * 
+	 * @return a stream of all the events defined in the Sméagol server.
+	 * @see #streamTags()
+	 */
+	public Stream<Event> streamEvents() {
+		return Event.deserializeStream(openJsonArray(eventWr));
 	}
 
 	/**
@@ -397,17 +1099,51 @@ public class SmeagolClient {
 	 *             if there is no {@code Event} in the server with such id
 	 */
 	public Event getEvent(long id) {
-		ClientResponse response = eventWr.path(String.valueOf(id)).accept(MediaType.APPLICATION_JSON)
-				.get(ClientResponse.class);
+		Event result = findEvent(id);
 
-		if (response.getClientResponseStatus().equals(Status.NOT_FOUND)) {
-			throw new NotFoundException("event not found");
+		if (result == null) {
+			throw notFound("event not found");
 		}
+		return result;
+	}
 
-		String json = response.getEntity(String.class);
-		Event result = Event.deserialize(json);
+	/**
+	 * Retrieve an {@code Event} by its id, without throwing an exception when
+	 * it does not exist.
+	 * 
+	 * @param id
+	 *            the identifier of the {@code Event} to retrieve
+	 * @return the {@code Event}, or an empty <code>Optional</code> if there is
+	 *         no {@code Event} in the server with such id
+	 */
+	public Optional<Event> tryGetEvent(long id) {
+		return Optional.ofNullable(findEvent(id));
+	}
 
-		return result;
+	/**
+	 * Retrieve an {@code Event} by its id, returning <code>null</code> when it
+	 * does not exist.
+	 */
+	private Event findEvent(long id) {
+		String json = getEntity(EntityCache.Type.EVENT, id, eventWr.path(String.valueOf(id)));
+
+		return json == null ? null : Event.deserialize(json);
+	}
+
+	/**
+	 * Retrieve the {@code Event}s whose identifiers are in the provided list.
+	 * <p>
+	 * Up to {@link #getMultiGetConcurrency()} events are requested
+	 * concurrently.
+	 * 
+	 * @param identifiers
+	 *            a list of event identifiers
+	 * @return a collection containing the events defined in the server, in the
+	 *         same order as their identifiers in {@code identifiers}.
+	 *         Identifiers with no matching event are skipped.
+	 */
+	public Collection<Event> getEvents(Collection<Long> identifiers) {
+		return multiGet(identifiers, this::findEvent);
 	}
 
 	/**
@@ -436,6 +1172,8 @@ public class SmeagolClient {
 		f.add(EVENT_ENDS_ATTR_NAME, ISODateTimeFormat.dateTimeNoMillis().print(new LocalDateTime(startEnd.getEnd())));
 
 		ClientResponse response = eventWr.accept(MediaType.APPLICATION_JSON).post(ClientResponse.class, f);
+		response.close();
+		invalidateListing(eventWr);
 
 		switch (response.getClientResponseStatus()) {
 		case BAD_REQUEST:
@@ -443,7 +1181,7 @@ public class SmeagolClient {
 		case CREATED:
 			try {
 				URI locationHeader = new URI(response.getHeaders().getFirst("Location"), false);
-				return Long.parseLong(getUriLastFragment(locationHeader));
+				return created(EntityCache.Type.EVENT, Long.parseLong(getUriLastFragment(locationHeader)));
 			} catch (Exception e) {
 				// This will never happen: server always returns well-formed
 				// URIs
@@ -471,10 +1209,12 @@ public class SmeagolClient {
 		f.add(EVENT_ENDS_ATTR_NAME, DateTimeConverter.toSmeagolDateTime(newEvent.getInterval().getEnd()));
 
 		ClientResponse response = eventWr.path("" + id).accept(MediaType.APPLICATION_JSON).put(ClientResponse.class, f);
+		response.close();
+		invalidate(EntityCache.Type.EVENT, id);
 
 		switch (response.getClientResponseStatus()) {
 		case NOT_FOUND:
-			throw new NotFoundException("event not found");
+			throw notFound("event not found");
 		case BAD_REQUEST:
 			throw new IllegalArgumentException();
 		case OK:
@@ -494,9 +1234,233 @@ public class SmeagolClient {
 	 */
 	public void deleteEvent(long id) {
 		ClientResponse response = eventWr.path("" + id).accept(MediaType.APPLICATION_JSON).delete(ClientResponse.class);
+		response.close();
+		invalidate(EntityCache.Type.EVENT, id);
+		// bookings of the event are deleted with it
+		invalidateAll(EntityCache.Type.BOOKING);
 
 		if (response.getClientResponseStatus().equals(Status.NOT_FOUND)) {
-			throw new NotFoundException("event not found");
+			throw notFound("event not found");
+		}
+	}
+
+	/**
+	 * Retrieve all {@code Booking}s in server
+	 * 
+	 * @return a (possibly empty) collection containing all bookings defined in
+	 *         the Sméagol server.
+	 */
+	public Collection<Booking> getBookings() {
+		return getListing(bookingWr, Booking::deserializeCollection);
+	}
+
+	/**
+	 * Retrieve all {@code Booking}s in server, deserializing them one at a
+	 * time while the server response is read.
+	 * <p>
+	 * The returned stream holds a connection to the server until it is
+	 * closed.
+	 * 
+	 * @return a stream of all the bookings defined in the Sméagol server.
+	 * @see #streamTags()
+	 */
+	public Stream<Booking> streamBookings() {
+		return Booking.deserializeStream(openJsonArray(bookingWr));
+	}
+
+	/**
+	 * Retrieve the {@code Booking}s of a resource, of an event, or with some
+	 * occurrence within a window of time.
+	 * 
+	 * @see #streamBookings(Long, Long, Interval)
+	 */
+	public Collection<Booking> getBookings(Long idResource, Long idEvent, Interval window) {
+		List<Booking> result = new ArrayList<Booking>();
+		try (Stream<Booking> bookings = streamBookings(idResource, idEvent, window)) {
+			bookings.forEach(result::add);
+		}
+		return result;
+	}
+
+	/**
+	 * Retrieve the {@code Booking}s of a resource, of an event, or with some
+	 * occurrence within a window of time, deserializing them one at a time
+	 * while the server response is read.
+	 * <p>
+	 * The filters are sent to the server as query parameters, so that only
+	 * the matching bookings are transferred. Servers which ignore some of them
+	 * return more bookings than requested, and those are discarded as they
+	 * are read.
+	 * <p>
+	 * The returned stream holds a connection to the server until it is
+	 * closed.
+	 * 
+	 * @param idResource
+	 *            the resource of the bookings, or null for any resource.
+	 * @param idEvent
+	 *            the event of the bookings, or null for any event.
+	 * @param window
+	 *            a window of time which the bookings must have some
+	 *            occurrence within, or null for any time.
+	 * @return a stream of the matching bookings.
+	 */
+	public Stream<Booking> streamBookings(Long idResource, Long idEvent, Interval window) {
+		WebResource wr = bookingWr;
+		if (idResource != null) {
+			wr = wr.queryParam(BOOKING_ID_RESOURCE_ATTR_NAME, idResource.toString());
+		}
+		if (idEvent != null) {
+			wr = wr.queryParam(BOOKING_ID_EVENT_ATTR_NAME, idEvent.toString());
+		}
+		if (window != null) {
+			wr = wr.queryParam(BOOKING_FROM_ATTR_NAME, DateTimeConverter.toSmeagolDateTime(window.getStart()))
+					.queryParam(BOOKING_TO_ATTR_NAME, DateTimeConverter.toSmeagolDateTime(window.getEnd()));
+		}
+
+		Stream<Booking> result = Booking.deserializeStream(openJsonArray(wr));
+		if (idResource != null) {
+			result = result.filter(b -> idResource.equals(b.getIdResource()));
+		}
+		if (idEvent != null) {
+			result = result.filter(b -> idEvent.equals(b.getIdEvent()));
+		}
+		if (window != null) {
+			result = result.filter(b -> occursWithin(b, window));
+		}
+		return result;
+	}
+
+	/**
+	 * @return <code>true</code> if {@code booking} has some occurrence which
+	 *         overlaps {@code window}.
+	 */
+	private static boolean occursWithin(Booking booking, Interval window) {
+		return booking.iterateOccurrences(window).hasNext();
+	}
+
+	/**
+	 * Retrieve a {@code Booking} by its id
+	 * 
+	 * @param id
+	 *            the identifier of the {@code Booking} to retrieve
+	 * @return the requested {@code Booking}, if exists
+	 * @throws NotFoundException
+	 *             if there is no {@code Booking} in the server with such id
+	 */
+	public Booking getBooking(long id) {
+		Booking result = findBooking(id);
+
+		if (result == null) {
+			throw notFound("booking not found");
+		}
+		return result;
+	}
+
+	/**
+	 * Retrieve a {@code Booking} by its id, without throwing an exception when
+	 * it does not exist.
+	 * 
+	 * @param id
+	 *            the identifier of the {@code Booking} to retrieve
+	 * @return the {@code Booking}, or an empty <code>Optional</code> if there
+	 *         is no {@code Booking} in the server with such id
+	 */
+	public Optional<Booking> tryGetBooking(long id) {
+		return Optional.ofNullable(findBooking(id));
+	}
+
+	/**
+	 * Retrieve a {@code Booking} by its id, returning <code>null</code> when it
+	 * does not exist.
+	 */
+	private Booking findBooking(long id) {
+		String json = getEntity(EntityCache.Type.BOOKING, id, bookingWr.path(String.valueOf(id)));
+
+		return json == null ? null : Booking.deserialize(json);
+	}
+
+	/**
+	 * Creates a new {@code Booking} in the server
+	 * 
+	 * @param booking
+	 *            the booking to create. Its id, if any, is ignored. Required.
+	 * @return the identifier of the new booking.
+	 * @throws IllegalArgumentException
+	 *             if the server rejects the booking (e.g. its resource or
+	 *             event do not exist).
+	 */
+	public Long createBooking(Booking booking) {
+		if (booking == null) {
+			throw new IllegalArgumentException("booking cannot be null");
+		}
+		ClientResponse response = bookingWr.type(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+				.post(ClientResponse.class, booking.serialize());
+		response.close();
+		invalidateListing(bookingWr);
+
+		switch (response.getClientResponseStatus()) {
+		case BAD_REQUEST:
+			throw new IllegalArgumentException();
+		case CREATED:
+			try {
+				URI locationHeader = new URI(response.getHeaders().getFirst("Location"), false);
+				return created(EntityCache.Type.BOOKING, Long.parseLong(getUriLastFragment(locationHeader)));
+			} catch (Exception e) {
+				throw new SmeagolClientException("invalid location of created booking: "
+						+ response.getHeaders().getFirst("Location"), e);
+			}
+		default:
+			throw new SmeagolClientException("unexpected server status: " + response.getClientResponseStatus());
+		}
+	}
+
+	/**
+	 * Replace Booking identified by {@code id} with a new Booking.
+	 * 
+	 * @param id
+	 *            the identifier of the Booking to update.
+	 * @param newBooking
+	 *            the Booking which will be used to update the old Booking.
+	 * 
+	 * @throws NotFoundException
+	 */
+	public void updateBooking(long id, Booking newBooking) {
+		if (newBooking == null) {
+			throw new IllegalArgumentException("newBooking cannot be null");
+		}
+		ClientResponse response = bookingWr.path("" + id).type(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON).put(ClientResponse.class, newBooking.serialize());
+		response.close();
+		invalidate(EntityCache.Type.BOOKING, id);
+
+		switch (response.getClientResponseStatus()) {
+		case NOT_FOUND:
+			throw notFound("booking not found");
+		case BAD_REQUEST:
+			throw new IllegalArgumentException();
+		case OK:
+			break;
+		default:
+			throw new SmeagolClientException("unexpected server status: " + response.getClientResponseStatus());
+		}
+	}
+
+	/**
+	 * Delete a Booking from the server.
+	 * 
+	 * @param id
+	 *            the identifier of the booking to delete.
+	 * @throws NotFoundException
+	 *             if there is no booking with the provided id in the server.
+	 */
+	public void deleteBooking(long id) {
+		ClientResponse response = bookingWr.path("" + id).accept(MediaType.APPLICATION_JSON)
+				.delete(ClientResponse.class);
+		response.close();
+		invalidate(EntityCache.Type.BOOKING, id);
+
+		if (response.getClientResponseStatus().equals(Status.NOT_FOUND)) {
+			throw notFound("booking not found");
 		}
 	}
 
@@ -519,13 +1483,15 @@ public class SmeagolClient {
 	public void tagResource(String tagId, long resourceId) {
 		ClientResponse response = resourceWr.path(String.valueOf(resourceId)).path("tag").path(tagId)
 				.accept(MediaType.APPLICATION_JSON).put(ClientResponse.class);
+		response.close();
+		invalidate(EntityCache.Type.RESOURCE, resourceId);
 
 		switch (response.getClientResponseStatus()) {
 		case OK:
 			// done
 			break;
 		case NOT_FOUND:
-			throw new NotFoundException("tag or resource not found");
+			throw notFound("tag or resource not found");
 		default:
 			throw new SmeagolClientException("unexpected server status: " + response.getClientResponseStatus());
 		}
@@ -545,19 +1511,9 @@ public class SmeagolClient {
 	 *             if there is no resource with such id in the Sméagol server.
 	 */
 	public Collection<Tag> getResourceTags(long resourceId) {
-		ClientResponse response = tagWr.queryParam("resource", String.valueOf(resourceId))
-				.accept(MediaType.APPLICATION_JSON).get(ClientResponse.class);
-
-		switch (response.getClientResponseStatus()) {
-		case NOT_FOUND:
-			throw new NotFoundException("resource not found");
-		case OK:
-			String json = response.getEntity(String.class);
-			return Tag.deserializeCollection(json);
-		default:
-			throw new SmeagolClientException("unexpected server status: " + response.getClientResponseStatus());
-		}
+		String json = getTagsOf(tagWr.queryParam("resource", String.valueOf(resourceId)), "resource not found");
 
+		return Tag.deserializeCollection(json);
 	}
 
 	/**
@@ -578,13 +1534,15 @@ public class SmeagolClient {
 	public void untagResource(String tagId, long resourceId) {
 		ClientResponse response = resourceWr.path("" + resourceId).path("tag").path(tagId)
 				.accept(MediaType.APPLICATION_JSON).delete(ClientResponse.class);
+		response.close();
+		invalidate(EntityCache.Type.RESOURCE, resourceId);
 
 		switch (response.getClientResponseStatus()) {
 		case OK:
 			// done
 			break;
 		case NOT_FOUND:
-			throw new NotFoundException("resource or tag not found; or tag is not currently applied to the resource");
+			throw notFound("resource or tag not found; or tag is not currently applied to the resource");
 		default:
 			throw new SmeagolClientException("unexpected server status: " + response.getClientResponseStatus());
 		}
@@ -607,13 +1565,15 @@ public class SmeagolClient {
 	public void tagEvent(String tagId, long eventId) {
 		ClientResponse response = eventWr.path("" + eventId).path("tag").path(tagId).accept(MediaType.APPLICATION_JSON)
 				.put(ClientResponse.class);
+		response.close();
+		invalidate(EntityCache.Type.EVENT, eventId);
 
 		switch (response.getClientResponseStatus()) {
 		case OK:
 			// done
 			break;
 		case NOT_FOUND:
-			throw new NotFoundException("tag or event not found");
+			throw notFound("tag or event not found");
 		default:
 			throw new SmeagolClientException("unexpected server status: " + response.getClientResponseStatus());
 		}
@@ -630,18 +1590,9 @@ public class SmeagolClient {
 	 *             identifier.
 	 */
 	public Collection<Tag> getEventTags(long eventId) {
-		ClientResponse response = tagWr.queryParam("event", String.valueOf(eventId)).accept(MediaType.APPLICATION_JSON)
-				.get(ClientResponse.class);
+		String json = getTagsOf(tagWr.queryParam("event", String.valueOf(eventId)), "event not found");
 
-		switch (response.getClientResponseStatus()) {
-		case OK:
-			String json = response.getEntity(String.class);
-			return Tag.deserializeCollection(json);
-		case NOT_FOUND:
-			throw new NotFoundException("event not found");
-		default:
-			throw new SmeagolClientException("unexpected server status: " + response.getClientResponseStatus());
-		}
+		return Tag.deserializeCollection(json);
 	}
 
 	/**
@@ -659,13 +1610,15 @@ public class SmeagolClient {
 	public void untagEvent(String tagId, long eventId) {
 		ClientResponse response = eventWr.path("" + eventId).path("tag").path(tagId).accept(MediaType.APPLICATION_JSON)
 				.delete(ClientResponse.class);
+		response.close();
+		invalidate(EntityCache.Type.EVENT, eventId);
 
 		switch (response.getClientResponseStatus()) {
 		case OK:
 			// done
 			break;
 		case NOT_FOUND:
-			throw new NotFoundException("event or tag not found; or tag is not currently applied to the event");
+			throw notFound("event or tag not found; or tag is not currently applied to the event");
 		default:
 			throw new SmeagolClientException("unexpected server status: " + response.getClientResponseStatus());
 		}
@@ -0,0 +1,508 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.log4j.Logger;
+
+import edu.upc.cpl.smeagol.client.exception.NotFoundException;
+import edu.upc.cpl.smeagol.client.exception.SmeagolClientException;
+
+/**
+ * Write-behind queue of tag and untag operations on resources and events.
+ * <p>
+ * Operations are queued and return at once with a future; they are sent to
+ * the server by a {@link SmeagolClient} in batches, when there are
+ * {@link TaggingBatcherConfig#getMaxBatchSize()} of them pending, every
+ * {@link TaggingBatcherConfig#getMaxDelay()} milliseconds, or on
+ * {@link #flush()}. The requests of a batch are sent concurrently, up to
+ * {@link TaggingBatcherConfig#getParallelism()} at a time, and batches are
+ * sent one after the other, so operations on the same pair of tag and
+ * resource (or event) are applied in order.
+ * <p>
+ * Pending operations on the same pair are collapsed into the last one, which
+ * determines whether the pair ends up tagged, and their futures complete
+ * with its outcome. Tagging is idempotent, so the last one is sent alone,
+ * with an exception: an untag after a tag is sent as an untag which succeeds
+ * if the pair was not tagged, since it might not have been before the tag.
+ * The server answers 404 both to that and to a tag or resource (or event)
+ * which does not exist, so the tag and the resource (or event) are then
+ * looked up, and the untag fails with {@link NotFoundException} unless both
+ * exist.
+ * <p>
+ * For example:
+ *
+ * <pre>
+ * TaggingBatcher batcher = new TaggingBatcher(client);
+ * for (Long id : resources) {
+ * 	batcher.tagResource(&quot;imported&quot;, id);
+ * }
+ * FlushReport report = batcher.flush().get();
+ * if (!report.isSuccessful()) {
+ * 	logger.warn(&quot;some resources were not tagged: &quot; + report.getFailures().keySet());
+ * }
+ * batcher.close();
+ * </pre>
+ *
+ */
+public class TaggingBatcher {
+
+	private static final Logger logger = Logger.getLogger(TaggingBatcher.class);
+
+	/**
+	 * The kinds of entity which can be tagged.
+	 */
+	public enum Target {
+		RESOURCE, EVENT;
+	}
+
+	private final SmeagolClient client;
+	private final int maxBatchSize;
+
+	/* Sends batches one at a time; also runs the timed flushes */
+	private final ScheduledExecutorService flusher;
+
+	/* Sends the requests of a batch */
+	private final ExecutorService workers;
+
+	private final Object lock = new Object();
+	private Map<Key, Pending> pending = new LinkedHashMap<Key, Pending>();
+	private int queued;
+	private boolean flushScheduled;
+	private boolean closed;
+
+	/**
+	 * Create a batcher with the default settings.
+	 *
+	 * @param client
+	 *            the client which sends the operations. Not null.
+	 */
+	public TaggingBatcher(SmeagolClient client) {
+		this(client, new TaggingBatcherConfig());
+	}
+
+	/**
+	 * Create a batcher.
+	 *
+	 * @param client
+	 *            the client which sends the operations. Not null.
+	 * @param config
+	 *            the batcher settings. Not null.
+	 */
+	public TaggingBatcher(SmeagolClient client, TaggingBatcherConfig config) {
+		if (client == null) {
+			throw new IllegalArgumentException("client cannot be null");
+		}
+		if (config == null) {
+			throw new IllegalArgumentException("config cannot be null");
+		}
+		this.client = client;
+		this.maxBatchSize = config.getMaxBatchSize();
+		this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "smeagol-tagging-batcher-flusher");
+			t.setDaemon(true);
+			return t;
+		});
+		AtomicInteger count = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(config.getParallelism(), r -> {
+			Thread t = new Thread(r, "smeagol-tagging-batcher-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		if (config.getMaxDelay() > 0) {
+			flusher.scheduleWithFixedDelay(this::flushPending, config.getMaxDelay(), config.getMaxDelay(),
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Queue a {@link SmeagolClient#tagResource(String, long)}.
+	 *
+	 * @return a future completed when the operation has been applied, or
+	 *         with the exception of the request.
+	 */
+	public CompletableFuture<Void> tagResource(String tagId, long resourceId) {
+		return queue(Target.RESOURCE, resourceId, tagId, true);
+	}
+
+	/**
+	 * Queue a {@link SmeagolClient#untagResource(String, long)}.
+	 *
+	 * @see #tagResource(String, long)
+	 */
+	public CompletableFuture<Void> untagResource(String tagId, long resourceId) {
+		return queue(Target.RESOURCE, resourceId, tagId, false);
+	}
+
+	/**
+	 * Queue a {@link SmeagolClient#tagEvent(String, long)}.
+	 *
+	 * @see #tagResource(String, long)
+	 */
+	public CompletableFuture<Void> tagEvent(String tagId, long eventId) {
+		return queue(Target.EVENT, eventId, tagId, true);
+	}
+
+	/**
+	 * Queue a {@link SmeagolClient#untagEvent(String, long)}.
+	 *
+	 * @see #tagResource(String, long)
+	 */
+	public CompletableFuture<Void> untagEvent(String tagId, long eventId) {
+		return queue(Target.EVENT, eventId, tagId, false);
+	}
+
+	/**
+	 * @return the number of operations waiting to be sent, after collapsing.
+	 */
+	public int getPendingCount() {
+		synchronized (lock) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * Send the pending operations now, after any batch being sent.
+	 *
+	 * @return a future completed, when all the pending operations have been
+	 *         sent, with a report of their outcome.
+	 * @throws IllegalStateException
+	 *             if the batcher is closed.
+	 */
+	public CompletableFuture<FlushReport> flush() {
+		synchronized (lock) {
+			if (closed) {
+				throw new IllegalStateException("batcher is closed");
+			}
+			// submitted under the lock: close() shuts down the flusher only
+			// after it has been marked closed
+			return CompletableFuture.supplyAsync(this::sendPending, flusher);
+		}
+	}
+
+	/**
+	 * Send the pending operations, wait for them, and release the threads of
+	 * this batcher. No more operations can be queued. The client is not
+	 * closed.
+	 */
+	public void close() {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		Future<FlushReport> last = flusher.submit(this::sendPending);
+		try {
+			last.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.error("unexpected error flushing tagging operations", e.getCause());
+		}
+		flusher.shutdown();
+		workers.shutdown();
+	}
+
+	private CompletableFuture<Void> queue(Target target, long targetId, String tagId, boolean tag) {
+		if (tagId == null) {
+			throw new IllegalArgumentException("tagId cannot be null");
+		}
+		CompletableFuture<Void> result = new CompletableFuture<Void>();
+		synchronized (lock) {
+			if (closed) {
+				throw new IllegalStateException("batcher is closed");
+			}
+			Key key = new Key(target, targetId, tagId);
+			Pending p = pending.get(key);
+			if (p == null) {
+				p = new Pending(tag);
+				pending.put(key, p);
+			} else if (p.tag != tag) {
+				p.ignoreNotFound = !tag;
+				p.tag = tag;
+			}
+			p.futures.add(result);
+			queued++;
+			if (!flushScheduled && pending.size() >= maxBatchSize) {
+				// scheduled under the lock, as in flush()
+				flushScheduled = true;
+				flusher.execute(this::flushPending);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Send the pending operations from a timed or size-triggered flush.
+	 */
+	private void flushPending() {
+		try {
+			sendPending();
+		} catch (RuntimeException e) {
+			// keep the timed flushes going
+			logger.error("unexpected error flushing tagging operations", e);
+		}
+	}
+
+	/**
+	 * Send the pending operations and wait for them. Runs on the flusher
+	 * thread only.
+	 */
+	private FlushReport sendPending() {
+		Map<Key, Pending> batch;
+		int operations;
+		synchronized (lock) {
+			batch = pending;
+			operations = queued;
+			pending = new LinkedHashMap<Key, Pending>();
+			queued = 0;
+			flushScheduled = false;
+		}
+		if (batch.isEmpty()) {
+			return new FlushReport(0, 0, Collections.<Operation, RuntimeException> emptyMap());
+		}
+
+		List<Operation> sent = new ArrayList<Operation>(batch.size());
+		RuntimeException[] errors = new RuntimeException[batch.size()];
+		List<Future<?>> requests = new ArrayList<Future<?>>(batch.size());
+		for (Map.Entry<Key, Pending> e : batch.entrySet()) {
+			Key key = e.getKey();
+			Pending p = e.getValue();
+			int i = sent.size();
+			sent.add(new Operation(key.target, key.targetId, key.tagId, p.tag));
+			try {
+				requests.add(workers.submit(() -> {
+					try {
+						send(key, p);
+						for (CompletableFuture<Void> f : p.futures) {
+							f.complete(null);
+						}
+					} catch (Throwable ex) {
+						// the futures are completed whatever fails, even with an Error
+						fail(p, ex, errors, i);
+					}
+				}));
+			} catch (Throwable ex) {
+				fail(p, ex, errors, i);
+			}
+		}
+		for (Future<?> request : requests) {
+			try {
+				request.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SmeagolClientException("interrupted while flushing tagging operations");
+			} catch (ExecutionException e) {
+				// errors are recorded by the requests themselves
+			}
+		}
+
+		Map<Operation, RuntimeException> failures = new LinkedHashMap<Operation, RuntimeException>();
+		for (int i = 0; i < errors.length; i++) {
+			if (errors[i] != null) {
+				failures.put(sent.get(i), errors[i]);
+			}
+		}
+		FlushReport report = new FlushReport(operations, batch.size(), failures);
+		if (logger.isDebugEnabled()) {
+			logger.debug("flushed tagging operations: " + report);
+		}
+		return report;
+	}
+
+	/**
+	 * Complete the futures of a failed operation, and record its error for
+	 * the report.
+	 */
+	private static void fail(Pending p, Throwable ex, RuntimeException[] errors, int i) {
+		errors[i] = ex instanceof RuntimeException ? (RuntimeException) ex : new SmeagolClientException(
+				"unexpected error sending tagging operation", ex);
+		for (CompletableFuture<Void> f : p.futures) {
+			f.completeExceptionally(ex);
+		}
+	}
+
+	private void send(Key key, Pending p) {
+		try {
+			if (key.target == Target.RESOURCE) {
+				if (p.tag) {
+					client.tagResource(key.tagId, key.targetId);
+				} else {
+					client.untagResource(key.tagId, key.targetId);
+				}
+			} else {
+				if (p.tag) {
+					client.tagEvent(key.tagId, key.targetId);
+				} else {
+					client.untagEvent(key.tagId, key.targetId);
+				}
+			}
+		} catch (NotFoundException e) {
+			if (!p.ignoreNotFound || !exists(key)) {
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if both the tag and the resource (or event)
+	 *         of {@code key} exist, so that a 404 to untagging them means
+	 *         that the tag was not applied.
+	 */
+	private boolean exists(Key key) {
+		if (!client.tryGetTag(key.tagId).isPresent()) {
+			return false;
+		}
+		if (key.target == Target.RESOURCE) {
+			return client.tryGetResource(key.targetId).isPresent();
+		} else {
+			return client.tryGetEvent(key.targetId).isPresent();
+		}
+	}
+
+	/**
+	 * A tag or untag operation, as sent to the server.
+	 */
+	public static final class Operation {
+		private final Target target;
+		private final long targetId;
+		private final String tagId;
+		private final boolean tag;
+
+		Operation(Target target, long targetId, String tagId, boolean tag) {
+			this.target = target;
+			this.targetId = targetId;
+			this.tagId = tagId;
+			this.tag = tag;
+		}
+
+		public Target getTarget() {
+			return target;
+		}
+
+		/**
+		 * @return the identifier of the resource or event.
+		 */
+		public long getTargetId() {
+			return targetId;
+		}
+
+		public String getTagId() {
+			return tagId;
+		}
+
+		/**
+		 * @return <code>true</code> for a tag, <code>false</code> for an
+		 *         untag.
+		 */
+		public boolean isTag() {
+			return tag;
+		}
+
+		@Override
+		public String toString() {
+			return (tag ? "tag " : "untag ") + target.name().toLowerCase() + " " + targetId + " with " + tagId;
+		}
+	}
+
+	/**
+	 * The outcome of a flush.
+	 */
+	public static final class FlushReport {
+		private final int operations;
+		private final int requests;
+		private final Map<Operation, RuntimeException> failures;
+
+		FlushReport(int operations, int requests, Map<Operation, RuntimeException> failures) {
+			this.operations = operations;
+			this.requests = requests;
+			this.failures = Collections.unmodifiableMap(failures);
+		}
+
+		/**
+		 * @return the number of operations queued since the previous flush.
+		 */
+		public int getOperations() {
+			return operations;
+		}
+
+		/**
+		 * @return the number of requests sent, once operations on the same
+		 *         pair have been collapsed.
+		 */
+		public int getRequests() {
+			return requests;
+		}
+
+		/**
+		 * @return the requests which failed, in the order they were queued,
+		 *         with their exceptions.
+		 */
+		public Map<Operation, RuntimeException> getFailures() {
+			return failures;
+		}
+
+		/**
+		 * @return <code>true</code> if no request failed.
+		 */
+		public boolean isSuccessful() {
+			return failures.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringBuilder(this).append("operations", operations).append("requests", requests)
+					.append("failures", failures.size()).toString();
+		}
+	}
+
+	private static final class Key {
+		final Target target;
+		final long targetId;
+		final String tagId;
+
+		Key(Target target, long targetId, String tagId) {
+			this.target = target;
+			this.targetId = targetId;
+			this.tagId = tagId;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return target == other.target && targetId == other.targetId && tagId.equals(other.tagId);
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * target.hashCode() + Long.hashCode(targetId)) * 31 + tagId.hashCode();
+		}
+	}
+
+	private static final class Pending {
+		boolean tag;
+		boolean ignoreNotFound;
+		final List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(1);
+
+		Pending(boolean tag) {
+			this.tag = tag;
+		}
+	}
+
+}
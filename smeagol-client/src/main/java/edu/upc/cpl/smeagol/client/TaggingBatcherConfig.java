@@ -0,0 +1,104 @@
+package edu.upc.cpl.smeagol.client;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Settings for a {@link TaggingBatcher}.
+ * <p>
+ * For example, to send pending operations when there are 1000 of them or
+ * every 200 milliseconds, with up to 16 concurrent requests:
+ *
+ * <pre>
+ * TaggingBatcherConfig config = new TaggingBatcherConfig();
+ * config.setMaxBatchSize(1000);
+ * config.setMaxDelay(200);
+ * config.setParallelism(16);
+ *
+ * TaggingBatcher batcher = new TaggingBatcher(client, config);
+ * </pre>
+ *
+ */
+public class TaggingBatcherConfig {
+
+	/**
+	 * Default number of pending operations which triggers a flush = {@value}
+	 */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+	/**
+	 * Default time (in milliseconds) between flushes = {@value}
+	 */
+	public static final long DEFAULT_MAX_DELAY = 100;
+
+	/**
+	 * Default maximum number of concurrent requests of a flush = {@value}
+	 */
+	public static final int DEFAULT_PARALLELISM = 8;
+
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+	private long maxDelay = DEFAULT_MAX_DELAY;
+	private int parallelism = DEFAULT_PARALLELISM;
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * Set the number of pending operations (after collapsing) which triggers
+	 * a flush.
+	 *
+	 * @param maxBatchSize
+	 *            a value greater than zero.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxBatchSize} is not positive.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be greater than zero");
+		}
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * Set how often pending operations are flushed, however few they are.
+	 *
+	 * @param maxDelay
+	 *            time in milliseconds. Zero or a negative value disables
+	 *            timed flushes: operations are only sent when the batch is
+	 *            full or on {@link TaggingBatcher#flush()}.
+	 */
+	public void setMaxDelay(long maxDelay) {
+		this.maxDelay = maxDelay;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Set the maximum number of requests sent concurrently by a flush. When
+	 * using a pooled transport, the value should not exceed the number of
+	 * connections allowed by the pool.
+	 *
+	 * @param parallelism
+	 *            a value greater than zero.
+	 * @throws IllegalArgumentException
+	 *             if {@code parallelism} is not positive.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be greater than zero");
+		}
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("maxBatchSize", maxBatchSize).append("maxDelay", maxDelay)
+				.append("parallelism", parallelism).toString();
+	}
+}
@@ -1,28 +1,35 @@
 package edu.upc.cpl.smeagol.client.domain;
 
+import java.io.Reader;
 import java.lang.reflect.Type;
 import java.util.Collection;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import org.apache.commons.lang.builder.CompareToBuilder;
-import org.apache.commons.lang.builder.EqualsBuilder;
-import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.commons.lang.builder.ToStringBuilder;
-import org.apache.commons.validator.GenericValidator;
+import org.joda.time.Chronology;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeUtils;
 import org.joda.time.Duration;
 import org.joda.time.Interval;
+import org.joda.time.chrono.ISOChronology;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 
 import edu.upc.cpl.smeagol.client.ical.DayOfWeek;
+import edu.upc.cpl.smeagol.client.ical.DayOfWeekSet;
+import edu.upc.cpl.smeagol.client.ical.ExpansionBudget;
 import edu.upc.cpl.smeagol.client.ical.Frequency;
-import edu.upc.cpl.smeagol.json.DateTimeConverter;
-import edu.upc.cpl.smeagol.json.DayOfWeekListConverter;
-import edu.upc.cpl.smeagol.json.ShortSetConverter;
+import edu.upc.cpl.smeagol.client.ical.OccurrenceIterator;
+import edu.upc.cpl.smeagol.client.ical.RecurrenceRule;
+import edu.upc.cpl.smeagol.client.ical.ShortBitSet;
+import edu.upc.cpl.smeagol.json.JsonArrayIterator;
+import edu.upc.cpl.smeagol.json.SmeagolGson;
 
 /**
  * Sméagol bookings.
@@ -44,27 +51,11 @@ import edu.upc.cpl.smeagol.json.ShortSetConverter;
  */
 public class Booking implements Comparable<Booking> {
 
-	private static transient Gson gson = new Gson();
+	private static transient final Gson gson = SmeagolGson.getInstance();
 
 	private static transient final Duration MAX_SPAN_DURATION_FOR_DAILY_RECURRENCE = Duration.standardHours(24);
 	private static transient final Duration MAX_SPAN_DURATION_FOR_WEEKLY_RECURRENCE = Duration.standardDays(7);
 
-	/*
-	 * provide custom serializers/deserializers for several attributes
-	 */
-	static {
-		GsonBuilder gb = new GsonBuilder();
-
-		Type setOfDayOfWeekType = new TypeToken<Set<DayOfWeek>>() {
-		}.getType();
-		Type setOfShortType = new TypeToken<Set<Short>>() {
-		}.getType();
-		gb.registerTypeAdapter(setOfDayOfWeekType, new DayOfWeekListConverter());
-		gb.registerTypeAdapter(setOfShortType, new ShortSetConverter());
-		gb.registerTypeAdapter(DateTime.class, new DateTimeConverter());
-		gson = gb.create();
-	}
-
 	/**
 	 * The booking id
 	 */
@@ -80,21 +71,30 @@ public class Booking implements Comparable<Booking> {
 	 */
 	private Long id_event;
 
+	/*
+	 * Instants are kept as epoch milliseconds and the (shared) chronology of
+	 * each one, so bookings hold no Joda-Time objects of their own. A null
+	 * chronology for until means the booking has no until.
+	 */
+
 	/**
 	 * Default dtstart is "now"
 	 */
-	private DateTime dtstart = new DateTime();
+	private long dtstart = DateTimeUtils.currentTimeMillis();
+	private Chronology dtstartChronology = ISOChronology.getInstance();
 
 	/**
 	 * Default dtend is "dtstart + 1 hour"
 	 */
-	private DateTime dtend = dtstart.plusHours(1);
+	private long dtend = dtstart + DateTimeConstants.MILLIS_PER_HOUR;
+	private Chronology dtendChronology = dtstartChronology;
 	private Frequency frequency;
 	private Short interval = 1; // default repeat: "every 1"
-	private DateTime until;
-	private Set<DayOfWeek> by_day;
-	private Set<Short> by_day_month; // valid values: [-1 .. -31, 1 .. 31]
-	private Set<Short> by_month; // valid values: [1 .. 12]
+	private long until;
+	private Chronology untilChronology;
+	private DayOfWeekSet by_day;
+	private ShortBitSet by_day_month; // valid values: [-1 .. -31, 1 .. 31]
+	private ShortBitSet by_month; // valid values: [1 .. 12]
 
 	/**
 	 * Constructor for simple bookings (those which happen on a single time
@@ -426,6 +426,49 @@ public class Booking implements Comparable<Booking> {
 		return b;
 	}
 
+	/**
+	 * This method is used internally by the Sméagol client and should not be
+	 * used directly in your programs.
+	 * <p>
+	 * Create a booking as received from the server. Unlike the setters, no
+	 * argument is validated or adjusted, so the booking is kept as it was
+	 * sent: <code>until</code> may be before <code>dtStart</code>, the interval
+	 * may be lower than 1, and the sets of days of the month and months may
+	 * hold values out of range (see {@link ShortBitSet#addUnchecked(int)}).
+	 * The sets are used by the booking, not copied. Null arguments keep the
+	 * defaults of a new booking.
+	 * 
+	 * @return a new booking
+	 */
+	public static Booking fromServer(Long id, Long idResource, Long idEvent, DateTime dtStart, DateTime dtEnd,
+			Frequency frequency, Short interval, DateTime until, DayOfWeekSet byDay, ShortBitSet byDayOfMonth,
+			ShortBitSet byMonth) {
+		Booking b = new Booking();
+		b.id = id;
+		b.id_resource = idResource;
+		b.id_event = idEvent;
+		if (dtStart != null) {
+			b.dtstart = dtStart.getMillis();
+			b.dtstartChronology = dtStart.getChronology();
+		}
+		if (dtEnd != null) {
+			b.dtend = dtEnd.getMillis();
+			b.dtendChronology = dtEnd.getChronology();
+		}
+		b.frequency = frequency;
+		if (interval != null) {
+			b.interval = interval;
+		}
+		if (until != null) {
+			b.until = until.getMillis();
+			b.untilChronology = until.getChronology();
+		}
+		b.by_day = byDay;
+		b.by_day_month = byDayOfMonth;
+		b.by_month = byMonth;
+		return b;
+	}
+
 	public Long getId() {
 		return this.id;
 	}
@@ -450,7 +493,15 @@ public class Booking implements Comparable<Booking> {
 		this.id_event = id;
 	}
 
-	public Set<DayOfWeek> getByDay() {
+	/**
+	 * Get the days of the week which are affected by the recurrence.
+	 * <p>
+	 * The returned set is backed by the booking: changes to it are reflected
+	 * on the booking.
+	 * 
+	 * @return the days of the week, or <code>null</code> if never set.
+	 */
+	public DayOfWeekSet getByDay() {
 		return by_day;
 	}
 
@@ -461,10 +512,18 @@ public class Booking implements Comparable<Booking> {
 	 *            a list of {@link DayOfWeek} values
 	 */
 	public void setByDay(Set<DayOfWeek> byDay) {
-		this.by_day = byDay == null ? new TreeSet<DayOfWeek>() : byDay;
+		this.by_day = byDay == null ? new DayOfWeekSet() : new DayOfWeekSet(byDay);
 	}
 
-	public Set<Short> getByDayOfMonth() {
+	/**
+	 * Get the days of the month which are affected by the recurrence.
+	 * <p>
+	 * The returned set is backed by the booking: changes to it are reflected
+	 * on the booking.
+	 * 
+	 * @return the days of the month, or <code>null</code> if never set.
+	 */
+	public ShortBitSet getByDayOfMonth() {
 		return by_day_month;
 	}
 
@@ -481,20 +540,22 @@ public class Booking implements Comparable<Booking> {
 	 *             if byDayOfMonth contains any illegal value
 	 */
 	public void setByDayOfMonth(Set<Short> byDayOfMonth) {
-		if (byDayOfMonth == null) {
-			this.by_day_month = new TreeSet<Short>();
-		} else {
-			for (Short d : byDayOfMonth) {
-				if (d == null || (!GenericValidator.isInRange(d, -31, -1) && !GenericValidator.isInRange(d, 1, 31))) {
-					throw new IllegalArgumentException(
-							"illegal day of month value: only values between ranges [-31 .. -1] or [1 .. 31] are valid");
-				}
-			}
-			this.by_day_month = byDayOfMonth;
+		ShortBitSet days = ShortBitSet.forMonthDays();
+		if (byDayOfMonth != null) {
+			days.addAll(byDayOfMonth);
 		}
+		this.by_day_month = days;
 	}
 
-	public Set<Short> getByMonth() {
+	/**
+	 * Get the months affected by the recurrence.
+	 * <p>
+	 * The returned set is backed by the booking: changes to it are reflected
+	 * on the booking.
+	 * 
+	 * @return the months, or <code>null</code> if never set.
+	 */
+	public ShortBitSet getByMonth() {
 		return by_month;
 	}
 
@@ -503,34 +564,73 @@ public class Booking implements Comparable<Booking> {
 	 * 
 	 * @param byMonth
 	 *            set of integer values in the range [1 .. 12]
+	 * @throws IllegalArgumentException
+	 *             if byMonth contains any illegal value
 	 */
 	public void setByMonth(Set<Short> byMonth) {
-		if (byMonth == null) {
-			this.by_month = new TreeSet<Short>();
-		} else {
-			for (Short m : byMonth) {
-				if (m == null || (!GenericValidator.isInRange(m, 1, 12))) {
-					throw new IllegalArgumentException("illegal month: only values between [1 .. 12] are valid");
-				}
-			}
-			this.by_month = byMonth;
+		ShortBitSet months = ShortBitSet.forMonths();
+		if (byMonth != null) {
+			months.addAll(byMonth);
 		}
+		this.by_month = months;
 	}
 
+	/**
+	 * @return the start of the booking. A new {@code DateTime} is created on
+	 *         each call; use {@link #getDtStartMillis()} to avoid it.
+	 */
 	public DateTime getDtStart() {
+		return new DateTime(dtstart, dtstartChronology);
+	}
+
+	/**
+	 * @return the start of the booking, in milliseconds since the epoch.
+	 */
+	public long getDtStartMillis() {
 		return dtstart;
 	}
 
+	/**
+	 * @return the chronology (and time zone) of the start of the booking, in
+	 *         which its recurrence is computed.
+	 */
+	public Chronology getChronology() {
+		return dtstartChronology;
+	}
+
 	public void setDtStart(DateTime dtStart) {
-		this.dtstart = (dtStart == null) ? new DateTime() : dtStart;
+		if (dtStart == null) {
+			this.dtstart = DateTimeUtils.currentTimeMillis();
+			this.dtstartChronology = ISOChronology.getInstance();
+		} else {
+			this.dtstart = dtStart.getMillis();
+			this.dtstartChronology = dtStart.getChronology();
+		}
 	}
 
+	/**
+	 * @return the end of the booking. A new {@code DateTime} is created on
+	 *         each call; use {@link #getDtEndMillis()} to avoid it.
+	 */
 	public DateTime getDtEnd() {
+		return new DateTime(dtend, dtendChronology);
+	}
+
+	/**
+	 * @return the end of the booking, in milliseconds since the epoch.
+	 */
+	public long getDtEndMillis() {
 		return dtend;
 	}
 
 	public void setDtEnd(DateTime dtEnd) {
-		this.dtend = (dtEnd == null) ? getDtStart().plusHours(1) : dtEnd;
+		if (dtEnd == null) {
+			this.dtend = dtstart + DateTimeConstants.MILLIS_PER_HOUR;
+			this.dtendChronology = dtstartChronology;
+		} else {
+			this.dtend = dtEnd.getMillis();
+			this.dtendChronology = dtEnd.getChronology();
+		}
 	}
 
 	public Frequency getFrequency() {
@@ -583,8 +683,21 @@ public class Booking implements Comparable<Booking> {
 		}
 	}
 
+	/**
+	 * @return the end of the recurrence, or <code>null</code> if it repeats
+	 *         forever. A new {@code DateTime} is created on each call; use
+	 *         {@link #getUntilMillis()} to avoid it.
+	 */
 	public DateTime getUntil() {
-		return until;
+		return untilChronology == null ? null : new DateTime(until, untilChronology);
+	}
+
+	/**
+	 * @return the end of the recurrence, in milliseconds since the epoch, or
+	 *         {@link Long#MAX_VALUE} if it repeats forever.
+	 */
+	public long getUntilMillis() {
+		return untilChronology == null ? Long.MAX_VALUE : until;
 	}
 
 	/**
@@ -599,10 +712,166 @@ public class Booking implements Comparable<Booking> {
 	 *            the <code>DateTime</code> where the recurrence ends.
 	 */
 	public void setUntil(DateTime until) {
-		if (until != null && until.isBefore(getDtStart())) {
+		if (until != null && until.getMillis() < dtstart) {
 			throw new IllegalArgumentException("until cannot be before dtStart");
 		}
-		this.until = until;
+		this.until = until == null ? 0 : until.getMillis();
+		this.untilChronology = until == null ? null : until.getChronology();
+	}
+
+	/**
+	 * Iterate over the occurrences of this booking within a window of time.
+	 * Occurrences are computed lazily, one at a time, in chronological order.
+	 * 
+	 * @param window
+	 *            the window of time of interest. Not null.
+	 * @return an iterator over the time spans of the occurrences which overlap
+	 *         {@code window}.
+	 * @see OccurrenceIterator
+	 */
+	public OccurrenceIterator iterateOccurrences(Interval window) {
+		return new OccurrenceIterator(this, window);
+	}
+
+	/**
+	 * Iterate over the occurrences of this booking within a window of time,
+	 * bounded by a budget.
+	 * 
+	 * @param window
+	 *            the window of time of interest. Not null.
+	 * @param budget
+	 *            the limits of the expansion. Not null.
+	 * @return an iterator over the time spans of the occurrences which overlap
+	 *         {@code window}, which fails (or ends early, if the budget
+	 *         truncates) when a limit is reached.
+	 * @see ExpansionBudget
+	 */
+	public OccurrenceIterator iterateOccurrences(Interval window, ExpansionBudget budget) {
+		if (budget == null) {
+			throw new IllegalArgumentException("budget cannot be null");
+		}
+		return new OccurrenceIterator(this, window, budget.newMeter());
+	}
+
+	/**
+	 * Estimate the number of occurrences of this booking within a window of
+	 * time, in constant time.
+	 * 
+	 * @param window
+	 *            the window of time of interest. Not null.
+	 * @return an upper bound of the number of occurrences which overlap
+	 *         {@code window}.
+	 * @see RecurrenceRule#estimateOccurrences(Booking, long, long)
+	 */
+	public long estimateOccurrences(Interval window) {
+		if (window == null) {
+			throw new IllegalArgumentException("window cannot be null");
+		}
+		return RecurrenceRule.estimateOccurrences(this, window.getStartMillis(), window.getEndMillis());
+	}
+
+	/**
+	 * Find the first occurrence of this booking which starts after an instant.
+	 * The occurrence is computed from the recurrence rule, without iterating
+	 * over the occurrences before it.
+	 * 
+	 * @param instant
+	 *            the instant. Not null.
+	 * @return the time span of the first occurrence starting strictly after
+	 *         {@code instant}, or null if there is none.
+	 * @see RecurrenceRule#nextOccurrenceAfter(long)
+	 */
+	public Interval nextOccurrenceAfter(DateTime instant) {
+		if (instant == null) {
+			throw new IllegalArgumentException("instant cannot be null");
+		}
+		return RecurrenceRule.of(this).nextOccurrenceAfter(instant.getMillis());
+	}
+
+	/**
+	 * Find the last occurrence of this booking which starts before an instant.
+	 * The occurrence is computed from the recurrence rule, without iterating
+	 * over the occurrences before it.
+	 * 
+	 * @param instant
+	 *            the instant. Not null.
+	 * @return the time span of the last occurrence starting strictly before
+	 *         {@code instant}, or null if there is none.
+	 * @see RecurrenceRule#previousOccurrenceBefore(long)
+	 */
+	public Interval previousOccurrenceBefore(DateTime instant) {
+		if (instant == null) {
+			throw new IllegalArgumentException("instant cannot be null");
+		}
+		return RecurrenceRule.of(this).previousOccurrenceBefore(instant.getMillis());
+	}
+
+	/**
+	 * Count the occurrences of this booking within a window of time, without
+	 * expanding them.
+	 * 
+	 * @param window
+	 *            the window of time of interest. Not null.
+	 * @return the number of occurrences which overlap {@code window}, as
+	 *         returned by {@link #iterateOccurrences(Interval)}.
+	 * @see RecurrenceRule#countOccurrences(long, long)
+	 */
+	public long countOccurrences(Interval window) {
+		if (window == null) {
+			throw new IllegalArgumentException("window cannot be null");
+		}
+		return RecurrenceRule.of(this).countOccurrences(window.getStartMillis(), window.getEndMillis());
+	}
+
+	/**
+	 * Find the first time, within a window, when this booking and another one
+	 * both have an occurrence. Periodic rules (DAILY and WEEKLY without month
+	 * limits) are compared without expanding them, so long windows are as
+	 * cheap as short ones.
+	 * 
+	 * @param other
+	 *            the other booking. Not null.
+	 * @param window
+	 *            the window of time of interest. Not null.
+	 * @return the span of time when the first overlapping occurrences of both
+	 *         bookings meet (clipped to {@code window}), or null if they do
+	 *         not overlap.
+	 * @see RecurrenceRule#firstOverlap(RecurrenceRule, long, long)
+	 */
+	public Interval firstOverlapWith(Booking other, Interval window) {
+		if (other == null) {
+			throw new IllegalArgumentException("other cannot be null");
+		}
+		if (window == null) {
+			throw new IllegalArgumentException("window cannot be null");
+		}
+		return RecurrenceRule.of(this).firstOverlap(RecurrenceRule.of(other), window.getStartMillis(),
+				window.getEndMillis());
+	}
+
+	/**
+	 * @return <code>true</code> if this booking and {@code other} have
+	 *         overlapping occurrences within {@code window}.
+	 * @see #firstOverlapWith(Booking, Interval)
+	 */
+	public boolean overlapsWith(Booking other, Interval window) {
+		return firstOverlapWith(other, window) != null;
+	}
+
+	/**
+	 * Stream the occurrences of this booking within a window of time.
+	 * Occurrences are computed lazily, one at a time, in chronological order.
+	 * 
+	 * @param window
+	 *            the window of time of interest. Not null.
+	 * @return a sequential stream of the time spans of the occurrences which
+	 *         overlap {@code window}.
+	 * @see OccurrenceIterator
+	 */
+	public Stream<Interval> streamOccurrences(Interval window) {
+		Spliterator<Interval> spliterator = Spliterators.spliteratorUnknownSize(iterateOccurrences(window),
+				Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+		return StreamSupport.stream(spliterator, false);
 	}
 
 	public String serialize() {
@@ -623,12 +892,24 @@ public class Booking implements Comparable<Booking> {
 		return gson.fromJson(json, collectionType);
 	}
 
+	/**
+	 * Deserialize a JSON array of bookings lazily, one at a time, as it is read.
+	 * 
+	 * @param json
+	 *            a reader providing a JSON array of bookings
+	 * @return a stream of bookings, in array order. Closing the stream closes
+	 *         {@code json}.
+	 */
+	public static Stream<Booking> deserializeStream(Reader json) {
+		return JsonArrayIterator.stream(gson, Booking.class, json);
+	}
+
 	/**
 	 * Defines natural order between bookings.
 	 */
 	public int compareTo(Booking b) {
-		return new CompareToBuilder().appendSuper(this.getDtStart().compareTo(b.getDtStart()))
-				.appendSuper(this.getDtEnd().compareTo(b.getDtEnd())).toComparison();
+		int result = Long.compare(this.dtstart, b.dtstart);
+		return result != 0 ? result : Long.compare(this.dtend, b.dtend);
 	}
 
 	@Override
@@ -649,11 +930,12 @@ public class Booking implements Comparable<Booking> {
 			return false;
 		}
 		Booking other = (Booking) o;
-		return new EqualsBuilder().append(this.getId(), other.getId()).isEquals();
+		return id == null ? other.id == null : id.equals(other.id);
 	}
 
 	@Override
 	public int hashCode() {
-		return new HashCodeBuilder().append(this.getId()).toHashCode();
+		// same as HashCodeBuilder().append(id)
+		return 17 * 37 + (id == null ? 0 : id.hashCode());
 	}
 }
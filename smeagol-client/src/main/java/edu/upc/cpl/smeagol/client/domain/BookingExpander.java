@@ -0,0 +1,316 @@
+package edu.upc.cpl.smeagol.client.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import org.joda.time.Chronology;
+import org.joda.time.Interval;
+
+import edu.upc.cpl.smeagol.client.ical.ExpansionBudget;
+import edu.upc.cpl.smeagol.client.ical.OccurrenceIterator;
+
+/**
+ * Parallel expansion of the occurrences of many bookings.
+ * <p>
+ * Bookings are grouped by {@code id_resource}, and the occurrences of each
+ * group within a window are computed in a {@link ForkJoinPool}: each group is
+ * split in halves until they are small, the bookings of each part are
+ * expanded, and the sorted occurrences of the bookings and of the parts are
+ * merged back pairwise, as in a merge sort. The occurrences of each booking
+ * come out of {@link OccurrenceIterator} sorted already, so the work is
+ * dominated by the expansion itself, which runs on all the workers of the
+ * pool.
+ * <p>
+ * Expansions may be bounded by an {@link ExpansionBudget}, shared by all the
+ * bookings of a call to {@code expand}: when a limit is reached, the
+ * expansion fails with an
+ * {@link edu.upc.cpl.smeagol.client.exception.ExpansionBudgetExceededException}
+ * or, if the budget truncates, returns the occurrences expanded so far (see
+ * {@link ResourceOccurrences#isTruncated()}).
+ *
+ */
+public class BookingExpander {
+
+	/**
+	 * Groups with at most this number of bookings are expanded in a single
+	 * task.
+	 */
+	private static final int THRESHOLD = 32;
+
+	private final ForkJoinPool pool;
+	private ExpansionBudget budget;
+
+	/**
+	 * Create an expander which runs on the common fork-join pool.
+	 */
+	public BookingExpander() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create an expander which runs on a new pool.
+	 *
+	 * @param parallelism
+	 *            the parallelism level of the pool (the number of workers).
+	 *            Positive.
+	 */
+	public BookingExpander(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be positive");
+		}
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Create an expander which runs on a given pool.
+	 *
+	 * @param pool
+	 *            the pool. Not null.
+	 */
+	public BookingExpander(ForkJoinPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("pool cannot be null");
+		}
+		this.pool = pool;
+	}
+
+	/**
+	 * @return the parallelism level of the pool this expander runs on.
+	 */
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	ForkJoinPool getPool() {
+		return pool;
+	}
+
+	public ExpansionBudget getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Set the limits of each expansion.
+	 *
+	 * @param budget
+	 *            the budget, or null for no limits (the default).
+	 */
+	public void setBudget(ExpansionBudget budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Expand the occurrences of all the bookings within a window.
+	 *
+	 * @see #expand(Collection, Collection, Interval)
+	 */
+	public Map<Long, ResourceOccurrences> expand(Collection<Booking> bookings, Interval window) {
+		return expand(bookings, null, window);
+	}
+
+	/**
+	 * Expand the occurrences of the bookings of some resources within a
+	 * window.
+	 *
+	 * @param bookings
+	 *            the bookings, of any resource. Not null.
+	 * @param idResources
+	 *            the resources whose bookings are expanded, or null to expand
+	 *            the bookings of all of them.
+	 * @param window
+	 *            the window of time of interest. Not null.
+	 * @return the occurrences which overlap {@code window} of the bookings of
+	 *         each resource, in the order of {@code idResources} (or of their
+	 *         first booking, if null).
+	 */
+	public Map<Long, ResourceOccurrences> expand(Collection<Booking> bookings, Collection<Long> idResources,
+			Interval window) {
+		if (bookings == null) {
+			throw new IllegalArgumentException("bookings cannot be null");
+		}
+		if (window == null) {
+			throw new IllegalArgumentException("window cannot be null");
+		}
+
+		Map<Long, List<Booking>> byResource = new LinkedHashMap<Long, List<Booking>>();
+		if (idResources != null) {
+			for (Long id : idResources) {
+				byResource.put(id, new ArrayList<Booking>());
+			}
+		}
+		for (Booking b : bookings) {
+			List<Booking> list = byResource.get(b.getIdResource());
+			if (list == null && idResources == null) {
+				list = new ArrayList<Booking>();
+				byResource.put(b.getIdResource(), list);
+			}
+			if (list != null) {
+				list.add(b);
+			}
+		}
+
+		ExpansionBudget.Meter meter = budget == null ? null : budget.newMeter();
+		Map<Long, ForkJoinTask<Run>> tasks = new LinkedHashMap<Long, ForkJoinTask<Run>>();
+		for (Map.Entry<Long, List<Booking>> e : byResource.entrySet()) {
+			List<Booking> group = e.getValue();
+			tasks.put(e.getKey(), pool.submit(new ExpandTask(group.toArray(new Booking[group.size()]), 0,
+					group.size(), window, meter)));
+		}
+		Map<Long, Run> runs = new LinkedHashMap<Long, Run>();
+		for (Map.Entry<Long, ForkJoinTask<Run>> e : tasks.entrySet()) {
+			runs.put(e.getKey(), e.getValue().join());
+		}
+
+		Chronology chronology = window.getChronology();
+		boolean truncated = meter != null && meter.isTruncated();
+		Map<Long, ResourceOccurrences> result = new LinkedHashMap<Long, ResourceOccurrences>();
+		for (Map.Entry<Long, Run> e : runs.entrySet()) {
+			Run run = e.getValue();
+			result.put(e.getKey(), new ResourceOccurrences(e.getKey(), run.trimmedStarts(), run.trimmedEnds(),
+					run.trimmedBookings(), chronology, truncated));
+		}
+		return result;
+	}
+
+	/**
+	 * Sorted occurrences, in arrays which may be longer than needed.
+	 */
+	private static final class Run {
+		long[] starts;
+		long[] ends;
+		Booking[] bookings;
+		int size;
+
+		Run(int capacity) {
+			starts = new long[capacity];
+			ends = new long[capacity];
+			bookings = new Booking[capacity];
+		}
+
+		void add(long start, long end, Booking booking) {
+			if (size == starts.length) {
+				int capacity = Math.max(16, size * 2);
+				starts = Arrays.copyOf(starts, capacity);
+				ends = Arrays.copyOf(ends, capacity);
+				bookings = Arrays.copyOf(bookings, capacity);
+			}
+			starts[size] = start;
+			ends[size] = end;
+			bookings[size] = booking;
+			size++;
+		}
+
+		boolean before(int i, Run other, int j) {
+			return starts[i] < other.starts[j] || (starts[i] == other.starts[j] && ends[i] <= other.ends[j]);
+		}
+
+		long[] trimmedStarts() {
+			return size == starts.length ? starts : Arrays.copyOf(starts, size);
+		}
+
+		long[] trimmedEnds() {
+			return size == ends.length ? ends : Arrays.copyOf(ends, size);
+		}
+
+		Booking[] trimmedBookings() {
+			return size == bookings.length ? bookings : Arrays.copyOf(bookings, size);
+		}
+
+		/**
+		 * Merge the runs in [from, to) pairwise, so that each occurrence is
+		 * copied once per level.
+		 */
+		static Run merge(Run[] runs, int from, int to) {
+			if (to - from == 1) {
+				return runs[from];
+			}
+			int middle = (from + to) >>> 1;
+			return merge(merge(runs, from, middle), merge(runs, middle, to));
+		}
+
+		static Run merge(Run a, Run b) {
+			if (a.size == 0) {
+				return b;
+			}
+			if (b.size == 0) {
+				return a;
+			}
+			Run result = new Run(a.size + b.size);
+			int i = 0;
+			int j = 0;
+			while (i < a.size && j < b.size) {
+				if (a.before(i, b, j)) {
+					result.add(a.starts[i], a.ends[i], a.bookings[i]);
+					i++;
+				} else {
+					result.add(b.starts[j], b.ends[j], b.bookings[j]);
+					j++;
+				}
+			}
+			for (; i < a.size; i++) {
+				result.add(a.starts[i], a.ends[i], a.bookings[i]);
+			}
+			for (; j < b.size; j++) {
+				result.add(b.starts[j], b.ends[j], b.bookings[j]);
+			}
+			return result;
+		}
+	}
+
+	private static final class ExpandTask extends RecursiveTask<Run> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Booking[] bookings;
+		private final int from;
+		private final int to;
+		private final Interval window;
+		private final ExpansionBudget.Meter meter;
+
+		ExpandTask(Booking[] bookings, int from, int to, Interval window, ExpansionBudget.Meter meter) {
+			this.bookings = bookings;
+			this.from = from;
+			this.to = to;
+			this.window = window;
+			this.meter = meter;
+		}
+
+		@Override
+		protected Run compute() {
+			if (to - from <= THRESHOLD) {
+				if (from == to) {
+					return new Run(0);
+				}
+				Run[] runs = new Run[to - from];
+				for (int i = from; i < to; i++) {
+					runs[i - from] = expand(bookings[i]);
+				}
+				return Run.merge(runs, 0, runs.length);
+			}
+			int middle = (from + to) >>> 1;
+			ExpandTask left = new ExpandTask(bookings, from, middle, window, meter);
+			left.fork();
+			Run right = new ExpandTask(bookings, middle, to, window, meter).compute();
+			return Run.merge(left.join(), right);
+		}
+
+		private Run expand(Booking b) {
+			Run run = new Run(0);
+			OccurrenceIterator it = meter == null ? b.iterateOccurrences(window) : new OccurrenceIterator(b, window,
+					meter);
+			while (it.hasNext()) {
+				Interval o = it.next();
+				run.add(o.getStartMillis(), o.getEndMillis(), b);
+			}
+			return run;
+		}
+	}
+
+}
@@ -0,0 +1,360 @@
+package edu.upc.cpl.smeagol.client.domain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.joda.time.Interval;
+
+/**
+ * An index of {@link Booking}s for fast detection of conflicts between
+ * bookings of the same {@link Resource}.
+ * <p>
+ * Bookings are grouped by {@code id_resource}. Within each resource, they are
+ * kept in an interval tree (a treap ordered by start, where every node knows
+ * the latest end of its subtree) over the whole time span of each booking:
+ * from its {@code dtstart} to the end of its last occurrence (which never
+ * comes for recurrences without {@code until}). Queries walk the tree to find
+ * the bookings whose span overlaps the time of interest in
+ * <code>O(log n + k)</code> expected time, and then check the actual
+ * occurrences of those <code>k</code> candidates only.
+ * <p>
+ * The index is updated incrementally with {@link #add(Booking)} and
+ * {@link #remove(Booking)}, in <code>O(log n)</code> expected time. Bookings
+ * must not be changed while in the index: remove them first, and add them
+ * again after the change.
+ * <p>
+ * This class is not thread safe.
+ *
+ */
+public class BookingIndex {
+
+	private static final class Node {
+		final Booking booking;
+		final long start;
+		final long end;
+		final long seq;
+		final int priority;
+		long maxEnd;
+		Node left;
+		Node right;
+
+		Node(Booking booking, long start, long end, long seq, int priority) {
+			this.booking = booking;
+			this.start = start;
+			this.end = end;
+			this.seq = seq;
+			this.priority = priority;
+			this.maxEnd = end;
+		}
+
+		boolean before(long start, long seq) {
+			return this.start < start || (this.start == start && this.seq < seq);
+		}
+
+		void update() {
+			long max = end;
+			if (left != null && left.maxEnd > max) {
+				max = left.maxEnd;
+			}
+			if (right != null && right.maxEnd > max) {
+				max = right.maxEnd;
+			}
+			maxEnd = max;
+		}
+	}
+
+	private final Map<Long, Node> roots = new HashMap<Long, Node>();
+	private final Map<Booking, Node> nodes = new IdentityHashMap<Booking, Node>();
+	private final Random random = new Random();
+	private long seq = 0;
+
+	/**
+	 * Create an empty index.
+	 */
+	public BookingIndex() {
+	}
+
+	/**
+	 * Create an index holding some bookings.
+	 *
+	 * @param bookings
+	 *            the bookings to index. Not null.
+	 */
+	public BookingIndex(Collection<Booking> bookings) {
+		if (bookings == null) {
+			throw new IllegalArgumentException("bookings cannot be null");
+		}
+		for (Booking b : bookings) {
+			add(b);
+		}
+	}
+
+	/**
+	 * @return the number of bookings in the index.
+	 */
+	public int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * @return <code>true</code> if the booking (this very instance) is in the
+	 *         index.
+	 */
+	public boolean contains(Booking booking) {
+		return nodes.containsKey(booking);
+	}
+
+	/**
+	 * Add a booking to the index.
+	 *
+	 * @param booking
+	 *            the booking. Not null.
+	 * @return <code>false</code> if the booking (this very instance) was
+	 *         already in the index.
+	 */
+	public boolean add(Booking booking) {
+		if (booking == null) {
+			throw new IllegalArgumentException("booking cannot be null");
+		}
+		if (nodes.containsKey(booking)) {
+			return false;
+		}
+		long start = booking.getDtStartMillis();
+		Node node = new Node(booking, start, spanEnd(booking, start), seq++, random.nextInt());
+		nodes.put(booking, node);
+		Long resource = booking.getIdResource();
+		roots.put(resource, insert(roots.get(resource), node));
+		return true;
+	}
+
+	/**
+	 * Remove a booking from the index.
+	 *
+	 * @param booking
+	 *            the booking (this very instance) to remove.
+	 * @return <code>false</code> if the booking was not in the index.
+	 */
+	public boolean remove(Booking booking) {
+		Node node = nodes.remove(booking);
+		if (node == null) {
+			return false;
+		}
+		Long resource = booking.getIdResource();
+		Node root = delete(roots.get(resource), node);
+		if (root == null) {
+			roots.remove(resource);
+		} else {
+			roots.put(resource, root);
+		}
+		return true;
+	}
+
+	/**
+	 * Find the bookings of a resource with an occurrence which overlaps a
+	 * window of time.
+	 *
+	 * @param idResource
+	 *            the resource identifier
+	 * @param window
+	 *            the window of time. Not null.
+	 * @return the bookings found, ordered by {@code dtstart}.
+	 */
+	public List<Booking> findOverlapping(Long idResource, Interval window) {
+		if (window == null) {
+			throw new IllegalArgumentException("window cannot be null");
+		}
+		List<Booking> result = new ArrayList<Booking>();
+		for (Booking candidate : findCandidates(idResource, window)) {
+			if (candidate.iterateOccurrences(window).hasNext()) {
+				result.add(candidate);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the bookings of a resource whose span overlaps a window of time,
+	 * without checking their occurrences: for callers which expand them
+	 * anyway.
+	 *
+	 * @return the bookings found, ordered by {@code dtstart}.
+	 */
+	List<Booking> findCandidates(Long idResource, Interval window) {
+		List<Booking> result = new ArrayList<Booking>();
+		collect(roots.get(idResource), window.getStartMillis(), window.getEndMillis(), null, result);
+		return result;
+	}
+
+	/**
+	 * Find the bookings of the same resource as {@code booking} which have an
+	 * occurrence at the same time as an occurrence of {@code booking}, within
+	 * a window of time.
+	 * <p>
+	 * The bookings whose span overlaps that of {@code booking} are found in
+	 * the tree, and each of them is compared with {@code booking} with
+	 * {@link Booking#firstOverlapWith(Booking, Interval)}, without expanding
+	 * their occurrences when possible. {@code booking} itself (either the same
+	 * instance or, if it has an id, a booking with the same id) is never
+	 * reported as a conflict.
+	 *
+	 * @param booking
+	 *            the booking to check. Not null. It does not need to be in the
+	 *            index.
+	 * @param window
+	 *            the window of time where conflicts are looked for. Not null.
+	 * @return the conflicting bookings, ordered by {@code dtstart}.
+	 */
+	public List<Booking> findConflicts(Booking booking, Interval window) {
+		if (booking == null) {
+			throw new IllegalArgumentException("booking cannot be null");
+		}
+		if (window == null) {
+			throw new IllegalArgumentException("window cannot be null");
+		}
+		List<Booking> candidates = new ArrayList<Booking>();
+		long start = booking.getDtStartMillis();
+		long end = spanEnd(booking, start);
+		long from = Math.max(window.getStartMillis(), start);
+		long to = Math.min(window.getEndMillis(), end == Long.MAX_VALUE ? end : end + 1);
+		if (from < to) {
+			collect(roots.get(booking.getIdResource()), from, to, booking, candidates);
+		}
+		List<Booking> result = new ArrayList<Booking>();
+		for (Booking candidate : candidates) {
+			if (booking.overlapsWith(candidate, window)) {
+				result.add(candidate);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return <code>true</code> if any booking of the same resource has an
+	 *         occurrence overlapping an occurrence of {@code booking} within
+	 *         {@code window}.
+	 * @see #findConflicts(Booking, Interval)
+	 */
+	public boolean hasConflicts(Booking booking, Interval window) {
+		return !findConflicts(booking, window).isEmpty();
+	}
+
+	/**
+	 * @return the end of the last occurrence of a booking, or
+	 *         {@code Long.MAX_VALUE} if it repeats forever.
+	 */
+	private static long spanEnd(Booking b, long start) {
+		long duration = Math.max(0, b.getDtEndMillis() - start);
+		if (b.getFrequency() == null) {
+			return start + duration;
+		}
+		long until = b.getUntilMillis();
+		return until == Long.MAX_VALUE ? Long.MAX_VALUE : until + duration;
+	}
+
+	private static boolean isSame(Booking a, Booking b) {
+		return a == b || (a.getId() != null && a.getId().equals(b.getId()));
+	}
+
+	/**
+	 * Add to {@code result} the bookings in the tree whose span overlaps
+	 * [windowStart, windowEnd), except {@code exclude}.
+	 */
+	private static void collect(Node node, long windowStart, long windowEnd, Booking exclude,
+			Collection<Booking> result) {
+		while (node != null && node.maxEnd >= windowStart) {
+			collect(node.left, windowStart, windowEnd, exclude, result);
+			if (node.start >= windowEnd) {
+				// all the bookings to the right start later
+				return;
+			}
+			if (node.end >= windowStart && (exclude == null || !isSame(node.booking, exclude))) {
+				result.add(node.booking);
+			}
+			node = node.right;
+		}
+	}
+
+	private static Node insert(Node root, Node node) {
+		if (root == null) {
+			return node;
+		}
+		if (node.priority > root.priority) {
+			Node[] parts = split(root, node.start, node.seq);
+			node.left = parts[0];
+			node.right = parts[1];
+			node.update();
+			return node;
+		}
+		if (root.before(node.start, node.seq)) {
+			root.right = insert(root.right, node);
+		} else {
+			root.left = insert(root.left, node);
+		}
+		root.update();
+		return root;
+	}
+
+	private static Node delete(Node root, Node node) {
+		if (root == null) {
+			return null;
+		}
+		if (root == node) {
+			return merge(root.left, root.right);
+		}
+		if (root.before(node.start, node.seq)) {
+			root.right = delete(root.right, node);
+		} else {
+			root.left = delete(root.left, node);
+		}
+		root.update();
+		return root;
+	}
+
+	/**
+	 * Split a tree into the nodes before (start, seq) and the rest.
+	 */
+	private static Node[] split(Node root, long start, long seq) {
+		if (root == null) {
+			return new Node[2];
+		}
+		Node[] parts;
+		if (root.before(start, seq)) {
+			parts = split(root.right, start, seq);
+			root.right = parts[0];
+			parts[0] = root;
+		} else {
+			parts = split(root.left, start, seq);
+			root.left = parts[1];
+			parts[1] = root;
+		}
+		root.update();
+		return parts;
+	}
+
+	/**
+	 * Merge two trees, where all the nodes of {@code a} are before those of
+	 * {@code b}.
+	 */
+	private static Node merge(Node a, Node b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		if (a.priority > b.priority) {
+			a.right = merge(a.right, b);
+			a.update();
+			return a;
+		}
+		b.left = merge(a, b.left);
+		b.update();
+		return b;
+	}
+
+}
@@ -0,0 +1,494 @@
+package edu.upc.cpl.smeagol.client.domain;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.joda.time.Chronology;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+
+import edu.upc.cpl.smeagol.client.ical.DayOfWeekSet;
+import edu.upc.cpl.smeagol.client.ical.Frequency;
+import edu.upc.cpl.smeagol.client.ical.OccurrenceIterator;
+import edu.upc.cpl.smeagol.client.ical.RecurrenceRule;
+import edu.upc.cpl.smeagol.client.ical.ShortBitSet;
+
+/**
+ * A read-only, columnar copy of many bookings, for scans over all of them.
+ * <p>
+ * Each attribute of the bookings is held in its own primitive array (a
+ * <em>column</em>), and the i-th booking is the i-th element of every column
+ * (a <em>row</em>). Scans read only the columns they need, sequentially,
+ * instead of following references to scattered objects, so filters and
+ * aggregations over millions of rows are bound by memory bandwidth rather
+ * than by cache misses. Resource identifiers are dictionary encoded: each
+ * row holds the index of its resource in {@link #getIdResources()}.
+ * <p>
+ * Filters return <em>selections</em>: sorted arrays of row numbers, which can
+ * be passed on to other filters and to aggregations (a null selection means
+ * all the rows). For example, the booked minutes per week of some resources
+ * during a quarter:
+ *
+ * <pre>
+ * BookingTable table = BookingTable.fromJson(reader);
+ * Interval quarter = new Interval(monday, monday.plusWeeks(13));
+ * int[] rows = table.whereOverlaps(null, quarter);
+ * Map&lt;Long, long[]&gt; minutes = table.bookedMinutes(rows, quarter, Duration.standardDays(7));
+ * </pre>
+ *
+ * Null identifiers are stored as {@link #NULL_ID}.
+ *
+ */
+public final class BookingTable {
+
+	/**
+	 * Value of null identifiers in the columns = {@value}
+	 */
+	public static final long NULL_ID = Long.MIN_VALUE;
+
+	/**
+	 * Value of the frequency column for simple bookings = {@value}
+	 */
+	public static final byte NO_FREQUENCY = -1;
+
+	private static final Frequency[] FREQUENCIES = Frequency.values();
+	private static final short[] NO_ORDINALS = new short[0];
+
+	private int size;
+	private long[] id;
+	private long[] idEvent;
+	private int[] resource; // index in idResources
+	private long[] start;
+	private long[] end;
+	private long[] until; // Long.MAX_VALUE if none
+	private long[] spanEnd; // end of the last occurrence
+	private byte[] frequency;
+	private short[] interval;
+	private int[] byDay; // weekday mask, bit w-1 for ISO weekday w
+	private short[][] byDayOrdinals; // DayOfWeekSet codes, rarely used
+	private long[] byDayOfMonth; // ShortBitSet bits
+	private long[] byMonth; // ShortBitSet bits
+	private Chronology[] chronology;
+
+	private long[] idResources;
+	private final Map<Long, Integer> resourceIndex = new HashMap<Long, Integer>();
+
+	private BookingTable(int capacity) {
+		id = new long[capacity];
+		idEvent = new long[capacity];
+		resource = new int[capacity];
+		start = new long[capacity];
+		end = new long[capacity];
+		until = new long[capacity];
+		spanEnd = new long[capacity];
+		frequency = new byte[capacity];
+		interval = new short[capacity];
+		byDay = new int[capacity];
+		byDayOrdinals = new short[capacity][];
+		byDayOfMonth = new long[capacity];
+		byMonth = new long[capacity];
+		chronology = new Chronology[capacity];
+		idResources = new long[16];
+	}
+
+	/**
+	 * Copy some bookings into a table, such as the result of
+	 * {@link Booking#deserializeCollection(String)}.
+	 *
+	 * @param bookings
+	 *            the bookings. Not null.
+	 */
+	public static BookingTable of(Collection<Booking> bookings) {
+		if (bookings == null) {
+			throw new IllegalArgumentException("bookings cannot be null");
+		}
+		BookingTable table = new BookingTable(bookings.size());
+		for (Booking b : bookings) {
+			table.add(b);
+		}
+		return table.trim();
+	}
+
+	/**
+	 * Read a JSON array of bookings into a table. Bookings are read one at a
+	 * time (see {@link Booking#deserializeStream(Reader)}), so the objects of
+	 * the whole array are never held in memory at once.
+	 *
+	 * @param json
+	 *            a reader providing a JSON array of bookings. Not null. It is
+	 *            closed when read.
+	 */
+	public static BookingTable fromJson(Reader json) {
+		if (json == null) {
+			throw new IllegalArgumentException("json cannot be null");
+		}
+		BookingTable table = new BookingTable(1024);
+		try (Stream<Booking> stream = Booking.deserializeStream(json)) {
+			for (Iterator<Booking> it = stream.iterator(); it.hasNext();) {
+				table.add(it.next());
+			}
+		}
+		return table.trim();
+	}
+
+	private void add(Booking b) {
+		if (size == id.length) {
+			grow(Math.max(16, size * 2));
+		}
+		int i = size++;
+		id[i] = b.getId() == null ? NULL_ID : b.getId();
+		idEvent[i] = b.getIdEvent() == null ? NULL_ID : b.getIdEvent();
+		resource[i] = indexOf(b.getIdResource() == null ? NULL_ID : b.getIdResource());
+		start[i] = b.getDtStartMillis();
+		end[i] = b.getDtEndMillis();
+		until[i] = b.getUntilMillis();
+		frequency[i] = b.getFrequency() == null ? NO_FREQUENCY : (byte) b.getFrequency().ordinal();
+		interval[i] = b.getInterval() == null ? 1 : b.getInterval();
+		DayOfWeekSet days = b.getByDay();
+		byDay[i] = days == null ? 0 : days.getWeekdayMask();
+		byDayOrdinals[i] = days == null || !days.hasOrdinals() ? NO_ORDINALS : days.getOrdinalCodes();
+		byDayOfMonth[i] = b.getByDayOfMonth() == null ? 0 : b.getByDayOfMonth().getBits();
+		byMonth[i] = b.getByMonth() == null ? 0 : b.getByMonth().getBits();
+		chronology[i] = b.getChronology();
+
+		long duration = Math.max(0, end[i] - start[i]);
+		if (frequency[i] == NO_FREQUENCY) {
+			spanEnd[i] = start[i] + duration;
+		} else {
+			spanEnd[i] = until[i] == Long.MAX_VALUE ? Long.MAX_VALUE : until[i] + duration;
+		}
+	}
+
+	private int indexOf(long idResource) {
+		Integer index = resourceIndex.get(idResource);
+		if (index == null) {
+			index = resourceIndex.size();
+			if (index == idResources.length) {
+				idResources = Arrays.copyOf(idResources, index * 2);
+			}
+			idResources[index] = idResource;
+			resourceIndex.put(idResource, index);
+		}
+		return index;
+	}
+
+	private void grow(int capacity) {
+		id = Arrays.copyOf(id, capacity);
+		idEvent = Arrays.copyOf(idEvent, capacity);
+		resource = Arrays.copyOf(resource, capacity);
+		start = Arrays.copyOf(start, capacity);
+		end = Arrays.copyOf(end, capacity);
+		until = Arrays.copyOf(until, capacity);
+		spanEnd = Arrays.copyOf(spanEnd, capacity);
+		frequency = Arrays.copyOf(frequency, capacity);
+		interval = Arrays.copyOf(interval, capacity);
+		byDay = Arrays.copyOf(byDay, capacity);
+		byDayOrdinals = Arrays.copyOf(byDayOrdinals, capacity);
+		byDayOfMonth = Arrays.copyOf(byDayOfMonth, capacity);
+		byMonth = Arrays.copyOf(byMonth, capacity);
+		chronology = Arrays.copyOf(chronology, capacity);
+	}
+
+	private BookingTable trim() {
+		if (size != id.length) {
+			grow(size);
+		}
+		idResources = Arrays.copyOf(idResources, resourceIndex.size());
+		return this;
+	}
+
+	/**
+	 * @return the number of rows.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the distinct resource identifiers, in order of first
+	 *         appearance. Row {@code i} belongs to resource
+	 *         {@code getIdResources()[getResourceIndex(i)]}.
+	 */
+	public long[] getIdResources() {
+		return idResources.clone();
+	}
+
+	public long getId(int row) {
+		return id[row];
+	}
+
+	public long getIdResource(int row) {
+		return idResources[resource[row]];
+	}
+
+	public int getResourceIndex(int row) {
+		return resource[row];
+	}
+
+	public long getIdEvent(int row) {
+		return idEvent[row];
+	}
+
+	public long getStart(int row) {
+		return start[row];
+	}
+
+	public long getEnd(int row) {
+		return end[row];
+	}
+
+	/**
+	 * @return the end of the recurrence of a row, or {@link Long#MAX_VALUE}
+	 *         if it repeats forever.
+	 */
+	public long getUntil(int row) {
+		return until[row];
+	}
+
+	/**
+	 * @return the ordinal of the frequency of a row, or
+	 *         {@link #NO_FREQUENCY}.
+	 */
+	public byte getFrequency(int row) {
+		return frequency[row];
+	}
+
+	/**
+	 * Rebuild the booking of a row. Its instants are in the chronology of its
+	 * {@code dtstart}.
+	 */
+	public Booking getBooking(int row) {
+		Chronology c = chronology[row];
+		Booking b = new Booking();
+		b.setId(id[row] == NULL_ID ? null : id[row]);
+		b.setIdResource(idResources[resource[row]] == NULL_ID ? null : idResources[resource[row]]);
+		b.setIdEvent(idEvent[row] == NULL_ID ? null : idEvent[row]);
+		b.setDtStart(new DateTime(start[row], c));
+		b.setDtEnd(new DateTime(end[row], c));
+		b.setFrequency(frequency[row] == NO_FREQUENCY ? null : FREQUENCIES[frequency[row]]);
+		b.setInterval(interval[row]);
+		if (until[row] != Long.MAX_VALUE) {
+			b.setUntil(new DateTime(until[row], c));
+		}
+		if (byDay[row] != 0 || byDayOrdinals[row].length > 0) {
+			DayOfWeekSet days = new DayOfWeekSet();
+			for (int w = 1; w <= 7; w++) {
+				if ((byDay[row] & (1 << (w - 1))) != 0) {
+					days.add(0, w);
+				}
+			}
+			for (short code : byDayOrdinals[row]) {
+				days.add(DayOfWeekSet.ordinalOf(code), DayOfWeekSet.weekdayOf(code));
+			}
+			b.setByDay(days);
+		}
+		if (byDayOfMonth[row] != 0) {
+			ShortBitSet monthDays = ShortBitSet.forMonthDays();
+			monthDays.setBits(byDayOfMonth[row]);
+			b.setByDayOfMonth(monthDays);
+		}
+		if (byMonth[row] != 0) {
+			ShortBitSet months = ShortBitSet.forMonths();
+			months.setBits(byMonth[row]);
+			b.setByMonth(months);
+		}
+		return b;
+	}
+
+	/*
+	 * Filters write every candidate row to the output and advance only if it
+	 * matches, so the loops have no data-dependent branches.
+	 */
+
+	/**
+	 * Select the rows of a resource.
+	 *
+	 * @param rows
+	 *            the selection to filter, or null for all the rows.
+	 * @param idResource
+	 *            the resource identifier, or {@link #NULL_ID}.
+	 * @return the selected rows, in order.
+	 */
+	public int[] whereResource(int[] rows, long idResource) {
+		Integer index = resourceIndex.get(idResource);
+		if (index == null) {
+			return new int[0];
+		}
+		int r = index;
+		int n = rows == null ? size : rows.length;
+		int[] result = new int[n];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			int row = rows == null ? i : rows[i];
+			result[count] = row;
+			count += resource[row] == r ? 1 : 0;
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Select the rows with a frequency.
+	 *
+	 * @param rows
+	 *            the selection to filter, or null for all the rows.
+	 * @param f
+	 *            the frequency, or null to select simple bookings.
+	 * @return the selected rows, in order.
+	 */
+	public int[] whereFrequency(int[] rows, Frequency f) {
+		byte value = f == null ? NO_FREQUENCY : (byte) f.ordinal();
+		int n = rows == null ? size : rows.length;
+		int[] result = new int[n];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			int row = rows == null ? i : rows[i];
+			result[count] = row;
+			count += frequency[row] == value ? 1 : 0;
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Select the rows whose span (from {@code dtstart} to the end of their
+	 * last occurrence) overlaps a window. Recurrent bookings selected may
+	 * still have no occurrence within the window.
+	 *
+	 * @param rows
+	 *            the selection to filter, or null for all the rows.
+	 * @param window
+	 *            the window of time of interest. Not null.
+	 * @return the selected rows, in order.
+	 */
+	public int[] whereOverlaps(int[] rows, Interval window) {
+		if (window == null) {
+			throw new IllegalArgumentException("window cannot be null");
+		}
+		long from = window.getStartMillis();
+		long to = window.getEndMillis();
+		int n = rows == null ? size : rows.length;
+		int[] result = new int[n];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			int row = rows == null ? i : rows[i];
+			result[count] = row;
+			boolean overlaps = start[row] < to
+					& (spanEnd[row] > from | (start[row] == spanEnd[row] & start[row] >= from));
+			count += overlaps ? 1 : 0;
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Add up the booked time of each resource within a window, in buckets of
+	 * equal length starting at the start of the window. Occurrences are
+	 * clipped to the window and split at the bucket boundaries; bookings which
+	 * overlap each other are all counted (see {@link OccupancyAnalyzer} for
+	 * the time when resources are busy).
+	 * <p>
+	 * Simple bookings are added up straight from the columns; recurrent ones
+	 * are expanded with an {@link OccurrenceIterator} over a
+	 * {@link RecurrenceRule} compiled from the columns, without rebuilding
+	 * their bookings.
+	 *
+	 * @param rows
+	 *            the rows to add up, or null for all the rows.
+	 * @param window
+	 *            the window of time of interest. Not null.
+	 * @param bucket
+	 *            the length of the buckets. Positive.
+	 * @return for each resource with rows selected, in the order of
+	 *         {@link #getIdResources()}, the whole minutes booked in each
+	 *         bucket. The last bucket may be shorter than the others.
+	 */
+	public Map<Long, long[]> bookedMinutes(int[] rows, Interval window, Duration bucket) {
+		if (window == null) {
+			throw new IllegalArgumentException("window cannot be null");
+		}
+		if (bucket == null || bucket.getMillis() <= 0) {
+			throw new IllegalArgumentException("bucket must be positive");
+		}
+		long from = window.getStartMillis();
+		long to = window.getEndMillis();
+		long length = bucket.getMillis();
+		long buckets = (to - from + length - 1) / length;
+		if (buckets > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("too many buckets");
+		}
+
+		long[][] millis = new long[idResources.length][];
+		int n = rows == null ? size : rows.length;
+		for (int i = 0; i < n; i++) {
+			int row = rows == null ? i : rows[i];
+			long[] acc = millis[resource[row]];
+			if (acc == null) {
+				acc = new long[(int) buckets];
+				millis[resource[row]] = acc;
+			}
+			if (frequency[row] == NO_FREQUENCY) {
+				add(acc, from, to, length, start[row], end[row]);
+			} else if (start[row] < to && spanEnd[row] > from) {
+				OccurrenceIterator it = rule(row).iterateOccurrences(window);
+				while (it.hasNext()) {
+					Interval o = it.next();
+					add(acc, from, to, length, o.getStartMillis(), o.getEndMillis());
+				}
+			}
+		}
+
+		Map<Long, long[]> result = new LinkedHashMap<Long, long[]>();
+		for (int r = 0; r < millis.length; r++) {
+			if (millis[r] != null) {
+				long[] minutes = millis[r];
+				for (int b = 0; b < minutes.length; b++) {
+					minutes[b] /= 60000;
+				}
+				result.put(idResources[r] == NULL_ID ? null : idResources[r], minutes);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Add up the booked time of each resource within a window, week by week.
+	 * Weeks are 7 days long and start at the start of the window (so it should
+	 * start on a Monday, for calendar weeks).
+	 *
+	 * @see #bookedMinutes(int[], Interval, Duration)
+	 */
+	public Map<Long, long[]> bookedMinutesPerWeek(int[] rows, Interval window) {
+		return bookedMinutes(rows, window, Duration.standardDays(7));
+	}
+
+	/**
+	 * Compile the recurrence rule of a row straight from the columns.
+	 */
+	private RecurrenceRule rule(int row) {
+		return RecurrenceRule.of(FREQUENCIES[frequency[row]], interval[row], start[row], end[row], until[row],
+				chronology[row], byDay[row], byDayOrdinals[row], byDayOfMonth[row], byMonth[row]);
+	}
+
+	private static void add(long[] acc, long from, long to, long length, long s, long e) {
+		s = Math.max(s, from);
+		e = Math.min(e, to);
+		while (s < e) {
+			int b = (int) ((s - from) / length);
+			long next = Math.min(e, from + (b + 1) * length);
+			acc[b] += next - s;
+			s = next;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("size", size).append("resources", idResources.length).toString();
+	}
+
+}
@@ -1,24 +1,25 @@
 package edu.upc.cpl.smeagol.client.domain;
 
+import java.io.Reader;
 import java.io.Serializable;
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang.builder.CompareToBuilder;
-import org.apache.commons.lang.builder.EqualsBuilder;
-import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.validator.GenericValidator;
 import org.apache.log4j.Logger;
+import org.joda.time.Chronology;
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 
 import edu.upc.cpl.smeagol.json.DateTimeConverter;
+import edu.upc.cpl.smeagol.json.JsonArrayIterator;
+import edu.upc.cpl.smeagol.json.SmeagolGson;
 
 /**
  * Sméagol events.
@@ -46,17 +47,7 @@ public class Event implements Serializable, Comparable<Event> {
 
 	@SuppressWarnings("unused")
 	private static transient Logger logger = Logger.getLogger(Event.class);
-	private static transient Gson gson = new Gson();
-
-	/**
-	 * provide custom serializers/deserializers for several attributes
-	 */
-	static {
-		GsonBuilder gb = new GsonBuilder();
-
-		gb.registerTypeAdapter(DateTime.class, new DateTimeConverter());
-		gson = gb.create();
-	}
+	private static transient final Gson gson = SmeagolGson.getInstance();
 
 	/**
 	 * Maximum length for event descriptions = {@value}
@@ -71,8 +62,16 @@ public class Event implements Serializable, Comparable<Event> {
 	private Long id;
 	private String description;
 	private String info;
-	private DateTime starts;
-	private DateTime ends;
+
+	/*
+	 * Instants are kept as epoch milliseconds and the (shared) chronology of
+	 * each one, so events hold no Joda-Time objects of their own. A null
+	 * chronology means the event has no such instant.
+	 */
+	private long starts;
+	private Chronology startsChronology;
+	private long ends;
+	private Chronology endsChronology;
 
 	/**
 	 * Check if parameter is a valid event description
@@ -107,6 +106,35 @@ public class Event implements Serializable, Comparable<Event> {
 		setInterval(startEnd);
 	}
 
+	private Event() {
+	}
+
+	/**
+	 * This method is used internally by the Sméagol client and should not be
+	 * used directly in your programs.
+	 * <p>
+	 * Create an event as received from the server. Unlike the constructor, no
+	 * argument is validated, so the event is kept as it was sent: it may have
+	 * a start and no end, or end before it starts.
+	 * 
+	 * @return a new event
+	 */
+	public static Event fromServer(Long id, String description, String info, DateTime starts, DateTime ends) {
+		Event e = new Event();
+		e.id = id;
+		e.description = description;
+		e.info = info;
+		if (starts != null) {
+			e.starts = starts.getMillis();
+			e.startsChronology = starts.getChronology();
+		}
+		if (ends != null) {
+			e.ends = ends.getMillis();
+			e.endsChronology = ends.getChronology();
+		}
+		return e;
+	}
+
 	public Long getId() {
 		return id;
 	}
@@ -154,25 +182,111 @@ public class Event implements Serializable, Comparable<Event> {
 	 */
 	public void setInterval(Interval interval) {
 		if (interval != null) {
-			this.starts = interval.getStart();
-			this.ends = interval.getEnd();
+			this.starts = interval.getStartMillis();
+			this.ends = interval.getEndMillis();
+			this.startsChronology = interval.getChronology();
+			this.endsChronology = startsChronology;
 		} else {
-			this.starts = null;
-			this.ends = null;
+			this.starts = 0;
+			this.ends = 0;
+			this.startsChronology = null;
+			this.endsChronology = null;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the event has an interval (both a start
+	 *         and an end).
+	 */
+	public boolean hasInterval() {
+		return startsChronology != null && endsChronology != null;
+	}
+
+	/**
+	 * Get the start of the event. A new {@code DateTime} is created on each
+	 * call; use {@link #getStartsMillis()} to avoid it.
+	 * 
+	 * @return the start {@code DateTime}, or <code>null</code> if the event
+	 *         has no start.
+	 */
+	public DateTime getStarts() {
+		return startsChronology == null ? null : new DateTime(starts, startsChronology);
+	}
+
+	/**
+	 * Get the end of the event. A new {@code DateTime} is created on each
+	 * call; use {@link #getEndsMillis()} to avoid it.
+	 * 
+	 * @return the end {@code DateTime}, or <code>null</code> if the event has
+	 *         no end.
+	 */
+	public DateTime getEnds() {
+		return endsChronology == null ? null : new DateTime(ends, endsChronology);
+	}
+
+	/**
+	 * @return the start of the event, in milliseconds since the epoch.
+	 * @throws IllegalStateException
+	 *             if the event has no start.
+	 */
+	public long getStartsMillis() {
+		if (startsChronology == null) {
+			throw new IllegalStateException("event has no start");
 		}
+		return starts;
 	}
 
 	/**
-	 * Get the interval at which the event occurs.
+	 * @return the end of the event, in milliseconds since the epoch.
+	 * @throws IllegalStateException
+	 *             if the event has no end.
+	 */
+	public long getEndsMillis() {
+		if (endsChronology == null) {
+			throw new IllegalStateException("event has no end");
+		}
+		return ends;
+	}
+
+	/**
+	 * Get the interval at which the event occurs. A new {@code Interval} is
+	 * created on each call.
 	 * 
-	 * @return the interval
+	 * @return the interval, or <code>null</code> if the event has no
+	 *         interval.
+	 * @throws IllegalArgumentException
+	 *             if the event, as received from the server, ends before it
+	 *             starts.
 	 */
 	public Interval getInterval() {
-		return new Interval(starts.toDateTime(), ends.toDateTime());
+		return hasInterval() ? new Interval(starts, ends, startsChronology) : null;
 	}
 
 	public int compareTo(Event other) {
-		return new CompareToBuilder().append(this.description, other.description).toComparison();
+		if (description == null || other.description == null) {
+			return description == null ? (other.description == null ? 0 : -1) : 1;
+		}
+		return description.compareTo(other.description);
+	}
+
+	/**
+	 * @return the local time of an instant, in whole seconds, as printed by
+	 *         {@link DateTimeConverter#toSmeagolDateTime(DateTime)}.
+	 */
+	private static long localSeconds(long instant, Chronology chronology) {
+		return Math.floorDiv(instant + chronology.getZone().getOffset(instant), 1000L);
+	}
+
+	/**
+	 * @return <code>true</code> if both instants are the same to the second,
+	 *         in the local time of each one (as sent to the Sméagol server), or
+	 *         if neither is set.
+	 */
+	private static boolean sameInstant(long a, Chronology aChronology, long b, Chronology bChronology) {
+		if (aChronology == null || bChronology == null) {
+			return aChronology == bChronology;
+		}
+		return localSeconds(a, aChronology) == localSeconds(b, bChronology);
 	}
 
 	@Override
@@ -188,25 +302,28 @@ public class Event implements Serializable, Comparable<Event> {
 		}
 		Event other = (Event) obj;
 
-		return new EqualsBuilder()
-				.append(this.id, other.id)
-				.append(this.description, other.description)
-				.append(this.info, other.info)
-				.append(DateTimeConverter.toSmeagolDateTime(this.getInterval().getStart()),
-						DateTimeConverter.toSmeagolDateTime(other.getInterval().getStart()))
-				.append(DateTimeConverter.toSmeagolDateTime(this.getInterval().getEnd()),
-						DateTimeConverter.toSmeagolDateTime(other.getInterval().getEnd())).isEquals();
+		return equal(this.id, other.id) && equal(this.description, other.description)
+				&& equal(this.info, other.info)
+				&& sameInstant(starts, startsChronology, other.starts, other.startsChronology)
+				&& sameInstant(ends, endsChronology, other.ends, other.endsChronology);
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
 	}
 
 	@Override
 	public int hashCode() {
-		return new HashCodeBuilder().append(id).append(description).append(info).toHashCode();
+		// same as HashCodeBuilder().append(id).append(description).append(info)
+		int result = 17 * 37 + (id == null ? 0 : id.hashCode());
+		result = result * 37 + (description == null ? 0 : description.hashCode());
+		return result * 37 + (info == null ? 0 : info.hashCode());
 	}
 
 	@Override
 	public String toString() {
 		return new ToStringBuilder(this).append("id", id).append("description", description).append("info", info)
-				.append("interval", getInterval()).toString();
+				.append("starts", getStarts()).append("ends", getEnds()).toString();
 	}
 
 	public String serialize() {
@@ -227,4 +344,16 @@ public class Event implements Serializable, Comparable<Event> {
 		return gson.fromJson(json, collectionType);
 	}
 
+	/**
+	 * Deserialize a JSON array of events lazily, one at a time, as it is read.
+	 * 
+	 * @param json
+	 *            a reader providing a JSON array of events
+	 * @return a stream of events, in array order. Closing the stream closes
+	 *         {@code json}.
+	 */
+	public static Stream<Event> deserializeStream(Reader json) {
+		return JsonArrayIterator.stream(gson, Event.class, json);
+	}
+
 }
@@ -0,0 +1,147 @@
+package edu.upc.cpl.smeagol.client.domain;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+
+import edu.upc.cpl.smeagol.client.ical.OccurrenceIterator;
+
+/**
+ * Finds the times when several {@link Resource}s are free at once.
+ * <p>
+ * The search window is divided in buckets of a given granularity, and the
+ * buckets where each resource is busy (any part of the bucket is covered by
+ * an occurrence of one of its bookings) are marked in a bit set. The bit sets
+ * of all the resources are merged with word-wide operations, and the free
+ * slots are the runs of clear bits long enough for the requested duration.
+ * Only the bookings found by a {@link BookingIndex} to overlap the window are
+ * expanded, and only within the window.
+ * <p>
+ * Slots start on bucket boundaries (counted from the start of the window), do
+ * not overlap each other, and are returned in chronological order.
+ *
+ */
+public class FreeSlotFinder {
+
+	private final BookingIndex index;
+
+	/**
+	 * Create a finder over the bookings in an index. Later changes to the index
+	 * are seen by the finder.
+	 *
+	 * @param index
+	 *            the bookings. Not null.
+	 */
+	public FreeSlotFinder(BookingIndex index) {
+		if (index == null) {
+			throw new IllegalArgumentException("index cannot be null");
+		}
+		this.index = index;
+	}
+
+	/**
+	 * Create a finder over some bookings.
+	 *
+	 * @param bookings
+	 *            the bookings. Not null.
+	 */
+	public FreeSlotFinder(Collection<Booking> bookings) {
+		this(new BookingIndex(bookings));
+	}
+
+	/**
+	 * Find the earliest slots of time when all the given resources are free.
+	 *
+	 * @param idResources
+	 *            the identifiers of the resources. Not null.
+	 * @param window
+	 *            the window of time where slots are looked for. Not null.
+	 * @param duration
+	 *            the length of the slots. Not null, and positive.
+	 * @param granularity
+	 *            the length of the buckets time is divided in: slots start at
+	 *            a multiple of it from the start of the window, and a resource
+	 *            is busy for a whole bucket if it is busy for part of it. Not
+	 *            null, and positive.
+	 * @param maxSlots
+	 *            the maximum number of slots to return. Positive.
+	 * @return the free slots, of length {@code duration}, in chronological
+	 *         order.
+	 */
+	public List<Interval> findFreeSlots(Collection<Long> idResources, Interval window, Duration duration,
+			Duration granularity, int maxSlots) {
+		if (idResources == null) {
+			throw new IllegalArgumentException("idResources cannot be null");
+		}
+		if (window == null) {
+			throw new IllegalArgumentException("window cannot be null");
+		}
+		if (duration == null || duration.getMillis() <= 0) {
+			throw new IllegalArgumentException("duration must be positive");
+		}
+		if (granularity == null || granularity.getMillis() <= 0) {
+			throw new IllegalArgumentException("granularity must be positive");
+		}
+		if (maxSlots < 1) {
+			throw new IllegalArgumentException("maxSlots must be positive");
+		}
+
+		long start = window.getStartMillis();
+		long bucket = granularity.getMillis();
+		long buckets = window.toDurationMillis() / bucket;
+		if (buckets > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("too many buckets in window");
+		}
+		int length = (int) buckets;
+		int slot = (int) Math.min(Integer.MAX_VALUE, (duration.getMillis() + bucket - 1) / bucket);
+
+		BitSet busy = new BitSet(length);
+		for (Long idResource : idResources) {
+			busy.or(busyBuckets(idResource, window, start, bucket, length));
+		}
+
+		List<Interval> result = new ArrayList<Interval>();
+		int from = busy.nextClearBit(0);
+		while (result.size() < maxSlots && from <= length - slot) {
+			int next = busy.nextSetBit(from);
+			if (next < 0) {
+				next = length;
+			}
+			if (next - from >= slot) {
+				long slotStart = start + from * bucket;
+				result.add(new Interval(slotStart, slotStart + duration.getMillis(), window.getChronology()));
+				from += slot;
+			} else {
+				from = busy.nextClearBit(next);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the buckets of the window where a resource is busy.
+	 */
+	private BitSet busyBuckets(Long idResource, Interval window, long start, long bucket, int length) {
+		BitSet busy = new BitSet(length);
+		for (Booking b : index.findCandidates(idResource, window)) {
+			OccurrenceIterator occurrences = b.iterateOccurrences(window);
+			while (occurrences.hasNext()) {
+				Interval o = occurrences.next();
+				if (o.getEndMillis() == o.getStartMillis()) {
+					continue;
+				}
+				long first = Math.max(0, Math.floorDiv(o.getStartMillis() - start, bucket));
+				long last = Math.min(length, Math.floorDiv(o.getEndMillis() - start - 1, bucket) + 1);
+				if (first < last) {
+					busy.set((int) first, (int) last);
+				}
+			}
+		}
+		return busy;
+	}
+
+}
@@ -0,0 +1,183 @@
+package edu.upc.cpl.smeagol.client.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.joda.time.Chronology;
+import org.joda.time.Interval;
+
+/**
+ * Batch computation of the occupancy of resources: when each one is busy, and
+ * when it is booked more than once.
+ * <p>
+ * The occurrences of the bookings of each resource within the window are
+ * expanded by a {@link BookingExpander}, sorted by start, and swept once,
+ * keeping the active occurrences in a heap ordered by end. The sweep merges
+ * them into disjoint busy intervals and records the intervals where more
+ * than one is active, in <code>O(n log n)</code> time for <code>n</code>
+ * occurrences. Resources are independent, so each one is swept in its own
+ * task in a {@link ForkJoinPool}.
+ *
+ */
+public class OccupancyAnalyzer {
+
+	private static final class Occurrence implements Comparable<Occurrence> {
+		final long start;
+		final long end;
+		final Booking booking;
+
+		Occurrence(long start, long end, Booking booking) {
+			this.start = start;
+			this.end = end;
+			this.booking = booking;
+		}
+
+		public int compareTo(Occurrence o) {
+			return start < o.start ? -1 : (start > o.start ? 1 : Long.compare(end, o.end));
+		}
+	}
+
+	private final BookingExpander expander;
+
+	/**
+	 * Create an analyzer which runs on the common fork-join pool.
+	 */
+	public OccupancyAnalyzer() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create an analyzer which runs on a given pool.
+	 *
+	 * @param pool
+	 *            the pool. Not null.
+	 */
+	public OccupancyAnalyzer(ForkJoinPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("pool cannot be null");
+		}
+		this.expander = new BookingExpander(pool);
+	}
+
+	/**
+	 * Compute the occupancy of some resources within a window.
+	 *
+	 * @param bookings
+	 *            the bookings, of any resource. Not null.
+	 * @param idResources
+	 *            the resources to analyze, or null to analyze all the
+	 *            resources with bookings.
+	 * @param window
+	 *            the window of time of interest. Not null. Occurrences are
+	 *            clipped to it.
+	 * @return the occupancy of each resource, in the order of
+	 *         {@code idResources} (or of their first booking, if null).
+	 */
+	public Map<Long, ResourceOccupancy> analyze(Collection<Booking> bookings, Collection<Long> idResources,
+			final Interval window) {
+		if (window == null) {
+			throw new IllegalArgumentException("window cannot be null");
+		}
+		Map<Long, ForkJoinTask<ResourceOccupancy>> tasks = new LinkedHashMap<Long, ForkJoinTask<ResourceOccupancy>>();
+		for (final ResourceOccurrences occurrences : expander.expand(bookings, idResources, window).values()) {
+			tasks.put(occurrences.getIdResource(), expander.getPool().submit(() -> sweep(occurrences, window)));
+		}
+		Map<Long, ResourceOccupancy> result = new LinkedHashMap<Long, ResourceOccupancy>();
+		for (Map.Entry<Long, ForkJoinTask<ResourceOccupancy>> e : tasks.entrySet()) {
+			result.put(e.getKey(), e.getValue().join());
+		}
+		return result;
+	}
+
+	/**
+	 * Compute the occupancy of a single resource.
+	 */
+	static ResourceOccupancy sweep(ResourceOccurrences occurrences, Interval window) {
+		long windowStart = window.getStartMillis();
+		long windowEnd = window.getEndMillis();
+		Chronology chronology = window.getChronology();
+
+		List<Interval> busy = new ArrayList<Interval>();
+		List<ResourceOccupancy.Conflict> conflicts = new ArrayList<ResourceOccupancy.Conflict>();
+		PriorityQueue<Occurrence> active = new PriorityQueue<Occurrence>(16,
+				(x, y) -> Long.compare(x.end, y.end));
+		long busyStart = 0;
+		long busyEnd = Long.MIN_VALUE;
+		long conflictStart = 0;
+		List<Booking> conflicting = null;
+		Set<Booking> seen = Collections.newSetFromMap(new IdentityHashMap<Booking, Boolean>());
+
+		for (int i = 0; i < occurrences.size(); i++) {
+			// occurrences are sorted by start, and clipping keeps them sorted
+			long start = Math.max(windowStart, occurrences.getStart(i));
+			long end = Math.min(windowEnd, occurrences.getEnd(i));
+			if (start >= end) {
+				continue;
+			}
+			Occurrence o = new Occurrence(start, end, occurrences.getBooking(i));
+
+			// occurrences which end before this one starts (meeting is not
+			// overlapping)
+			while (!active.isEmpty() && active.peek().end <= o.start) {
+				Occurrence ended = active.poll();
+				if (conflicting != null && active.size() < 2) {
+					conflicts.add(new ResourceOccupancy.Conflict(new Interval(conflictStart, ended.end, chronology),
+							conflicting));
+					conflicting = null;
+					seen.clear();
+				}
+			}
+
+			if (o.start > busyEnd) {
+				if (busyEnd != Long.MIN_VALUE) {
+					busy.add(new Interval(busyStart, busyEnd, chronology));
+				}
+				busyStart = o.start;
+				busyEnd = o.end;
+			} else if (o.end > busyEnd) {
+				busyEnd = o.end;
+			}
+
+			active.add(o);
+			if (active.size() >= 2) {
+				if (conflicting == null) {
+					conflictStart = o.start;
+					conflicting = new ArrayList<Booking>();
+					Occurrence[] overlapping = active.toArray(new Occurrence[active.size()]);
+					Arrays.sort(overlapping);
+					for (Occurrence x : overlapping) {
+						if (seen.add(x.booking)) {
+							conflicting.add(x.booking);
+						}
+					}
+				} else if (seen.add(o.booking)) {
+					conflicting.add(o.booking);
+				}
+			}
+		}
+		while (!active.isEmpty()) {
+			Occurrence ended = active.poll();
+			if (conflicting != null && active.size() < 2) {
+				conflicts.add(new ResourceOccupancy.Conflict(new Interval(conflictStart, ended.end, chronology),
+						conflicting));
+				conflicting = null;
+				seen.clear();
+			}
+		}
+		if (busyEnd != Long.MIN_VALUE) {
+			busy.add(new Interval(busyStart, busyEnd, chronology));
+		}
+		return new ResourceOccupancy(occurrences.getIdResource(), busy, conflicts);
+	}
+
+}
@@ -1,8 +1,10 @@
 package edu.upc.cpl.smeagol.client.domain;
 
+import java.io.Reader;
 import java.io.Serializable;
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.CompareToBuilder;
@@ -15,6 +17,9 @@ import org.apache.log4j.Logger;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
+import edu.upc.cpl.smeagol.json.JsonArrayIterator;
+import edu.upc.cpl.smeagol.json.SmeagolGson;
+
 /**
  * Resources represent anything which can be booked, such as an object or
  * service. Resources have an <em>id</em> (automatically generated by the
@@ -33,7 +38,7 @@ public class Resource implements Serializable, Comparable<Resource> {
 
 	@SuppressWarnings("unused")
 	private static transient Logger logger = Logger.getLogger(Resource.class);
-	private static transient Gson gson = new Gson();
+	private static transient final Gson gson = SmeagolGson.getInstance();
 
 	/**
 	 * Maximum length for resource descriptions = {@value}
@@ -100,6 +105,26 @@ public class Resource implements Serializable, Comparable<Resource> {
 		setInfo(info);
 	}
 
+	private Resource() {
+	}
+
+	/**
+	 * This method is used internally by the Sméagol client and should not be
+	 * used directly in your programs.
+	 * <p>
+	 * Create a resource as received from the server. Unlike the constructors,
+	 * no argument is validated, so the resource is kept as it was sent.
+	 * 
+	 * @return a new resource
+	 */
+	public static Resource fromServer(Long id, String description, String info) {
+		Resource r = new Resource();
+		r.id = id;
+		r.description = description;
+		r.info = info;
+		return r;
+	}
+
 	public void setId(Long id) {
 		this.id = id;
 	}
@@ -191,4 +216,16 @@ public class Resource implements Serializable, Comparable<Resource> {
 		return gson.fromJson(json, collectionType);
 	}
 
+	/**
+	 * Deserialize a JSON array of resources lazily, one at a time, as it is read.
+	 * 
+	 * @param json
+	 *            a reader providing a JSON array of resources
+	 * @return a stream of resources, in array order. Closing the stream closes
+	 *         {@code json}.
+	 */
+	public static Stream<Resource> deserializeStream(Reader json) {
+		return JsonArrayIterator.stream(gson, Resource.class, json);
+	}
+
 }
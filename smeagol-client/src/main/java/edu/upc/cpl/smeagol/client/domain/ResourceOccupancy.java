@@ -0,0 +1,98 @@
+package edu.upc.cpl.smeagol.client.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.joda.time.Interval;
+
+/**
+ * The occupancy of a {@link Resource} within a window of time, as computed by
+ * {@link OccupancyAnalyzer}: the disjoint intervals when it is busy, and the
+ * intervals when it is booked more than once.
+ *
+ */
+public final class ResourceOccupancy {
+
+	/**
+	 * A maximal interval of time when a resource has more than one booking.
+	 */
+	public static final class Conflict {
+		private final Interval interval;
+		private final List<Booking> bookings;
+
+		Conflict(Interval interval, List<Booking> bookings) {
+			this.interval = interval;
+			this.bookings = Collections.unmodifiableList(bookings);
+		}
+
+		/**
+		 * @return the interval when the resource is booked more than once.
+		 */
+		public Interval getInterval() {
+			return interval;
+		}
+
+		/**
+		 * @return the bookings with an occurrence within the interval, in the
+		 *         order their occurrences start.
+		 */
+		public List<Booking> getBookings() {
+			return bookings;
+		}
+
+		/**
+		 * @return the identifiers of {@link #getBookings()}.
+		 */
+		public List<Long> getIdBookings() {
+			List<Long> result = new ArrayList<Long>(bookings.size());
+			for (Booking b : bookings) {
+				result.add(b.getId());
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringBuilder(this).append(interval).append(getIdBookings()).toString();
+		}
+	}
+
+	private final Long idResource;
+	private final List<Interval> busy;
+	private final List<Conflict> conflicts;
+
+	ResourceOccupancy(Long idResource, List<Interval> busy, List<Conflict> conflicts) {
+		this.idResource = idResource;
+		this.busy = Collections.unmodifiableList(busy);
+		this.conflicts = Collections.unmodifiableList(conflicts);
+	}
+
+	public Long getIdResource() {
+		return idResource;
+	}
+
+	/**
+	 * @return the disjoint intervals when the resource is busy, in
+	 *         chronological order. Occurrences which meet are merged.
+	 */
+	public List<Interval> getBusy() {
+		return busy;
+	}
+
+	/**
+	 * @return the intervals when the resource is booked more than once, in
+	 *         chronological order.
+	 */
+	public List<Conflict> getConflicts() {
+		return conflicts;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("id_resource", idResource).append("busy", busy.size())
+				.append("conflicts", conflicts).toString();
+	}
+
+}
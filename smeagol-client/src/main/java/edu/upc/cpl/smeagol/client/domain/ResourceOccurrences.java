@@ -0,0 +1,103 @@
+package edu.upc.cpl.smeagol.client.domain;
+
+import java.util.AbstractList;
+import java.util.List;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.joda.time.Chronology;
+import org.joda.time.Interval;
+
+/**
+ * The occurrences of the bookings of a {@link Resource} within a window of
+ * time, as computed by {@link BookingExpander}, sorted by start (and by end,
+ * for equal starts).
+ * <p>
+ * Occurrences are stored in parallel arrays of primitive instants, so large
+ * expansions take little memory and can be swept without creating objects.
+ *
+ */
+public final class ResourceOccurrences {
+
+	private final Long idResource;
+	private final long[] starts;
+	private final long[] ends;
+	private final Booking[] bookings;
+	private final Chronology chronology;
+	private final boolean truncated;
+
+	ResourceOccurrences(Long idResource, long[] starts, long[] ends, Booking[] bookings, Chronology chronology,
+			boolean truncated) {
+		this.idResource = idResource;
+		this.starts = starts;
+		this.ends = ends;
+		this.bookings = bookings;
+		this.chronology = chronology;
+		this.truncated = truncated;
+	}
+
+	public Long getIdResource() {
+		return idResource;
+	}
+
+	/**
+	 * @return the number of occurrences.
+	 */
+	public int size() {
+		return starts.length;
+	}
+
+	/**
+	 * @return the start of the i-th occurrence, in milliseconds.
+	 */
+	public long getStart(int i) {
+		return starts[i];
+	}
+
+	/**
+	 * @return the end of the i-th occurrence, in milliseconds.
+	 */
+	public long getEnd(int i) {
+		return ends[i];
+	}
+
+	/**
+	 * @return the booking of the i-th occurrence.
+	 */
+	public Booking getBooking(int i) {
+		return bookings[i];
+	}
+
+	/**
+	 * @return <code>true</code> if the expansion reached a limit of its
+	 *         {@link edu.upc.cpl.smeagol.client.ical.ExpansionBudget}, so some
+	 *         occurrences may be missing.
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * @return the occurrences as intervals. The intervals are created as the
+	 *         list is read.
+	 */
+	public List<Interval> asIntervals() {
+		return new AbstractList<Interval>() {
+			@Override
+			public Interval get(int i) {
+				return new Interval(starts[i], ends[i], chronology);
+			}
+
+			@Override
+			public int size() {
+				return starts.length;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("id_resource", idResource).append("size", starts.length)
+				.append("truncated", truncated).toString();
+	}
+
+}
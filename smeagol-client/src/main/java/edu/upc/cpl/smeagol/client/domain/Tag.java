@@ -1,8 +1,10 @@
 package edu.upc.cpl.smeagol.client.domain;
 
+import java.io.Reader;
 import java.io.Serializable;
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.CompareToBuilder;
@@ -15,6 +17,9 @@ import org.apache.log4j.Logger;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
+import edu.upc.cpl.smeagol.json.JsonArrayIterator;
+import edu.upc.cpl.smeagol.json.SmeagolGson;
+
 /**
  * Tags are used to add semantic information to resources, events and bookings.
  * <p>
@@ -32,7 +37,7 @@ public final class Tag implements Serializable, Comparable<Tag> {
 
 	@SuppressWarnings("unused")
 	private transient Logger logger = Logger.getLogger(getClass());
-	private transient static Gson gson = new Gson();
+	private transient static final Gson gson = SmeagolGson.getInstance();
 
 	/**
 	 * Minimum length for tag identifiers = {@value}
@@ -98,6 +103,25 @@ public final class Tag implements Serializable, Comparable<Tag> {
 		setDescription(description);
 	}
 
+	private Tag() {
+	}
+
+	/**
+	 * This method is used internally by the Sméagol client and should not be
+	 * used directly in your programs.
+	 * <p>
+	 * Create a tag as received from the server. Unlike the constructors, no
+	 * argument is validated, so the tag is kept as it was sent.
+	 * 
+	 * @return a new tag
+	 */
+	public static Tag fromServer(String id, String description) {
+		Tag t = new Tag();
+		t.id = id;
+		t.description = description;
+		return t;
+	}
+
 	public void setId(String id) {
 		if (!isValidId(id)) {
 			throw new IllegalArgumentException("invalid tag id");
@@ -171,4 +195,16 @@ public final class Tag implements Serializable, Comparable<Tag> {
 		return gson.fromJson(json, tagCollection);
 	}
 
+	/**
+	 * Deserialize a JSON array of tags lazily, one at a time, as it is read.
+	 * 
+	 * @param json
+	 *            a reader providing a JSON array of tags
+	 * @return a stream of tags, in array order. Closing the stream closes
+	 *         {@code json}.
+	 */
+	public static Stream<Tag> deserializeStream(Reader json) {
+		return JsonArrayIterator.stream(gson, Tag.class, json);
+	}
+
 }
@@ -18,4 +18,11 @@ public class AlreadyExistsException extends SmeagolClientException {
 	public AlreadyExistsException(String message) {
 		super(message);
 	}
+
+	/**
+	 * @see SmeagolClientException#SmeagolClientException(String, boolean)
+	 */
+	public AlreadyExistsException(String message, boolean writableStackTrace) {
+		super(message, writableStackTrace);
+	}
 }
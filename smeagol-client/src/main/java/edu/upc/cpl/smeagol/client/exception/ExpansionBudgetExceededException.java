@@ -0,0 +1,28 @@
+package edu.upc.cpl.smeagol.client.exception;
+
+import edu.upc.cpl.smeagol.client.ical.ExpansionBudget;
+
+/**
+ * Thrown during the expansion of the occurrences of bookings, to indicate
+ * that it has reached a limit of its {@link ExpansionBudget}.
+ *
+ */
+public class ExpansionBudgetExceededException extends SmeagolClientException {
+
+	private static final long serialVersionUID = 6087306433207349186L;
+
+	private final ExpansionBudget.Limit limit;
+
+	public ExpansionBudgetExceededException(ExpansionBudget.Limit limit, String message) {
+		super(message);
+		this.limit = limit;
+	}
+
+	/**
+	 * @return the limit which has been reached.
+	 */
+	public ExpansionBudget.Limit getLimit() {
+		return limit;
+	}
+
+}
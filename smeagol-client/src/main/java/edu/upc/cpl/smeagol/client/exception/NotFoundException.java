@@ -19,4 +19,11 @@ public class NotFoundException extends SmeagolClientException {
 		super(message);
 	}
 
+	/**
+	 * @see SmeagolClientException#SmeagolClientException(String, boolean)
+	 */
+	public NotFoundException(String message, boolean writableStackTrace) {
+		super(message, writableStackTrace);
+	}
+
 }
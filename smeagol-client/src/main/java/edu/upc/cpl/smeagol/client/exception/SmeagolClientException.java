@@ -2,6 +2,12 @@ package edu.upc.cpl.smeagol.client.exception;
 
 /**
  * Base class for Smeagol Client exception hierarchy.
+ * <p>
+ * Exceptions may be created without stack traces, which saves the cost of
+ * filling them in when they are expected often (for instance, lookups of
+ * entities which are often missing). See
+ * {@link edu.upc.cpl.smeagol.client.SmeagolClient#setStacklessExceptions(boolean)}
+ * .
  * 
  * @author angel
  * 
@@ -18,4 +24,17 @@ public class SmeagolClientException extends RuntimeException {
 		super(message);
 	}
 
+	public SmeagolClientException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	/**
+	 * @param writableStackTrace
+	 *            <code>false</code> to create the exception without a stack
+	 *            trace, which is cheaper but whose origin cannot be traced.
+	 */
+	public SmeagolClientException(String message, boolean writableStackTrace) {
+		super(message, null, true, writableStackTrace);
+	}
+
 }
@@ -1,21 +1,18 @@
 package edu.upc.cpl.smeagol.client.ical;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.CompareToBuilder;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.commons.lang.builder.ToStringBuilder;
-import org.apache.commons.validator.GenericValidator;
 import org.apache.log4j.Logger;
 
 /**
  * Days of week, for recurrences. Valid days have the form "MO" (monday), "-1MO"
  * (the last monday), "3TH" (the third thursday), etc.
  * <p>
- * Several constants are provided for the most common values.
+ * Several constants are provided for the most common values. Use
+ * {@link #of(String)} to get the canonical instance of any other valid day of
+ * week.
  * <p>
  * See RFC 5545 section 3.3.10 for further info.
  * 
@@ -26,48 +23,150 @@ public class DayOfWeek implements Comparable<DayOfWeek> {
 
 	private static Logger logger = Logger.getLogger(DayOfWeek.class);
 
+	/**
+	 * Two letter codes of the days of the week, indexed by their ISO number
+	 * minus one (Monday is 1, Sunday is 7). Declared before the constants
+	 * below, which need it on construction.
+	 */
+	private static final String[] WEEKDAY_CODES = { "MO", "TU", "WE", "TH", "FR", "SA", "SU" };
+
+	private static final int MAX_ORDINAL = 53;
+
+	/**
+	 * Canonical instances of every valid day of week, indexed by
+	 * {@link DayOfWeekSet#encode(int, int)}.
+	 */
+	private static final DayOfWeek[] CANONICAL = buildCanonicalTable();
+
 	/**
 	 * Value for representing Sundays
 	 */
-	public static DayOfWeek SUNDAY = new DayOfWeek("SU");
+	public static DayOfWeek SUNDAY = of(0, 7);
 	/**
 	 * Value for representing Mondays
 	 */
-	public static DayOfWeek MONDAY = new DayOfWeek("MO");
+	public static DayOfWeek MONDAY = of(0, 1);
 	/**
 	 * Value for representing Thursdays
 	 */
-	public static DayOfWeek TUESDAY = new DayOfWeek("TU");
+	public static DayOfWeek TUESDAY = of(0, 2);
 	/**
 	 * Value for representing Wednesdays
 	 */
-	public static DayOfWeek WEDNESDAY = new DayOfWeek("WE");
+	public static DayOfWeek WEDNESDAY = of(0, 3);
 	/**
 	 * Value for representing Thursdays
 	 */
-	public static DayOfWeek THURSDAY = new DayOfWeek("TH");
+	public static DayOfWeek THURSDAY = of(0, 4);
 	/**
 	 * Value for representing Fridays
 	 */
-	public static DayOfWeek FRIDAY = new DayOfWeek("FR");
+	public static DayOfWeek FRIDAY = of(0, 5);
 	/**
 	 * Value for representing Saturdays
 	 */
-	public static DayOfWeek SATURDAY = new DayOfWeek("SA");
+	public static DayOfWeek SATURDAY = of(0, 6);
 
 	private String dayOfWeek;
+	private int ordinal;
+	private int weekday;
 
+	/**
+	 * Create a day of week which keeps its spelling (see
+	 * {@link #getAsString()}). It is equal to the canonical instance of the
+	 * same day.
+	 * 
+	 * @param dayOfWeek
+	 *            a valid day of week
+	 * @throws IllegalArgumentException
+	 *             if {@code dayOfWeek} is not a valid day of week.
+	 */
 	public DayOfWeek(String dayOfWeek) {
-		if (!validate(dayOfWeek)) {
+		int code = scan(dayOfWeek);
+		if (code < 0) {
 			throw new IllegalArgumentException("invalid day of week");
 		}
 		this.dayOfWeek = dayOfWeek;
+		this.ordinal = DayOfWeekSet.ordinalOf(code);
+		this.weekday = DayOfWeekSet.weekdayOf(code);
+	}
+
+	private DayOfWeek(String dayOfWeek, int ordinal, int weekday) {
+		this.dayOfWeek = dayOfWeek;
+		this.ordinal = ordinal;
+		this.weekday = weekday;
+	}
+
+	private static DayOfWeek[] buildCanonicalTable() {
+		DayOfWeek[] table = new DayOfWeek[DayOfWeekSet.encode(MAX_ORDINAL, 7) + 1];
+		for (int ordinal = -MAX_ORDINAL; ordinal <= MAX_ORDINAL; ordinal++) {
+			for (int weekday = 1; weekday <= 7; weekday++) {
+				String code = WEEKDAY_CODES[weekday - 1];
+				table[DayOfWeekSet.encode(ordinal, weekday)] = new DayOfWeek(ordinal == 0 ? code : ordinal + code,
+						ordinal, weekday);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Get the canonical instance for a day of week. Equivalent spellings of the
+	 * same day ("+1MO", "01MO" and "1MO") return the same instance, whose
+	 * {@link #getAsString()} is the shortest one ("1MO").
+	 * 
+	 * @param dayOfWeek
+	 *            a valid day of week
+	 * @return the canonical instance.
+	 * @throws IllegalArgumentException
+	 *             if {@code dayOfWeek} is not a valid day of week.
+	 */
+	public static DayOfWeek of(String dayOfWeek) {
+		int code = scan(dayOfWeek);
+		if (code < 0) {
+			throw new IllegalArgumentException("invalid day of week");
+		}
+		return CANONICAL[code];
+	}
+
+	/**
+	 * Get the canonical instance for a weekday number and ordinal.
+	 * 
+	 * @param ordinal
+	 *            the ordinal (e.g. 3 for "3TH", -1 for "-1MO"), in the ranges
+	 *            [-53 .. -1] or [1 .. 53], or 0 for plain days of the week.
+	 * @param weekday
+	 *            ISO number of the day of the week: 1 (Monday) to 7 (Sunday).
+	 * @return the canonical instance.
+	 * @throws IllegalArgumentException
+	 *             if {@code ordinal} or {@code weekday} are out of range.
+	 */
+	public static DayOfWeek of(int ordinal, int weekday) {
+		if (ordinal < -MAX_ORDINAL || ordinal > MAX_ORDINAL || weekday < 1 || weekday > 7) {
+			throw new IllegalArgumentException("invalid day of week");
+		}
+		return CANONICAL[DayOfWeekSet.encode(ordinal, weekday)];
 	}
 
 	public String getAsString() {
 		return this.dayOfWeek;
 	}
 
+	/**
+	 * @return the ordinal of this day (e.g. 3 for "3TH", -1 for "-1MO"), or 0
+	 *         if it represents every such day of the week (e.g. "MO").
+	 */
+	public int getOrdinal() {
+		return this.ordinal;
+	}
+
+	/**
+	 * @return the ISO number of the day of the week, from 1 (Monday) to 7
+	 *         (Sunday), as in {@code org.joda.time.DateTimeConstants}.
+	 */
+	public int getWeekday() {
+		return this.weekday;
+	}
+
 	/**
 	 * Check if string is a valid <code>DayOfWeek</code>
 	 * 
@@ -75,35 +174,96 @@ public class DayOfWeek implements Comparable<DayOfWeek> {
 	 *            string to check
 	 */
 	public static boolean validate(String dayOfWeek) {
-		if (StringUtils.isEmpty(dayOfWeek)) {
-			logger.debug("DayOfWeek is empty");
+		if (scan(dayOfWeek) < 0) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("invalid DayOfWeek: " + dayOfWeek);
+			}
 			return false;
 		}
+		return true;
+	}
+
+	/**
+	 * Scan a day of week of the form <code>[+-]?[0-9]{0,2}(MO|...|SU)</code>,
+	 * with an ordinal (if any) in the ranges [-53 .. -1] or [1 .. 53].
+	 * 
+	 * @return the code of the day (see {@link DayOfWeekSet#encode(int, int)}),
+	 *         or -1 if {@code s} is not a valid day of week.
+	 */
+	private static int scan(String s) {
+		if (s == null) {
+			return -1;
+		}
+		int len = s.length();
+		if (len < 2 || len > 5) {
+			return -1;
+		}
+		int weekday = weekdayOf(s.charAt(len - 2), s.charAt(len - 1));
+		if (weekday == 0) {
+			return -1;
+		}
 
-		Pattern p = Pattern.compile("([+-]?[0-9]{0,2})?(MO|TU|WE|TH|FR|SA|SU)");
-		Matcher m = p.matcher(dayOfWeek);
+		int end = len - 2;
+		if (end == 0) {
+			return DayOfWeekSet.encode(0, weekday);
+		}
 
-		if (!m.matches()) {
-			logger.debug("DayOfWeek does not match regexp.");
-			return false;
+		int i = 0;
+		boolean negative = false;
+		char first = s.charAt(0);
+		if (first == '+' || first == '-') {
+			negative = first == '-';
+			i++;
+		}
+		if (end - i < 1 || end - i > 2) {
+			return -1;
 		}
 
-		if (m.groupCount() == 2 && StringUtils.isNotEmpty(m.group(1))) {
-			// tye day is in the form +NNday or -NNday
-			String prefix = m.group(1);
-			logger.debug("groupCount(): " + m.groupCount() + ", DayOfWeek[prefix: " + m.group(1) + ", suffix: "
-					+ m.group(2) + "]");
-			if (!GenericValidator.isShort(prefix) || !GenericValidator.isInRange(Short.parseShort(prefix), 1, 53)) {
-				logger.debug("DayOfWeek prefix is not in a valid range.");
-				return false;
+		int ordinal = 0;
+		for (; i < end; i++) {
+			int digit = s.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
 			}
+			ordinal = ordinal * 10 + digit;
 		}
+		if (ordinal < 1 || ordinal > MAX_ORDINAL) {
+			return -1;
+		}
+		return DayOfWeekSet.encode(negative ? -ordinal : ordinal, weekday);
+	}
 
-		return true;
+	/**
+	 * @return the ISO number of the day of the week with code {@code c1c2}, or
+	 *         0 if not valid.
+	 */
+	private static int weekdayOf(char c1, char c2) {
+		switch (c1) {
+		case 'M':
+			return c2 == 'O' ? 1 : 0;
+		case 'T':
+			return c2 == 'U' ? 2 : c2 == 'H' ? 4 : 0;
+		case 'W':
+			return c2 == 'E' ? 3 : 0;
+		case 'F':
+			return c2 == 'R' ? 5 : 0;
+		case 'S':
+			return c2 == 'A' ? 6 : c2 == 'U' ? 7 : 0;
+		default:
+			return 0;
+		}
 	}
 
+	/**
+	 * Days of week are ordered by their canonical spelling (see
+	 * {@link #of(String)}), so equivalent spellings compare as equal.
+	 */
 	public int compareTo(DayOfWeek other) {
-		return new CompareToBuilder().append(this.dayOfWeek, other.dayOfWeek).toComparison();
+		return new CompareToBuilder().append(canonical().dayOfWeek, other.canonical().dayOfWeek).toComparison();
+	}
+
+	private DayOfWeek canonical() {
+		return CANONICAL[DayOfWeekSet.encode(this.ordinal, this.weekday)];
 	}
 
 	@Override
@@ -113,7 +273,7 @@ public class DayOfWeek implements Comparable<DayOfWeek> {
 
 	@Override
 	public int hashCode() {
-		return new HashCodeBuilder(17, 37).append(this.dayOfWeek).toHashCode();
+		return new HashCodeBuilder(17, 37).append(this.ordinal).append(this.weekday).toHashCode();
 	};
 
 	@Override
@@ -128,6 +288,6 @@ public class DayOfWeek implements Comparable<DayOfWeek> {
 			return false;
 		}
 		DayOfWeek d = (DayOfWeek) other;
-		return new EqualsBuilder().append(this.dayOfWeek, d.dayOfWeek).isEquals();
+		return new EqualsBuilder().append(this.ordinal, d.ordinal).append(this.weekday, d.weekday).isEquals();
 	}
 }
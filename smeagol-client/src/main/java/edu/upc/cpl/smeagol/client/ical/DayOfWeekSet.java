@@ -0,0 +1,305 @@
+package edu.upc.cpl.smeagol.client.ical;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A set of {@link DayOfWeek}s stored as primitive codes.
+ * <p>
+ * Plain days of the week ("MO", "TU", ...) are kept in a 7 bit mask, where bit
+ * <code>i</code> stands for the ISO weekday <code>i + 1</code> (bit 0 is
+ * Monday, bit 6 is Sunday). Days with an ordinal ("1MO", "-1FR", ...), which
+ * are rare, are kept in a small sorted array of codes (see
+ * {@link #encode(int, int)}).
+ * <p>
+ * Iteration is in the natural (alphabetical) order of {@code DayOfWeek}, as
+ * in a {@code TreeSet<DayOfWeek>}. Days are stored by value: the
+ * iterator returns the canonical instances (see {@link DayOfWeek#of(String)}),
+ * except for days with an ordinal added with another spelling ("+1MO",
+ * "01MO"), whose spelling is kept so that they are written back as given.
+ *
+ */
+public final class DayOfWeekSet extends AbstractSet<DayOfWeek> {
+
+	/**
+	 * ISO weekdays in the alphabetical order of their codes: FR, MO, SA, SU,
+	 * TH, TU, WE.
+	 */
+	private static final int[] ALPHABETICAL_WEEKDAYS = { 5, 1, 6, 7, 4, 2, 3 };
+
+	private static final int MAX_ORDINAL = 53;
+	private static final short[] NO_ORDINALS = new short[0];
+
+	private int weekdays;
+	private short[] ordinals = NO_ORDINALS;
+	private String[] spellings; // of each ordinal, null if canonical; null if all are
+
+	public DayOfWeekSet() {
+	}
+
+	/**
+	 * Create a set with the days of {@code days}.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if {@code days} contains null values.
+	 */
+	public DayOfWeekSet(Collection<DayOfWeek> days) {
+		addAll(days);
+	}
+
+	/**
+	 * Encode a day with an ordinal as a single number. Codes sort in ordinal
+	 * order first, and weekday order after.
+	 *
+	 * @param ordinal
+	 *            the ordinal, in the ranges [-53 .. -1] or [1 .. 53]
+	 * @param weekday
+	 *            the ISO weekday, in the range [1 .. 7]
+	 */
+	public static int encode(int ordinal, int weekday) {
+		return ((ordinal + MAX_ORDINAL) << 3) | weekday;
+	}
+
+	/**
+	 * @return the ordinal of a code returned by {@link #encode(int, int)}.
+	 */
+	public static int ordinalOf(int code) {
+		return (code >> 3) - MAX_ORDINAL;
+	}
+
+	/**
+	 * @return the ISO weekday of a code returned by {@link #encode(int, int)}.
+	 */
+	public static int weekdayOf(int code) {
+		return code & 7;
+	}
+
+	/**
+	 * @return a new set with the same days.
+	 */
+	public DayOfWeekSet copy() {
+		DayOfWeekSet result = new DayOfWeekSet();
+		result.weekdays = weekdays;
+		result.ordinals = ordinals;
+		result.spellings = spellings;
+		return result;
+	}
+
+	/**
+	 * @return the mask of plain days of the week in the set: bit
+	 *         <code>i</code> is set if the ISO weekday <code>i + 1</code> is in
+	 *         the set.
+	 */
+	public int getWeekdayMask() {
+		return weekdays;
+	}
+
+	/**
+	 * @return the codes (see {@link #encode(int, int)}) of the days with an
+	 *         ordinal in the set, sorted. Do not modify the returned array.
+	 */
+	public short[] getOrdinalCodes() {
+		return ordinals;
+	}
+
+	/**
+	 * @return <code>true</code> if the set contains any day with an ordinal.
+	 */
+	public boolean hasOrdinals() {
+		return ordinals.length > 0;
+	}
+
+	/**
+	 * Check whether the set contains a day.
+	 *
+	 * @param ordinal
+	 *            the ordinal of the day, or 0 for plain days of the week
+	 * @param weekday
+	 *            the ISO weekday, in the range [1 .. 7]
+	 */
+	public boolean contains(int ordinal, int weekday) {
+		if (ordinal == 0) {
+			return (weekdays & (1 << (weekday - 1))) != 0;
+		}
+		return Arrays.binarySearch(ordinals, (short) encode(ordinal, weekday)) >= 0;
+	}
+
+	/**
+	 * Add a day to the set.
+	 *
+	 * @param ordinal
+	 *            the ordinal of the day, or 0 for plain days of the week
+	 * @param weekday
+	 *            the ISO weekday, in the range [1 .. 7]
+	 * @return <code>true</code> if the set did not already contain the day.
+	 */
+	public boolean add(int ordinal, int weekday) {
+		return add(ordinal, weekday, null);
+	}
+
+	/**
+	 * Add a day with a spelling other than the canonical one, or with the
+	 * canonical one if {@code spelling} is null. Adding a day already in
+	 * the set keeps its spelling.
+	 */
+	private boolean add(int ordinal, int weekday, String spelling) {
+		if (weekday < 1 || weekday > 7 || ordinal < -MAX_ORDINAL || ordinal > MAX_ORDINAL) {
+			throw new IllegalArgumentException("invalid day of week");
+		}
+		if (ordinal == 0) {
+			int old = weekdays;
+			weekdays |= 1 << (weekday - 1);
+			return weekdays != old;
+		}
+		short code = (short) encode(ordinal, weekday);
+		int i = Arrays.binarySearch(ordinals, code);
+		if (i >= 0) {
+			return false;
+		}
+		i = -i - 1;
+		short[] grown = new short[ordinals.length + 1];
+		System.arraycopy(ordinals, 0, grown, 0, i);
+		grown[i] = code;
+		System.arraycopy(ordinals, i, grown, i + 1, ordinals.length - i);
+		if (spellings != null || spelling != null) {
+			String[] spelled = new String[grown.length];
+			if (spellings != null) {
+				System.arraycopy(spellings, 0, spelled, 0, i);
+				System.arraycopy(spellings, i, spelled, i + 1, ordinals.length - i);
+			}
+			spelled[i] = spelling;
+			spellings = spelled;
+		}
+		ordinals = grown;
+		return true;
+	}
+
+	/**
+	 * Remove a day from the set.
+	 *
+	 * @param ordinal
+	 *            the ordinal of the day, or 0 for plain days of the week
+	 * @param weekday
+	 *            the ISO weekday, in the range [1 .. 7]
+	 * @return <code>true</code> if the set contained the day.
+	 */
+	public boolean remove(int ordinal, int weekday) {
+		if (weekday < 1 || weekday > 7) {
+			return false;
+		}
+		if (ordinal == 0) {
+			int old = weekdays;
+			weekdays &= ~(1 << (weekday - 1));
+			return weekdays != old;
+		}
+		int i = Arrays.binarySearch(ordinals, (short) encode(ordinal, weekday));
+		if (i < 0) {
+			return false;
+		}
+		short[] shrunk = ordinals.length == 1 ? NO_ORDINALS : new short[ordinals.length - 1];
+		System.arraycopy(ordinals, 0, shrunk, 0, i);
+		System.arraycopy(ordinals, i + 1, shrunk, i, ordinals.length - i - 1);
+		if (spellings != null) {
+			String[] spelled = shrunk.length == 0 ? null : new String[shrunk.length];
+			if (spelled != null) {
+				System.arraycopy(spellings, 0, spelled, 0, i);
+				System.arraycopy(spellings, i + 1, spelled, i, ordinals.length - i - 1);
+			}
+			spellings = spelled;
+		}
+		ordinals = shrunk;
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof DayOfWeek)) {
+			return false;
+		}
+		DayOfWeek d = (DayOfWeek) o;
+		return contains(d.getOrdinal(), d.getWeekday());
+	}
+
+	@Override
+	public boolean add(DayOfWeek d) {
+		if (d == null) {
+			throw new IllegalArgumentException("day of week cannot be null");
+		}
+		String spelling = d.getAsString();
+		boolean canonical = d.getOrdinal() == 0 || spelling.equals(DayOfWeek.of(d.getOrdinal(), d.getWeekday())
+				.getAsString());
+		return add(d.getOrdinal(), d.getWeekday(), canonical ? null : spelling);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!(o instanceof DayOfWeek)) {
+			return false;
+		}
+		DayOfWeek d = (DayOfWeek) o;
+		return remove(d.getOrdinal(), d.getWeekday());
+	}
+
+	@Override
+	public void clear() {
+		weekdays = 0;
+		ordinals = NO_ORDINALS;
+		spellings = null;
+	}
+
+	@Override
+	public int size() {
+		return Integer.bitCount(weekdays) + ordinals.length;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return weekdays == 0 && ordinals.length == 0;
+	}
+
+	@Override
+	public Iterator<DayOfWeek> iterator() {
+		List<DayOfWeek> days = new ArrayList<DayOfWeek>(size());
+		for (int weekday : ALPHABETICAL_WEEKDAYS) {
+			if ((weekdays & (1 << (weekday - 1))) != 0) {
+				days.add(DayOfWeek.of(0, weekday));
+			}
+		}
+		if (ordinals.length > 0) {
+			for (int i = 0; i < ordinals.length; i++) {
+				String spelling = spellings == null ? null : spellings[i];
+				days.add(spelling == null ? DayOfWeek.of(ordinalOf(ordinals[i]), weekdayOf(ordinals[i]))
+						: new DayOfWeek(spelling));
+			}
+			Collections.sort(days);
+		}
+
+		final Iterator<DayOfWeek> it = days.iterator();
+		return new Iterator<DayOfWeek>() {
+			private DayOfWeek last;
+
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			public DayOfWeek next() {
+				last = it.next();
+				return last;
+			}
+
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				DayOfWeekSet.this.remove(last);
+				last = null;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,319 @@
+package edu.upc.cpl.smeagol.client.ical;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.joda.time.Interval;
+
+import edu.upc.cpl.smeagol.client.domain.Booking;
+import edu.upc.cpl.smeagol.client.exception.ExpansionBudgetExceededException;
+
+/**
+ * Limits on the work done expanding the occurrences of bookings.
+ * <p>
+ * Recurrences without {@code until} repeat forever, so a single booking
+ * expanded over a long window (or a rule whose limits leave almost no
+ * occurrences, which is scanned unit after unit) can take an unbounded amount
+ * of memory or time. A budget bounds the number of occurrences, the length of
+ * the window and the CPU time of an expansion. When a limit is reached the
+ * expansion either fails with an {@link ExpansionBudgetExceededException} or,
+ * if {@link #setTruncate(boolean) truncation} is enabled, stops and returns
+ * the occurrences expanded so far.
+ * <p>
+ * For example, to expand at most 10000 occurrences in windows of up to a year
+ * and 200 milliseconds of CPU:
+ *
+ * <pre>
+ * ExpansionBudget budget = new ExpansionBudget();
+ * budget.setMaxOccurrences(10000);
+ * budget.setMaxWindow(366L * 24 * 3600 * 1000);
+ * budget.setMaxCpuTime(200);
+ *
+ * OccurrenceIterator it = booking.iterateOccurrences(window, budget);
+ * </pre>
+ *
+ * Expensive queries can be refused before doing any work with
+ * {@link #admits(Collection, Interval)}, which compares the limits against
+ * the cheap upper bound of
+ * {@link RecurrenceRule#estimateOccurrences(Booking, long, long)}.
+ *
+ */
+public class ExpansionBudget {
+
+	/**
+	 * The limit of a budget which has been reached.
+	 */
+	public enum Limit {
+		OCCURRENCES, WINDOW, CPU_TIME;
+	}
+
+	/**
+	 * Default maximum number of occurrences = {@value}
+	 */
+	public static final long DEFAULT_MAX_OCCURRENCES = 1000000;
+
+	/**
+	 * The CPU time used by a {@link Meter} is checked every this number of
+	 * steps (occurrences or empty units).
+	 */
+	static final int CPU_CHECK_INTERVAL = 1024;
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private long maxOccurrences = DEFAULT_MAX_OCCURRENCES;
+	private long maxWindow = 0;
+	private long maxCpuTime = 0;
+	private boolean truncate = false;
+
+	public long getMaxOccurrences() {
+		return maxOccurrences;
+	}
+
+	/**
+	 * Set the maximum number of occurrences of an expansion.
+	 *
+	 * @param maxOccurrences
+	 *            a value greater than zero.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxOccurrences} is not positive.
+	 */
+	public void setMaxOccurrences(long maxOccurrences) {
+		if (maxOccurrences < 1) {
+			throw new IllegalArgumentException("maxOccurrences must be greater than zero");
+		}
+		this.maxOccurrences = maxOccurrences;
+	}
+
+	public long getMaxWindow() {
+		return maxWindow;
+	}
+
+	/**
+	 * Set the maximum length of the window of an expansion. Longer windows are
+	 * refused or, when truncating, shortened to this length.
+	 *
+	 * @param maxWindow
+	 *            time in milliseconds. Zero or a negative value means no
+	 *            limit (the default).
+	 */
+	public void setMaxWindow(long maxWindow) {
+		this.maxWindow = maxWindow;
+	}
+
+	public long getMaxCpuTime() {
+		return maxCpuTime;
+	}
+
+	/**
+	 * Set the maximum CPU time of an expansion, added up over all the threads
+	 * taking part in it. Where the JVM does not measure thread CPU time, the
+	 * elapsed time is used instead.
+	 *
+	 * @param maxCpuTime
+	 *            time in milliseconds. Zero or a negative value means no
+	 *            limit (the default).
+	 */
+	public void setMaxCpuTime(long maxCpuTime) {
+		this.maxCpuTime = maxCpuTime;
+	}
+
+	public boolean isTruncate() {
+		return truncate;
+	}
+
+	/**
+	 * Set what happens when a limit is reached.
+	 *
+	 * @param truncate
+	 *            <code>true</code> to stop the expansion and keep the
+	 *            occurrences expanded so far, <code>false</code> (the default)
+	 *            to throw an {@link ExpansionBudgetExceededException}.
+	 */
+	public void setTruncate(boolean truncate) {
+		this.truncate = truncate;
+	}
+
+	/**
+	 * Check, without expanding them, whether the occurrences of some bookings
+	 * within a window may be within this budget: the window is not too long
+	 * and the estimated number of occurrences is not above the maximum.
+	 * <p>
+	 * The estimate is an upper bound, so an expansion which is admitted never
+	 * exceeds the maximum number of occurrences; one which is not might still
+	 * fit in it.
+	 *
+	 * @param bookings
+	 *            the bookings. Not null.
+	 * @param window
+	 *            the window of time of interest. Not null.
+	 * @see RecurrenceRule#estimateOccurrences(Booking, long, long)
+	 */
+	public boolean admits(Collection<Booking> bookings, Interval window) {
+		if (bookings == null) {
+			throw new IllegalArgumentException("bookings cannot be null");
+		}
+		if (window == null) {
+			throw new IllegalArgumentException("window cannot be null");
+		}
+		if (maxWindow > 0 && window.toDurationMillis() > maxWindow) {
+			return false;
+		}
+		long total = 0;
+		for (Booking b : bookings) {
+			total += RecurrenceRule.estimateOccurrences(b, window.getStartMillis(), window.getEndMillis());
+			if (total > maxOccurrences || total < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Start accounting an expansion against this budget. The meter takes a
+	 * snapshot of the limits: later changes to the budget do not affect it.
+	 */
+	public Meter newMeter() {
+		return new Meter(this);
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("maxOccurrences", maxOccurrences).append("maxWindow", maxWindow)
+				.append("maxCpuTime", maxCpuTime).append("truncate", truncate).toString();
+	}
+
+	/**
+	 * The use of an {@link ExpansionBudget} by one expansion, which may be
+	 * shared by several {@link OccurrenceIterator}s (for instance, those of
+	 * all the bookings expanded by a
+	 * {@link edu.upc.cpl.smeagol.client.domain.BookingExpander}). It is safe
+	 * to use from several threads.
+	 */
+	public static final class Meter {
+
+		private final long maxOccurrences;
+		private final long maxWindow;
+		private final long maxCpuNanos;
+		private final boolean truncate;
+
+		private final AtomicLong occurrences = new AtomicLong();
+		private final AtomicLong cpuNanos = new AtomicLong();
+		private volatile Limit exceeded;
+		private volatile boolean stopped;
+
+		Meter(ExpansionBudget budget) {
+			this.maxOccurrences = budget.maxOccurrences;
+			this.maxWindow = budget.maxWindow;
+			this.maxCpuNanos = budget.maxCpuTime > 0 ? budget.maxCpuTime * 1000000 : 0;
+			this.truncate = budget.truncate;
+		}
+
+		/**
+		 * @return the number of occurrences expanded so far.
+		 */
+		public long getOccurrences() {
+			return Math.min(occurrences.get(), maxOccurrences);
+		}
+
+		/**
+		 * @return the CPU time used so far, in milliseconds, as measured by
+		 *         the iterators (only if the budget limits it).
+		 */
+		public long getCpuTime() {
+			return cpuNanos.get() / 1000000;
+		}
+
+		/**
+		 * @return the limit which truncated the expansion, or null if it is
+		 *         complete.
+		 */
+		public Limit getExceeded() {
+			return exceeded;
+		}
+
+		/**
+		 * @return <code>true</code> if a limit has been reached and the
+		 *         expansion has been truncated.
+		 */
+		public boolean isTruncated() {
+			return exceeded != null;
+		}
+
+		/**
+		 * @return the end of the window to expand, which is shortened if the
+		 *         window is too long and the budget truncates.
+		 */
+		long checkWindow(long windowStart, long windowEnd) {
+			if (maxWindow > 0 && windowEnd - windowStart > maxWindow) {
+				exceed(Limit.WINDOW, "window of " + (windowEnd - windowStart) + " ms is longer than " + maxWindow
+						+ " ms");
+				return windowStart + maxWindow;
+			}
+			return windowEnd;
+		}
+
+		/**
+		 * Account for one more occurrence.
+		 *
+		 * @return <code>false</code> if the expansion must stop.
+		 */
+		boolean charge() {
+			if (stopped) {
+				return false;
+			}
+			if (occurrences.incrementAndGet() > maxOccurrences) {
+				exceed(Limit.OCCURRENCES, "more than " + maxOccurrences + " occurrences");
+				return false;
+			}
+			return true;
+		}
+
+		boolean limitsCpuTime() {
+			return maxCpuNanos > 0;
+		}
+
+		/**
+		 * @return the CPU time of the current thread, in nanoseconds.
+		 */
+		long threadCpuTime() {
+			if (THREADS.isCurrentThreadCpuTimeSupported()) {
+				long time = THREADS.getCurrentThreadCpuTime();
+				if (time >= 0) {
+					return time;
+				}
+			}
+			return System.nanoTime();
+		}
+
+		/**
+		 * Account for CPU time used by the current thread.
+		 *
+		 * @return <code>false</code> if the expansion must stop.
+		 */
+		boolean chargeCpuTime(long nanos) {
+			if (stopped) {
+				return false;
+			}
+			if (cpuNanos.addAndGet(nanos) > maxCpuNanos) {
+				exceed(Limit.CPU_TIME, "more than " + maxCpuNanos / 1000000 + " ms of CPU time");
+				return false;
+			}
+			return true;
+		}
+
+		private void exceed(Limit limit, String message) {
+			if (!truncate) {
+				throw new ExpansionBudgetExceededException(limit, message);
+			}
+			if (exceeded == null) {
+				exceeded = limit;
+			}
+			// a shorter window is expanded in full
+			stopped |= limit != Limit.WINDOW;
+		}
+	}
+
+}
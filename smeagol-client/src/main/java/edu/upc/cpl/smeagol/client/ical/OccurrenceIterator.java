@@ -0,0 +1,298 @@
+package edu.upc.cpl.smeagol.client.ical;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.joda.time.Interval;
+
+import edu.upc.cpl.smeagol.client.domain.Booking;
+
+/**
+ * Lazy expansion of the occurrences of a {@link Booking} within a window of
+ * time.
+ * <p>
+ * Occurrences are computed one at a time, in chronological order, as the
+ * iterator advances; only the next occurrence is kept in memory. Expansion
+ * starts at the first recurrence period which may overlap the window (not at
+ * the start of the booking), so iterating over a window far in the future is
+ * as cheap as iterating over the first one.
+ * <p>
+ * The recurrence rule is interpreted as defined by RFC 5545, section 3.3.10,
+ * for the subset of rule parts supported by Sméagol:
+ * <ul>
+ * <li>{@code frequency} SECONDLY, MINUTELY, HOURLY, DAILY, WEEKLY (weeks
+ * start on Monday), MONTHLY or YEARLY. Bookings without frequency have a
+ * single occurrence from {@code dtstart} to {@code dtend}. Sub-daily
+ * frequencies repeat every {@code interval} seconds, minutes or hours of
+ * elapsed time, so daylight saving changes do not shift them.</li>
+ * <li>{@code interval} and {@code until}, which bounds the start of the
+ * occurrences (inclusive).</li>
+ * <li>{@code by_month} expands YEARLY rules and limits the others.</li>
+ * <li>{@code by_day_month} expands MONTHLY and YEARLY rules and limits the
+ * others.</li>
+ * <li>{@code by_day} limits DAILY and sub-daily rules and expands the
+ * others. Ordinal days
+ * ("-1MO", "2TU") refer to the month in MONTHLY rules and in YEARLY rules
+ * with {@code by_month}, and to the year in YEARLY rules without it. When
+ * {@code by_day_month} is present too, only the days matching both are
+ * occurrences.</li>
+ * </ul>
+ * Rule parts not given are taken from {@code dtstart}: the day of the week for
+ * WEEKLY rules, the day of the month for MONTHLY rules, and the day and month
+ * for YEARLY rules. Occurrences start at the time of the day of
+ * {@code dtstart}, in its time zone, and last as long as
+ * {@code [dtstart, dtend]}. Only occurrences starting at or after
+ * {@code dtstart} are returned.
+ * <p>
+ * An occurrence is in the window if it starts before the end of the window and
+ * ends after its start (zero length occurrences, if they start within the
+ * window).
+ * <p>
+ * The iterator works on a snapshot of the booking (see {@link RecurrenceRule}):
+ * later changes to the booking do not affect it.
+ * <p>
+ * An iterator may be bounded by an {@link ExpansionBudget}: it counts its
+ * occurrences (and, if limited, its CPU time) in a {@link ExpansionBudget.Meter},
+ * which may be shared by the iterators of many bookings. When a limit is
+ * reached it throws an
+ * {@link edu.upc.cpl.smeagol.client.exception.ExpansionBudgetExceededException}
+ * or, if the budget truncates, ends early (see {@link #isTruncated()}).
+ *
+ */
+public class OccurrenceIterator implements Iterator<Interval> {
+
+	private final RecurrenceRule rule;
+	private final ExpansionBudget.Meter meter;
+
+	// the window
+	private final long windowStart;
+	private final long windowEnd;
+	private final long lastDay;
+
+	// CPU time accounting, if the budget limits it
+	private long cpuMark;
+	private int steps;
+
+	// current position
+	private long from; // of sub-daily rules: the next instant to look from
+	private long unit;
+	private long unitDay; // epoch day of bit 0 in mask
+	private long mask; // pending candidate days of the current unit
+
+	private Interval next;
+	private boolean done = false;
+
+	/**
+	 * Create an iterator over the occurrences of a booking within a window.
+	 *
+	 * @param booking
+	 *            the booking to expand. Not null.
+	 * @param window
+	 *            the window of time of interest. Not null.
+	 * @throws IllegalArgumentException
+	 *             if any argument is null
+	 */
+	public OccurrenceIterator(Booking booking, Interval window) {
+		this(RecurrenceRule.of(booking), window, null);
+	}
+
+	/**
+	 * Create an iterator over the occurrences of a booking within a window,
+	 * bounded by a budget.
+	 *
+	 * @param booking
+	 *            the booking to expand. Not null.
+	 * @param window
+	 *            the window of time of interest. Not null.
+	 * @param meter
+	 *            the use of the budget of the expansion, as returned by
+	 *            {@link ExpansionBudget#newMeter()}. Not null.
+	 * @throws IllegalArgumentException
+	 *             if any argument is null
+	 * @throws edu.upc.cpl.smeagol.client.exception.ExpansionBudgetExceededException
+	 *             if the window is longer than allowed by the budget, and it
+	 *             does not truncate.
+	 */
+	public OccurrenceIterator(Booking booking, Interval window, ExpansionBudget.Meter meter) {
+		this(RecurrenceRule.of(booking), window, checkMeter(meter));
+	}
+
+	private static ExpansionBudget.Meter checkMeter(ExpansionBudget.Meter meter) {
+		if (meter == null) {
+			throw new IllegalArgumentException("meter cannot be null");
+		}
+		return meter;
+	}
+
+	/**
+	 * Create an iterator over the occurrences of a compiled rule within a
+	 * window.
+	 *
+	 * @param meter
+	 *            the budget of the expansion, or null if unbounded.
+	 */
+	OccurrenceIterator(RecurrenceRule rule, Interval window, ExpansionBudget.Meter meter) {
+		if (window == null) {
+			throw new IllegalArgumentException("window cannot be null");
+		}
+
+		this.rule = rule;
+		this.meter = meter;
+		this.windowStart = window.getStartMillis();
+		this.windowEnd = meter == null ? window.getEndMillis() : meter.checkWindow(windowStart,
+				window.getEndMillis());
+		if (meter != null && meter.limitsCpuTime()) {
+			this.cpuMark = meter.threadCpuTime();
+		}
+
+		// last day on which an occurrence may start (one day of margin for
+		// time zone offsets)
+		long end = Math.min(windowEnd, rule.until);
+		this.lastDay = rule.localDay(end) + 1;
+		this.mask = 0;
+		this.unitDay = Long.MIN_VALUE;
+
+		if (rule.frequency == null) {
+			long start = rule.dtStart;
+			long stop = start + rule.duration;
+			this.next = inWindow(start, stop) && charge() ? new Interval(start, stop, rule.chronology) : null;
+			this.done = true;
+		} else if (rule.period > 0) {
+			this.from = rule.duration > 0 ? windowStart - rule.duration + 1 : windowStart;
+		} else {
+			// skip the units which end before the window starts
+			long firstDay = rule.localDay(Math.max(rule.dtStart, windowStart - rule.duration)) - 1;
+			this.unit = Math.max(0, rule.floorUnit(firstDay));
+		}
+	}
+
+	public boolean hasNext() {
+		if (next == null && !done) {
+			next = computeNext();
+			done = next == null;
+		}
+		return next != null;
+	}
+
+	public Interval next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Interval result = next;
+		next = null;
+		return result;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @return <code>true</code> if this iterator is bounded by a budget which
+	 *         has been exceeded, so it may have ended before the last
+	 *         occurrence within the window.
+	 */
+	public boolean isTruncated() {
+		return meter != null && meter.isTruncated();
+	}
+
+	/**
+	 * Account for an occurrence in the budget, if any.
+	 *
+	 * @return <code>false</code> if the expansion must stop.
+	 */
+	private boolean charge() {
+		return meter == null || meter.charge();
+	}
+
+	/**
+	 * Account for a step of the expansion, checking the CPU time used every
+	 * {@link ExpansionBudget#CPU_CHECK_INTERVAL} steps.
+	 *
+	 * @return <code>false</code> if the expansion must stop.
+	 */
+	private boolean step() {
+		if (meter == null || !meter.limitsCpuTime() || ++steps < ExpansionBudget.CPU_CHECK_INTERVAL) {
+			return true;
+		}
+		steps = 0;
+		return chargeCpuTime();
+	}
+
+	private boolean chargeCpuTime() {
+		long now = meter.threadCpuTime();
+		long used = now - cpuMark;
+		cpuMark = now;
+		return meter.chargeCpuTime(used);
+	}
+
+	/**
+	 * @return null, after accounting for the CPU time used since the last
+	 *         check.
+	 */
+	private Interval end() {
+		if (meter != null && meter.limitsCpuTime()) {
+			chargeCpuTime();
+		}
+		return null;
+	}
+
+	private Interval computeNext() {
+		if (rule.period > 0) {
+			return computeNextSubDaily();
+		}
+		while (true) {
+			while (mask == 0) {
+				if (!step() || !nextUnit()) {
+					return end();
+				}
+			}
+			long day = unitDay + Long.numberOfTrailingZeros(mask);
+			mask &= mask - 1;
+
+			long start = rule.startOf(day);
+			if (start > rule.until || start >= windowEnd) {
+				return end();
+			}
+			long end = start + rule.duration;
+			if (start >= rule.dtStart && inWindow(start, end)) {
+				return charge() ? new Interval(start, end, rule.chronology) : end();
+			}
+		}
+	}
+
+	private Interval computeNextSubDaily() {
+		if (!step()) {
+			return end();
+		}
+		long start = rule.firstStartFrom(from);
+		if (start == RecurrenceRule.NONE || start >= windowEnd) {
+			return end();
+		}
+		from = start + 1;
+		return charge() ? new Interval(start, start + rule.duration, rule.chronology) : end();
+	}
+
+	private boolean inWindow(long start, long end) {
+		return start < windowEnd && (end > windowStart || (start == end && start >= windowStart));
+	}
+
+	/**
+	 * Move to the next unit of candidate days (a day, a week or a month) and
+	 * compute its mask.
+	 *
+	 * @return <code>false</code> if there are no more units to expand.
+	 */
+	private boolean nextUnit() {
+		if (unitDay != Long.MIN_VALUE) {
+			unit++;
+		}
+		unitDay = rule.unitDay(unit);
+		if (unitDay > lastDay) {
+			return false;
+		}
+		mask = rule.unitMask(unit, unitDay);
+		return true;
+	}
+
+}
@@ -0,0 +1,344 @@
+package edu.upc.cpl.smeagol.client.ical;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+
+/**
+ * Search for the first time when two recurrence rules have an occurrence at
+ * the same time.
+ * <p>
+ * DAILY and WEEKLY rules without month limits are periodic: their occurrences
+ * fall on the days <code>base + offset + k * period</code>, for a fixed
+ * period (the interval, in days or weeks, times 7 when days of the week are
+ * involved) and a few offsets. For two such rules in the same time zone (or in
+ * zones without daylight saving), the occurrences on days <code>da</code>
+ * and <code>db</code> overlap only if <code>da - db</code> is in a small
+ * range, given by the times of day and the durations. Each difference and
+ * pair of offsets is a system of two congruences, solved with the Chinese
+ * remainder theorem: its solutions are a single residue class modulo the
+ * least common multiple of the periods, whose first member after the start
+ * of the window is computed directly. The answer is the earliest of them.
+ * <p>
+ * Local time arithmetic is exact except for pairs of occurrences with a
+ * daylight saving change between them; the occurrences around each change
+ * in the window are checked one by one.
+ * <p>
+ * Other rules (MONTHLY, YEARLY, month limits, different time zones with
+ * daylight saving) are expanded within the window, merging the occurrences of
+ * both rules in chronological order.
+ *
+ */
+final class RecurrenceOverlap {
+
+	private static final long MILLIS_PER_DAY = RecurrenceRule.MILLIS_PER_DAY;
+
+	/**
+	 * Limit of residue classes to solve; beyond it, the rules are expanded.
+	 */
+	private static final int MAX_CLASSES = 4096;
+
+	/**
+	 * Limit of solutions of a class rejected by the exact check (around
+	 * daylight saving changes) before giving up and expanding the rules.
+	 */
+	private static final int MAX_REJECTED = 64;
+
+	private static final long[] NO_OVERLAP = new long[0];
+
+	/**
+	 * The days of a periodic rule: <code>base + offsets[i] + k * period</code>.
+	 */
+	private static final class Pattern {
+		final long base;
+		final long period;
+		final long[] offsets;
+
+		Pattern(long base, long period, long[] offsets) {
+			this.base = base;
+			this.period = period;
+			this.offsets = offsets;
+		}
+	}
+
+	private RecurrenceOverlap() {
+	}
+
+	/**
+	 * @return the first span of time within [windowStart, windowEnd) when
+	 *         both rules have an occurrence, or null if there is none.
+	 */
+	static Interval firstOverlap(RecurrenceRule a, RecurrenceRule b, long windowStart, long windowEnd) {
+		if (a.duration == 0 || b.duration == 0) {
+			return null;
+		}
+		long from = Math.max(windowStart, Math.max(a.dtStart, b.dtStart));
+		long to = Math.min(windowEnd, Math.min(spanEnd(a), spanEnd(b)));
+		if (from >= to) {
+			return null;
+		}
+
+		long[] found = null;
+		Pattern pa = pattern(a);
+		Pattern pb = pattern(b);
+		if (pa != null && pb != null) {
+			if (a.zone.equals(b.zone)) {
+				found = solve(a, pa, b, pb, 0, from, to);
+				if (found != null && !a.zone.isFixed()) {
+					found = checkTransitions(a, b, from, to, found);
+				}
+			} else if (a.zone.isFixed() && b.zone.isFixed()) {
+				found = solve(a, pa, b, pb, a.zone.getOffset(0) - b.zone.getOffset(0), from, to);
+			}
+		}
+		if (found == null) {
+			found = sweep(a, b, from, to, from, to);
+		}
+		return found.length == 0 ? null : new Interval(found[0], found[1], a.chronology);
+	}
+
+	/**
+	 * @return the end of the last occurrence of a rule, exclusive, or
+	 *         {@code Long.MAX_VALUE} if it repeats forever.
+	 */
+	private static long spanEnd(RecurrenceRule r) {
+		if (r.frequency == null) {
+			return r.dtStart + r.duration;
+		}
+		return r.until == Long.MAX_VALUE ? Long.MAX_VALUE : r.until + r.duration + 1;
+	}
+
+	/**
+	 * @return the days of a rule as a periodic pattern, or null if the rule is
+	 *         not periodic in days.
+	 */
+	private static Pattern pattern(RecurrenceRule r) {
+		if (r.byMonth != 0 || r.byMonthDay != 0) {
+			return null;
+		}
+		if (r.frequency == Frequency.WEEKLY) {
+			long[] offsets = new long[Integer.bitCount(r.byWeekday)];
+			int i = 0;
+			for (int bits = r.byWeekday; bits != 0; bits &= bits - 1) {
+				offsets[i++] = Integer.numberOfTrailingZeros(bits);
+			}
+			return new Pattern(r.firstUnitDay, 7L * r.interval, offsets);
+		}
+		if (r.frequency == Frequency.DAILY) {
+			if (r.byWeekday == 0) {
+				return new Pattern(r.firstUnitDay, r.interval, new long[] { 0 });
+			}
+			// the days of the week repeat every 7 units (or every one if the
+			// interval is a multiple of 7)
+			int units = r.interval % 7 == 0 ? 1 : 7;
+			long[] offsets = new long[units];
+			int n = 0;
+			for (int k = 0; k < units; k++) {
+				long offset = (long) k * r.interval;
+				if ((r.byWeekday & (1 << (RecurrenceRule.weekdayOfEpochDay(r.firstUnitDay + offset) - 1))) != 0) {
+					offsets[n++] = offset;
+				}
+			}
+			long[] result = new long[n];
+			System.arraycopy(offsets, 0, result, 0, n);
+			return new Pattern(r.firstUnitDay, (long) units * r.interval, result);
+		}
+		return null;
+	}
+
+	/**
+	 * Find the first overlap of two periodic rules by solving the congruences
+	 * on their days.
+	 *
+	 * @param shift
+	 *            milliseconds to add to the local times of {@code b} to get
+	 *            local times of {@code a}
+	 * @return {start, end} of the first overlap, {@code NO_OVERLAP}, or null
+	 *         if it cannot be decided this way.
+	 */
+	private static long[] solve(RecurrenceRule a, Pattern pa, RecurrenceRule b, Pattern pb, long shift, long from,
+			long to) {
+		if (pa.offsets.length == 0 || pb.offsets.length == 0) {
+			return NO_OVERLAP;
+		}
+		// occurrences on days da and db overlap if (da - db) * day is in
+		// (mb - ma - duration(a), mb - ma + duration(b))
+		long gap = b.millisOfDay + shift - a.millisOfDay;
+		long minDelta = Math.floorDiv(gap - a.duration, MILLIS_PER_DAY) + 1;
+		long maxDelta = -Math.floorDiv(-(gap + b.duration), MILLIS_PER_DAY) - 1;
+		if (minDelta > maxDelta) {
+			return NO_OVERLAP;
+		}
+		if ((maxDelta - minDelta + 1) * pa.offsets.length * pb.offsets.length > MAX_CLASSES) {
+			return null;
+		}
+
+		long g = gcd(pa.period, pb.period);
+		long lcm = pa.period / g * pb.period;
+		long inverse = inverse(pa.period / g % (pb.period / g), pb.period / g);
+
+		// bounds of the days of occurrences which may overlap the window
+		long loA = Math.max(a.startDay, a.localDay(from - a.duration) - 1);
+		long loB = Math.max(b.startDay, b.localDay(from - b.duration) - 1);
+		long hiA = Math.min(a.untilDay, a.localDay(to) + 1);
+		long hiB = Math.min(b.untilDay, b.localDay(to) + 1);
+
+		long[] best = NO_OVERLAP;
+		for (long delta = minDelta; delta <= maxDelta; delta++) {
+			long lo = Math.max(loA, loB + delta);
+			long hi = Math.min(hiA, hiB + delta);
+			if (lo > hi) {
+				continue;
+			}
+			for (long oa : pa.offsets) {
+				long ra = Math.floorMod(pa.base + oa, pa.period);
+				for (long ob : pb.offsets) {
+					long rb = Math.floorMod(pb.base + ob + delta, pb.period);
+					if (Math.floorMod(rb - ra, g) != 0) {
+						continue;
+					}
+					// da = ra + pa.period * t, with t = (rb - ra) / g * inverse
+					// (mod pb.period / g)
+					long t = Math.floorMod((rb - ra) / g % (pb.period / g) * inverse, pb.period / g);
+					long residue = ra + pa.period * t;
+					long da = lo + Math.floorMod(residue - lo, lcm);
+
+					for (int rejected = 0; da <= hi; da += lcm) {
+						if (best.length > 0 && a.startOf(da) >= best[0]) {
+							break;
+						}
+						long[] overlap = check(a, da, b, da - delta, from, to);
+						if (overlap == null) {
+							break;
+						}
+						if (overlap.length > 0) {
+							if (best.length == 0 || overlap[0] < best[0]) {
+								best = overlap;
+							}
+							break;
+						}
+						if (++rejected > MAX_REJECTED) {
+							return null;
+						}
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Check exactly whether the occurrences of two rules on given days
+	 * overlap within the window.
+	 *
+	 * @return {start, end} of the overlap, {@code NO_OVERLAP} if they do not
+	 *         overlap, or null if no later occurrences can overlap.
+	 */
+	private static long[] check(RecurrenceRule a, long da, RecurrenceRule b, long db, long from, long to) {
+		long sa = a.startOf(da);
+		long sb = b.startOf(db);
+		if (sa > a.until || sb > b.until || Math.max(sa, sb) >= to) {
+			return null;
+		}
+		if (sa < a.dtStart || sb < b.dtStart) {
+			return NO_OVERLAP;
+		}
+		long start = Math.max(from, Math.max(sa, sb));
+		long end = Math.min(to, Math.min(sa + a.duration, sb + b.duration));
+		return start < end ? new long[] { start, end } : NO_OVERLAP;
+	}
+
+	/**
+	 * Check the occurrences around the daylight saving changes before
+	 * {@code found}, where local time arithmetic is not exact.
+	 */
+	private static long[] checkTransitions(RecurrenceRule a, RecurrenceRule b, long from, long to, long[] found) {
+		DateTimeZone zone = a.zone;
+		long margin = Math.max(a.duration, b.duration) + MILLIS_PER_DAY;
+		long limit = found.length > 0 ? found[0] : to;
+		long transition = zone.nextTransition(from - margin);
+		while (transition > from - margin && transition - margin < limit) {
+			long[] overlap = sweep(a, b, Math.max(from, transition - margin), Math.min(to, transition + margin), from,
+					to);
+			if (overlap.length > 0 && (found.length == 0 || overlap[0] < found[0])) {
+				found = overlap;
+				limit = found[0];
+			}
+			long next = zone.nextTransition(transition);
+			if (next <= transition) {
+				break;
+			}
+			transition = next;
+		}
+		return found;
+	}
+
+	/**
+	 * Merge the occurrences of both rules which overlap [start, end) in
+	 * chronological order, looking for the first pair which overlaps within
+	 * [from, to).
+	 */
+	private static long[] sweep(RecurrenceRule a, RecurrenceRule b, long start, long end, long from, long to) {
+		if (start >= end) {
+			return NO_OVERLAP;
+		}
+		Interval window = new Interval(start, end);
+		OccurrenceIterator ia = new OccurrenceIterator(a, window, null);
+		OccurrenceIterator ib = new OccurrenceIterator(b, window, null);
+		if (!ia.hasNext() || !ib.hasNext()) {
+			return NO_OVERLAP;
+		}
+		Interval oa = ia.next();
+		Interval ob = ib.next();
+		while (true) {
+			long s = Math.max(from, Math.max(oa.getStartMillis(), ob.getStartMillis()));
+			long e = Math.min(to, Math.min(oa.getEndMillis(), ob.getEndMillis()));
+			if (s < e) {
+				return new long[] { s, e };
+			}
+			// the occurrence which ends first cannot overlap any later one
+			if (oa.getEndMillis() <= ob.getEndMillis()) {
+				if (!ia.hasNext()) {
+					return NO_OVERLAP;
+				}
+				oa = ia.next();
+			} else {
+				if (!ib.hasNext()) {
+					return NO_OVERLAP;
+				}
+				ob = ib.next();
+			}
+		}
+	}
+
+	private static long gcd(long x, long y) {
+		while (y != 0) {
+			long r = x % y;
+			x = y;
+			y = r;
+		}
+		return x;
+	}
+
+	/**
+	 * @return the inverse of {@code x} modulo {@code m}, where both are
+	 *         coprime.
+	 */
+	private static long inverse(long x, long m) {
+		if (m == 1) {
+			return 0;
+		}
+		long r0 = m, r1 = Math.floorMod(x, m);
+		long t0 = 0, t1 = 1;
+		while (r1 != 0) {
+			long q = r0 / r1;
+			long r = r0 - q * r1;
+			r0 = r1;
+			r1 = r;
+			long t = t0 - q * t1;
+			t0 = t1;
+			t1 = t;
+		}
+		return Math.floorMod(t0, m);
+	}
+
+}
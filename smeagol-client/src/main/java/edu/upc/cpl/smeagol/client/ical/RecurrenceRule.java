@@ -0,0 +1,921 @@
+package edu.upc.cpl.smeagol.client.ical;
+
+import org.joda.time.Chronology;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+import org.joda.time.chrono.ISOChronology;
+
+import edu.upc.cpl.smeagol.client.domain.Booking;
+
+/**
+ * The recurrence rule of a {@link Booking}, compiled to primitive masks for
+ * arithmetic on its occurrences.
+ * <p>
+ * The rule is interpreted as described in {@link OccurrenceIterator}. Its
+ * occurrences are grouped in units: days for DAILY rules, weeks (starting on
+ * Monday) for WEEKLY rules, and months for MONTHLY and YEARLY rules. Only
+ * units in periods which are a multiple of {@code interval} away from the
+ * first one are numbered, so the unit containing any day is found with a
+ * division, and the days of the unit which are occurrences are computed as a
+ * bit mask, without looking at any other unit.
+ * <p>
+ * This makes {@link #nextOccurrenceAfter(long)} and
+ * {@link #previousOccurrenceBefore(long)} independent of how far the instant
+ * is from {@code dtstart}: they look at the units around it only (one or two
+ * for WEEKLY rules, up to a week of them for DAILY rules with
+ * {@code by_day}, up to a year of them when limited by {@code by_month} or
+ * {@code by_day_month}). {@link #countOccurrences(long, long)} is computed in
+ * closed form for DAILY and WEEKLY rules without month limits, and by adding
+ * up the masks of the units in the window otherwise.
+ * <p>
+ * SECONDLY, MINUTELY and HOURLY rules have a fixed period (the interval
+ * times a second, a minute or an hour of elapsed time), so their occurrences
+ * are found with a division. Their limits ({@code by_day}, {@code by_month}
+ * and {@code by_day_month}) select whole days, which are looked up as the
+ * units of a DAILY rule.
+ * <p>
+ * Rules are immutable snapshots: later changes to the booking do not affect
+ * them.
+ *
+ */
+public final class RecurrenceRule {
+
+	static final long MILLIS_PER_DAY = 86400000L;
+	static final Chronology LOCAL = ISOChronology.getInstanceUTC();
+
+	/**
+	 * Bits of {@link ShortBitSet#forMonthDays()} masks are offset by this value.
+	 */
+	static final int MONTH_DAY_OFFSET = 31;
+
+	/**
+	 * Days in the 400 year cycle of the Gregorian calendar. Calendars (and days
+	 * of the week) repeat after it, so a rule which has no occurrences in as
+	 * many units will never have any more.
+	 */
+	private static final int MAX_EMPTY_UNITS = 146097;
+
+	static final long NONE = Long.MIN_VALUE;
+
+	final Frequency frequency;
+	final int interval;
+	final long dtStart;
+	final long duration;
+	final long until;
+	final long period; // milliseconds between occurrences of sub-daily rules, 0 otherwise
+	final long lastIndex; // of the last occurrence of sub-daily rules
+	final DateTimeZone zone;
+	final Chronology chronology;
+	final int millisOfDay;
+	final long startDay;
+	final long untilDay; // last day an occurrence may start on, with margin
+	final int byMonth; // bit m set for month m, 0 if no limit
+	final long byMonthDay; // ShortBitSet mask, 0 if no limit
+	final int byWeekday; // bit w-1 set for ISO weekday w
+	final short[] byOrdinal; // DayOfWeekSet codes
+	final boolean hasByDay;
+
+	// first unit of the rule: its day for DAILY (and the day units of
+	// sub-daily rules), its monday for WEEKLY, the first of its month for
+	// MONTHLY and YEARLY
+	final long firstUnitDay;
+	final int unitInterval; // units between numbered units
+	final int firstYear;
+	final int firstMonth;
+
+	private RecurrenceRule(Frequency frequency, int interval, long dtStart, long dtEnd, long until,
+			Chronology chronology, int weekdayMask, short[] ordinalCodes, long monthDayBits, long monthBits) {
+		this.frequency = frequency;
+		this.interval = Math.max(1, interval);
+		this.dtStart = dtStart;
+		this.duration = Math.max(0, dtEnd - dtStart);
+		this.until = until;
+		this.period = frequency == null ? 0 : subDailyPeriod(frequency) * interval;
+		this.lastIndex = period == 0 || until == Long.MAX_VALUE ? Long.MAX_VALUE : Math.floorDiv(until - dtStart,
+				period);
+		this.unitInterval = period == 0 ? interval : 1;
+		this.chronology = chronology;
+		this.zone = chronology.getZone();
+
+		long localStart = zone.convertUTCToLocal(dtStart);
+		this.startDay = Math.floorDiv(localStart, MILLIS_PER_DAY);
+		this.untilDay = until == Long.MAX_VALUE ? Long.MAX_VALUE : localDay(until) + 1;
+		this.millisOfDay = (int) (localStart - startDay * MILLIS_PER_DAY);
+		int startYear = LOCAL.year().get(localStart);
+		int startMonth = LOCAL.monthOfYear().get(localStart);
+		int startDayOfMonth = LOCAL.dayOfMonth().get(localStart);
+
+		int months = (int) monthBits << 1;
+		long monthDays = monthDayBits;
+		int weekdays = weekdayMask;
+		short[] ordinals = ordinalCodes.clone();
+
+		if (frequency != null && frequency.compareTo(Frequency.WEEKLY) <= 0) {
+			// ordinals only make sense within months and years
+			for (short code : ordinals) {
+				weekdays |= 1 << (DayOfWeekSet.weekdayOf(code) - 1);
+			}
+			ordinals = new short[0];
+		}
+		boolean byDay = weekdays != 0 || ordinals.length > 0;
+
+		// rule parts not given are taken from dtstart
+		if (frequency == Frequency.WEEKLY && !byDay) {
+			weekdays = 1 << (weekdayOfEpochDay(startDay) - 1);
+			byDay = true;
+		} else if ((frequency == Frequency.MONTHLY || frequency == Frequency.YEARLY) && !byDay && monthDays == 0) {
+			monthDays = 1L << (startDayOfMonth + MONTH_DAY_OFFSET);
+			if (frequency == Frequency.YEARLY && months == 0) {
+				months = 1 << startMonth;
+			}
+		}
+
+		this.byMonth = months;
+		this.byMonthDay = monthDays;
+		this.byWeekday = weekdays;
+		this.byOrdinal = ordinals;
+		this.hasByDay = byDay;
+
+		this.firstYear = startYear;
+		this.firstMonth = startMonth;
+		if (frequency == Frequency.WEEKLY) {
+			this.firstUnitDay = startDay - weekdayOfEpochDay(startDay) + 1;
+		} else if (frequency == Frequency.MONTHLY || frequency == Frequency.YEARLY) {
+			this.firstUnitDay = startDay - startDayOfMonth + 1;
+		} else {
+			this.firstUnitDay = startDay;
+		}
+	}
+
+	/**
+	 * Compile the recurrence rule of a booking.
+	 *
+	 * @param booking
+	 *            the booking. Not null.
+	 * @throws IllegalArgumentException
+	 *             if {@code booking} is null
+	 */
+	public static RecurrenceRule of(Booking booking) {
+		if (booking == null) {
+			throw new IllegalArgumentException("booking cannot be null");
+		}
+		DayOfWeekSet byDay = booking.getByDay();
+		return new RecurrenceRule(booking.getFrequency(), booking.getInterval() == null ? 1 : booking.getInterval(),
+				booking.getDtStartMillis(), booking.getDtEndMillis(), booking.getUntilMillis(), booking.getChronology(),
+				byDay == null ? 0 : byDay.getWeekdayMask(), byDay == null ? new short[0] : byDay.getOrdinalCodes(),
+				booking.getByDayOfMonth() == null ? 0 : booking.getByDayOfMonth().getBits(),
+				booking.getByMonth() == null ? 0 : booking.getByMonth().getBits());
+	}
+
+	/**
+	 * Compile a recurrence rule from its parts, as stored in the columns of a
+	 * {@link edu.upc.cpl.smeagol.client.domain.BookingTable}, without
+	 * building a booking.
+	 *
+	 * @param frequency
+	 *            the frequency, or null for a simple booking.
+	 * @param interval
+	 *            the interval. Values below 1 are taken as 1.
+	 * @param dtStart
+	 *            the start of the first occurrence, in milliseconds.
+	 * @param dtEnd
+	 *            the end of the first occurrence, in milliseconds.
+	 * @param until
+	 *            the end of the recurrence, in milliseconds, or
+	 *            {@link Long#MAX_VALUE} if it repeats forever.
+	 * @param chronology
+	 *            the chronology of {@code dtstart}. Not null.
+	 * @param byDay
+	 *            the weekday mask of {@code by_day} (see
+	 *            {@link DayOfWeekSet#getWeekdayMask()}), or 0.
+	 * @param byDayOrdinals
+	 *            the ordinal codes of {@code by_day} (see
+	 *            {@link DayOfWeekSet#getOrdinalCodes()}). Not null.
+	 * @param byDayOfMonth
+	 *            the bits of {@code by_day_month} (see
+	 *            {@link ShortBitSet#getBits()}), or 0.
+	 * @param byMonth
+	 *            the bits of {@code by_month}, or 0.
+	 * @throws IllegalArgumentException
+	 *             if {@code chronology} or {@code byDayOrdinals} is null
+	 */
+	public static RecurrenceRule of(Frequency frequency, int interval, long dtStart, long dtEnd, long until,
+			Chronology chronology, int byDay, short[] byDayOrdinals, long byDayOfMonth, long byMonth) {
+		if (chronology == null) {
+			throw new IllegalArgumentException("chronology cannot be null");
+		}
+		if (byDayOrdinals == null) {
+			throw new IllegalArgumentException("byDayOrdinals cannot be null");
+		}
+		return new RecurrenceRule(frequency, interval, dtStart, dtEnd, until, chronology, byDay, byDayOrdinals,
+				byDayOfMonth, byMonth);
+	}
+
+	/**
+	 * Iterate over the occurrences of the rule within a window.
+	 *
+	 * @param window
+	 *            the window of time of interest. Not null.
+	 * @throws IllegalArgumentException
+	 *             if {@code window} is null
+	 * @see OccurrenceIterator
+	 */
+	public OccurrenceIterator iterateOccurrences(Interval window) {
+		return new OccurrenceIterator(this, window, null);
+	}
+
+	/**
+	 * @return the milliseconds between the periods of a SECONDLY, MINUTELY or
+	 *         HOURLY rule with an interval of one, or 0 for other frequencies.
+	 */
+	private static long subDailyPeriod(Frequency frequency) {
+		switch (frequency) {
+		case SECONDLY:
+			return 1000;
+		case MINUTELY:
+			return 60000;
+		case HOURLY:
+			return 3600000;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * @return the first occurrence starting strictly after {@code instant}, or
+	 *         null if there is none.
+	 */
+	public Interval nextOccurrenceAfter(long instant) {
+		if (instant == Long.MAX_VALUE) {
+			return null;
+		}
+		if (frequency == null) {
+			return dtStart > instant ? occurrence(dtStart) : null;
+		}
+		if (period > 0) {
+			long start = firstStartFrom(instant + 1);
+			return start == NONE ? null : occurrence(start);
+		}
+		long day = firstDayFrom(instant + 1);
+		return day == NONE ? null : occurrence(startOf(day));
+	}
+
+	/**
+	 * @return the last occurrence starting strictly before {@code instant}, or
+	 *         null if there is none.
+	 */
+	public Interval previousOccurrenceBefore(long instant) {
+		if (frequency == null) {
+			return dtStart < instant ? occurrence(dtStart) : null;
+		}
+		if (period > 0) {
+			long start = lastStartBefore(instant);
+			return start == NONE ? null : occurrence(start);
+		}
+		long day = lastDayBefore(instant);
+		return day == NONE ? null : occurrence(startOf(day));
+	}
+
+	/**
+	 * Count the occurrences which overlap a window of time, with the same
+	 * criteria as {@link OccurrenceIterator}.
+	 *
+	 * @param windowStart
+	 *            the start of the window, inclusive
+	 * @param windowEnd
+	 *            the end of the window, exclusive
+	 */
+	public long countOccurrences(long windowStart, long windowEnd) {
+		if (frequency == null) {
+			long end = dtStart + duration;
+			return dtStart < windowEnd && (end > windowStart || (duration == 0 && dtStart >= windowStart)) ? 1 : 0;
+		}
+		// occurrences overlap the window if they start in [lo, windowEnd)
+		long lo = duration > 0 ? windowStart - duration + 1 : windowStart;
+		if (period > 0) {
+			return countStarts(lo, windowEnd);
+		}
+		long first = firstDayFrom(lo);
+		long last = lastDayBefore(windowEnd);
+		if (first == NONE || last == NONE || first > last) {
+			return 0;
+		}
+		return countDays(first, last);
+	}
+
+	/**
+	 * Estimate the number of occurrences of a booking which overlap a window of
+	 * time, in constant time and without expanding (or even compiling) its
+	 * rule. The estimate is an upper bound: it counts the recurrence periods
+	 * which may start within the window, times the most occurrences a period
+	 * may have, ignoring the rule parts which only limit them. It accepts any
+	 * frequency, so it can be used to refuse expensive queries on sub-daily
+	 * rules too.
+	 *
+	 * @param booking
+	 *            the booking. Not null.
+	 * @param windowStart
+	 *            the start of the window, inclusive
+	 * @param windowEnd
+	 *            the end of the window, exclusive
+	 * @return an upper bound of the number of occurrences, or
+	 *         {@link Long#MAX_VALUE} if it overflows.
+	 */
+	public static long estimateOccurrences(Booking booking, long windowStart, long windowEnd) {
+		if (booking == null) {
+			throw new IllegalArgumentException("booking cannot be null");
+		}
+		long start = booking.getDtStartMillis();
+		long duration = Math.max(0, booking.getDtEndMillis() - start);
+		Frequency frequency = booking.getFrequency();
+		if (frequency == null) {
+			return start < windowEnd && (start + duration > windowStart || (duration == 0 && start >= windowStart)) ? 1
+					: 0;
+		}
+		// occurrences which overlap the window start in [from, to)
+		long from = Math.max(start, windowStart - duration);
+		long until = booking.getUntilMillis();
+		long to = until == Long.MAX_VALUE ? windowEnd : Math.min(windowEnd, until + 1);
+		if (from >= to) {
+			return 0;
+		}
+		long interval = booking.getInterval() == null ? 1 : Math.max(1, booking.getInterval().intValue());
+		long periods = (to - from) / (shortestUnit(frequency) * interval) + 2;
+
+		int months = booking.getByMonth() == null || booking.getByMonth().isEmpty() ? 12 : booking.getByMonth()
+				.size();
+		int monthDays = booking.getByDayOfMonth() == null ? 0 : booking.getByDayOfMonth().size();
+		DayOfWeekSet byDay = booking.getByDay();
+		int weekdays = byDay == null ? 0 : Integer.bitCount(byDay.getWeekdayMask());
+		int ordinals = byDay == null ? 0 : byDay.getOrdinalCodes().length;
+
+		long perPeriod;
+		switch (frequency) {
+		case WEEKLY:
+			perPeriod = Math.max(1, Math.min(7, weekdays + ordinals));
+			break;
+		case MONTHLY:
+			perPeriod = daysPerMonth(monthDays, weekdays, ordinals);
+			break;
+		case YEARLY:
+			if (monthDays == 0 && weekdays == 0 && ordinals == 0) {
+				perPeriod = booking.getByMonth() == null || booking.getByMonth().isEmpty() ? 1 : months;
+			} else {
+				perPeriod = Math.min(366, months * daysPerMonth(monthDays, weekdays, ordinals));
+			}
+			break;
+		default:
+			perPeriod = 1;
+		}
+		return periods > Long.MAX_VALUE / perPeriod ? Long.MAX_VALUE : periods * perPeriod;
+	}
+
+	/**
+	 * @return the shortest length of a recurrence period, in milliseconds
+	 *         (days may be an hour shorter when daylight saving time starts).
+	 */
+	private static long shortestUnit(Frequency frequency) {
+		switch (frequency) {
+		case SECONDLY:
+			return 1000;
+		case MINUTELY:
+			return 60000;
+		case HOURLY:
+			return 3600000;
+		case DAILY:
+			return MILLIS_PER_DAY - 3600000;
+		case WEEKLY:
+			return 7 * MILLIS_PER_DAY - 3600000;
+		case MONTHLY:
+			return 28 * MILLIS_PER_DAY - 3600000;
+		default:
+			return 365 * MILLIS_PER_DAY - 3600000;
+		}
+	}
+
+	/**
+	 * @return the most occurrences in a month of a rule with the given number
+	 *         of {@code by_day_month} days, {@code by_day} weekdays and
+	 *         ordinal days.
+	 */
+	private static int daysPerMonth(int monthDays, int weekdays, int ordinals) {
+		int byDay = weekdays * 5 + ordinals;
+		if (monthDays == 0) {
+			return byDay == 0 ? 1 : Math.min(31, byDay);
+		}
+		return byDay == 0 ? monthDays : Math.min(monthDays, byDay);
+	}
+
+	/**
+	 * Find the first span of time, within a window, when both this rule and
+	 * {@code other} have an occurrence. Zero length occurrences never
+	 * overlap.
+	 * <p>
+	 * DAILY and WEEKLY rules without month limits are solved with arithmetic
+	 * on their periods, whatever the length of the window; other rules are
+	 * expanded within the window (see {@link RecurrenceOverlap}).
+	 *
+	 * @param other
+	 *            the other rule. Not null.
+	 * @param windowStart
+	 *            the start of the window, inclusive
+	 * @param windowEnd
+	 *            the end of the window, exclusive
+	 * @return the intersection of the first overlapping occurrences, clipped
+	 *         to the window, or null if they never overlap within it.
+	 */
+	public Interval firstOverlap(RecurrenceRule other, long windowStart, long windowEnd) {
+		if (other == null) {
+			throw new IllegalArgumentException("other cannot be null");
+		}
+		return RecurrenceOverlap.firstOverlap(this, other, windowStart, windowEnd);
+	}
+
+	private Interval occurrence(long start) {
+		return new Interval(start, start + duration, chronology);
+	}
+
+	long localDay(long instant) {
+		return Math.floorDiv(zone.convertUTCToLocal(instant), MILLIS_PER_DAY);
+	}
+
+	/**
+	 * @return the start of the occurrence on a local day.
+	 */
+	long startOf(long day) {
+		return zone.convertLocalToUTC(day * MILLIS_PER_DAY + millisOfDay, false);
+	}
+
+	/**
+	 * @return the first day with an occurrence starting at or after
+	 *         {@code instant}, or {@code NONE}.
+	 */
+	private long firstDayFrom(long instant) {
+		long from = Math.max(instant, dtStart);
+		long day = nextDay(localDay(from) - 1);
+		// time zone offsets move starts less than a day
+		while (day != NONE && startOf(day) < from) {
+			day = nextDay(day + 1);
+		}
+		return day == NONE || startOf(day) > until ? NONE : day;
+	}
+
+	/**
+	 * @return the last day with an occurrence starting before
+	 *         {@code instant}, or {@code NONE}.
+	 */
+	private long lastDayBefore(long instant) {
+		long limit = until == Long.MAX_VALUE ? instant : Math.min(instant, until + 1);
+		if (limit <= dtStart) {
+			return NONE;
+		}
+		long day = previousDay(localDay(limit) + 1);
+		while (day != NONE && startOf(day) >= limit) {
+			day = previousDay(day - 1);
+		}
+		return day == NONE || startOf(day) < dtStart ? NONE : day;
+	}
+
+	/**
+	 * @return the start of the local day {@code day}.
+	 */
+	private long startOfDay(long day) {
+		return zone.convertLocalToUTC(day * MILLIS_PER_DAY, false);
+	}
+
+	/**
+	 * @return <code>true</code> if the occurrences of a sub-daily rule are
+	 *         limited to some days.
+	 */
+	private boolean limitsDays() {
+		return byWeekday != 0 || byMonth != 0 || byMonthDay != 0;
+	}
+
+	/**
+	 * @return the start of the first occurrence of a sub-daily rule starting at
+	 *         or after {@code instant}, or {@code NONE}.
+	 */
+	long firstStartFrom(long instant) {
+		long from = Math.max(instant, dtStart);
+		for (int n = 0; n < MAX_EMPTY_UNITS; n++) {
+			long index = -Math.floorDiv(dtStart - from, period);
+			if (index > lastIndex) {
+				return NONE;
+			}
+			long start = dtStart + index * period;
+			if (!limitsDays()) {
+				return start;
+			}
+			long day = localDay(start);
+			long next = nextDay(day);
+			if (next == day) {
+				return start;
+			} else if (next == NONE) {
+				return NONE;
+			}
+			from = startOfDay(next);
+		}
+		return NONE;
+	}
+
+	/**
+	 * @return the start of the last occurrence of a sub-daily rule starting
+	 *         before {@code instant}, or {@code NONE}.
+	 */
+	private long lastStartBefore(long instant) {
+		long to = until == Long.MAX_VALUE ? instant : Math.min(instant, until + 1);
+		for (int n = 0; n < MAX_EMPTY_UNITS && to > dtStart; n++) {
+			long start = dtStart + Math.floorDiv(to - 1 - dtStart, period) * period;
+			if (!limitsDays()) {
+				return start;
+			}
+			long day = localDay(start);
+			long previous = previousDay(day);
+			if (previous == day) {
+				return start;
+			} else if (previous == NONE) {
+				return NONE;
+			}
+			to = startOfDay(previous + 1);
+		}
+		return NONE;
+	}
+
+	/**
+	 * @return the number of occurrences of a sub-daily rule starting in [from,
+	 *         to).
+	 */
+	private long countStarts(long from, long to) {
+		if (!limitsDays()) {
+			return countIndexes(from, to);
+		}
+		long count = 0;
+		for (long day = nextDay(localDay(Math.max(from, dtStart))); day != NONE; day = nextDay(day + 1)) {
+			long dayStart = startOfDay(day);
+			if (dayStart >= to) {
+				break;
+			}
+			count += countIndexes(Math.max(from, dayStart), Math.min(to, startOfDay(day + 1)));
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of periods of a sub-daily rule starting in [from,
+	 *         to), ignoring its limits.
+	 */
+	private long countIndexes(long from, long to) {
+		long first = -Math.floorDiv(dtStart - Math.max(from, dtStart), period);
+		long limit = until == Long.MAX_VALUE ? to : Math.min(to, until + 1);
+		if (limit <= dtStart) {
+			return 0;
+		}
+		long last = Math.min(lastIndex, Math.floorDiv(limit - 1 - dtStart, period));
+		return Math.max(0, last - first + 1);
+	}
+
+	/**
+	 * @return the first day with an occurrence on or after {@code day}, or
+	 *         {@code NONE}.
+	 */
+	long nextDay(long day) {
+		day = Math.max(day, startDay);
+		long unit = Math.max(0, floorUnit(day));
+		for (int n = 0; n < MAX_EMPTY_UNITS; n++, unit++) {
+			long first = unitDay(unit);
+			if (first > untilDay) {
+				return NONE;
+			}
+			long mask = unitMask(unit, first);
+			if (day > first) {
+				mask = day - first >= 64 ? 0 : mask & (-1L << (day - first));
+			}
+			if (mask != 0) {
+				return first + Long.numberOfTrailingZeros(mask);
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * @return the last day with an occurrence on or before {@code day}, or
+	 *         {@code NONE}.
+	 */
+	long previousDay(long day) {
+		if (day < startDay) {
+			return NONE;
+		}
+		long unit = floorUnit(day);
+		for (int n = 0; n < MAX_EMPTY_UNITS && unit >= 0; n++, unit--) {
+			long first = unitDay(unit);
+			long mask = unitMask(unit, first);
+			if (day - first < 63) {
+				mask &= (2L << (day - first)) - 1;
+			}
+			if (first < startDay) {
+				mask = startDay - first >= 64 ? 0 : mask & (-1L << (startDay - first));
+			}
+			if (mask != 0) {
+				return first + 63 - Long.numberOfLeadingZeros(mask);
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * @return the number of days with an occurrence in [from .. to], where
+	 *         {@code from} is not before the start day.
+	 */
+	long countDays(long from, long to) {
+		if (byMonth == 0 && byMonthDay == 0 && (frequency == Frequency.DAILY || frequency == Frequency.WEEKLY)) {
+			return countUpTo(to) - countUpTo(from - 1);
+		}
+		long count = 0;
+		for (long unit = Math.max(0, floorUnit(from));; unit++) {
+			long first = unitDay(unit);
+			if (first > to) {
+				return count;
+			}
+			long mask = unitMask(unit, first);
+			if (from > first) {
+				mask = from - first >= 64 ? 0 : mask & (-1L << (from - first));
+			}
+			if (to - first < 63) {
+				mask &= (2L << (to - first)) - 1;
+			}
+			count += Long.bitCount(mask);
+		}
+	}
+
+	/**
+	 * @return the number of days with an occurrence from the first unit to
+	 *         {@code day}, for DAILY and WEEKLY rules without month limits.
+	 */
+	private long countUpTo(long day) {
+		if (day < firstUnitDay) {
+			return 0;
+		}
+		long offset = day - firstUnitDay;
+		if (frequency == Frequency.WEEKLY) {
+			long week = offset / 7;
+			int perWeek = Integer.bitCount(byWeekday);
+			long count = (week + interval - 1) / interval * perWeek;
+			if (week % interval == 0) {
+				count += Integer.bitCount(byWeekday & ((2 << (offset % 7)) - 1));
+			}
+			return count;
+		}
+		long units = offset / interval + 1;
+		if (byWeekday == 0) {
+			return units;
+		}
+		// the days of the week of the units repeat every 7 units (or every one
+		// if the interval is a multiple of 7)
+		int cycle = interval % 7 == 0 ? 1 : 7;
+		int perCycle = 0;
+		int partial = 0;
+		int remainder = (int) (units % cycle);
+		for (int i = 0; i < cycle; i++) {
+			if ((byWeekday & (1 << (weekdayOfEpochDay(firstUnitDay + (long) i * interval) - 1))) != 0) {
+				perCycle++;
+				if (i < remainder) {
+					partial++;
+				}
+			}
+		}
+		return units / cycle * perCycle + partial;
+	}
+
+	/**
+	 * @return the number of the last unit starting on or before {@code day}
+	 *         (negative before the first unit).
+	 */
+	long floorUnit(long day) {
+		switch (frequency) {
+		case WEEKLY:
+			return Math.floorDiv(Math.floorDiv(day - firstUnitDay, 7L), (long) interval);
+		case MONTHLY:
+			return Math.floorDiv(monthIndex(day) - (firstYear * 12L + firstMonth - 1), (long) interval);
+		case YEARLY: {
+			long local = day * MILLIS_PER_DAY;
+			long years = LOCAL.year().get(local) - firstYear;
+			long unit = Math.floorDiv(years, (long) interval);
+			if (years - unit * interval != 0) {
+				// a year without occurrences: the last month of the previous one
+				return unit * 12 + 11;
+			}
+			return unit * 12 + LOCAL.monthOfYear().get(local) - 1;
+		}
+		default:
+			return Math.floorDiv(day - firstUnitDay, (long) unitInterval);
+		}
+	}
+
+	/**
+	 * @return the first day of a unit.
+	 */
+	long unitDay(long unit) {
+		switch (frequency) {
+		case WEEKLY:
+			return firstUnitDay + unit * interval * 7;
+		case MONTHLY: {
+			long index = firstYear * 12L + firstMonth - 1 + unit * interval;
+			return epochDay((int) Math.floorDiv(index, 12L), (int) Math.floorMod(index, 12L) + 1, 1);
+		}
+		case YEARLY:
+			return epochDay(firstYear + (int) (Math.floorDiv(unit, 12L) * interval), (int) Math.floorMod(unit, 12L) + 1,
+					1);
+		default:
+			return firstUnitDay + unit * unitInterval;
+		}
+	}
+
+	/**
+	 * Compute the days of a unit which are occurrences, as a mask where bit
+	 * <code>i</code> stands for day <code>first + i</code>. Occurrences
+	 * before {@code dtstart} or after {@code until} are not excluded.
+	 *
+	 * @param first
+	 *            the first day of the unit, as returned by
+	 *            {@link #unitDay(long)}
+	 */
+	long unitMask(long unit, long first) {
+		switch (frequency) {
+		case SECONDLY:
+		case MINUTELY:
+		case HOURLY:
+		case DAILY:
+			return matchesLimits(first, byWeekday) ? 1 : 0;
+
+		case WEEKLY: {
+			long mask = byWeekday;
+			if (byMonth != 0 || byMonthDay != 0) {
+				for (long m = mask; m != 0; m &= m - 1) {
+					int i = Long.numberOfTrailingZeros(m);
+					if (!matchesLimits(first + i, 0)) {
+						mask &= ~(1L << i);
+					}
+				}
+			}
+			return mask;
+		}
+
+		case MONTHLY: {
+			long index = firstYear * 12L + firstMonth - 1 + unit * interval;
+			int y = (int) Math.floorDiv(index, 12L);
+			int m = (int) Math.floorMod(index, 12L) + 1;
+			return (byMonth == 0 || (byMonth & (1 << m)) != 0) ? monthMask(y, m, first, true) : 0;
+		}
+
+		case YEARLY: {
+			int y = firstYear + (int) (Math.floorDiv(unit, 12L) * interval);
+			int m = (int) Math.floorMod(unit, 12L) + 1;
+			return (byMonth == 0 || (byMonth & (1 << m)) != 0) ? monthMask(y, m, first, byMonth != 0) : 0;
+		}
+
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Check a single day against the month and day of month limits, and the
+	 * days of the week in {@code weekdays} (if any).
+	 */
+	private boolean matchesLimits(long day, int weekdays) {
+		if (weekdays != 0 && (weekdays & (1 << (weekdayOfEpochDay(day) - 1))) == 0) {
+			return false;
+		}
+		if (byMonth == 0 && byMonthDay == 0) {
+			return true;
+		}
+		long local = day * MILLIS_PER_DAY;
+		int y = LOCAL.year().get(local);
+		int m = LOCAL.monthOfYear().get(local);
+		if (byMonth != 0 && (byMonth & (1 << m)) == 0) {
+			return false;
+		}
+		if (byMonthDay != 0) {
+			int d = LOCAL.dayOfMonth().get(local);
+			int fromEnd = d - lengthOfMonth(y, m) - 1;
+			return (byMonthDay & (1L << (d + MONTH_DAY_OFFSET))) != 0
+					|| (byMonthDay & (1L << (fromEnd + MONTH_DAY_OFFSET))) != 0;
+		}
+		return true;
+	}
+
+	/**
+	 * Compute the days of a month which are occurrences, as a mask where bit
+	 * <code>i</code> stands for day <code>i + 1</code>.
+	 *
+	 * @param first
+	 *            the epoch day of the first of the month
+	 * @param monthScope
+	 *            whether ordinal days refer to the month (otherwise, to the
+	 *            year)
+	 */
+	private long monthMask(int y, int m, long first, boolean monthScope) {
+		int len = lengthOfMonth(y, m);
+		long mask = (1L << len) - 1;
+
+		if (byMonthDay != 0) {
+			long days = 0;
+			for (long bits = byMonthDay; bits != 0; bits &= bits - 1) {
+				int v = Long.numberOfTrailingZeros(bits) - MONTH_DAY_OFFSET;
+				int d = v > 0 ? v : len + v + 1;
+				if (d >= 1 && d <= len) {
+					days |= 1L << (d - 1);
+				}
+			}
+			mask &= days;
+		}
+
+		if (hasByDay) {
+			int firstWeekday = weekdayOfEpochDay(first);
+			long days = 0;
+			for (int bits = byWeekday; bits != 0; bits &= bits - 1) {
+				int w = Integer.numberOfTrailingZeros(bits) + 1;
+				for (int d = 1 + Math.floorMod(w - firstWeekday, 7); d <= len; d += 7) {
+					days |= 1L << (d - 1);
+				}
+			}
+			for (short code : byOrdinal) {
+				int d = monthScope ? nthWeekdayOfMonth(code, first, len) : nthWeekdayOfYear(code, y, first);
+				if (d >= 1 && d <= len) {
+					days |= 1L << (d - 1);
+				}
+			}
+			mask &= days;
+		}
+
+		return mask;
+	}
+
+	/**
+	 * @return the day of the month of the n-th weekday in a month (as encoded
+	 *         in {@code code}), or 0 if there is no such day.
+	 */
+	private static int nthWeekdayOfMonth(short code, long first, int len) {
+		int n = DayOfWeekSet.ordinalOf(code);
+		int w = DayOfWeekSet.weekdayOf(code);
+		if (n > 0) {
+			return 1 + Math.floorMod(w - weekdayOfEpochDay(first), 7) + 7 * (n - 1);
+		}
+		int last = len - Math.floorMod(weekdayOfEpochDay(first + len - 1) - w, 7);
+		return last + 7 * (n + 1);
+	}
+
+	/**
+	 * @return the day of the month, within the month starting on epoch day
+	 *         {@code first}, of the n-th weekday in year {@code y}, or a value
+	 *         out of the month if it is not in that month.
+	 */
+	private static int nthWeekdayOfYear(short code, int y, long first) {
+		int n = DayOfWeekSet.ordinalOf(code);
+		int w = DayOfWeekSet.weekdayOf(code);
+		long day;
+		if (n > 0) {
+			long jan1 = epochDay(y, 1, 1);
+			day = jan1 + Math.floorMod(w - weekdayOfEpochDay(jan1), 7) + 7 * (n - 1);
+		} else {
+			long dec31 = epochDay(y, 12, 31);
+			day = dec31 - Math.floorMod(weekdayOfEpochDay(dec31) - w, 7) + 7 * (n + 1);
+		}
+		if (day < epochDay(y, 1, 1) || day > epochDay(y, 12, 31)) {
+			return 0;
+		}
+		return (int) (day - first + 1);
+	}
+
+	private static long monthIndex(long day) {
+		long local = day * MILLIS_PER_DAY;
+		return LOCAL.year().get(local) * 12L + LOCAL.monthOfYear().get(local) - 1;
+	}
+
+	static long epochDay(int y, int m, int d) {
+		return Math.floorDiv(LOCAL.getDateTimeMillis(y, m, d, 0), MILLIS_PER_DAY);
+	}
+
+	/**
+	 * @return the ISO day of the week (1 is Monday) of a day since 1970-01-01
+	 *         (a Thursday).
+	 */
+	static int weekdayOfEpochDay(long day) {
+		return (int) Math.floorMod(day + 3, 7L) + 1;
+	}
+
+	static int lengthOfMonth(int y, int m) {
+		switch (m) {
+		case 2:
+			return (y % 4 == 0 && (y % 100 != 0 || y % 400 == 0)) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+}
@@ -0,0 +1,294 @@
+package edu.upc.cpl.smeagol.client.ical;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of small numeric recurrence values (months, days of the month) backed
+ * by a single {@code long} bit mask.
+ * <p>
+ * Instances only accept values in the range of their kind (see
+ * {@link #forMonths()} and {@link #forMonthDays()}); adding any other value
+ * throws an {@code IllegalArgumentException}. Iteration is in ascending
+ * numeric order, as in a {@code TreeSet<Short>}.
+ * <p>
+ * Values received from the server are kept as they are, even if out of
+ * range (see {@link #addUnchecked(int)}). Those are held apart from the bit
+ * mask, so recurrence computations, which only read the mask, ignore them.
+ * <p>
+ * Bit <code>i</code> of the mask represents the value <code>min + i</code>,
+ * where <code>min</code> is the lowest value allowed for the kind of set (1
+ * for months, -31 for days of the month).
+ *
+ */
+public final class ShortBitSet extends AbstractSet<Short> {
+
+	private enum Kind {
+		MONTH(1, 12, "illegal month: only values between [1 .. 12] are valid"), MONTH_DAY(-31, 31,
+				"illegal day of month value: only values between ranges [-31 .. -1] or [1 .. 31] are valid");
+
+		private final int min;
+		private final int max;
+		private final long validBits;
+		private final String errorMessage;
+
+		private Kind(int min, int max, String errorMessage) {
+			this.min = min;
+			this.max = max;
+			this.errorMessage = errorMessage;
+			long valid = 0;
+			for (int v = min; v <= max; v++) {
+				if (v != 0) {
+					valid |= 1L << (v - min);
+				}
+			}
+			this.validBits = valid;
+		}
+	}
+
+	private final Kind kind;
+	private long bits;
+
+	/*
+	 * Sorted values out of the range of the kind, or null if there are none.
+	 * Replaced rather than changed, so iterators can keep the one they began
+	 * with.
+	 */
+	private short[] outOfRange;
+
+	private ShortBitSet(Kind kind, long bits) {
+		this.kind = kind;
+		this.bits = bits;
+	}
+
+	/**
+	 * @return an empty set accepting months, in the range [1 .. 12].
+	 */
+	public static ShortBitSet forMonths() {
+		return new ShortBitSet(Kind.MONTH, 0);
+	}
+
+	/**
+	 * @return an empty set accepting days of the month, in the ranges [-31 ..
+	 *         -1] or [1 .. 31].
+	 */
+	public static ShortBitSet forMonthDays() {
+		return new ShortBitSet(Kind.MONTH_DAY, 0);
+	}
+
+	/**
+	 * @return a new set of the same kind, with the same values.
+	 */
+	public ShortBitSet copy() {
+		ShortBitSet copy = new ShortBitSet(kind, bits);
+		copy.outOfRange = outOfRange;
+		return copy;
+	}
+
+	/**
+	 * @return the lowest value accepted by this set, represented by bit 0 of
+	 *         the mask.
+	 */
+	public int getMin() {
+		return kind.min;
+	}
+
+	/**
+	 * @return the bit mask holding the values of this set which are in the
+	 *         range of its kind.
+	 */
+	public long getBits() {
+		return bits;
+	}
+
+	/**
+	 * Replace the values of this set.
+	 *
+	 * @param bits
+	 *            a bit mask, as returned by {@link #getBits()}.
+	 * @throws IllegalArgumentException
+	 *             if the mask contains values not accepted by this set.
+	 */
+	public void setBits(long bits) {
+		if ((bits & ~kind.validBits) != 0) {
+			throw new IllegalArgumentException(kind.errorMessage);
+		}
+		this.bits = bits;
+	}
+
+	private boolean isValid(int value) {
+		return value >= kind.min && value <= kind.max && value != 0;
+	}
+
+	public boolean contains(int value) {
+		if (!isValid(value)) {
+			return outOfRange != null && Arrays.binarySearch(outOfRange, (short) value) >= 0;
+		}
+		return (bits & (1L << (value - kind.min))) != 0;
+	}
+
+	/**
+	 * @return <code>true</code> if the set holds values out of the range of
+	 *         its kind.
+	 * @see #addUnchecked(int)
+	 */
+	public boolean hasOutOfRangeValues() {
+		return outOfRange != null;
+	}
+
+	/**
+	 * Add a value to the set, even if it is out of the range of its kind.
+	 * Used to keep the values sent by the server as they are.
+	 *
+	 * @return <code>true</code> if the set did not already contain the value.
+	 */
+	public boolean addUnchecked(int value) {
+		if (isValid(value)) {
+			return add(value);
+		}
+		if (outOfRange == null) {
+			outOfRange = new short[] { (short) value };
+			return true;
+		}
+		int i = Arrays.binarySearch(outOfRange, (short) value);
+		if (i >= 0) {
+			return false;
+		}
+		i = -i - 1;
+		short[] values = new short[outOfRange.length + 1];
+		System.arraycopy(outOfRange, 0, values, 0, i);
+		values[i] = (short) value;
+		System.arraycopy(outOfRange, i, values, i + 1, outOfRange.length - i);
+		outOfRange = values;
+		return true;
+	}
+
+	/**
+	 * Add a value to the set.
+	 *
+	 * @return <code>true</code> if the set did not already contain the value.
+	 * @throws IllegalArgumentException
+	 *             if the value is not accepted by this set.
+	 */
+	public boolean add(int value) {
+		if (!isValid(value)) {
+			throw new IllegalArgumentException(kind.errorMessage);
+		}
+		long old = bits;
+		bits |= 1L << (value - kind.min);
+		return bits != old;
+	}
+
+	public boolean remove(int value) {
+		if (!isValid(value)) {
+			return removeOutOfRange(value);
+		}
+		long old = bits;
+		bits &= ~(1L << (value - kind.min));
+		return bits != old;
+	}
+
+	private boolean removeOutOfRange(int value) {
+		int i = outOfRange == null ? -1 : Arrays.binarySearch(outOfRange, (short) value);
+		if (i < 0) {
+			return false;
+		}
+		if (outOfRange.length == 1) {
+			outOfRange = null;
+		} else {
+			short[] values = new short[outOfRange.length - 1];
+			System.arraycopy(outOfRange, 0, values, 0, i);
+			System.arraycopy(outOfRange, i + 1, values, i, values.length - i);
+			outOfRange = values;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return (o instanceof Short) && contains(((Short) o).intValue());
+	}
+
+	@Override
+	public boolean add(Short value) {
+		if (value == null) {
+			throw new IllegalArgumentException(kind.errorMessage);
+		}
+		return add(value.intValue());
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Short> c) {
+		// validate every value before changing anything
+		ShortBitSet added = new ShortBitSet(kind, 0);
+		for (Short value : c) {
+			added.add(value);
+		}
+		long old = bits;
+		bits |= added.bits;
+		return bits != old;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return (o instanceof Short) && remove(((Short) o).intValue());
+	}
+
+	@Override
+	public void clear() {
+		bits = 0;
+		outOfRange = null;
+	}
+
+	@Override
+	public int size() {
+		return Long.bitCount(bits) + (outOfRange == null ? 0 : outOfRange.length);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return bits == 0 && outOfRange == null;
+	}
+
+	@Override
+	public Iterator<Short> iterator() {
+		return new Iterator<Short>() {
+			private long pending = bits;
+			private final short[] others = outOfRange;
+			private int nextOther;
+			private int last = Integer.MIN_VALUE;
+
+			public boolean hasNext() {
+				return pending != 0 || (others != null && nextOther < others.length);
+			}
+
+			public Short next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				// merge the values of the mask and those out of range
+				int other = others != null && nextOther < others.length ? others[nextOther] : Integer.MAX_VALUE;
+				if (pending != 0 && Long.numberOfTrailingZeros(pending) + kind.min < other) {
+					last = Long.numberOfTrailingZeros(pending) + kind.min;
+					pending &= pending - 1;
+				} else {
+					last = other;
+					nextOther++;
+				}
+				return (short) last;
+			}
+
+			public void remove() {
+				if (last == Integer.MIN_VALUE) {
+					throw new IllegalStateException();
+				}
+				ShortBitSet.this.remove(last);
+				last = Integer.MIN_VALUE;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,128 @@
+package edu.upc.cpl.smeagol.json;
+
+import java.io.IOException;
+import org.joda.time.DateTime;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import edu.upc.cpl.smeagol.client.domain.Booking;
+import edu.upc.cpl.smeagol.client.ical.DayOfWeekSet;
+import edu.upc.cpl.smeagol.client.ical.Frequency;
+import edu.upc.cpl.smeagol.client.ical.ShortBitSet;
+
+/**
+ * This class is used internally by the Sméagol client and should not be used
+ * directly in your programs.
+ * <p>
+ * Streaming serializer/deserializer for {@link Booking}s.
+ * <p>
+ * As with the reflective binding it replaces, attributes are not validated
+ * (see {@link Booking#fromServer}), and those missing from the JSON input
+ * keep the defaults of a new {@code Booking}.
+ * 
+ */
+public class BookingAdapter extends TypeAdapter<Booking> {
+
+	private final DateTimeConverter dateTimeConverter = new DateTimeConverter();
+
+	@Override
+	public void write(JsonWriter out, Booking b) throws IOException {
+		if (b == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("id").value(b.getId());
+		out.name("id_resource").value(b.getIdResource());
+		out.name("id_event").value(b.getIdEvent());
+		out.name("dtstart");
+		dateTimeConverter.write(out, b.getDtStart());
+		out.name("dtend");
+		dateTimeConverter.write(out, b.getDtEnd());
+		out.name("frequency").value(b.getFrequency() == null ? null : b.getFrequency().name());
+		out.name("interval").value(b.getInterval());
+		out.name("until");
+		dateTimeConverter.write(out, b.getUntil());
+		out.name("by_day").value(DayOfWeekListConverter.toSmeagolString(b.getByDay()));
+		out.name("by_day_month").value(ShortSetConverter.toSmeagolString(b.getByDayOfMonth()));
+		out.name("by_month").value(ShortSetConverter.toSmeagolString(b.getByMonth()));
+		out.endObject();
+	}
+
+	@Override
+	public Booking read(JsonReader in) throws IOException {
+		if (JsonValues.nextIsNull(in)) {
+			return null;
+		}
+
+		Long id = null;
+		Long idResource = null;
+		Long idEvent = null;
+		DateTime dtStart = null;
+		DateTime dtEnd = null;
+		Frequency frequency = null;
+		Short interval = null;
+		DateTime until = null;
+		DayOfWeekSet byDay = null;
+		ShortBitSet byDayOfMonth = null;
+		ShortBitSet byMonth = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			String name = in.nextName();
+			if ("id".equals(name)) {
+				id = JsonValues.nextLong(in);
+			} else if ("id_resource".equals(name)) {
+				idResource = JsonValues.nextLong(in);
+			} else if ("id_event".equals(name)) {
+				idEvent = JsonValues.nextLong(in);
+			} else if ("dtstart".equals(name)) {
+				dtStart = dateTimeConverter.read(in);
+			} else if ("dtend".equals(name)) {
+				dtEnd = dateTimeConverter.read(in);
+			} else if ("frequency".equals(name)) {
+				frequency = toFrequency(JsonValues.nextString(in));
+			} else if ("interval".equals(name)) {
+				interval = JsonValues.nextShort(in);
+			} else if ("until".equals(name)) {
+				until = dateTimeConverter.read(in);
+			} else if ("by_day".equals(name)) {
+				String s = JsonValues.nextString(in);
+				byDay = s == null ? null : DayOfWeekListConverter.toDayOfWeekSet(s);
+			} else if ("by_day_month".equals(name)) {
+				String s = JsonValues.nextString(in);
+				if (s != null) {
+					byDayOfMonth = ShortBitSet.forMonthDays();
+					ShortSetConverter.fromSmeagolString(s, byDayOfMonth);
+				}
+			} else if ("by_month".equals(name)) {
+				String s = JsonValues.nextString(in);
+				if (s != null) {
+					byMonth = ShortBitSet.forMonths();
+					ShortSetConverter.fromSmeagolString(s, byMonth);
+				}
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+
+		return Booking.fromServer(id, idResource, idEvent, dtStart, dtEnd, frequency, interval, until, byDay,
+				byDayOfMonth, byMonth);
+	}
+
+	private static Frequency toFrequency(String s) {
+		if (s == null) {
+			return null;
+		}
+		try {
+			return Frequency.valueOf(s);
+		} catch (IllegalArgumentException e) {
+			// same as Gson's enum handling: unknown constants map to null
+			return null;
+		}
+	}
+
+}
@@ -1,17 +1,13 @@
 package edu.upc.cpl.smeagol.json;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 
 import org.joda.time.DateTime;
-import org.joda.time.format.ISODateTimeFormat;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * This class is used internally by the Sméagol client and should not be used
@@ -26,18 +22,31 @@ import com.google.gson.JsonSerializer;
  * @author angel
  * 
  */
-public class DateTimeConverter implements JsonSerializer<DateTime>, JsonDeserializer<DateTime> {
+public class DateTimeConverter extends TypeAdapter<DateTime> {
 	public static String toSmeagolDateTime(DateTime d) {
-		return ISODateTimeFormat.dateHourMinuteSecond().print(d);
+		return SmeagolDateTimeFormat.print(d);
 	}
 
-	public JsonElement serialize(DateTime src, Type typeOfSrc, JsonSerializationContext context) {
-		return new JsonPrimitive(toSmeagolDateTime(src));
+	public static DateTime fromSmeagolDateTime(String s) {
+		return SmeagolDateTimeFormat.parse(s);
 	}
 
-	public DateTime deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
-			throws JsonParseException {
-		return new DateTime(json.getAsJsonPrimitive().getAsString());
+	@Override
+	public void write(JsonWriter out, DateTime src) throws IOException {
+		if (src == null) {
+			out.nullValue();
+			return;
+		}
+		out.value(toSmeagolDateTime(src));
+	}
+
+	@Override
+	public DateTime read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		return fromSmeagolDateTime(in.nextString());
 	}
 
 }
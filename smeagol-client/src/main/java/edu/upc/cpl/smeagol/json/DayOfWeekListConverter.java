@@ -1,21 +1,20 @@
 package edu.upc.cpl.smeagol.json;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import edu.upc.cpl.smeagol.client.ical.DayOfWeek;
+import edu.upc.cpl.smeagol.client.ical.DayOfWeekSet;
 
 /**
  * This class is used internally by the Sméagol client and should not be used
@@ -30,44 +29,117 @@ import edu.upc.cpl.smeagol.client.ical.DayOfWeek;
  * @author angel
  * 
  */
-public class DayOfWeekListConverter implements JsonSerializer<Set<DayOfWeek>>, JsonDeserializer<Set<DayOfWeek>> {
-
-	public JsonElement serialize(Set<DayOfWeek> src, Type typeOfSrc, JsonSerializationContext context) {
-
+public class DayOfWeekListConverter extends TypeAdapter<Set<DayOfWeek>> {
+
+	/**
+	 * Format a set of days as a comma separated list of their spellings (see
+	 * {@link DayOfWeek#getAsString()}), sorted alphabetically.
+	 * 
+	 * @return the formatted days, or <code>null</code> if {@code src} is null
+	 *         or empty.
+	 */
+	public static String toSmeagolString(Set<DayOfWeek> src) {
 		if (CollectionUtils.isEmpty(src)) {
 			return null;
 		}
 
+		StringBuilder sb = new StringBuilder();
+
+		if (src instanceof DayOfWeekSet && !((DayOfWeekSet) src).hasOrdinals()) {
+			// plain days, already in alphabetical order
+			for (DayOfWeek d : src) {
+				if (sb.length() > 0) {
+					sb.append(',');
+				}
+				sb.append(d.getAsString());
+			}
+			return sb.toString();
+		}
+
 		Set<String> days = new TreeSet<String>();
 
 		for (DayOfWeek d : src) {
 			days.add(d.getAsString());
 		}
 
-		return new JsonPrimitive(StringUtils.join(days, ","));
+		return StringUtils.join(days, ",");
 	}
 
-	public Set<DayOfWeek> deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
-			throws JsonParseException {
-
-		String jsonAsString = json.getAsString();
-		if (StringUtils.isEmpty(jsonAsString)) {
+	/**
+	 * Parse a comma separated list of days. Days keep their spelling, so that
+	 * {@link #toSmeagolString(Set)} writes them back as given.
+	 * 
+	 * @return the parsed days, or <code>null</code> if {@code s} is empty.
+	 * @throws JsonParseException
+	 *             if {@code s} contains an invalid day of week.
+	 */
+	public static Set<DayOfWeek> fromSmeagolString(String s) {
+		if (StringUtils.isEmpty(s)) {
 			return null;
 		}
 
 		Set<DayOfWeek> result = new TreeSet<DayOfWeek>();
-		String[] labels = StringUtils.split(jsonAsString, ",");
+		String[] labels = StringUtils.split(s, ",");
+
+		for (String l : labels) {
+			try {
+				result.add(parse(l.trim()));
+			} catch (IllegalArgumentException e) {
+				throw new JsonParseException("Invalid DayOfWeek found on deserialization of " + s);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Parse a comma separated list of days into a {@link DayOfWeekSet}. Days
+	 * keep their spelling, as in {@link #fromSmeagolString(String)}.
+	 * 
+	 * @return the parsed days, or <code>null</code> if {@code s} is empty.
+	 * @throws JsonParseException
+	 *             if {@code s} contains an invalid day of week.
+	 */
+	public static DayOfWeekSet toDayOfWeekSet(String s) {
+		if (StringUtils.isEmpty(s)) {
+			return null;
+		}
+
+		DayOfWeekSet result = new DayOfWeekSet();
+		String[] labels = StringUtils.split(s, ",");
 
 		for (String l : labels) {
 			try {
-				DayOfWeek d = new DayOfWeek(l.trim());
-				result.add(d);
+				result.add(parse(l.trim()));
 			} catch (IllegalArgumentException e) {
-				throw new JsonParseException("Invalid DayOfWeek found on deserialization of " + json.getAsString());
+				throw new JsonParseException("Invalid DayOfWeek found on deserialization of " + s);
 			}
 		}
 
 		return result;
 	}
 
+	/**
+	 * @return the canonical instance of a day, or a new one if it is spelled
+	 *         otherwise (such as "+1MO").
+	 */
+	private static DayOfWeek parse(String label) {
+		DayOfWeek d = DayOfWeek.of(label);
+		return d.getAsString().equals(label) ? d : new DayOfWeek(label);
+	}
+
+	@Override
+	public void write(JsonWriter out, Set<DayOfWeek> src) throws IOException {
+		out.value(toSmeagolString(src));
+	}
+
+	@Override
+	public Set<DayOfWeek> read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		return fromSmeagolString(in.nextString());
+	}
+
 }
@@ -0,0 +1,77 @@
+package edu.upc.cpl.smeagol.json;
+
+import java.io.IOException;
+
+import org.joda.time.DateTime;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import edu.upc.cpl.smeagol.client.domain.Event;
+
+/**
+ * This class is used internally by the Sméagol client and should not be used
+ * directly in your programs.
+ * <p>
+ * Streaming serializer/deserializer for {@link Event}s. As with the
+ * reflective binding it replaces, attributes are not validated, and an event
+ * may have a start and no end (or the other way round).
+ * 
+ */
+public class EventAdapter extends TypeAdapter<Event> {
+
+	private final DateTimeConverter dateTimeConverter = new DateTimeConverter();
+
+	@Override
+	public void write(JsonWriter out, Event e) throws IOException {
+		if (e == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("id").value(e.getId());
+		out.name("description").value(e.getDescription());
+		out.name("info").value(e.getInfo());
+		out.name("starts");
+		dateTimeConverter.write(out, e.getStarts());
+		out.name("ends");
+		dateTimeConverter.write(out, e.getEnds());
+		out.endObject();
+	}
+
+	@Override
+	public Event read(JsonReader in) throws IOException {
+		if (JsonValues.nextIsNull(in)) {
+			return null;
+		}
+
+		Long id = null;
+		String description = null;
+		String info = null;
+		DateTime starts = null;
+		DateTime ends = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			String name = in.nextName();
+			if ("id".equals(name)) {
+				id = JsonValues.nextLong(in);
+			} else if ("description".equals(name)) {
+				description = JsonValues.nextString(in);
+			} else if ("info".equals(name)) {
+				info = JsonValues.nextString(in);
+			} else if ("starts".equals(name)) {
+				starts = dateTimeConverter.read(in);
+			} else if ("ends".equals(name)) {
+				ends = dateTimeConverter.read(in);
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+
+		return Event.fromServer(id, description, info, starts, ends);
+	}
+
+}
@@ -0,0 +1,120 @@
+package edu.upc.cpl.smeagol.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * This class is used internally by the Sméagol client and should not be used
+ * directly in your programs.
+ * <p>
+ * An {@code Iterator} over the elements of a JSON array, which are
+ * deserialized one at a time as they are read from the underlying
+ * {@code Reader}. Only the element being returned is kept in memory, so
+ * arbitrarily large arrays can be processed without loading the whole
+ * document first.
+ * <p>
+ * Closing the iterator closes the underlying {@code Reader}.
+ *
+ * @param <T>
+ *            the type of the array elements
+ */
+public class JsonArrayIterator<T> implements Iterator<T>, Closeable {
+
+	private final Gson gson;
+	private final Type elementType;
+	private final JsonReader reader;
+
+	private boolean started = false;
+	private boolean finished = false;
+
+	/**
+	 * @param gson
+	 *            the {@code Gson} instance used to deserialize each element
+	 * @param elementType
+	 *            the type of the array elements
+	 * @param json
+	 *            the reader the JSON array is read from
+	 */
+	public JsonArrayIterator(Gson gson, Type elementType, Reader json) {
+		this.gson = gson;
+		this.elementType = elementType;
+		this.reader = new JsonReader(json);
+	}
+
+	/**
+	 * Build a sequential {@code Stream} over the elements of a JSON array.
+	 * Closing the stream closes the underlying {@code Reader}.
+	 *
+	 * @param gson
+	 *            the {@code Gson} instance used to deserialize each element
+	 * @param elementType
+	 *            the type of the array elements
+	 * @param json
+	 *            the reader the JSON array is read from
+	 * @return a stream of deserialized elements, in array order.
+	 */
+	public static <T> Stream<T> stream(Gson gson, Type elementType, Reader json) {
+		final JsonArrayIterator<T> iterator = new JsonArrayIterator<T>(gson, elementType, json);
+		Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED
+				| Spliterator.NONNULL);
+
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			try {
+				iterator.close();
+			} catch (IOException e) {
+				throw new JsonIOException(e);
+			}
+		});
+	}
+
+	public boolean hasNext() {
+		if (finished) {
+			return false;
+		}
+		try {
+			if (!started) {
+				reader.beginArray();
+				started = true;
+			}
+			if (reader.hasNext()) {
+				return true;
+			}
+			reader.endArray();
+			finished = true;
+			return false;
+		} catch (MalformedJsonException e) {
+			throw new JsonSyntaxException(e);
+		} catch (IllegalStateException e) {
+			throw new JsonSyntaxException(e);
+		} catch (IOException e) {
+			throw new JsonIOException(e);
+		}
+	}
+
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return gson.fromJson(reader, elementType);
+	}
+
+	public void close() throws IOException {
+		finished = true;
+		reader.close();
+	}
+
+}
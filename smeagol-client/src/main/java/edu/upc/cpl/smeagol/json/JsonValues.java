@@ -0,0 +1,44 @@
+package edu.upc.cpl.smeagol.json;
+
+import java.io.IOException;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Helpers for reading nullable attribute values, with the same leniency as
+ * the Gson built-in adapters (e.g. numbers may be quoted).
+ * 
+ */
+final class JsonValues {
+
+	private JsonValues() {
+	}
+
+	static boolean nextIsNull(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return true;
+		}
+		return false;
+	}
+
+	static String nextString(JsonReader in) throws IOException {
+		if (nextIsNull(in)) {
+			return null;
+		}
+		if (in.peek() == JsonToken.BOOLEAN) {
+			return Boolean.toString(in.nextBoolean());
+		}
+		return in.nextString();
+	}
+
+	static Long nextLong(JsonReader in) throws IOException {
+		return nextIsNull(in) ? null : in.nextLong();
+	}
+
+	static Short nextShort(JsonReader in) throws IOException {
+		return nextIsNull(in) ? null : (short) in.nextInt();
+	}
+
+}
@@ -0,0 +1,62 @@
+package edu.upc.cpl.smeagol.json;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import edu.upc.cpl.smeagol.client.domain.Resource;
+
+/**
+ * This class is used internally by the Sméagol client and should not be used
+ * directly in your programs.
+ * <p>
+ * Streaming serializer/deserializer for {@link Resource}s. As with the
+ * reflective binding it replaces, attributes are not validated.
+ * 
+ */
+public class ResourceAdapter extends TypeAdapter<Resource> {
+
+	@Override
+	public void write(JsonWriter out, Resource r) throws IOException {
+		if (r == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("id").value(r.getId());
+		out.name("description").value(r.getDescription());
+		out.name("info").value(r.getInfo());
+		out.endObject();
+	}
+
+	@Override
+	public Resource read(JsonReader in) throws IOException {
+		if (JsonValues.nextIsNull(in)) {
+			return null;
+		}
+
+		Long id = null;
+		String description = null;
+		String info = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			String name = in.nextName();
+			if ("id".equals(name)) {
+				id = JsonValues.nextLong(in);
+			} else if ("description".equals(name)) {
+				description = JsonValues.nextString(in);
+			} else if ("info".equals(name)) {
+				info = JsonValues.nextString(in);
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+
+		return Resource.fromServer(id, description, info);
+	}
+
+}
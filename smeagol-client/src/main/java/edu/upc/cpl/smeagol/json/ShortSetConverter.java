@@ -1,18 +1,18 @@
 package edu.upc.cpl.smeagol.json;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.commons.lang.StringUtils;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import edu.upc.cpl.smeagol.client.ical.ShortBitSet;
 
 /**
  * This class is used internally by the Sméagol client and should not be used
@@ -27,21 +27,31 @@ import com.google.gson.JsonSerializer;
  * @author angel
  * 
  */
-public class ShortSetConverter implements JsonSerializer<Set<Short>>, JsonDeserializer<Set<Short>> {
+public class ShortSetConverter extends TypeAdapter<Set<Short>> {
 
-	public JsonElement serialize(Set<Short> src, Type typeOfSrc, JsonSerializationContext context) {
-		return new JsonPrimitive(StringUtils.join(src, ","));
+	/**
+	 * Format a set of values as a comma separated list, in iteration order.
+	 * 
+	 * @return the formatted values, or <code>null</code> if {@code src} is
+	 *         null.
+	 */
+	public static String toSmeagolString(Set<Short> src) {
+		return src == null ? null : StringUtils.join(src, ",");
 	}
 
-	public Set<Short> deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
-			throws JsonParseException {
-
+	/**
+	 * Parse a comma separated list of values.
+	 * 
+	 * @throws JsonParseException
+	 *             if {@code s} contains an invalid short value.
+	 */
+	public static Set<Short> fromSmeagolString(String s) {
 		Set<Short> result = new TreeSet<Short>();
-		String[] values = StringUtils.split(json.getAsString(), ",");
+		String[] values = StringUtils.split(s, ",");
 
 		for (String v : values) {
 			try {
-				result.add(new Short(v));
+				result.add(Short.valueOf(v));
 			} catch (NumberFormatException e) {
 				throw new JsonParseException("Invalid Short value found on deserialization");
 			}
@@ -50,4 +60,98 @@ public class ShortSetConverter implements JsonSerializer<Set<Short>>, JsonDeseri
 		return result;
 	}
 
+	/**
+	 * Format a set of values as a comma separated list, in ascending order,
+	 * without boxing them.
+	 * 
+	 * @return the formatted values, or <code>null</code> if {@code src} is
+	 *         null.
+	 */
+	public static String toSmeagolString(ShortBitSet src) {
+		if (src == null) {
+			return null;
+		}
+		if (src.hasOutOfRangeValues()) {
+			return StringUtils.join(src, ",");
+		}
+		StringBuilder sb = new StringBuilder();
+		long bits = src.getBits();
+		while (bits != 0) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(Long.numberOfTrailingZeros(bits) + src.getMin());
+			bits &= bits - 1;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Parse a comma separated list of values into {@code target}, without
+	 * boxing them. Values out of the range of {@code target} are kept as
+	 * well (see {@link ShortBitSet#addUnchecked(int)}).
+	 * 
+	 * @throws JsonParseException
+	 *             if {@code s} contains an invalid short value.
+	 */
+	public static void fromSmeagolString(String s, ShortBitSet target) {
+		int len = s.length();
+		int i = 0;
+		while (i < len) {
+			int end = s.indexOf(',', i);
+			if (end < 0) {
+				end = len;
+			}
+			if (end > i) {
+				target.addUnchecked(parseShort(s, i, end));
+			}
+			i = end + 1;
+		}
+	}
+
+	/**
+	 * Same as {@code Short.parseShort(s.substring(from, to))}.
+	 */
+	private static int parseShort(String s, int from, int to) {
+		boolean negative = false;
+		char first = s.charAt(from);
+		if (first == '-' || first == '+') {
+			negative = first == '-';
+			from++;
+		}
+		if (from == to) {
+			throw new JsonParseException("Invalid Short value found on deserialization");
+		}
+		int value = 0;
+		for (int i = from; i < to; i++) {
+			int digit = s.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw new JsonParseException("Invalid Short value found on deserialization");
+			}
+			value = value * 10 + digit;
+			if (value > Short.MAX_VALUE + 1) {
+				throw new JsonParseException("Invalid Short value found on deserialization");
+			}
+		}
+		value = negative ? -value : value;
+		if (value > Short.MAX_VALUE) {
+			throw new JsonParseException("Invalid Short value found on deserialization");
+		}
+		return value;
+	}
+
+	@Override
+	public void write(JsonWriter out, Set<Short> src) throws IOException {
+		out.value(toSmeagolString(src));
+	}
+
+	@Override
+	public Set<Short> read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		return fromSmeagolString(in.nextString());
+	}
+
 }
@@ -0,0 +1,255 @@
+package edu.upc.cpl.smeagol.json;
+
+import org.joda.time.Chronology;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.ISOChronology;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * This class is used internally by the Sméagol client and should not be used
+ * directly in your programs.
+ * <p>
+ * Parser and printer for the <code>yyyy-MM-ddTHH:mm:ss[offset]</code>
+ * timestamps used by the Sméagol server.
+ * <p>
+ * Timestamps in that exact shape are handled by scanning their characters and
+ * computing the instant arithmetically, which is much cheaper than going
+ * through the generic Joda-Time converters and parsers. Any other input falls
+ * back to {@code new DateTime(String)} and
+ * {@code ISODateTimeFormat.dateHourMinuteSecond()}, so results (and errors)
+ * are always the same as theirs.
+ *
+ */
+public final class SmeagolDateTimeFormat {
+
+	private static final long MILLIS_PER_DAY = 86400000L;
+
+	/**
+	 * Days from 0000-03-01 to 1970-01-01
+	 */
+	private static final long DAYS_0000_TO_1970 = 719468L;
+	private static final long DAYS_PER_400_YEARS = 146097L;
+
+	/**
+	 * Length of a "yyyy-MM-ddTHH:mm:ss" timestamp = {@value}
+	 */
+	private static final int LOCAL_LENGTH = 19;
+
+	private static final int NO_OFFSET = Integer.MIN_VALUE;
+
+	private static final DateTimeFormatter PRINTER = ISODateTimeFormat.dateHourMinuteSecond();
+
+	/*
+	 * Chronology for the default time zone. Cached since looking it up is not
+	 * free; it is refreshed whenever the default zone changes.
+	 */
+	private static volatile ISOChronology defaultChronology = ISOChronology.getInstance();
+
+	private SmeagolDateTimeFormat() {
+	}
+
+	/**
+	 * Parse a timestamp, exactly as {@code new DateTime(s)} would.
+	 *
+	 * @param s
+	 *            the timestamp. Not null.
+	 * @return a {@code DateTime} in the default time zone.
+	 * @throws IllegalArgumentException
+	 *             if {@code s} is not a valid timestamp.
+	 */
+	public static DateTime parse(String s) {
+		DateTime result = parseFast(s);
+		return result != null ? result : new DateTime(s);
+	}
+
+	/**
+	 * Print a {@code DateTime} in the <code>yyyy-MM-ddTHH:mm:ss</code> format,
+	 * exactly as {@code ISODateTimeFormat.dateHourMinuteSecond()} would.
+	 *
+	 * @param d
+	 *            the {@code DateTime} to print. Not null.
+	 * @return the formatted timestamp, in the time zone of {@code d}.
+	 */
+	public static String print(DateTime d) {
+		Chronology chrono = d.getChronology();
+		if (!(chrono instanceof ISOChronology)) {
+			return PRINTER.print(d);
+		}
+
+		long millis = d.getMillis();
+		long local = millis + chrono.getZone().getOffset(millis);
+		long days = Math.floorDiv(local, MILLIS_PER_DAY);
+		int millisOfDay = (int) Math.floorMod(local, MILLIS_PER_DAY);
+
+		// civil date from days since epoch (proleptic Gregorian)
+		long z = days + DAYS_0000_TO_1970;
+		long era = Math.floorDiv(z, DAYS_PER_400_YEARS);
+		int doe = (int) (z - era * DAYS_PER_400_YEARS);
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int day = doy - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+		if (year < 0 || year > 9999) {
+			return PRINTER.print(d);
+		}
+
+		int seconds = millisOfDay / 1000;
+		char[] buf = new char[LOCAL_LENGTH];
+		put(buf, 0, (int) year, 4);
+		buf[4] = '-';
+		put(buf, 5, month, 2);
+		buf[7] = '-';
+		put(buf, 8, day, 2);
+		buf[10] = 'T';
+		put(buf, 11, seconds / 3600, 2);
+		buf[13] = ':';
+		put(buf, 14, (seconds / 60) % 60, 2);
+		buf[16] = ':';
+		put(buf, 17, seconds % 60, 2);
+		return new String(buf);
+	}
+
+	/**
+	 * @return the parsed {@code DateTime}, or <code>null</code> if {@code s}
+	 *         has not the expected shape (or is an instant which does not
+	 *         exist in the default time zone).
+	 */
+	private static DateTime parseFast(String s) {
+		int len = s.length();
+		if (len < LOCAL_LENGTH || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T'
+				|| s.charAt(13) != ':' || s.charAt(16) != ':') {
+			return null;
+		}
+
+		int year = digits(s, 0, 4);
+		int month = digits(s, 5, 2);
+		int day = digits(s, 8, 2);
+		int hour = digits(s, 11, 2);
+		int minute = digits(s, 14, 2);
+		int second = digits(s, 17, 2);
+
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month) || hour < 0
+				|| hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+			return null;
+		}
+
+		long local = daysFromCivil(year, month, day) * MILLIS_PER_DAY + ((hour * 60 + minute) * 60 + second) * 1000L;
+		ISOChronology chrono = getDefaultChronology();
+		long millis;
+
+		if (len == LOCAL_LENGTH) {
+			DateTimeZone zone = chrono.getZone();
+			int offset = zone.getOffsetFromLocal(local);
+			millis = local - offset;
+			if (zone.getOffset(millis) != offset) {
+				// local time in a daylight saving gap
+				return null;
+			}
+		} else {
+			int offset = parseOffset(s, LOCAL_LENGTH);
+			if (offset == NO_OFFSET) {
+				return null;
+			}
+			millis = local - offset;
+		}
+
+		return new DateTime(millis, chrono);
+	}
+
+	/**
+	 * Parse "Z", "+HH", "+HHmm" or "+HH:mm" (or the same with "-") starting at
+	 * {@code from} until the end of {@code s}.
+	 *
+	 * @return the offset in milliseconds, or {@link #NO_OFFSET} if not valid.
+	 */
+	private static int parseOffset(String s, int from) {
+		int len = s.length() - from;
+		char sign = s.charAt(from);
+
+		if (sign == 'Z') {
+			return len == 1 ? 0 : NO_OFFSET;
+		}
+		if ((sign != '+' && sign != '-') || (len != 3 && len != 5 && len != 6)) {
+			return NO_OFFSET;
+		}
+
+		int hours = digits(s, from + 1, 2);
+		int minutes = 0;
+		if (len == 5) {
+			minutes = digits(s, from + 3, 2);
+		} else if (len == 6) {
+			minutes = s.charAt(from + 3) == ':' ? digits(s, from + 4, 2) : -1;
+		}
+		if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+			return NO_OFFSET;
+		}
+
+		int offset = (hours * 60 + minutes) * 60000;
+		return sign == '-' ? -offset : offset;
+	}
+
+	private static ISOChronology getDefaultChronology() {
+		ISOChronology chrono = defaultChronology;
+		DateTimeZone zone = DateTimeZone.getDefault();
+		if (chrono.getZone() != zone) {
+			chrono = ISOChronology.getInstance(zone);
+			defaultChronology = chrono;
+		}
+		return chrono;
+	}
+
+	/**
+	 * @return the value of the {@code count} decimal digits starting at
+	 *         {@code from}, or -1 if any of them is not a digit.
+	 */
+	private static int digits(String s, int from, int count) {
+		int value = 0;
+		for (int i = from; i < from + count; i++) {
+			int digit = s.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static void put(char[] buf, int from, int value, int count) {
+		for (int i = from + count - 1; i >= from; i--) {
+			buf[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	private static int lengthOfMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * @return days since 1970-01-01 for a proleptic Gregorian date.
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = Math.floorDiv(y, 400);
+		int yoe = (int) (y - era * 400);
+		int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * DAYS_PER_400_YEARS + doe - DAYS_0000_TO_1970;
+	}
+
+}
@@ -0,0 +1,58 @@
+package edu.upc.cpl.smeagol.json;
+
+import java.lang.reflect.Type;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import edu.upc.cpl.smeagol.client.domain.Booking;
+import edu.upc.cpl.smeagol.client.domain.Event;
+import edu.upc.cpl.smeagol.client.domain.Resource;
+import edu.upc.cpl.smeagol.client.domain.Tag;
+import edu.upc.cpl.smeagol.client.ical.DayOfWeek;
+
+/**
+ * This class is used internally by the Sméagol client and should not be used
+ * directly in your programs.
+ * <p>
+ * Holds the {@code Gson} instance shared by all the domain classes. Domain
+ * objects are read and written by hand-written streaming adapters instead of
+ * reflection.
+ * 
+ */
+public final class SmeagolGson {
+
+	private static final Gson gson;
+
+	static {
+		Type setOfDayOfWeekType = new TypeToken<Set<DayOfWeek>>() {
+		}.getType();
+		Type setOfShortType = new TypeToken<Set<Short>>() {
+		}.getType();
+
+		GsonBuilder gb = new GsonBuilder();
+		gb.registerTypeAdapter(Tag.class, new TagAdapter());
+		gb.registerTypeAdapter(Resource.class, new ResourceAdapter());
+		gb.registerTypeAdapter(Event.class, new EventAdapter());
+		gb.registerTypeAdapter(Booking.class, new BookingAdapter());
+		gb.registerTypeAdapter(DateTime.class, new DateTimeConverter());
+		gb.registerTypeAdapter(setOfDayOfWeekType, new DayOfWeekListConverter());
+		gb.registerTypeAdapter(setOfShortType, new ShortSetConverter());
+		gson = gb.create();
+	}
+
+	private SmeagolGson() {
+	}
+
+	/**
+	 * @return the shared {@code Gson} instance. It is thread-safe.
+	 */
+	public static Gson getInstance() {
+		return gson;
+	}
+
+}
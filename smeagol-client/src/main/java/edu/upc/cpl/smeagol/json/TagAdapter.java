@@ -0,0 +1,58 @@
+package edu.upc.cpl.smeagol.json;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import edu.upc.cpl.smeagol.client.domain.Tag;
+
+/**
+ * This class is used internally by the Sméagol client and should not be used
+ * directly in your programs.
+ * <p>
+ * Streaming serializer/deserializer for {@link Tag}s. As with the reflective
+ * binding it replaces, attributes are not validated.
+ * 
+ */
+public class TagAdapter extends TypeAdapter<Tag> {
+
+	@Override
+	public void write(JsonWriter out, Tag t) throws IOException {
+		if (t == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("id").value(t.getId());
+		out.name("description").value(t.getDescription());
+		out.endObject();
+	}
+
+	@Override
+	public Tag read(JsonReader in) throws IOException {
+		if (JsonValues.nextIsNull(in)) {
+			return null;
+		}
+
+		String id = null;
+		String description = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			String name = in.nextName();
+			if ("id".equals(name)) {
+				id = JsonValues.nextString(in);
+			} else if ("description".equals(name)) {
+				description = JsonValues.nextString(in);
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+
+		return Tag.fromServer(id, description);
+	}
+
+}
@@ -0,0 +1,147 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import edu.upc.cpl.smeagol.client.domain.Tag;
+import edu.upc.cpl.smeagol.client.exception.NotFoundException;
+
+/**
+ * <code>AsyncSmeagolClient</code> tests, against a stand-in server which
+ * keeps tags in memory. Lookups of tags whose id starts with "slow" wait
+ * until the test releases them.
+ *
+ */
+@RunWith(JUnit4.class)
+public class AsyncSmeagolClientTest extends TestCase {
+
+	private StubSmeagolServer server;
+	private ExecutorService executor;
+	private AsyncSmeagolClient async;
+
+	private final Map<String, Tag> tags = new ConcurrentHashMap<String, Tag>();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+
+	@Before
+	public void startServer() throws IOException {
+		server = new StubSmeagolServer(true).handle("/tag", this::serveTags).start();
+		executor = Executors.newFixedThreadPool(2);
+		async = new AsyncSmeagolClient(server.newClient(), executor);
+	}
+
+	@After
+	public void stopServer() {
+		release.countDown();
+		executor.shutdownNow();
+		async.getClient().close();
+		server.stop();
+	}
+
+	/**
+	 * POST /tag and GET /tag/{id}
+	 */
+	private void serveTags(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		if (exchange.getRequestMethod().equals("POST")) {
+			Map<String, String> form = readForm(StubSmeagolServer.readBody(exchange));
+			tags.put(form.get("id"), new Tag(form.get("id"), form.get("description")));
+			exchange.getResponseHeaders().set("Location", "/tag/" + form.get("id"));
+			StubSmeagolServer.respond(exchange, 201, "");
+			return;
+		}
+
+		String id = path.substring(path.lastIndexOf('/') + 1);
+		if (id.startsWith("slow")) {
+			int n = inFlight.incrementAndGet();
+			maxInFlight.accumulateAndGet(n, Math::max);
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			inFlight.decrementAndGet();
+			tags.putIfAbsent(id, new Tag(id, "slow tag"));
+		}
+
+		Tag tag = tags.get(id);
+		StubSmeagolServer.respond(exchange, tag == null ? 404 : 200, tag == null ? null : tag.serialize());
+	}
+
+	private static Map<String, String> readForm(String body) throws IOException {
+		Map<String, String> form = new ConcurrentHashMap<String, String>();
+		for (String pair : body.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0) {
+				form.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+						URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return form;
+	}
+
+	@Test
+	public void testCreateAndGetTag() throws Exception {
+		String id = async.createTag("a", "tag a").get(10, TimeUnit.SECONDS);
+		assertEquals("a", id);
+
+		Tag tag = async.getTag(id).get(10, TimeUnit.SECONDS);
+		assertEquals("a", tag.getId());
+		assertEquals("tag a", tag.getDescription());
+	}
+
+	@Test
+	public void testGetTagNotFound() throws Exception {
+		try {
+			async.getTag("dummy").get(10, TimeUnit.SECONDS);
+			fail("expected NotFoundException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NotFoundException);
+		}
+		assertFalse(async.tryGetTag("dummy").get(10, TimeUnit.SECONDS).isPresent());
+	}
+
+	@Test
+	public void testConcurrencyBoundedByExecutor() throws Exception {
+		List<CompletableFuture<Tag>> futures = new ArrayList<CompletableFuture<Tag>>();
+		for (int i = 0; i < 6; i++) {
+			futures.add(async.getTag("slow" + i));
+		}
+
+		// every request holds an executor thread while the server answers
+		for (int i = 0; i < 100 && inFlight.get() < 2; i++) {
+			Thread.sleep(20);
+		}
+		Thread.sleep(100);
+		assertEquals(2, inFlight.get());
+
+		release.countDown();
+		for (CompletableFuture<Tag> f : futures) {
+			assertEquals("slow tag", f.get(10, TimeUnit.SECONDS).getDescription());
+		}
+		assertEquals(2, maxInFlight.get());
+	}
+
+}
@@ -0,0 +1,245 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import edu.upc.cpl.smeagol.client.domain.Booking;
+import edu.upc.cpl.smeagol.client.exception.NotFoundException;
+import edu.upc.cpl.smeagol.client.exception.SmeagolClientException;
+import edu.upc.cpl.smeagol.client.ical.Frequency;
+
+/**
+ * Bookings of <code>SmeagolClient</code>, against a stand-in server which
+ * keeps bookings in memory. Like some Sméagol servers, it ignores the filters
+ * of booking listings, so these tests also check that the client applies
+ * them itself.
+ *
+ */
+@RunWith(JUnit4.class)
+public class BookingRequestsTest extends TestCase {
+
+	private static final DateTime MONDAY = new DateTime(2012, 9, 10, 10, 0, 0, 0);
+
+	private StubSmeagolServer server;
+	private SmeagolClient client;
+
+	private final Map<Long, String> bookings = new TreeMap<Long, String>();
+	private final List<String> requests = new CopyOnWriteArrayList<String>();
+	private long nextId = 1;
+	private String location = "/booking/";
+
+	@Before
+	public void startServer() throws IOException {
+		server = new StubSmeagolServer().handle("/booking", this::serveBookings).start();
+		client = server.newClient();
+	}
+
+	@After
+	public void stopServer() {
+		client.close();
+		server.stop();
+	}
+
+	/**
+	 * GET and POST /booking, and GET, PUT and DELETE /booking/{id}
+	 */
+	private void serveBookings(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+		String query = exchange.getRequestURI().getQuery();
+		requests.add(method + " " + path + (query == null ? "" : "?" + query));
+
+		String body = null;
+		int status;
+		synchronized (bookings) {
+			if (path.equals("/booking") || path.equals("/booking/")) {
+				if (method.equals("POST")) {
+					long id = nextId++;
+					bookings.put(id, StubSmeagolServer.readBody(exchange));
+					exchange.getResponseHeaders().set("Location", location + id);
+					status = 201;
+				} else {
+					// the filters in the query are ignored
+					body = "[" + String.join(",", bookings.values()) + "]";
+					status = 200;
+				}
+			} else {
+				long id = Long.parseLong(path.substring(path.lastIndexOf('/') + 1));
+				if (!bookings.containsKey(id)) {
+					status = 404;
+				} else if (method.equals("GET")) {
+					body = bookings.get(id);
+					status = 200;
+				} else if (method.equals("PUT")) {
+					bookings.put(id, StubSmeagolServer.readBody(exchange));
+					status = 200;
+				} else {
+					bookings.remove(id);
+					status = 200;
+				}
+			}
+		}
+
+		StubSmeagolServer.respond(exchange, status, body);
+	}
+
+	private Long create(Booking booking) {
+		Long id = client.createBooking(booking);
+		// the server stores the id along with the booking
+		synchronized (bookings) {
+			Booking stored = Booking.deserialize(bookings.get(id));
+			stored.setId(id);
+			bookings.put(id, stored.serialize());
+		}
+		return id;
+	}
+
+	private static Set<Long> ids(Collection<Booking> bookings) {
+		Set<Long> ids = new HashSet<Long>();
+		for (Booking b : bookings) {
+			ids.add(b.getId());
+		}
+		return ids;
+	}
+
+	private static Set<Long> ids(Long... ids) {
+		Set<Long> result = new HashSet<Long>();
+		for (Long id : ids) {
+			result.add(id);
+		}
+		return result;
+	}
+
+	@Test
+	public void testCreateWithInvalidLocation() {
+		location = "/booking/x";
+		try {
+			client.createBooking(Booking.asSimple(1L, 2L, MONDAY, MONDAY.plusHours(2)));
+			fail();
+		} catch (SmeagolClientException e) {
+			assertTrue(e.getMessage().contains("/booking/x1"));
+			assertTrue(e.getCause() instanceof NumberFormatException);
+		}
+	}
+
+	@Test
+	public void testCreateGetUpdateDelete() {
+		Long id = create(Booking.asSimple(1L, 2L, MONDAY, MONDAY.plusHours(2)));
+		assertEquals(Long.valueOf(1), id);
+
+		Booking got = client.getBooking(id);
+		assertEquals(Long.valueOf(1), got.getIdResource());
+		assertEquals(Long.valueOf(2), got.getIdEvent());
+		assertEquals(MONDAY.getMillis(), got.getDtStartMillis());
+		assertEquals(1, client.getBookings().size());
+
+		client.updateBooking(id, Booking.asSimple(3L, 2L, MONDAY, MONDAY.plusHours(1)));
+		assertEquals(Long.valueOf(3), client.getBooking(id).getIdResource());
+
+		client.deleteBooking(id);
+		assertFalse(client.tryGetBooking(id).isPresent());
+		try {
+			client.getBooking(id);
+			fail("expected NotFoundException");
+		} catch (NotFoundException e) {
+			// expected
+		}
+		try {
+			client.deleteBooking(id);
+			fail("expected NotFoundException");
+		} catch (NotFoundException e) {
+			// expected
+		}
+		assertTrue(client.getBookings().isEmpty());
+	}
+
+	@Test
+	public void testFiltersSentToServer() {
+		client.getBookings(1L, 2L, new Interval(MONDAY, MONDAY.plusDays(1)));
+		String request = requests.get(requests.size() - 1);
+		assertTrue(request, request.startsWith("GET /booking"));
+		assertTrue(request, request.contains("id_resource=1"));
+		assertTrue(request, request.contains("id_event=2"));
+		assertTrue(request, request.contains("from=2012-09-10T10:00:00"));
+		assertTrue(request, request.contains("to=2012-09-11T10:00:00"));
+	}
+
+	@Test
+	public void testFilteredLocallyByResourceAndEvent() {
+		Long a = create(Booking.asSimple(1L, 10L, MONDAY, MONDAY.plusHours(1)));
+		Long b = create(Booking.asSimple(1L, 20L, MONDAY, MONDAY.plusHours(1)));
+		Long c = create(Booking.asSimple(2L, 10L, MONDAY, MONDAY.plusHours(1)));
+
+		assertEquals(ids(a, b), ids(client.getBookings(1L, null, null)));
+		assertEquals(ids(a, c), ids(client.getBookings(null, 10L, null)));
+		assertEquals(ids(b), ids(client.getBookings(1L, 20L, null)));
+		assertEquals(ids(a, b, c), ids(client.getBookings(null, null, null)));
+		assertTrue(client.getBookings(3L, null, null).isEmpty());
+	}
+
+	@Test
+	public void testFilteredLocallyByWindow() {
+		// before, overlapping and after a window on Tuesday
+		Interval tuesday = new Interval(MONDAY.plusDays(1), MONDAY.plusDays(1).plusHours(4));
+		Long before = create(Booking.asSimple(1L, 1L, MONDAY, MONDAY.plusHours(2)));
+		Long overlapping = create(Booking.asSimple(1L, 1L, MONDAY.plusDays(1).minusHours(1), MONDAY.plusDays(1)
+				.plusHours(1)));
+		Long after = create(Booking.asSimple(1L, 1L, MONDAY.plusDays(2), MONDAY.plusDays(2).plusHours(1)));
+
+		// every Monday for a month: its span overlaps the window, but none of
+		// its occurrences does
+		Long weekly = create(Booking.asWeeklyRecurrence(1L, 1L, MONDAY, MONDAY.plusHours(2), (short) 1, MONDAY
+				.plusMonths(1), null));
+		// every day: one occurrence overlaps the window
+		Long daily = create(Booking.asDailyRecurrence(1L, 1L, MONDAY, MONDAY.plusHours(2), (short) 1, null));
+
+		assertEquals(ids(overlapping, daily), ids(client.getBookings(null, null, tuesday)));
+		assertEquals(ids(before, overlapping, after, weekly, daily), ids(client.getBookings()));
+	}
+
+	@Test
+	public void testSubDailyRecurrenceSpan() {
+		// hourly occurrences of 30 minutes until 12:00, so the last one ends
+		// at 12:30
+		Booking b = Booking.asSimple(1L, 1L, MONDAY, MONDAY.plusMinutes(30));
+		b.setFrequency(Frequency.HOURLY);
+		b.setUntil(MONDAY.plusHours(2));
+		Long hourly = create(b);
+
+		assertEquals(ids(hourly), ids(client.getBookings(null, null, new Interval(MONDAY.plusHours(2).plusMinutes(
+				10), MONDAY.plusHours(3)))));
+		assertTrue(client.getBookings(null, null, new Interval(MONDAY.plusHours(2).plusMinutes(30),
+				MONDAY.plusHours(3))).isEmpty());
+		assertTrue(client.getBookings(null, null, new Interval(MONDAY.minusHours(1), MONDAY)).isEmpty());
+	}
+
+	@Test
+	public void testStreamBookingsFiltered() {
+		create(Booking.asSimple(1L, 1L, MONDAY, MONDAY.plusHours(1)));
+		Long b = create(Booking.asSimple(2L, 1L, MONDAY, MONDAY.plusHours(1)));
+
+		List<Booking> got = new ArrayList<Booking>();
+		client.streamBookings(2L, null, null).forEach(got::add);
+		assertEquals(ids(b), ids(got));
+	}
+
+}
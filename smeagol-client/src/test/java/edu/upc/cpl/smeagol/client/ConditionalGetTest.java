@@ -0,0 +1,107 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import edu.upc.cpl.smeagol.client.domain.Resource;
+
+/**
+ * Conditional GETs of <code>SmeagolClient</code> listings, against a
+ * stand-in server which serves resources with an {@code ETag}.
+ *
+ */
+@RunWith(JUnit4.class)
+public class ConditionalGetTest extends TestCase {
+
+	private static final int RESOURCES = 1000;
+
+	private StubSmeagolServer server;
+	private SmeagolClient client;
+
+	private volatile String etag = "\"v1\"";
+	private byte[] body;
+	private final AtomicInteger fullResponses = new AtomicInteger();
+	private final AtomicInteger notModifiedResponses = new AtomicInteger();
+	private final AtomicLong bytesSent = new AtomicLong();
+
+	@Before
+	public void startServer() throws IOException {
+		List<Resource> resources = new ArrayList<Resource>();
+		for (long i = 0; i < RESOURCES; i++) {
+			Resource r = new Resource("resource " + i, "info of resource " + i);
+			r.setId(i);
+			resources.add(r);
+		}
+		body = Resource.serialize(resources).getBytes(StandardCharsets.UTF_8);
+
+		server = new StubSmeagolServer().handle("/resource", this::serveResources).start();
+		client = server.newClient();
+	}
+
+	@After
+	public void stopServer() {
+		client.close();
+		server.stop();
+	}
+
+	private void serveResources(HttpExchange exchange) throws IOException {
+		String current = etag;
+		if (current.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			notModifiedResponses.incrementAndGet();
+			StubSmeagolServer.respond(exchange, 304, "");
+		} else {
+			fullResponses.incrementAndGet();
+			exchange.getResponseHeaders().set("ETag", current);
+			// counted first: the client may be done as soon as it is written
+			bytesSent.addAndGet(body.length);
+			StubSmeagolServer.respond(exchange, 200, body);
+		}
+	}
+
+	@Test
+	public void testNotModifiedReturnsPreviousResult() {
+		client.setConditionalGets(true);
+
+		Collection<Resource> first = client.getResources();
+		assertEquals(RESOURCES, first.size());
+		for (int i = 0; i < 10; i++) {
+			// the same parsed collection: nothing is read or parsed again
+			assertSame(first, client.getResources());
+		}
+		assertEquals(1, fullResponses.get());
+		assertEquals(10, notModifiedResponses.get());
+		assertEquals(body.length, bytesSent.get());
+
+		etag = "\"v2\"";
+		Collection<Resource> second = client.getResources();
+		assertNotSame(first, second);
+		assertEquals(new ArrayList<Resource>(first), new ArrayList<Resource>(second));
+		assertEquals(2, fullResponses.get());
+	}
+
+	@Test
+	public void testDisabledByDefault() {
+		assertFalse(client.isConditionalGets());
+		client.getResources();
+		client.getResources();
+		assertEquals(2, fullResponses.get());
+		assertEquals(0, notModifiedResponses.get());
+		assertEquals(2L * body.length, bytesSent.get());
+	}
+
+}
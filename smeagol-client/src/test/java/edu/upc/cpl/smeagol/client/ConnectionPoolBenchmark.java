@@ -0,0 +1,97 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Throughput of {@link SmeagolClient#getTags()} under concurrent load, with
+ * the default transport against the pooled one (see
+ * {@link ConnectionPoolConfig}), and the number of TCP connections each of
+ * them opens. It is not a test: run it with
+ * <code>java -cp ... edu.upc.cpl.smeagol.client.ConnectionPoolBenchmark [threads] [requests per thread]</code>
+ * .
+ *
+ */
+public class ConnectionPoolBenchmark {
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int requests = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < 50; i++) {
+			json.append(i == 0 ? "" : ",").append("{\"id\":\"tag").append(i).append("\",\"description\":\"tag ")
+					.append(i).append("\"}");
+		}
+		final byte[] body = json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+		final Set<Integer> ports = Collections.synchronizedSet(new HashSet<Integer>());
+
+		// otherwise Nagle's algorithm delays every response, whatever the client
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/tag", exchange -> {
+			ports.add(exchange.getRemoteAddress().getPort());
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+			exchange.close();
+		});
+		server.setExecutor(Executors.newFixedThreadPool(threads));
+		server.start();
+		String url = "http://127.0.0.1:" + server.getAddress().getPort();
+
+		ConnectionPoolConfig pool = new ConnectionPoolConfig();
+		pool.setMaxConnectionsPerHost(threads);
+		pool.setMaxTotalConnections(threads);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int round = 0; round < ROUNDS; round++) {
+			SmeagolClient plain = new SmeagolClient(url);
+			run("default", plain, executor, threads, requests, ports);
+			plain.close();
+
+			SmeagolClient pooled = new SmeagolClient(url, pool);
+			run("pooled", pooled, executor, threads, requests, ports);
+			pooled.close();
+		}
+		executor.shutdown();
+		server.stop(0);
+		System.exit(0);
+	}
+
+	private static void run(String name, final SmeagolClient client, ExecutorService executor, int threads,
+			final int requests, Set<Integer> ports) throws Exception {
+		ports.clear();
+		long start = System.nanoTime();
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int i = 0; i < threads; i++) {
+			results.add(executor.submit(() -> {
+				for (int j = 0; j < requests; j++) {
+					client.getTags();
+				}
+			}));
+		}
+		for (Future<?> result : results) {
+			result.get();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%-8s %9.0f requests/s, %5d connections%n", name, threads * requests / seconds,
+				ports.size());
+	}
+
+}
@@ -0,0 +1,168 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Pooled transport of <code>SmeagolClient</code>, against a stand-in server
+ * which answers every request with a list of tags and counts the TCP
+ * connections opened by the client and those still open.
+ *
+ */
+@RunWith(JUnit4.class)
+public class ConnectionPoolTest extends TestCase {
+
+	private static final byte[] TAGS = "[{\"id\":\"a\",\"description\":\"tag a\"}]".getBytes(StandardCharsets.UTF_8);
+
+	private ServerSocket serverSocket;
+	private ExecutorService serverThreads;
+	private SmeagolClient client;
+
+	private final AtomicInteger accepted = new AtomicInteger();
+	private final AtomicInteger open = new AtomicInteger();
+
+	@Before
+	public void startServer() throws IOException {
+		serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		serverThreads = Executors.newCachedThreadPool();
+		serverThreads.execute(() -> {
+			while (!serverSocket.isClosed()) {
+				try {
+					Socket socket = serverSocket.accept();
+					accepted.incrementAndGet();
+					open.incrementAndGet();
+					serverThreads.execute(() -> serve(socket));
+				} catch (IOException e) {
+					// server stopped
+				}
+			}
+		});
+	}
+
+	@After
+	public void stopServer() throws IOException {
+		if (client != null) {
+			client.close();
+		}
+		serverSocket.close();
+		serverThreads.shutdownNow();
+	}
+
+	/**
+	 * Answer the requests received on a connection until the client closes
+	 * it.
+	 */
+	private void serve(Socket socket) {
+		try (Socket s = socket) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(),
+					StandardCharsets.ISO_8859_1));
+			OutputStream out = new BufferedOutputStream(s.getOutputStream());
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (!line.isEmpty()) {
+					continue;
+				}
+				// end of the headers of a GET request
+				String headers = "HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: "
+						+ TAGS.length + "\r\n\r\n";
+				out.write(headers.getBytes(StandardCharsets.ISO_8859_1));
+				out.write(TAGS);
+				out.flush();
+			}
+		} catch (IOException e) {
+			// connection reset by the client
+		} finally {
+			open.decrementAndGet();
+		}
+	}
+
+	private String url() {
+		return "http://127.0.0.1:" + serverSocket.getLocalPort();
+	}
+
+	private SmeagolClient newPooledClient(int maxConnections) throws IOException {
+		ConnectionPoolConfig config = new ConnectionPoolConfig();
+		config.setMaxConnectionsPerHost(maxConnections);
+		config.setMaxTotalConnections(maxConnections);
+		return new SmeagolClient(url(), config);
+	}
+
+	private void awaitOpenConnections(int expected) throws InterruptedException {
+		for (int i = 0; i < 100 && open.get() != expected; i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(expected, open.get());
+	}
+
+	@Test
+	public void testReusesConnection() throws IOException {
+		client = newPooledClient(4);
+		for (int i = 0; i < 20; i++) {
+			assertEquals(1, client.getTags().size());
+		}
+		assertEquals(1, accepted.get());
+		assertEquals(1, open.get());
+	}
+
+	@Test
+	public void testConcurrentRequestsBoundedByPool() throws Exception {
+		client = newPooledClient(2);
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 8; i++) {
+				results.add(threads.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						int tags = 0;
+						for (int j = 0; j < 25; j++) {
+							tags += client.getTags().size();
+						}
+						return tags;
+					}
+				}));
+			}
+			for (Future<Integer> result : results) {
+				assertEquals(Integer.valueOf(25), result.get(30, TimeUnit.SECONDS));
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+		assertTrue("connections: " + accepted.get(), accepted.get() <= 2);
+	}
+
+	@Test
+	public void testCloseReleasesConnections() throws Exception {
+		client = newPooledClient(4);
+		client.getTags();
+		assertEquals(1, open.get());
+
+		client.close();
+		client = null;
+		awaitOpenConnections(0);
+	}
+
+}
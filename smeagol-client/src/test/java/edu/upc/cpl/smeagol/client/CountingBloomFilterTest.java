@@ -0,0 +1,61 @@
+package edu.upc.cpl.smeagol.client;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * <code>CountingBloomFilter</code> tests.
+ *
+ */
+@RunWith(JUnit4.class)
+public class CountingBloomFilterTest extends TestCase {
+
+	@Test
+	public void testNoFalseNegatives() {
+		CountingBloomFilter filter = new CountingBloomFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			filter.add("tag" + i);
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(filter.mightContain("tag" + i));
+		}
+
+		int falsePositives = 0;
+		for (int i = 0; i < 100000; i++) {
+			if (filter.mightContain("missing" + i)) {
+				falsePositives++;
+			}
+		}
+		// 1% expected, with some margin
+		assertTrue("false positives: " + falsePositives, falsePositives < 2000);
+	}
+
+	@Test
+	public void testRemove() {
+		CountingBloomFilter filter = new CountingBloomFilter(100, 0.01);
+		filter.add("a");
+		filter.add("b");
+		filter.add("b");
+
+		filter.remove("a");
+		assertFalse(filter.mightContain("a"));
+		filter.remove("b");
+		assertTrue(filter.mightContain("b"));
+		filter.remove("b");
+		assertFalse(filter.mightContain("b"));
+
+		// removing a string which is not there does nothing
+		filter.add("c");
+		filter.remove("a");
+		assertTrue(filter.mightContain("c"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidFalsePositiveRate() {
+		new CountingBloomFilter(100, 1);
+	}
+
+}
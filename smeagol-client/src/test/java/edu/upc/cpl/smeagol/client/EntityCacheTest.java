@@ -0,0 +1,104 @@
+package edu.upc.cpl.smeagol.client;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * <code>EntityCache</code> tests.
+ *
+ */
+@RunWith(JUnit4.class)
+public class EntityCacheTest extends TestCase {
+
+	@After
+	public void resetTime() {
+		DateTimeUtils.setCurrentMillisSystem();
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() {
+		EntityCacheConfig config = new EntityCacheConfig();
+		config.setMaximumSize(2);
+		EntityCache cache = new EntityCache(config);
+
+		cache.put(EntityCache.Type.RESOURCE, 1L, "r1", cache.stamp());
+		cache.put(EntityCache.Type.EVENT, 1L, "e1", cache.stamp());
+		assertEquals("r1", cache.get(EntityCache.Type.RESOURCE, 1));
+		cache.put(EntityCache.Type.TAG, "t", "t", cache.stamp());
+
+		assertEquals(2, cache.size());
+		assertNull(cache.get(EntityCache.Type.EVENT, 1L));
+		assertEquals("r1", cache.get(EntityCache.Type.RESOURCE, 1L));
+		assertEquals("t", cache.get(EntityCache.Type.TAG, "t"));
+		assertEquals(3, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testTtlPerType() {
+		EntityCacheConfig config = new EntityCacheConfig();
+		config.setTtl(EntityCache.Type.TAG, 1000);
+		config.setTtl(EntityCache.Type.EVENT, 0);
+		EntityCache cache = new EntityCache(config);
+
+		DateTimeUtils.setCurrentMillisFixed(10000);
+		cache.put(EntityCache.Type.TAG, "t", "t", cache.stamp());
+		cache.put(EntityCache.Type.RESOURCE, 1L, "r1", cache.stamp());
+		cache.put(EntityCache.Type.EVENT, 1L, "e1", cache.stamp());
+		assertEquals(2, cache.size());
+
+		DateTimeUtils.setCurrentMillisFixed(10999);
+		assertEquals("t", cache.get(EntityCache.Type.TAG, "t"));
+		DateTimeUtils.setCurrentMillisFixed(11000);
+		assertNull(cache.get(EntityCache.Type.TAG, "t"));
+		assertEquals("r1", cache.get(EntityCache.Type.RESOURCE, 1L));
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testInvalidation() {
+		EntityCache cache = new EntityCache();
+		cache.put(EntityCache.Type.BOOKING, 1L, "b1", cache.stamp());
+		cache.put(EntityCache.Type.BOOKING, 2L, "b2", cache.stamp());
+		cache.put(EntityCache.Type.EVENT, 1L, "e1", cache.stamp());
+
+		// a response requested before a write is not stored after it
+		long stamp = cache.stamp();
+		cache.invalidate(EntityCache.Type.EVENT, 1L);
+		cache.put(EntityCache.Type.EVENT, 1L, "stale", stamp);
+		assertNull(cache.get(EntityCache.Type.EVENT, 1L));
+
+		cache.invalidateAll(EntityCache.Type.BOOKING);
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testAbsentEntities() {
+		EntityCacheConfig config = new EntityCacheConfig();
+		config.setNegativeTtl(100);
+		EntityCache cache = new EntityCache(config);
+
+		DateTimeUtils.setCurrentMillisFixed(10000);
+		cache.putAbsent(EntityCache.Type.TAG, "missing", cache.stamp());
+		assertSame(EntityCache.ABSENT, cache.get(EntityCache.Type.TAG, "missing"));
+		DateTimeUtils.setCurrentMillisFixed(10100);
+		assertNull(cache.get(EntityCache.Type.TAG, "missing"));
+
+		cache.putAbsent(EntityCache.Type.TAG, "created", cache.stamp());
+		cache.invalidate(EntityCache.Type.TAG, "created");
+		assertNull(cache.get(EntityCache.Type.TAG, "created"));
+
+		config.setNegativeTtl(0);
+		cache = new EntityCache(config);
+		cache.putAbsent(EntityCache.Type.TAG, "missing", cache.stamp());
+		assertEquals(0, cache.size());
+	}
+
+}
@@ -0,0 +1,87 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.function.IntSupplier;
+
+import com.sun.net.httpserver.HttpServer;
+
+import edu.upc.cpl.smeagol.client.exception.NotFoundException;
+
+/**
+ * Cost of lookups of missing tags: {@link SmeagolClient#getTag(String)}
+ * catching {@link NotFoundException}, with and without stack traces, against
+ * {@link SmeagolClient#tryGetTag(String)}. Misses are answered by the
+ * negative cache, so the cost is that of the lookup itself rather than the
+ * network. Lookups are done some frames deep, as in a real application. It
+ * is not a test: run it with
+ * <code>java -cp ... edu.upc.cpl.smeagol.client.LookupBenchmark [lookups] [depth]</code>
+ * .
+ *
+ */
+public class LookupBenchmark {
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws IOException {
+		int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/tag", exchange -> {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+		});
+		server.start();
+
+		SmeagolClient client = new SmeagolClient("http://127.0.0.1:" + server.getAddress().getPort());
+		EntityCacheConfig config = new EntityCacheConfig();
+		config.setNegativeTtl(Long.MAX_VALUE / 2);
+		client.setCache(new EntityCache(config));
+		client.tryGetTag("missing");
+
+		IntSupplier catching = () -> {
+			int misses = 0;
+			for (int i = 0; i < lookups; i++) {
+				try {
+					client.getTag("missing");
+				} catch (NotFoundException e) {
+					misses++;
+				}
+			}
+			return misses;
+		};
+		IntSupplier optional = () -> {
+			int misses = 0;
+			for (int i = 0; i < lookups; i++) {
+				if (!client.tryGetTag("missing").isPresent()) {
+					misses++;
+				}
+			}
+			return misses;
+		};
+
+		for (int round = 0; round < ROUNDS; round++) {
+			client.setStacklessExceptions(false);
+			run("getTag, stack traces", catching, depth, lookups);
+			client.setStacklessExceptions(true);
+			run("getTag, stackless", catching, depth, lookups);
+			run("tryGetTag", optional, depth, lookups);
+		}
+		client.close();
+		server.stop(0);
+		System.exit(0);
+	}
+
+	private static void run(String name, IntSupplier lookups, int depth, int count) {
+		long start = System.nanoTime();
+		int misses = atDepth(depth, lookups);
+		double nanos = (double) (System.nanoTime() - start) / count;
+		System.out.printf("%-22s %8.1f ns/lookup (%d misses)%n", name, nanos, misses);
+	}
+
+	private static int atDepth(int depth, IntSupplier lookups) {
+		return depth <= 0 ? lookups.getAsInt() : atDepth(depth - 1, lookups);
+	}
+
+}
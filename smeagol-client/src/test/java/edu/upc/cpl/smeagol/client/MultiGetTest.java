@@ -0,0 +1,140 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import edu.upc.cpl.smeagol.client.domain.Resource;
+import edu.upc.cpl.smeagol.client.domain.Tag;
+
+/**
+ * Multi-get methods of <code>SmeagolClient</code>, against a stand-in server
+ * which knows tags "a" to "z" and resources 1 to 100, takes a while to
+ * answer and records the requests it receives and how many of them are
+ * served at the same time.
+ *
+ */
+@RunWith(JUnit4.class)
+public class MultiGetTest extends TestCase {
+
+	private static final long DELAY = 20;
+
+	private StubSmeagolServer server;
+	private SmeagolClient client;
+
+	private final List<String> requests = new CopyOnWriteArrayList<String>();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+
+	@Before
+	public void startServer() throws IOException {
+		server = new StubSmeagolServer(true).handle("/tag", this::serve).handle("/resource", this::serve).start();
+		client = server.newClient();
+	}
+
+	@After
+	public void stopServer() {
+		client.close();
+		server.stop();
+	}
+
+	/**
+	 * GET /tag/{id} and /resource/{id}
+	 */
+	private void serve(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		requests.add(path);
+		maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+		try {
+			Thread.sleep(DELAY);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		String id = path.substring(path.lastIndexOf('/') + 1);
+		String json = null;
+		if (path.startsWith("/tag/") && id.matches("[a-z]")) {
+			json = new Tag(id, "tag " + id).serialize();
+		} else if (path.startsWith("/resource/") && id.matches("[0-9]+") && Long.parseLong(id) <= 100) {
+			Resource r = new Resource("resource " + id, "info of resource " + id);
+			r.setId(Long.parseLong(id));
+			json = r.serialize();
+		}
+
+		// done before answering: the client may be done as soon as it is
+		inFlight.decrementAndGet();
+		StubSmeagolServer.respond(exchange, json == null ? 404 : 200, json);
+	}
+
+	private static List<String> ids(Iterable<Tag> tags) {
+		List<String> ids = new ArrayList<String>();
+		for (Tag t : tags) {
+			ids.add(t.getId());
+		}
+		return ids;
+	}
+
+	@Test
+	public void testKeepsOrderAndSkipsMissing() {
+		List<String> wanted = Arrays.asList("q", "missing", "c", "x", "42", "a");
+		assertEquals(Arrays.asList("q", "c", "x", "a"), ids(client.getTags(wanted)));
+		assertEquals(wanted.size(), requests.size());
+	}
+
+	@Test
+	public void testDuplicateIdentifiers() {
+		assertEquals(Arrays.asList("b", "a"), ids(client.getTags(Arrays.asList("b", "a", "b", "a", "b"))));
+		assertEquals(2, requests.size());
+	}
+
+	@Test
+	public void testResources() {
+		List<Resource> resources = new ArrayList<Resource>(client.getResources(Arrays.asList(7L, 123456789L, 3L)));
+		assertEquals(2, resources.size());
+		assertEquals(Long.valueOf(7), resources.get(0).getId());
+		assertEquals(Long.valueOf(3), resources.get(1).getId());
+		assertEquals("resource 3", resources.get(1).getDescription());
+	}
+
+	@Test
+	public void testConcurrencyCap() {
+		List<String> wanted = new ArrayList<String>();
+		for (char c = 'a'; c <= 'z'; c++) {
+			wanted.add(String.valueOf(c));
+		}
+
+		client.setMultiGetConcurrency(4);
+		assertEquals(wanted, ids(client.getTags(wanted)));
+		assertEquals(26, requests.size());
+		assertTrue("max in flight: " + maxInFlight.get(), maxInFlight.get() <= 4);
+		assertTrue("max in flight: " + maxInFlight.get(), maxInFlight.get() > 1);
+	}
+
+	@Test
+	public void testSequential() {
+		client.setMultiGetConcurrency(1);
+		assertEquals(Arrays.asList("a", "b", "c", "d"), ids(client.getTags(Arrays.asList("a", "b", "c", "d"))));
+		assertEquals(Arrays.asList("/tag/a", "/tag/b", "/tag/c", "/tag/d"), requests);
+		assertEquals(1, maxInFlight.get());
+	}
+
+	@Test
+	public void testEmpty() {
+		assertTrue(client.getTags(new ArrayList<String>()).isEmpty());
+		assertTrue(requests.isEmpty());
+	}
+
+}
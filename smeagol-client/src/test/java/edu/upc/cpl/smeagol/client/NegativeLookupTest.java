@@ -0,0 +1,192 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import edu.upc.cpl.smeagol.client.domain.Tag;
+import edu.upc.cpl.smeagol.client.exception.NotFoundException;
+
+/**
+ * Lookups of missing tags, answered by the negative cache and the tag filter
+ * of <code>SmeagolClient</code>, against a stand-in server which knows the
+ * tags "a" and "b".
+ *
+ */
+@RunWith(JUnit4.class)
+public class NegativeLookupTest extends TestCase {
+
+	private static final List<Tag> TAGS = Arrays.asList(new Tag("a", "tag a"), new Tag("b", "tag b"));
+
+	private StubSmeagolServer server;
+	private SmeagolClient client;
+
+	private final List<String> requests = new CopyOnWriteArrayList<String>();
+	private volatile int deleteStatus = 200;
+
+	@Before
+	public void startServer() throws IOException {
+		server = new StubSmeagolServer().handle("/tag", this::serveTags).start();
+		client = server.newClient();
+	}
+
+	@After
+	public void stopServer() {
+		client.close();
+		server.stop();
+	}
+
+	private void serveTags(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		requests.add(exchange.getRequestMethod() + " " + path);
+
+		int status;
+		String body;
+		if (exchange.getRequestMethod().equals("POST")) {
+			exchange.getResponseHeaders().set("Location", "/tag/c");
+			status = 201;
+			body = "";
+		} else if (exchange.getRequestMethod().equals("DELETE")) {
+			status = deleteStatus;
+			body = "";
+		} else if (path.equals("/tag")) {
+			status = 200;
+			body = Tag.serialize(TAGS);
+		} else {
+			String id = path.substring("/tag/".length());
+			status = 404;
+			body = "";
+			for (Tag t : TAGS) {
+				if (t.getId().equals(id)) {
+					status = 200;
+					body = t.serialize();
+				}
+			}
+		}
+		StubSmeagolServer.respond(exchange, status, body);
+	}
+
+	@Test
+	public void testTryGetTag() {
+		assertEquals(TAGS.get(0), client.tryGetTag("a").get());
+		assertFalse(client.tryGetTag("x").isPresent());
+	}
+
+	@Test
+	public void testNegativeCache() {
+		client.setCache(new EntityCache());
+
+		for (int i = 0; i < 3; i++) {
+			try {
+				client.getTag("x");
+				fail("expected NotFoundException");
+			} catch (NotFoundException e) {
+				// expected
+			}
+		}
+		assertEquals(Arrays.asList("GET /tag/x"), requests);
+		assertEquals(2, client.getCache().getHitCount());
+	}
+
+	@Test
+	public void testStacklessExceptions() throws IOException {
+		SmeagolClient other = server.newClient();
+		try {
+			client.setStacklessExceptions(true);
+			assertTrue(client.isStacklessExceptions());
+			assertFalse(other.isStacklessExceptions());
+			try {
+				client.getTag("x");
+				fail("expected NotFoundException");
+			} catch (NotFoundException e) {
+				assertEquals(0, e.getStackTrace().length);
+			}
+
+			// the setting belongs to each client
+			try {
+				other.getTag("x");
+				fail("expected NotFoundException");
+			} catch (NotFoundException e) {
+				assertTrue(e.getStackTrace().length > 0);
+			}
+
+			client.setStacklessExceptions(false);
+			try {
+				client.getTag("x");
+				fail("expected NotFoundException");
+			} catch (NotFoundException e) {
+				assertTrue(e.getStackTrace().length > 0);
+			}
+		} finally {
+			other.close();
+		}
+	}
+
+	@Test
+	public void testTagFilter() {
+		client.loadTagFilter(0.01);
+		requests.clear();
+
+		Collection<Tag> tags = client.getTags(Arrays.asList("a", "x", "y", "z"));
+		assertEquals(Arrays.asList(TAGS.get(0)), tags);
+		assertEquals(Arrays.asList("GET /tag/a"), requests);
+
+		// created tags are added to the filter
+		client.createTag("c", "tag c");
+		requests.clear();
+		client.getTags(Arrays.asList("c"));
+		assertEquals(Arrays.asList("GET /tag/c"), requests);
+
+		client.clearTagFilter();
+		requests.clear();
+		client.getTags(Arrays.asList("x"));
+		assertEquals(Arrays.asList("GET /tag/x"), requests);
+	}
+
+	@Test
+	public void testTagFilterKeptOnFailedDelete() {
+		client.loadTagFilter(0.01);
+		client.createTag("c", "tag c");
+
+		deleteStatus = 500;
+		client.deleteTag("c");
+		requests.clear();
+		client.getTags(Arrays.asList("c"));
+		assertEquals(Arrays.asList("GET /tag/c"), requests);
+
+		deleteStatus = 200;
+		client.deleteTag("c");
+		requests.clear();
+		client.getTags(Arrays.asList("c"));
+		assertTrue(requests.isEmpty());
+	}
+
+	@Test
+	public void testTagFilterRemovesOnlyCreatedTags() {
+		client.loadTagFilter(0.01);
+
+		// none of these was added to the filter, and some of them are false
+		// positives of it: removing them would clear counters of "a" and "b"
+		for (int i = 0; i < 1000; i++) {
+			client.deleteTag("x" + i);
+		}
+		requests.clear();
+		assertEquals(TAGS, client.getTags(Arrays.asList("a", "b")));
+		// the multi-get sends both lookups at the same time
+		assertEquals(new HashSet<String>(Arrays.asList("GET /tag/a", "GET /tag/b")), new HashSet<String>(requests));
+	}
+
+}
@@ -0,0 +1,119 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import edu.upc.cpl.smeagol.client.domain.Resource;
+import edu.upc.cpl.smeagol.client.exception.NotFoundException;
+
+/**
+ * Coalescing of concurrent GETs of <code>SmeagolClient</code>, against a
+ * stand-in server which answers slowly.
+ *
+ */
+@RunWith(JUnit4.class)
+public class SingleFlightTest extends TestCase {
+
+	private static final int CALLERS = 16;
+
+	/*
+	 * Time the server takes to answer, long enough for all the callers to
+	 * join the first request
+	 */
+	private static final long RESPONSE_DELAY = 500;
+
+	private StubSmeagolServer server;
+	private SmeagolClient client;
+	private ExecutorService callers;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	@Before
+	public void startServer() throws IOException {
+		server = new StubSmeagolServer(true);
+		server.handle("/resource/1", exchange -> respond(exchange, 200,
+				"{\"id\":1,\"description\":\"resource 1\",\"info\":\"info\"}"));
+		server.handle("/tag", exchange -> respond(exchange, 404, "not found"));
+		server.start();
+		client = server.newClient();
+		callers = Executors.newFixedThreadPool(CALLERS);
+	}
+
+	@After
+	public void stopServer() {
+		callers.shutdownNow();
+		client.close();
+		server.stop();
+	}
+
+	private void respond(HttpExchange exchange, int status, String body) throws IOException {
+		requests.incrementAndGet();
+		try {
+			Thread.sleep(RESPONSE_DELAY);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		StubSmeagolServer.respond(exchange, status, body);
+	}
+
+	private <T> List<Future<T>> callConcurrently(Callable<T> call) {
+		CyclicBarrier start = new CyclicBarrier(CALLERS);
+		List<Future<T>> results = new ArrayList<Future<T>>();
+		for (int i = 0; i < CALLERS; i++) {
+			results.add(callers.submit(() -> {
+				start.await();
+				return call.call();
+			}));
+		}
+		return results;
+	}
+
+	@Test
+	public void testConcurrentGetsShareOneRequest() throws Exception {
+		List<Future<Resource>> results = callConcurrently(() -> client.getResource(1L));
+
+		Resource first = results.get(0).get();
+		for (Future<Resource> result : results) {
+			assertEquals(first, result.get());
+		}
+		assertEquals(1, requests.get());
+
+		// a later call is a new request
+		client.getResource(1L);
+		assertEquals(2, requests.get());
+	}
+
+	@Test
+	public void testConcurrentGetsShareOneError() throws Exception {
+		List<Future<Object>> results = callConcurrently(() -> client.getResourceTags(1));
+
+		for (Future<Object> result : results) {
+			try {
+				result.get();
+				fail("expected NotFoundException");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof NotFoundException);
+			}
+		}
+		assertEquals(1, requests.get());
+	}
+
+}
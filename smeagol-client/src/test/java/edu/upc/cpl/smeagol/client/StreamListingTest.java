@@ -0,0 +1,91 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import edu.upc.cpl.smeagol.client.domain.Tag;
+import edu.upc.cpl.smeagol.client.exception.SmeagolClientException;
+
+/**
+ * Streamed listings of <code>SmeagolClient</code>, against a stand-in server
+ * which serves a listing of tags.
+ *
+ */
+@RunWith(JUnit4.class)
+public class StreamListingTest extends TestCase {
+
+	private static final int TAGS = 1000;
+
+	private StubSmeagolServer server;
+	private SmeagolClient client;
+
+	private volatile int status = 200;
+	private byte[] body;
+
+	@Before
+	public void startServer() throws IOException {
+		List<Tag> tags = new ArrayList<Tag>();
+		for (int i = 0; i < TAGS; i++) {
+			tags.add(new Tag("tag" + i, "description of tag " + i));
+		}
+		body = Tag.serialize(tags).getBytes(StandardCharsets.UTF_8);
+
+		server = new StubSmeagolServer().handle("/tag", this::serveTags).start();
+		client = server.newClient();
+	}
+
+	@After
+	public void stopServer() {
+		client.close();
+		server.stop();
+	}
+
+	private void serveTags(HttpExchange exchange) throws IOException {
+		StubSmeagolServer.respond(exchange, status, status == 200 ? body : null);
+	}
+
+	@Test
+	public void testStreamTags() {
+		try (Stream<Tag> tags = client.streamTags()) {
+			List<Tag> got = tags.collect(Collectors.toList());
+			assertEquals(TAGS, got.size());
+			assertEquals(new ArrayList<Tag>(client.getTags()), got);
+		}
+	}
+
+	@Test
+	public void testCloseEarly() {
+		for (int i = 0; i < 10; i++) {
+			try (Stream<Tag> tags = client.streamTags()) {
+				assertEquals("tag0", tags.findFirst().get().getId());
+			}
+		}
+		assertEquals(TAGS, client.getTags().size());
+	}
+
+	@Test
+	public void testServerError() {
+		status = 500;
+		try {
+			client.streamTags();
+			fail("expected SmeagolClientException");
+		} catch (SmeagolClientException e) {
+			// expected
+		}
+	}
+
+}
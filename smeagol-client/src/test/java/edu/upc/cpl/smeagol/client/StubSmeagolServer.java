@@ -0,0 +1,122 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stand-in Sméagol server for tests, listening on a free local port.
+ * <p>
+ * Tests register a handler for each path they serve with
+ * {@link #handle(String, HttpHandler)}, start the server and create clients
+ * of it with {@link #newClient()}. Handlers answer with
+ * {@link #respond(HttpExchange, int, String)}.
+ *
+ */
+final class StubSmeagolServer {
+
+	private final HttpServer server;
+	private final ExecutorService threads;
+
+	/**
+	 * Create a server which handles one request at a time.
+	 */
+	StubSmeagolServer() throws IOException {
+		this(false);
+	}
+
+	/**
+	 * @param concurrent
+	 *            <code>true</code> to handle each request in its own thread,
+	 *            for tests of concurrent requests.
+	 */
+	StubSmeagolServer(boolean concurrent) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		threads = concurrent ? Executors.newCachedThreadPool() : null;
+		server.setExecutor(threads);
+	}
+
+	/**
+	 * Handle the requests to a path and the paths below it.
+	 */
+	StubSmeagolServer handle(String path, HttpHandler handler) {
+		server.createContext(path, handler);
+		return this;
+	}
+
+	StubSmeagolServer start() {
+		server.start();
+		return this;
+	}
+
+	void stop() {
+		server.stop(0);
+		if (threads != null) {
+			threads.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the base url of the server.
+	 */
+	String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * @return a new client of the server.
+	 */
+	SmeagolClient newClient() throws MalformedURLException {
+		return new SmeagolClient(getUrl());
+	}
+
+	/**
+	 * Answer a request and close the exchange.
+	 *
+	 * @param body
+	 *            a JSON body, or null or empty to answer without a body.
+	 */
+	static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		respond(exchange, status, body == null ? null : body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Answer a request and close the exchange.
+	 *
+	 * @param body
+	 *            a JSON body, or null or empty to answer without a body.
+	 */
+	static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+		if (body == null || body.length == 0) {
+			exchange.sendResponseHeaders(status, -1);
+		} else {
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(status, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+		exchange.close();
+	}
+
+	/**
+	 * @return the body of a request, as a string.
+	 */
+	static String readBody(HttpExchange exchange) {
+		InputStream in = exchange.getRequestBody();
+		try (Scanner scanner = new Scanner(in, "UTF-8")) {
+			return scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+		}
+	}
+
+}
@@ -0,0 +1,253 @@
+package edu.upc.cpl.smeagol.client;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import edu.upc.cpl.smeagol.client.TaggingBatcher.FlushReport;
+import edu.upc.cpl.smeagol.client.exception.NotFoundException;
+
+/**
+ * <code>TaggingBatcher</code> tests, against a stand-in server which keeps
+ * the tags applied to resources and events. Tags whose id starts with
+ * "missing", and resources and events whose id is {@value #MISSING} or
+ * greater, do not exist.
+ *
+ */
+@RunWith(JUnit4.class)
+public class TaggingBatcherTest extends TestCase {
+
+	private static final long MISSING = 1000;
+
+	private StubSmeagolServer server;
+	private SmeagolClient client;
+	private TaggingBatcher batcher;
+
+	private final Set<String> applied = new HashSet<String>();
+	private final List<String> requests = new CopyOnWriteArrayList<String>();
+	private final List<String> lookups = new CopyOnWriteArrayList<String>();
+
+	@Before
+	public void startServer() throws IOException {
+		server = new StubSmeagolServer();
+		server.handle("/tag", this::serveLookup).handle("/resource", this::serve).handle("/event", this::serve);
+		server.start();
+		client = server.newClient();
+	}
+
+	@After
+	public void stopServer() {
+		if (batcher != null) {
+			batcher.close();
+		}
+		client.close();
+		server.stop();
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		if (exchange.getRequestURI().getPath().contains("/tag/")) {
+			serveTagging(exchange);
+		} else {
+			serveLookup(exchange);
+		}
+	}
+
+	/**
+	 * GET /tag/{tag}, /resource/{id} and /event/{id}
+	 */
+	private void serveLookup(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		lookups.add(exchange.getRequestMethod() + " " + path);
+
+		String id = path.substring(path.lastIndexOf('/') + 1);
+		String json;
+		if (path.startsWith("/tag/")) {
+			json = exists(id) ? "{\"id\":\"" + id + "\"}" : null;
+		} else {
+			json = exists(Long.parseLong(id)) ? "{\"id\":" + id + ",\"description\":\"" + id + "\"}" : null;
+		}
+		StubSmeagolServer.respond(exchange, json == null ? 404 : 200, json);
+	}
+
+	/**
+	 * PUT and DELETE /{resource|event}/{id}/tag/{tag}
+	 */
+	private void serveTagging(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+		requests.add(method + " " + path);
+
+		String[] segments = path.split("/");
+		int status;
+		synchronized (applied) {
+			if (!exists(segments[4]) || !exists(Long.parseLong(segments[2]))) {
+				status = 404;
+			} else if (method.equals("PUT")) {
+				applied.add(path);
+				status = 200;
+			} else {
+				status = applied.remove(path) ? 200 : 404;
+			}
+		}
+		StubSmeagolServer.respond(exchange, status, "");
+	}
+
+	private static boolean exists(String tagId) {
+		return !tagId.startsWith("missing");
+	}
+
+	private static boolean exists(long id) {
+		return id < MISSING;
+	}
+
+	private TaggingBatcher newBatcher(int maxBatchSize, long maxDelay) {
+		TaggingBatcherConfig config = new TaggingBatcherConfig();
+		config.setMaxBatchSize(maxBatchSize);
+		config.setMaxDelay(maxDelay);
+		config.setParallelism(4);
+		return new TaggingBatcher(client, config);
+	}
+
+	@Test
+	public void testCollapseAndReport() throws Exception {
+		batcher = newBatcher(100, 0);
+		synchronized (applied) {
+			applied.add("/resource/3/tag/c");
+		}
+
+		List<CompletableFuture<Void>> futures = Arrays.asList(batcher.tagResource("a", 1),
+				batcher.untagResource("a", 1), batcher.tagResource("b", 1), batcher.tagResource("b", 1),
+				batcher.untagResource("c", 3), batcher.tagResource("c", 3), batcher.tagEvent("missing", 2));
+		assertEquals(4, batcher.getPendingCount());
+		assertTrue(requests.isEmpty());
+
+		FlushReport report = batcher.flush().get(10, TimeUnit.SECONDS);
+		assertEquals(7, report.getOperations());
+		assertEquals(4, report.getRequests());
+		assertEquals(new HashSet<String>(Arrays.asList("DELETE /resource/1/tag/a", "PUT /resource/1/tag/b",
+				"PUT /resource/3/tag/c", "PUT /event/2/tag/missing")), new HashSet<String>(requests));
+
+		// the untag after a tag ignores that "a" was not applied
+		for (int i = 0; i < 6; i++) {
+			assertNull(futures.get(i).get());
+		}
+		try {
+			futures.get(6).get();
+			fail("expected NotFoundException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NotFoundException);
+		}
+		assertFalse(report.isSuccessful());
+		assertEquals(1, report.getFailures().size());
+		assertEquals("tag event 2 with missing", report.getFailures().keySet().iterator().next().toString());
+
+		synchronized (applied) {
+			assertEquals(new HashSet<String>(Arrays.asList("/resource/1/tag/b", "/resource/3/tag/c")), applied);
+		}
+		// only the 404 of the collapsed untag needs to be checked
+		assertEquals(new HashSet<String>(Arrays.asList("GET /tag/a", "GET /resource/1")), new HashSet<String>(
+				lookups));
+	}
+
+	@Test
+	public void testCollapsedUntagOfMissingEntities() throws Exception {
+		batcher = newBatcher(100, 0);
+
+		List<CompletableFuture<Void>> futures = Arrays.asList(batcher.tagResource("missing-typo", 5),
+				batcher.untagResource("missing-typo", 5), batcher.tagResource("a", MISSING),
+				batcher.untagResource("a", MISSING), batcher.tagEvent("a", MISSING), batcher.untagEvent("a", MISSING),
+				batcher.tagEvent("a", 5), batcher.untagEvent("a", 5));
+
+		FlushReport report = batcher.flush().get(10, TimeUnit.SECONDS);
+		assertEquals(4, report.getRequests());
+		assertEquals(3, report.getFailures().size());
+		for (int i = 0; i < 6; i++) {
+			try {
+				futures.get(i).get();
+				fail("expected NotFoundException");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof NotFoundException);
+			}
+		}
+		// the event and the tag exist: the tag was not applied
+		assertNull(futures.get(6).get());
+		assertNull(futures.get(7).get());
+	}
+
+	@Test
+	public void testFlushWhenFull() throws Exception {
+		batcher = newBatcher(3, 0);
+		CompletableFuture<Void> first = batcher.tagResource("a", 1);
+		CompletableFuture<Void> second = batcher.tagResource("a", 2);
+		assertFalse(first.isDone());
+
+		batcher.tagResource("a", 3).get(10, TimeUnit.SECONDS);
+		first.get(10, TimeUnit.SECONDS);
+		second.get(10, TimeUnit.SECONDS);
+		assertEquals(3, requests.size());
+	}
+
+	@Test
+	public void testTimedFlush() throws Exception {
+		batcher = newBatcher(100, 20);
+		batcher.tagEvent("a", 1).get(10, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList("PUT /event/1/tag/a"), requests);
+	}
+
+	@Test
+	public void testErrorCompletesFutures() throws Exception {
+		SmeagolClient failing = new SmeagolClient(server.getUrl()) {
+			@Override
+			public void tagResource(String tagId, long resourceId) {
+				throw new AssertionError("error tagging " + resourceId);
+			}
+		};
+		try {
+			batcher = new TaggingBatcher(failing);
+			CompletableFuture<Void> future = batcher.tagResource("a", 1);
+			FlushReport report = batcher.flush().get(10, TimeUnit.SECONDS);
+			try {
+				future.get(10, TimeUnit.SECONDS);
+				fail("expected AssertionError");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof AssertionError);
+			}
+			assertEquals(1, report.getFailures().size());
+			assertTrue(report.getFailures().values().iterator().next().getCause() instanceof AssertionError);
+		} finally {
+			batcher.close();
+			failing.close();
+		}
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		batcher = newBatcher(100, 0);
+		CompletableFuture<Void> pending = batcher.tagResource("a", 1);
+		batcher.close();
+		assertTrue(pending.isDone());
+		try {
+			batcher.tagResource("a", 2);
+			fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+}
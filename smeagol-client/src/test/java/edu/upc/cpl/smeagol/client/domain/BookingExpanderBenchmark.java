@@ -0,0 +1,67 @@
+package edu.upc.cpl.smeagol.client.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+
+import edu.upc.cpl.smeagol.client.ical.Frequency;
+
+/**
+ * Scaling of {@link BookingExpander} from 1 to the number of available
+ * processors. It is not a test: run it with
+ * <code>java -cp ... edu.upc.cpl.smeagol.client.domain.BookingExpanderBenchmark [bookings] [resources] [parallelism]</code>
+ * .
+ *
+ */
+public class BookingExpanderBenchmark {
+
+	private static final int WARMUP = 5;
+	private static final int ROUNDS = 10;
+
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int resources = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int maxParallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		DateTime origin = new DateTime(2012, 9, 10, 0, 0, 0, 0);
+		Random random = new Random(1);
+		List<Booking> bookings = new ArrayList<Booking>(size);
+		for (int i = 0; i < size; i++) {
+			DateTime start = origin.plusMinutes(30 * random.nextInt(2 * 24 * 14));
+			Booking b = Booking.asSimple((long) random.nextInt(resources), 1L, start, start.plusMinutes(
+					30 * (1 + random.nextInt(4))));
+			if (random.nextInt(4) != 0) {
+				b.setFrequency(random.nextBoolean() ? Frequency.DAILY : Frequency.WEEKLY);
+			}
+			bookings.add(b);
+		}
+		Interval window = new Interval(origin, origin.plusMonths(6));
+
+		double base = 0;
+		for (int parallelism = 1; parallelism <= maxParallelism; parallelism++) {
+			BookingExpander expander = new BookingExpander(parallelism);
+			long occurrences = 0;
+			for (int i = 0; i < WARMUP; i++) {
+				expander.expand(bookings, window);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < ROUNDS; i++) {
+				occurrences = 0;
+				for (ResourceOccurrences r : expander.expand(bookings, window).values()) {
+					occurrences += r.size();
+				}
+			}
+			double millis = (System.nanoTime() - start) / 1e6 / ROUNDS;
+			if (parallelism == 1) {
+				base = millis;
+			}
+			System.out.printf("parallelism %2d: %8.1f ms, %d occurrences, speed-up %.2f%n", parallelism, millis,
+					occurrences, base / millis);
+		}
+		System.exit(0);
+	}
+
+}
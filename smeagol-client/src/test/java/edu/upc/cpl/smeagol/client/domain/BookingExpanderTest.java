@@ -0,0 +1,92 @@
+package edu.upc.cpl.smeagol.client.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import edu.upc.cpl.smeagol.client.ical.Frequency;
+
+@RunWith(JUnit4.class)
+public class BookingExpanderTest extends TestCase {
+
+	private static final DateTime MONDAY = new DateTime(2011, 2, 7, 0, 0, 0, 0);
+
+	@Test
+	public void testParallelism() {
+		assertEquals(3, new BookingExpander(3).getParallelism());
+		try {
+			new BookingExpander(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testExpand() {
+		Booking daily = Booking.asDailyRecurrence(1L, 1L, MONDAY.plusHours(8), MONDAY.plusHours(10), (short) 1, null);
+		Booking simple = Booking.asSimple(1L, 1L, MONDAY.plusHours(9), MONDAY.plusHours(12));
+		Booking other = Booking.asSimple(2L, 1L, MONDAY.plusHours(9), MONDAY.plusHours(12));
+		Interval window = new Interval(MONDAY, MONDAY.plusDays(3));
+
+		Map<Long, ResourceOccurrences> result = new BookingExpander(2).expand(Arrays.asList(other, daily, simple),
+				window);
+		assertEquals(Arrays.asList(2L, 1L), new ArrayList<Long>(result.keySet()));
+		ResourceOccurrences room = result.get(1L);
+		assertEquals(4, room.size());
+		assertEquals(new Interval(MONDAY.plusHours(8), MONDAY.plusHours(10)), room.asIntervals().get(0));
+		assertEquals(new Interval(MONDAY.plusHours(9), MONDAY.plusHours(12)), room.asIntervals().get(1));
+		assertSame(simple, room.getBooking(1));
+		assertEquals(MONDAY.plusHours(56).getMillis(), room.getStart(3));
+		assertSame(daily, room.getBooking(3));
+
+		result = new BookingExpander().expand(Collections.singletonList(other), Arrays.asList(3L), window);
+		assertEquals(0, result.get(3L).size());
+	}
+
+	/**
+	 * Compare the expansion of many random bookings against their sorted
+	 * occurrences.
+	 */
+	@Test
+	public void testAgainstSequential() {
+		Random random = new Random(5);
+		List<Booking> bookings = new ArrayList<Booking>();
+		for (int i = 0; i < 500; i++) {
+			DateTime start = MONDAY.plusMinutes(15 * random.nextInt(4 * 24 * 60));
+			Booking b = Booking.asSimple((long) random.nextInt(3), 1L, start, start.plusMinutes(15 * random.nextInt(8)));
+			if (random.nextBoolean()) {
+				b.setFrequency(random.nextBoolean() ? Frequency.DAILY : Frequency.WEEKLY);
+			}
+			bookings.add(b);
+		}
+		Interval window = new Interval(MONDAY.plusDays(10), MONDAY.plusDays(100));
+		Map<Long, ResourceOccurrences> result = new BookingExpander(4).expand(bookings, window);
+
+		for (ResourceOccurrences r : result.values()) {
+			List<Interval> expected = new ArrayList<Interval>();
+			for (Booking b : bookings) {
+				if (b.getIdResource().equals(r.getIdResource())) {
+					b.streamOccurrences(window).forEach(expected::add);
+				}
+			}
+			Collections.sort(expected, (x, y) -> x.getStartMillis() != y.getStartMillis() ? Long.compare(
+					x.getStartMillis(), y.getStartMillis()) : Long.compare(x.getEndMillis(), y.getEndMillis()));
+			assertEquals(expected, r.asIntervals());
+			for (int i = 0; i < r.size(); i++) {
+				assertEquals(r.getIdResource(), r.getBooking(i).getIdResource());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package edu.upc.cpl.smeagol.client.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import edu.upc.cpl.smeagol.client.ical.DayOfWeek;
+import edu.upc.cpl.smeagol.client.ical.Frequency;
+
+@RunWith(JUnit4.class)
+public class BookingIndexTest extends TestCase {
+
+	private static final Long ROOM1 = 1L;
+	private static final Long ROOM2 = 2L;
+	private static final DateTime MONDAY = new DateTime(2011, 2, 7, 8, 0, 0, 0);
+
+	private Booking weeklyClass;
+	private Booking meeting;
+	private Booking otherRoom;
+	private BookingIndex index;
+
+	@Before
+	@Override
+	public void setUp() {
+		// mondays and wednesdays 8:00 - 10:00, for 10 weeks
+		weeklyClass = Booking.asWeeklyRecurrence(ROOM1, 10L, MONDAY, MONDAY.plusHours(2), (short) 1,
+				MONDAY.plusWeeks(10), new HashSet<DayOfWeek>(Arrays.asList(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY)));
+		weeklyClass.setId(1L);
+		// a tuesday, 9:00 - 11:00
+		meeting = Booking.asSimple(ROOM1, 20L, MONDAY.plusDays(1).plusHours(1), MONDAY.plusDays(1).plusHours(3));
+		meeting.setId(2L);
+		otherRoom = Booking.asSimple(ROOM2, 30L, MONDAY, MONDAY.plusHours(2));
+		otherRoom.setId(3L);
+		index = new BookingIndex(Arrays.asList(weeklyClass, meeting, otherRoom));
+	}
+
+	@Test
+	public void testFindOverlapping() {
+		assertEquals(3, index.size());
+		assertEquals(Arrays.asList(weeklyClass), index.findOverlapping(ROOM1, new Interval(MONDAY, MONDAY.plusHours(1))));
+		assertEquals(Arrays.asList(weeklyClass, meeting),
+				index.findOverlapping(ROOM1, new Interval(MONDAY, MONDAY.plusDays(2))));
+		// between occurrences of the weekly class
+		assertTrue(index.findOverlapping(ROOM1, new Interval(MONDAY.plusHours(2), MONDAY.plusHours(20))).isEmpty());
+		assertEquals(Arrays.asList(otherRoom), index.findOverlapping(ROOM2, new Interval(MONDAY, MONDAY.plusHours(1))));
+		assertTrue(index.findOverlapping(99L, new Interval(MONDAY, MONDAY.plusHours(1))).isEmpty());
+	}
+
+	@Test
+	public void testFindOverlappingSubDaily() {
+		// the first 15 minutes of every 3 hours, in room 2
+		Booking every3Hours = Booking.asSimple(ROOM2, 40L, MONDAY, MONDAY.plusMinutes(15));
+		every3Hours.setFrequency(Frequency.HOURLY);
+		every3Hours.setInterval((short) 3);
+		index.add(every3Hours);
+
+		assertEquals(Arrays.asList(otherRoom, every3Hours), index.findOverlapping(ROOM2, new Interval(MONDAY,
+				MONDAY.plusHours(1))));
+		assertEquals(Arrays.asList(every3Hours), index.findOverlapping(ROOM2, new Interval(MONDAY.plusDays(3)
+				.plusHours(2).plusMinutes(50), MONDAY.plusDays(3).plusHours(3).plusMinutes(10))));
+		assertTrue(index.findOverlapping(ROOM2, new Interval(MONDAY.plusDays(3).plusMinutes(15), MONDAY.plusDays(3)
+				.plusHours(3))).isEmpty());
+	}
+
+	@Test
+	public void testFindConflicts() {
+		Interval year = new Interval(MONDAY, MONDAY.plusYears(1));
+
+		// wednesday 9:00 - 9:30, during the weekly class
+		Booking b = Booking.asSimple(ROOM1, 40L, MONDAY.plusDays(2).plusHours(1), MONDAY.plusDays(2).plusHours(1)
+				.plusMinutes(30));
+		assertEquals(Arrays.asList(weeklyClass), index.findConflicts(b, year));
+
+		// tuesdays 10:00 - 12:00, conflicts with the meeting only
+		b = Booking.asWeeklyRecurrence(ROOM1, 40L, MONDAY.plusDays(1).plusHours(2), MONDAY.plusDays(1).plusHours(4),
+				(short) 1, null, null);
+		assertEquals(Arrays.asList(meeting), index.findConflicts(b, year));
+		b.setIdResource(ROOM2);
+		assertTrue(index.findConflicts(b, year).isEmpty());
+
+		// a booking never conflicts with itself
+		assertTrue(index.findConflicts(meeting, year).isEmpty());
+		assertTrue(index.findConflicts(weeklyClass, year).isEmpty());
+		assertFalse(index.hasConflicts(otherRoom, year));
+	}
+
+	@Test
+	public void testAddAndRemove() {
+		Interval tuesday = new Interval(MONDAY.plusDays(1), MONDAY.plusDays(2));
+		assertFalse(index.add(meeting));
+		assertTrue(index.remove(meeting));
+		assertFalse(index.remove(meeting));
+		assertFalse(index.contains(meeting));
+		assertTrue(index.findOverlapping(ROOM1, tuesday).isEmpty());
+
+		assertTrue(index.add(meeting));
+		assertEquals(Arrays.asList(meeting), index.findOverlapping(ROOM1, tuesday));
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	public void testAgainstLinearScan() {
+		Random random = new Random(3);
+		List<Booking> bookings = new ArrayList<Booking>();
+		BookingIndex idx = new BookingIndex();
+
+		for (int n = 0; n < 2000; n++) {
+			if (!bookings.isEmpty() && random.nextInt(4) == 0) {
+				Booking removed = bookings.remove(random.nextInt(bookings.size()));
+				assertTrue(idx.remove(removed));
+			} else {
+				DateTime start = MONDAY.plusHours(random.nextInt(24 * 365));
+				DateTime end = start.plusMinutes(random.nextInt(600));
+				Booking b;
+				switch (random.nextInt(3)) {
+				case 0:
+					b = Booking.asDailyRecurrence((long) random.nextInt(5), 1L, start, end,
+							(short) (1 + random.nextInt(10)), start.plusDays(random.nextInt(100)));
+					break;
+				case 1:
+					b = Booking.asWeeklyRecurrence((long) random.nextInt(5), 1L, start, end, (short) 1,
+							random.nextBoolean() ? null : start.plusWeeks(random.nextInt(20)), null);
+					break;
+				default:
+					b = Booking.asSimple((long) random.nextInt(5), 1L, start, end);
+				}
+				bookings.add(b);
+				assertTrue(idx.add(b));
+			}
+
+			if (n % 20 == 0) {
+				Long resource = (long) random.nextInt(5);
+				DateTime from = MONDAY.plusHours(random.nextInt(24 * 400));
+				Interval window = new Interval(from, from.plusHours(random.nextInt(24 * 7)));
+				List<Booking> expected = new ArrayList<Booking>();
+				for (Booking b : bookings) {
+					if (resource.equals(b.getIdResource()) && b.iterateOccurrences(window).hasNext()) {
+						expected.add(b);
+					}
+				}
+				List<Booking> found = idx.findOverlapping(resource, window);
+				assertEquals(bookings.size(), idx.size());
+				assertEquals(expected.size(), found.size());
+				Set<Booking> distinct = Collections.newSetFromMap(new IdentityHashMap<Booking, Boolean>());
+				distinct.addAll(found);
+				assertEquals(found.size(), distinct.size());
+				for (Booking b : expected) {
+					assertTrue(distinct.contains(b));
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+package edu.upc.cpl.smeagol.client.domain;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import edu.upc.cpl.smeagol.client.ical.DayOfWeek;
+import edu.upc.cpl.smeagol.client.ical.Frequency;
+
+@RunWith(JUnit4.class)
+public class BookingTableTest extends TestCase {
+
+	private static final DateTime MONDAY = new DateTime(2011, 2, 7, 0, 0, 0, 0);
+
+	private static List<Booking> randomBookings(int n) {
+		Random random = new Random(3);
+		List<Booking> bookings = new ArrayList<Booking>();
+		for (int i = 0; i < n; i++) {
+			DateTime start = MONDAY.plusMinutes(15 * random.nextInt(4 * 24 * 60));
+			Booking b = Booking.asSimple((long) random.nextInt(5), (long) i, start, start.plusMinutes(
+					15 * (1 + random.nextInt(12))));
+			b.setId((long) i);
+			if (random.nextInt(3) == 0) {
+				b.setFrequency(Frequency.WEEKLY);
+				Set<DayOfWeek> byDay = new HashSet<DayOfWeek>();
+				byDay.add(DayOfWeek.of(0, 1 + random.nextInt(7)));
+				byDay.add(DayOfWeek.of(0, 1 + random.nextInt(7)));
+				b.setByDay(byDay);
+				if (random.nextBoolean()) {
+					b.setUntil(start.plusDays(random.nextInt(60)));
+				}
+			}
+			bookings.add(b);
+		}
+		return bookings;
+	}
+
+	@Test
+	public void testColumns() {
+		List<Booking> bookings = randomBookings(200);
+		bookings.get(7).setIdResource(null);
+		BookingTable table = BookingTable.fromJson(new StringReader(Booking.serialize(bookings)));
+		assertEquals(bookings.size(), table.size());
+		assertEquals(6, table.getIdResources().length);
+		for (int i = 0; i < bookings.size(); i++) {
+			Booking b = bookings.get(i);
+			assertEquals(b.getId().longValue(), table.getId(i));
+			assertEquals(b.getDtStartMillis(), table.getStart(i));
+			assertEquals(b.getDtEndMillis(), table.getEnd(i));
+			assertEquals(b.getUntilMillis(), table.getUntil(i));
+			assertEquals(b.serialize(), table.getBooking(i).serialize());
+		}
+		assertEquals(BookingTable.NULL_ID, table.getIdResource(7));
+		assertNull(table.getBooking(7).getIdResource());
+		assertEquals(0, BookingTable.of(Collections.<Booking> emptyList()).size());
+	}
+
+	@Test
+	public void testFilters() {
+		List<Booking> bookings = randomBookings(500);
+		BookingTable table = BookingTable.of(bookings);
+		Interval window = new Interval(MONDAY.plusDays(2), MONDAY.plusDays(3));
+
+		int[] rows = table.whereFrequency(table.whereResource(null, 3L), null);
+		int[] overlapping = table.whereOverlaps(rows, window);
+		List<Integer> expected = new ArrayList<Integer>();
+		List<Integer> expectedOverlapping = new ArrayList<Integer>();
+		for (int i = 0; i < bookings.size(); i++) {
+			Booking b = bookings.get(i);
+			if (b.getIdResource() == 3L && b.getFrequency() == null) {
+				expected.add(i);
+				if (new Interval(b.getDtStart(), b.getDtEnd()).overlaps(window)) {
+					expectedOverlapping.add(i);
+				}
+			}
+		}
+		assertEquals(expected, toList(rows));
+		assertEquals(expectedOverlapping, toList(overlapping));
+		assertEquals(0, table.whereResource(null, 42L).length);
+	}
+
+	/**
+	 * Compare the booked minutes per week against the occurrences of each
+	 * booking, minute by minute.
+	 */
+	@Test
+	public void testBookedMinutesPerWeek() {
+		List<Booking> bookings = randomBookings(300);
+		BookingTable table = BookingTable.of(bookings);
+		Interval window = new Interval(MONDAY.plusDays(1), MONDAY.plusDays(1).plusWeeks(6).plusHours(5));
+
+		Map<Long, long[]> result = table.bookedMinutesPerWeek(null, window);
+		assertEquals(5, result.size());
+		for (Map.Entry<Long, long[]> e : result.entrySet()) {
+			long[] expected = expectedMinutes(bookings, e.getKey(), window, Duration.standardDays(7), 7);
+			assertTrue(Arrays.equals(expected, e.getValue()));
+		}
+
+		Map<Long, long[]> one = table.bookedMinutes(table.whereResource(null, 2L), window, Duration.standardDays(365));
+		assertEquals(Collections.singleton(2L), one.keySet());
+		long total = 0;
+		for (long minutes : result.get(2L)) {
+			total += minutes;
+		}
+		assertEquals(total, one.get(2L)[0]);
+	}
+
+	/**
+	 * Rows with sub-daily frequencies and {@code by_day} ordinals are expanded
+	 * from the columns as well.
+	 */
+	@Test
+	public void testBookedMinutesSubDailyAndOrdinals() {
+		// the first 15 minutes of every 3 hours
+		Booking every3Hours = Booking.asSimple(1L, 1L, MONDAY.plusHours(1), MONDAY.plusHours(1).plusMinutes(15));
+		every3Hours.setFrequency(Frequency.HOURLY);
+		every3Hours.setInterval((short) 3);
+		// 90 minutes every 100 minutes, until the second week
+		Booking every100Minutes = Booking.asSimple(1L, 2L, MONDAY, MONDAY.plusMinutes(90));
+		every100Minutes.setFrequency(Frequency.MINUTELY);
+		every100Minutes.setInterval((short) 100);
+		every100Minutes.setUntil(MONDAY.plusDays(10));
+		// the second Sunday and the last Monday of each month
+		Booking monthly = Booking.asSimple(2L, 3L, MONDAY.plusHours(9), MONDAY.plusHours(11));
+		monthly.setFrequency(Frequency.MONTHLY);
+		monthly.setByDay(new HashSet<DayOfWeek>(Arrays.asList(DayOfWeek.of(2, 7), DayOfWeek.of(-1, 1))));
+		List<Booking> bookings = Arrays.asList(every3Hours, every100Minutes, monthly);
+
+		BookingTable table = BookingTable.of(bookings);
+		Interval window = new Interval(MONDAY.plusHours(5), MONDAY.plusWeeks(9));
+		Duration day = Duration.standardDays(1);
+		Map<Long, long[]> result = table.bookedMinutes(null, window, day);
+		assertEquals(2, result.size());
+		for (Map.Entry<Long, long[]> e : result.entrySet()) {
+			long[] expected = expectedMinutes(bookings, e.getKey(), window, day, e.getValue().length);
+			assertTrue(Arrays.equals(expected, e.getValue()));
+		}
+		// after the until of the MINUTELY booking, 8 occurrences of 15 minutes a day
+		assertEquals(15 * 8, result.get(1L)[12]);
+	}
+
+	/**
+	 * @return the minutes of the occurrences of the bookings of a resource in
+	 *         each bucket of a window, counted one at a time.
+	 */
+	private static long[] expectedMinutes(List<Booking> bookings, Long idResource, Interval window, Duration bucket,
+			int buckets) {
+		long[] expected = new long[buckets];
+		for (Booking b : bookings) {
+			if (b.getIdResource().equals(idResource)) {
+				b.streamOccurrences(window).forEach(o -> {
+					for (long t = Math.max(o.getStartMillis(), window.getStartMillis()); t < Math.min(
+							o.getEndMillis(), window.getEndMillis()); t += 60000) {
+						expected[(int) ((t - window.getStartMillis()) / bucket.getMillis())]++;
+					}
+				});
+			}
+		}
+		return expected;
+	}
+
+	private static List<Integer> toList(int[] rows) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (int row : rows) {
+			list.add(row);
+		}
+		return list;
+	}
+
+}
@@ -12,6 +12,7 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -488,6 +489,22 @@ public class BookingTest extends TestCase {
 		assertTrue(b.getByDay().contains(DayOfWeek.FRIDAY));
 	}
 
+	@Test
+	public void testDeserializeOrdinalDays() {
+		JsonObject obj = new JsonObject();
+		obj.addProperty("frequency", Frequency.MONTHLY.toString());
+		obj.addProperty("by_day", "-1MO,+2SU,FR");
+
+		Booking b = Booking.deserialize(obj.toString());
+		assertEquals(3, b.getByDay().size());
+		assertTrue(b.getByDay().contains(DayOfWeek.of("-1MO")));
+		assertTrue(b.getByDay().contains(DayOfWeek.of("2SU")));
+		assertTrue(b.getByDay().contains(DayOfWeek.FRIDAY));
+		// written back as spelled, in alphabetical order
+		assertEquals("+2SU,-1MO,FR", new JsonParser().parse(b.serialize()).getAsJsonObject().get("by_day")
+				.getAsString());
+	}
+
 	@Test
 	public void testDeserializeMonthlyRecurrence() {
 		String BY_MONTH_DAY = "10,15,-1";
@@ -591,6 +608,71 @@ public class BookingTest extends TestCase {
 		assertEquals(UNTIL2, b2.getUntil());
 	}
 
+	@Test
+	public void testDeserializeIgnoresUnknownAttributes() {
+		JsonObject obj = new JsonObject();
+		obj.addProperty("id", ID1);
+		obj.addProperty("dtstart", DTSTART1.toString());
+		obj.addProperty("dtend", DTEND1.toString());
+		obj.add("unknown", new JsonArray());
+
+		Booking b = Booking.deserialize(obj.toString());
+		assertEquals(ID1, b.getId());
+		assertEquals(DTSTART1, b.getDtStart());
+		assertEquals(DTEND1, b.getDtEnd());
+		assertNull(b.getByDay());
+		assertNull(b.getByDayOfMonth());
+	}
+
+	@Test
+	public void testSerializationRoundTrip() {
+		Booking b = Booking.asYearlyRecurrence(ID_RESOURCE1, ID_EVENT1, DTSTART1, DTEND1, INTERVAL1, UNTIL1,
+				BY_DAYOFMONTH1, BY_MONTH1);
+		b.setId(ID1);
+		String json = b.serialize();
+		assertEquals(json, Booking.deserialize(json).serialize());
+	}
+
+	@Test
+	public void testRecurrenceSetsAreBackedByBooking() {
+		Booking b = Booking.asYearlyRecurrence(ID_RESOURCE1, ID_EVENT1, DTSTART1, DTEND1, INTERVAL1, UNTIL1,
+				BY_DAYOFMONTH1, BY_MONTH1);
+		b.getByMonth().add((short) DateTimeConstants.DECEMBER);
+		b.getByDayOfMonth().remove((short) -1);
+		String json = b.serialize();
+		JsonObject obj = new JsonParser().parse(json).getAsJsonObject();
+		assertEquals("1,3,7,12", obj.get("by_month").getAsString());
+		assertEquals("10,15", obj.get("by_day_month").getAsString());
+	}
+
+	@Test
+	public void testRecurrenceSetsRejectIllegalValues() {
+		Booking b = new Booking();
+		Set<Short> days = new TreeSet<Short>();
+		days.add((short) 0);
+		try {
+			b.setByDayOfMonth(days);
+			fail("day of month 0 should be rejected");
+		} catch (IllegalArgumentException e) {
+			assertNull(b.getByDayOfMonth());
+		}
+
+		b.setByMonth(BY_MONTH1);
+		try {
+			b.getByMonth().add((short) 13);
+			fail("month 13 should be rejected");
+		} catch (IllegalArgumentException e) {
+			assertEquals(BY_MONTH1, b.getByMonth());
+		}
+
+		// values received from the server are kept, as they are sent
+		JsonObject obj = new JsonObject();
+		obj.addProperty("by_month", "1,32");
+		Booking received = Booking.deserialize(obj.toString());
+		assertTrue(received.getByMonth().contains((short) 32));
+		assertEquals(1L, received.getByMonth().getBits());
+	}
+
 	@Test
 	public void testCompareTo() {
 		assertTrue(B1.compareTo(B2) < 0);
@@ -607,4 +689,24 @@ public class BookingTest extends TestCase {
 		assertTrue(x.equals(y));
 	}
 
+	@Test
+	public void testMillisAndZones() {
+		DateTimeZone zone = DateTimeZone.forID("America/New_York");
+		DateTime start = new DateTime(2011, 2, 3, 8, 0, 0, 0, zone);
+		Booking b = Booking.asSimple(ID_RESOURCE1, ID_EVENT1, start, start.plusHours(2).withZone(DateTimeZone.UTC));
+		b.setUntil(start.plusDays(3));
+		assertEquals(start, b.getDtStart());
+		assertEquals(start.getMillis(), b.getDtStartMillis());
+		assertEquals(zone, b.getChronology().getZone());
+		assertEquals(start.plusHours(2).withZone(DateTimeZone.UTC), b.getDtEnd());
+		assertEquals(start.plusHours(2).getMillis(), b.getDtEndMillis());
+		assertEquals(start.plusDays(3), b.getUntil());
+		b.setUntil(null);
+		assertNull(b.getUntil());
+		assertEquals(Long.MAX_VALUE, b.getUntilMillis());
+
+		b.setDtEnd(null);
+		assertEquals(start.plusHours(1), b.getDtEnd());
+	}
+
 }
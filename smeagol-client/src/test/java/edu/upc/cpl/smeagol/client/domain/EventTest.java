@@ -1,12 +1,17 @@
 package edu.upc.cpl.smeagol.client.domain;
 
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import junit.framework.TestCase;
 
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.Interval;
 import org.junit.Before;
 import org.junit.Test;
@@ -120,6 +125,18 @@ public class EventTest extends TestCase {
 		assertTrue(events.contains(e2));
 	}
 
+	@Test
+	public void testDeserializeStream() {
+		String JSON_ARRAY = "[" + E1_JSON + "," + E2_JSON + "]";
+		List<Event> events;
+		try (Stream<Event> stream = Event.deserializeStream(new StringReader(JSON_ARRAY))) {
+			events = stream.collect(Collectors.toList());
+		}
+		assertEquals(2, events.size());
+		assertEquals(e1, events.get(0));
+		assertEquals(e2, events.get(1));
+	}
+
 	@Test
 	public void testSerializeCollection() {
 		String JSON_ARRAY = "[" + E1_JSON + "," + E2_JSON + "]";
@@ -135,4 +152,29 @@ public class EventTest extends TestCase {
 				e1.getInterval());
 	}
 
+	/**
+	 * Events are equal if their intervals are the same to the second, in the
+	 * local time of each one (as sent to the server).
+	 */
+	@Test
+	public void testEqualsOnLocalSeconds() {
+		Event e = new Event(DESC1, INFO1, new Interval(STARTS1.plusMillis(300), ENDS1));
+		e.setId(ID1);
+		assertEquals(e1, e);
+		assertEquals(e1.hashCode(), e.hashCode());
+		e.setInterval(new Interval(STARTS1.plusSeconds(1), ENDS1));
+		assertFalse(e1.equals(e));
+
+		DateTimeZone zone = DateTimeZone.forOffsetHours(STARTS1.getZone().getOffset(STARTS1) / 3600000 + 1);
+		e.setInterval(new Interval(STARTS1.withZoneRetainFields(zone), ENDS1.withZoneRetainFields(zone)));
+		assertEquals(e1, e);
+		assertEquals(zone, e.getStarts().getZone());
+		assertEquals(STARTS1.withZoneRetainFields(zone).getMillis(), e.getStartsMillis());
+
+		e.setInterval(null);
+		assertNull(e.getInterval());
+		assertFalse(e.hasInterval());
+		assertFalse(e1.equals(e));
+	}
+
 }
@@ -0,0 +1,149 @@
+package edu.upc.cpl.smeagol.client.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import edu.upc.cpl.smeagol.client.ical.Frequency;
+
+@RunWith(JUnit4.class)
+public class FreeSlotFinderTest extends TestCase {
+
+	private static final Long ROOM_A = 1L;
+	private static final Long ROOM_B = 2L;
+	private static final Long PROJECTOR = 3L;
+	private static final DateTime MONDAY = new DateTime(2011, 2, 7, 0, 0, 0, 0);
+	private static final Duration HOUR = Duration.standardHours(1);
+	private static final Duration HALF_HOUR = Duration.standardMinutes(30);
+
+	private FreeSlotFinder finder;
+
+	@Before
+	@Override
+	public void setUp() {
+		List<Booking> bookings = new ArrayList<Booking>();
+		// room A: every day 8:00 - 10:00
+		bookings.add(Booking.asDailyRecurrence(ROOM_A, 1L, MONDAY.plusHours(8), MONDAY.plusHours(10), (short) 1,
+				null));
+		// room B: monday 10:15 - 11:00
+		bookings.add(Booking.asSimple(ROOM_B, 2L, MONDAY.plusHours(10).plusMinutes(15), MONDAY.plusHours(11)));
+		// projector: monday 12:00 - 13:00
+		bookings.add(Booking.asSimple(PROJECTOR, 3L, MONDAY.plusHours(12), MONDAY.plusHours(13)));
+		finder = new FreeSlotFinder(bookings);
+	}
+
+	private static Interval slot(int hour, int minute, Duration duration) {
+		DateTime start = MONDAY.plusHours(hour).plusMinutes(minute);
+		return new Interval(start, start.plus(duration));
+	}
+
+	@Test
+	public void testFindFreeSlots() {
+		Interval morning = new Interval(MONDAY.plusHours(8), MONDAY.plusHours(14));
+		List<Long> all = Arrays.asList(ROOM_A, ROOM_B, PROJECTOR);
+
+		// 10:15 - 11:00 is taken by room B, so its whole half hour bucket
+		assertEquals(Arrays.asList(slot(11, 0, HOUR), slot(13, 0, HOUR)),
+				finder.findFreeSlots(all, morning, HOUR, HALF_HOUR, 10));
+		assertEquals(Arrays.asList(slot(10, 0, HOUR)),
+				finder.findFreeSlots(Arrays.asList(ROOM_A), morning, HOUR, HALF_HOUR, 1));
+
+		// finer granularity
+		Duration quarter = Duration.standardMinutes(15);
+		assertEquals(Arrays.asList(slot(10, 0, quarter), slot(11, 0, quarter)),
+				finder.findFreeSlots(all, morning, quarter, quarter, 2));
+		assertEquals(Arrays.asList(slot(11, 0, HOUR), slot(13, 0, HOUR)),
+				finder.findFreeSlots(all, morning, HOUR, quarter, 10));
+	}
+
+	@Test
+	public void testSlotsMustFitInWindow() {
+		Interval window = new Interval(MONDAY.plusHours(13), MONDAY.plusHours(14).plusMinutes(20));
+		assertEquals(Arrays.asList(slot(13, 0, HOUR)),
+				finder.findFreeSlots(Arrays.asList(PROJECTOR), window, HOUR, HALF_HOUR, 10));
+		assertTrue(finder.findFreeSlots(Arrays.asList(ROOM_A), new Interval(MONDAY.plusHours(8),
+				MONDAY.plusHours(10)), HOUR, HALF_HOUR, 10).isEmpty());
+		assertEquals(10, finder.findFreeSlots(Collections.<Long> emptyList(), window, Duration.standardMinutes(1),
+				Duration.standardMinutes(1), 10).size());
+	}
+
+	@Test
+	public void testIllegalArguments() {
+		Interval window = new Interval(MONDAY, MONDAY.plusDays(1));
+		try {
+			finder.findFreeSlots(Arrays.asList(ROOM_A), window, Duration.ZERO, HALF_HOUR, 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			finder.findFreeSlots(Arrays.asList(ROOM_A), window, HOUR, HALF_HOUR, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Check the slots found for random bookings against their occurrences.
+	 */
+	@Test
+	public void testAgainstOccurrences() {
+		Random random = new Random(13);
+		List<Booking> bookings = new ArrayList<Booking>();
+		for (int i = 0; i < 200; i++) {
+			DateTime start = MONDAY.plusMinutes(15 * random.nextInt(4 * 24 * 60));
+			DateTime end = start.plusMinutes(5 * random.nextInt(60));
+			Long resource = (long) random.nextInt(10);
+			if (random.nextInt(4) == 0) {
+				Booking b = Booking.asWeeklyRecurrence(resource, 1L, start, end, (short) 1, null, null);
+				b.setFrequency(random.nextBoolean() ? Frequency.DAILY : Frequency.WEEKLY);
+				bookings.add(b);
+			} else {
+				bookings.add(Booking.asSimple(resource, 1L, start, end));
+			}
+		}
+		FreeSlotFinder slots = new FreeSlotFinder(bookings);
+		Interval window = new Interval(MONDAY, MONDAY.plusDays(60));
+		List<Long> resources = Arrays.asList(1L, 3L, 4L, 7L);
+
+		List<Interval> found = slots.findFreeSlots(resources, window, Duration.standardMinutes(90),
+				Duration.standardMinutes(30), 50);
+		assertEquals(50, found.size());
+		for (int i = 0; i < found.size(); i++) {
+			Interval s = found.get(i);
+			assertEquals(0, (s.getStartMillis() - MONDAY.getMillis()) % (30 * 60000));
+			assertTrue(isFree(bookings, resources, s));
+			if (i > 0) {
+				assertFalse(s.getStart().isBefore(found.get(i - 1).getEnd()));
+			}
+		}
+		// no free slot was skipped before the first one
+		for (DateTime t = MONDAY; t.isBefore(found.get(0).getStart()); t = t.plusMinutes(30)) {
+			assertFalse(isFree(bookings, resources, new Interval(t, t.plusMinutes(90))));
+		}
+	}
+
+	private static boolean isFree(List<Booking> bookings, List<Long> resources, Interval slot) {
+		for (Booking b : bookings) {
+			if (resources.contains(b.getIdResource())
+					&& b.streamOccurrences(slot).anyMatch(o -> o.toDurationMillis() > 0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
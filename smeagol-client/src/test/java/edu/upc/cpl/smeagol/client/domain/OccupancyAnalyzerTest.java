@@ -0,0 +1,131 @@
+package edu.upc.cpl.smeagol.client.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import edu.upc.cpl.smeagol.client.ical.Frequency;
+
+@RunWith(JUnit4.class)
+public class OccupancyAnalyzerTest extends TestCase {
+
+	private static final DateTime MONDAY = new DateTime(2011, 2, 7, 0, 0, 0, 0);
+
+	private static Booking simple(long id, long resource, int fromHour, int toHour) {
+		Booking b = Booking.asSimple(resource, 1L, MONDAY.plusHours(fromHour), MONDAY.plusHours(toHour));
+		b.setId(id);
+		return b;
+	}
+
+	private static Interval hours(int from, int to) {
+		return new Interval(MONDAY.plusHours(from), MONDAY.plusHours(to));
+	}
+
+	@Test
+	public void testBusyAndConflicts() {
+		Booking daily = Booking.asDailyRecurrence(1L, 1L, MONDAY.plusHours(8), MONDAY.plusHours(10), (short) 1, null);
+		daily.setId(1L);
+		List<Booking> bookings = Arrays.asList(daily, simple(2, 1, 9, 12), simple(3, 1, 11, 13), simple(4, 1, 13, 14),
+				simple(5, 1, 20, 21), simple(6, 2, 9, 12));
+		Interval window = new Interval(MONDAY, MONDAY.plusDays(2));
+
+		Map<Long, ResourceOccupancy> result = new OccupancyAnalyzer(new ForkJoinPool(2)).analyze(bookings, null,
+				window);
+		assertEquals(Arrays.asList(1L, 2L), new ArrayList<Long>(result.keySet()));
+
+		ResourceOccupancy room = result.get(1L);
+		assertEquals(Arrays.asList(hours(8, 14), hours(20, 21), hours(32, 34)), room.getBusy());
+		// 9:00 - 10:00 and 11:00 - 12:00 are double booked
+		assertEquals(2, room.getConflicts().size());
+		ResourceOccupancy.Conflict conflict = room.getConflicts().get(0);
+		assertEquals(hours(9, 10), conflict.getInterval());
+		assertEquals(Arrays.asList(1L, 2L), conflict.getIdBookings());
+		conflict = room.getConflicts().get(1);
+		assertEquals(hours(11, 12), conflict.getInterval());
+		assertEquals(Arrays.asList(2L, 3L), conflict.getIdBookings());
+
+		ResourceOccupancy other = result.get(2L);
+		assertEquals(Arrays.asList(hours(9, 12)), other.getBusy());
+		assertTrue(other.getConflicts().isEmpty());
+	}
+
+	@Test
+	public void testSelectedResources() {
+		List<Booking> bookings = Arrays.asList(simple(1, 1, 9, 12), simple(2, 2, 9, 12));
+		Map<Long, ResourceOccupancy> result = new OccupancyAnalyzer().analyze(bookings, Arrays.asList(3L, 2L),
+				new Interval(MONDAY, MONDAY.plusDays(1)));
+		assertEquals(Arrays.asList(3L, 2L), new ArrayList<Long>(result.keySet()));
+		assertTrue(result.get(3L).getBusy().isEmpty());
+		assertEquals(Arrays.asList(hours(9, 12)), result.get(2L).getBusy());
+	}
+
+	/**
+	 * Compare random bookings against their occupancy minute by minute.
+	 */
+	@Test
+	public void testAgainstMinuteByMinute() {
+		Random random = new Random(17);
+		List<Booking> bookings = new ArrayList<Booking>();
+		for (int i = 0; i < 300; i++) {
+			DateTime start = MONDAY.plusMinutes(10 * random.nextInt(6 * 24 * 30));
+			DateTime end = start.plusMinutes(10 * random.nextInt(30));
+			Booking b = Booking.asSimple((long) random.nextInt(4), 1L, start, end);
+			if (random.nextInt(5) == 0) {
+				b.setFrequency(Frequency.WEEKLY);
+			}
+			b.setId((long) i);
+			bookings.add(b);
+		}
+		Interval window = new Interval(MONDAY.plusDays(3), MONDAY.plusDays(40));
+		Map<Long, ResourceOccupancy> result = new OccupancyAnalyzer().analyze(bookings, null, window);
+
+		for (ResourceOccupancy r : result.values()) {
+			int minutes = (int) (window.toDurationMillis() / 60000);
+			int[] count = new int[minutes];
+			for (Booking b : bookings) {
+				if (b.getIdResource().equals(r.getIdResource())) {
+					b.streamOccurrences(window).forEach(o -> {
+						long from = Math.max(0, o.getStartMillis() - window.getStartMillis());
+						long to = Math.min(window.toDurationMillis(), o.getEndMillis() - window.getStartMillis());
+						for (int m = (int) ((from + 59999) / 60000); m * 60000L < to; m++) {
+							count[m]++;
+						}
+					});
+				}
+			}
+			for (int m = 0; m < minutes; m++) {
+				DateTime t = window.getStart().plusMinutes(m);
+				assertEquals(count[m] > 0, contains(r.getBusy(), t));
+				boolean conflict = false;
+				for (ResourceOccupancy.Conflict c : r.getConflicts()) {
+					conflict |= c.getInterval().contains(t);
+				}
+				assertEquals(count[m] > 1, conflict);
+			}
+			for (int i = 1; i < r.getBusy().size(); i++) {
+				assertTrue(r.getBusy().get(i - 1).getEnd().isBefore(r.getBusy().get(i).getStart()));
+			}
+		}
+	}
+
+	private static boolean contains(List<Interval> intervals, DateTime t) {
+		for (Interval i : intervals) {
+			if (i.contains(t)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
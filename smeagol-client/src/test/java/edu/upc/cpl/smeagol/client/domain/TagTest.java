@@ -1,7 +1,11 @@
 package edu.upc.cpl.smeagol.client.domain;
 
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import junit.framework.TestCase;
 
@@ -110,6 +114,24 @@ public class TagTest extends TestCase {
 		assertTrue(t.contains(t2));
 	}
 
+	@Test
+	public void testDeserializeStream() {
+		List<Tag> t;
+		try (Stream<Tag> tags = Tag.deserializeStream(new StringReader(JSON_ARRAY))) {
+			t = tags.collect(Collectors.toList());
+		}
+		assertEquals(2, t.size());
+		assertEquals(t1, t.get(0));
+		assertEquals(t2, t.get(1));
+	}
+
+	@Test
+	public void testDeserializeStreamEmptyArray() {
+		try (Stream<Tag> tags = Tag.deserializeStream(new StringReader("[]"))) {
+			assertEquals(0, tags.count());
+		}
+	}
+
 	@Test
 	public void testSerializeCollection() {
 		Collection<Tag> tags = new ArrayList<Tag>();
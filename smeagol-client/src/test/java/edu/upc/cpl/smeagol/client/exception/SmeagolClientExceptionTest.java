@@ -0,0 +1,32 @@
+package edu.upc.cpl.smeagol.client.exception;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * <code>SmeagolClientException</code> tests.
+ *
+ */
+@RunWith(JUnit4.class)
+public class SmeagolClientExceptionTest extends TestCase {
+
+	@Test
+	public void testStackless() {
+		assertTrue(new NotFoundException("tag not found").getStackTrace().length > 0);
+		assertTrue(new NotFoundException("tag not found", true).getStackTrace().length > 0);
+
+		NotFoundException e = new NotFoundException("tag not found", false);
+		assertEquals(0, e.getStackTrace().length);
+		assertEquals("tag not found", e.getMessage());
+		assertEquals(0, new AlreadyExistsException(null, false).getStackTrace().length);
+		assertEquals(0, new SmeagolClientException("error", false).getStackTrace().length);
+
+		// other exceptions are not affected
+		assertTrue(new SmeagolClientException().getStackTrace().length > 0);
+		assertTrue(new AlreadyExistsException().getStackTrace().length > 0);
+	}
+
+}
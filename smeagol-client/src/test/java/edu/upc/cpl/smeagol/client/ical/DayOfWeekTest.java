@@ -0,0 +1,112 @@
+package edu.upc.cpl.smeagol.client.ical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTimeConstants;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class DayOfWeekTest extends TestCase {
+
+	private static final String[] VALID = { "MO", "TU", "WE", "TH", "FR", "SA", "SU", "1MO", "+1MO", "01MO", "-1MO",
+			"-01FR", "53SU", "-53SU", "+53TH", "9WE" };
+
+	private static final String[] INVALID = { null, "", "M", "mo", "XX", "0MO", "00MO", "54MO", "-54MO", "+MO",
+			"-MO", "001MO", "1 MO", " MO", "MO ", "1M0", "+-1MO", "1MOX" };
+
+	@Test
+	public void testValidate() {
+		for (String s : VALID) {
+			assertTrue(s, DayOfWeek.validate(s));
+		}
+		for (String s : INVALID) {
+			assertFalse(s, DayOfWeek.validate(s));
+		}
+	}
+
+	@Test
+	public void testOfReturnsCanonicalInstances() {
+		assertSame(DayOfWeek.MONDAY, DayOfWeek.of("MO"));
+		assertSame(DayOfWeek.SUNDAY, DayOfWeek.of(0, DateTimeConstants.SUNDAY));
+		assertSame(DayOfWeek.of("1MO"), DayOfWeek.of("+1MO"));
+		assertSame(DayOfWeek.of("1MO"), DayOfWeek.of("01MO"));
+		assertSame(DayOfWeek.of("-1FR"), DayOfWeek.of(-1, DateTimeConstants.FRIDAY));
+		assertEquals("1MO", DayOfWeek.of("+01MO").getAsString());
+		assertEquals("-1FR", DayOfWeek.of("-01FR").getAsString());
+		assertEquals(new DayOfWeek("2SU"), DayOfWeek.of("2SU"));
+	}
+
+	@Test
+	public void testEquivalentSpellingsAreEqual() {
+		DayOfWeek plus = new DayOfWeek("+1MO");
+		assertEquals("+1MO", plus.getAsString());
+		assertEquals(DayOfWeek.of("1MO"), plus);
+		assertEquals(plus, DayOfWeek.of("1MO"));
+		assertEquals(DayOfWeek.of("1MO").hashCode(), plus.hashCode());
+		assertEquals(0, plus.compareTo(new DayOfWeek("01MO")));
+		assertEquals(new DayOfWeek("-01FR"), DayOfWeek.of(-1, DateTimeConstants.FRIDAY));
+		assertFalse(plus.equals(DayOfWeek.of("-1MO")));
+		assertFalse(plus.equals(DayOfWeek.MONDAY));
+		assertTrue(new DayOfWeek("+2MO").compareTo(DayOfWeek.of("1MO")) > 0);
+	}
+
+	@Test
+	public void testSetKeepsSpellings() {
+		DayOfWeekSet set = new DayOfWeekSet();
+		set.add(new DayOfWeek("+1MO"));
+		set.add(DayOfWeek.of("-2FR"));
+		set.add(new DayOfWeek("03TU"));
+		assertFalse(set.add(DayOfWeek.of("1MO")));
+		assertTrue(set.remove(DayOfWeek.of("-2FR")));
+		assertTrue(set.contains(DayOfWeek.of("3TU")));
+
+		List<String> spellings = new ArrayList<String>();
+		for (DayOfWeek d : set.copy()) {
+			spellings.add(d.getAsString());
+		}
+		assertEquals(Arrays.asList("+1MO", "03TU"), spellings);
+	}
+
+	@Test
+	public void testOrdinalAndWeekday() {
+		DayOfWeek d = DayOfWeek.of("-2TH");
+		assertEquals(-2, d.getOrdinal());
+		assertEquals(DateTimeConstants.THURSDAY, d.getWeekday());
+		d = new DayOfWeek("+53SA");
+		assertEquals(53, d.getOrdinal());
+		assertEquals(DateTimeConstants.SATURDAY, d.getWeekday());
+		assertEquals(0, DayOfWeek.WEDNESDAY.getOrdinal());
+		assertEquals(DateTimeConstants.WEDNESDAY, DayOfWeek.WEDNESDAY.getWeekday());
+	}
+
+	@Test
+	public void testOfRejectsInvalidDays() {
+		for (String s : INVALID) {
+			try {
+				DayOfWeek.of(s);
+				fail(s);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		try {
+			DayOfWeek.of(54, DateTimeConstants.MONDAY);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			DayOfWeek.of(1, 8);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
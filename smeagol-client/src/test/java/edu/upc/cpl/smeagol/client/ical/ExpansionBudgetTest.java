@@ -0,0 +1,189 @@
+package edu.upc.cpl.smeagol.client.ical;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import edu.upc.cpl.smeagol.client.domain.Booking;
+import edu.upc.cpl.smeagol.client.domain.BookingExpander;
+import edu.upc.cpl.smeagol.client.domain.FreeSlotFinder;
+import edu.upc.cpl.smeagol.client.domain.OccupancyAnalyzer;
+import edu.upc.cpl.smeagol.client.domain.ResourceOccurrences;
+import edu.upc.cpl.smeagol.client.exception.ExpansionBudgetExceededException;
+
+@RunWith(JUnit4.class)
+public class ExpansionBudgetTest extends TestCase {
+
+	private static final DateTime START = new DateTime(2011, 2, 3, 8, 0, 0, 0);
+	private static final Interval TEN_YEARS = new Interval(START, START.plusYears(10));
+
+	private static Booking daily(long idResource) {
+		return Booking.asDailyRecurrence(idResource, 1L, START, START.plusHours(1), (short) 1, null);
+	}
+
+	private static int count(OccurrenceIterator it) {
+		int n = 0;
+		while (it.hasNext()) {
+			it.next();
+			n++;
+		}
+		return n;
+	}
+
+	@Test
+	public void testMaxOccurrences() {
+		ExpansionBudget budget = new ExpansionBudget();
+		budget.setMaxOccurrences(100);
+		try {
+			count(daily(1).iterateOccurrences(TEN_YEARS, budget));
+			fail();
+		} catch (ExpansionBudgetExceededException e) {
+			assertEquals(ExpansionBudget.Limit.OCCURRENCES, e.getLimit());
+		}
+
+		budget.setTruncate(true);
+		OccurrenceIterator it = daily(1).iterateOccurrences(TEN_YEARS, budget);
+		assertEquals(100, count(it));
+		assertTrue(it.isTruncated());
+
+		it = daily(1).iterateOccurrences(new Interval(START, START.plusDays(100)), budget);
+		assertEquals(100, count(it));
+		assertFalse(it.isTruncated());
+	}
+
+	@Test
+	public void testMaxWindow() {
+		ExpansionBudget budget = new ExpansionBudget();
+		budget.setMaxWindow(30L * 24 * 3600 * 1000);
+		try {
+			daily(1).iterateOccurrences(TEN_YEARS, budget);
+			fail();
+		} catch (ExpansionBudgetExceededException e) {
+			assertEquals(ExpansionBudget.Limit.WINDOW, e.getLimit());
+		}
+
+		budget.setTruncate(true);
+		OccurrenceIterator it = daily(1).iterateOccurrences(TEN_YEARS, budget);
+		assertEquals(30, count(it));
+		assertTrue(it.isTruncated());
+	}
+
+	/**
+	 * A rule which never has occurrences (February 30th) is scanned month
+	 * after month until the end of the window.
+	 */
+	@Test
+	public void testMaxCpuTime() {
+		Booking b = Booking.asSimple(1L, 1L, START, START.plusHours(1));
+		b.setFrequency(Frequency.YEARLY);
+		b.setByMonth(Collections.singleton((short) 2));
+		b.setByDayOfMonth(Collections.singleton((short) 30));
+		Interval forever = new Interval(START, START.plusYears(1000000));
+
+		ExpansionBudget budget = new ExpansionBudget();
+		budget.setMaxCpuTime(20);
+		try {
+			count(b.iterateOccurrences(forever, budget));
+			fail();
+		} catch (ExpansionBudgetExceededException e) {
+			assertEquals(ExpansionBudget.Limit.CPU_TIME, e.getLimit());
+		}
+
+		budget.setTruncate(true);
+		OccurrenceIterator it = b.iterateOccurrences(forever, budget);
+		assertEquals(0, count(it));
+		assertTrue(it.isTruncated());
+	}
+
+	@Test
+	public void testEstimate() {
+		Booking b = Booking.asSimple(1L, 1L, START, START.plusSeconds(1));
+		b.setFrequency(Frequency.SECONDLY);
+		long estimate = b.estimateOccurrences(new Interval(START, START.plusHours(1)));
+		assertTrue(estimate >= 3600 && estimate < 3610);
+		assertTrue(b.estimateOccurrences(TEN_YEARS) > 300000000L);
+		assertEquals(0, b.estimateOccurrences(new Interval(START.minusHours(1), START)));
+
+		ExpansionBudget budget = new ExpansionBudget();
+		budget.setMaxOccurrences(4000);
+		assertFalse(budget.admits(Arrays.asList(daily(1), daily(2)), TEN_YEARS));
+		assertTrue(budget.admits(Arrays.asList(daily(1), daily(2)), new Interval(START, START.plusYears(5))));
+		budget.setMaxWindow(1000);
+		assertFalse(budget.admits(Collections.<Booking> emptyList(), TEN_YEARS));
+	}
+
+	@Test
+	public void testSharedByExpander() {
+		ExpansionBudget budget = new ExpansionBudget();
+		budget.setMaxOccurrences(1000);
+		BookingExpander expander = new BookingExpander(2);
+		expander.setBudget(budget);
+		try {
+			expander.expand(Arrays.asList(daily(1), daily(2), daily(3)), new Interval(START, START.plusYears(1)));
+			fail();
+		} catch (ExpansionBudgetExceededException e) {
+			assertEquals(ExpansionBudget.Limit.OCCURRENCES, e.getLimit());
+		}
+
+		budget.setTruncate(true);
+		Map<Long, ResourceOccurrences> result = expander.expand(Arrays.asList(daily(1), daily(2), daily(3)),
+				new Interval(START, START.plusYears(1)));
+		int total = 0;
+		for (ResourceOccurrences r : result.values()) {
+			assertTrue(r.isTruncated());
+			total += r.size();
+		}
+		assertEquals(1000, total);
+	}
+
+	@Test
+	public void testSubDaily() {
+		Booking hourly = Booking.asSimple(1L, 1L, START, START.plusMinutes(30));
+		hourly.setFrequency(Frequency.HOURLY);
+		Booking secondly = Booking.asSimple(2L, 1L, START, START.plusSeconds(1));
+		secondly.setFrequency(Frequency.SECONDLY);
+
+		ExpansionBudget budget = new ExpansionBudget();
+		budget.setMaxOccurrences(1000);
+		assertEquals(24, count(hourly.iterateOccurrences(new Interval(START, START.plusDays(1)), budget)));
+		try {
+			count(secondly.iterateOccurrences(TEN_YEARS, budget));
+			fail();
+		} catch (ExpansionBudgetExceededException e) {
+			assertEquals(ExpansionBudget.Limit.OCCURRENCES, e.getLimit());
+		}
+
+		budget.setTruncate(true);
+		OccurrenceIterator it = secondly.iterateOccurrences(TEN_YEARS, budget);
+		assertEquals(1000, count(it));
+		assertTrue(it.isTruncated());
+
+		// one sub-daily booking does not abort the expansion of the others
+		BookingExpander expander = new BookingExpander(2);
+		expander.setBudget(budget);
+		Map<Long, ResourceOccurrences> result = expander.expand(Arrays.asList(daily(3), hourly, secondly),
+				new Interval(START, START.plusDays(10)));
+		assertEquals(3, result.size());
+		assertTrue(result.get(2L).isTruncated());
+		assertTrue(result.get(1L).size() > 0);
+		assertTrue(result.get(3L).size() > 0);
+
+		Interval day = new Interval(START, START.plusDays(1));
+		assertEquals(24, new OccupancyAnalyzer().analyze(Arrays.asList(daily(3), hourly), null, day).get(1L)
+				.getBusy().size());
+		// resource 1 is busy half of every hour, and from 8:00 to 9:00
+		assertEquals(new Interval(START.plusMinutes(90), START.plusMinutes(120)), new FreeSlotFinder(Arrays.asList(
+				hourly, daily(1))).findFreeSlots(Arrays.asList(1L), day, Duration.standardMinutes(30),
+				Duration.standardMinutes(30), 1).get(0));
+	}
+
+}
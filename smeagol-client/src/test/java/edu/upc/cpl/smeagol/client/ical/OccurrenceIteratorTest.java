@@ -0,0 +1,428 @@
+package edu.upc.cpl.smeagol.client.ical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Days;
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
+import org.joda.time.Months;
+import org.joda.time.Weeks;
+import org.joda.time.Years;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import edu.upc.cpl.smeagol.client.domain.Booking;
+
+@RunWith(JUnit4.class)
+public class OccurrenceIteratorTest extends TestCase {
+
+	private static final DateTimeZone MADRID = DateTimeZone.forID("Europe/Madrid");
+	private static final DateTime START = new DateTime(2011, 2, 3, 8, 0, 0, 0, MADRID);
+	private static final DateTime END = START.plusHours(2);
+
+	private static Booking recurrence(Frequency frequency, int interval, DateTime until) {
+		Booking b = new Booking();
+		b.setIdResource(1L);
+		b.setIdEvent(2L);
+		b.setDtStart(START);
+		b.setDtEnd(END);
+		b.setFrequency(frequency);
+		b.setInterval((short) interval);
+		b.setUntil(until);
+		return b;
+	}
+
+	private static DateTime at(String instant) {
+		return new DateTime(instant, MADRID);
+	}
+
+	private static Set<DayOfWeek> days(String... days) {
+		Set<DayOfWeek> result = new HashSet<DayOfWeek>();
+		for (String d : days) {
+			result.add(DayOfWeek.of(d));
+		}
+		return result;
+	}
+
+	private static Set<Short> shorts(int... values) {
+		Set<Short> result = new TreeSet<Short>();
+		for (int v : values) {
+			result.add((short) v);
+		}
+		return result;
+	}
+
+	private static List<LocalDate> startDates(Booking b, Interval window) {
+		return b.streamOccurrences(window).map(i -> i.getStart().toLocalDate()).collect(Collectors.toList());
+	}
+
+	private static List<LocalDate> dates(String... dates) {
+		List<LocalDate> result = new ArrayList<LocalDate>();
+		for (String d : dates) {
+			result.add(new LocalDate(d));
+		}
+		return result;
+	}
+
+	private static Interval window(String start, String end) {
+		return new Interval(new DateTime(start, MADRID), new DateTime(end, MADRID));
+	}
+
+	@Test
+	public void testSimpleBooking() {
+		Booking b = Booking.asSimple(1L, 2L, START, END);
+		List<Interval> all = b.streamOccurrences(window("2011-01-01", "2012-01-01")).collect(Collectors.toList());
+		assertEquals(Arrays.asList(new Interval(START, END)), all);
+		assertEquals(0, b.streamOccurrences(window("2011-02-03T10:00", "2012-01-01")).count());
+		assertEquals(1, b.streamOccurrences(window("2011-02-03T09:59", "2011-02-03T10:00")).count());
+	}
+
+	@Test
+	public void testDaily() {
+		Booking b = recurrence(Frequency.DAILY, 2, START.plusDays(6));
+		List<Interval> all = b.streamOccurrences(window("2011-01-01", "2012-01-01")).collect(Collectors.toList());
+		assertEquals(4, all.size());
+		assertEquals(new Interval(START, END), all.get(0));
+		assertEquals(new Interval(START.plusDays(6), END.plusDays(6)), all.get(3));
+	}
+
+	@Test
+	public void testDailyKeepsLocalTimeAcrossDaylightSaving() {
+		Booking b = recurrence(Frequency.DAILY, 1, null);
+		for (Interval i : (Iterable<Interval>) () -> b.iterateOccurrences(window("2011-03-25", "2011-03-30"))) {
+			assertEquals(8, i.getStart().getHourOfDay());
+			assertEquals(2, i.toDuration().getStandardHours());
+		}
+	}
+
+	@Test
+	public void testWeekly() {
+		Booking b = recurrence(Frequency.WEEKLY, 1, null);
+		b.setByDay(days("MO", "WE"));
+		assertEquals(dates("2011-02-07", "2011-02-09", "2011-02-14", "2011-02-16"),
+				startDates(b, window("2011-01-01", "2011-02-17")));
+
+		// by default, on the same day of the week as dtstart (a thursday)
+		b.setByDay(null);
+		b.setInterval((short) 2);
+		assertEquals(dates("2011-02-03", "2011-02-17", "2011-03-03"), startDates(b, window("2011-01-01", "2011-03-04")));
+	}
+
+	@Test
+	public void testMonthlyByDayOfMonth() {
+		Booking b = recurrence(Frequency.MONTHLY, 1, null);
+		b.setByDayOfMonth(shorts(-1, 30));
+		assertEquals(dates("2011-02-28", "2011-03-30", "2011-03-31", "2011-04-30"),
+				startDates(b, window("2011-01-01", "2011-05-01")));
+	}
+
+	@Test
+	public void testMonthlyByOrdinalDay() {
+		Booking b = recurrence(Frequency.MONTHLY, 1, null);
+		b.setByDay(days("-1MO", "2TU"));
+		assertEquals(dates("2011-02-08", "2011-02-28", "2011-03-08", "2011-03-28", "2011-04-12", "2011-04-25"),
+				startDates(b, window("2011-01-01", "2011-05-01")));
+	}
+
+	@Test
+	public void testMonthlyByDayAndDayOfMonth() {
+		// friday the 13th
+		Booking b = recurrence(Frequency.MONTHLY, 1, null);
+		b.setByDay(days("FR"));
+		b.setByDayOfMonth(shorts(13));
+		assertEquals(dates("2011-05-13", "2012-01-13", "2012-04-13", "2012-07-13"),
+				startDates(b, window("2011-01-01", "2012-12-01")));
+	}
+
+	@Test
+	public void testMonthlyDefaultsToDayOfStart() {
+		Booking b = recurrence(Frequency.MONTHLY, 3, null);
+		assertEquals(dates("2011-02-03", "2011-05-03", "2011-08-03"), startDates(b, window("2011-01-01", "2011-10-01")));
+	}
+
+	@Test
+	public void testYearly() {
+		Booking b = recurrence(Frequency.YEARLY, 1, null);
+		b.setByMonth(shorts(1, 3));
+		b.setByDayOfMonth(shorts(10));
+		assertEquals(dates("2011-03-10", "2012-01-10", "2012-03-10"), startDates(b, window("2011-01-01", "2013-01-01")));
+
+		b = recurrence(Frequency.YEARLY, 2, null);
+		assertEquals(dates("2011-02-03", "2013-02-03"), startDates(b, window("2011-01-01", "2014-01-01")));
+	}
+
+	@Test
+	public void testYearlyByOrdinalDay() {
+		// first monday of the year, and last monday of may
+		Booking b = recurrence(Frequency.YEARLY, 1, null);
+		b.setByDay(days("1MO"));
+		assertEquals(dates("2012-01-02", "2013-01-07"), startDates(b, window("2011-01-01", "2014-01-01")));
+
+		b.setByDay(days("-1MO"));
+		b.setByMonth(shorts(5));
+		assertEquals(dates("2011-05-30", "2012-05-28"), startDates(b, window("2011-01-01", "2013-01-01")));
+	}
+
+	@Test
+	public void testUntilIsInclusive() {
+		Booking b = recurrence(Frequency.WEEKLY, 1, START.plusWeeks(2));
+		assertEquals(dates("2011-02-03", "2011-02-10", "2011-02-17"), startDates(b, window("2011-01-01", "2012-01-01")));
+	}
+
+	@Test
+	public void testOccurrenceOverlappingWindowStartIsIncluded() {
+		Booking b = recurrence(Frequency.DAILY, 1, null);
+		List<LocalDate> dates = startDates(b, window("2011-02-05T09:00", "2011-02-06T08:00"));
+		assertEquals(dates("2011-02-05"), dates);
+	}
+
+	@Test
+	public void testExhaustedIterator() {
+		OccurrenceIterator it = recurrence(Frequency.DAILY, 1, null).iterateOccurrences(
+				window("2011-02-03T11:00", "2011-02-04T08:00"));
+		assertFalse(it.hasNext());
+		try {
+			it.next();
+			fail();
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSubDaily() {
+		Booking b = recurrence(Frequency.HOURLY, 3, at("2011-02-04T02:00"));
+		b.setDtEnd(START.plusMinutes(30));
+		assertEquals(Arrays.asList(at("2011-02-03T11:00"), at("2011-02-03T14:00"), at("2011-02-03T17:00")),
+				starts(b, new Interval(at("2011-02-03T10:45"), at("2011-02-03T17:01"))));
+		// the last one starts at until
+		assertEquals(Arrays.asList(at("2011-02-03T23:00"), at("2011-02-04T02:00")), starts(b, new Interval(
+				at("2011-02-03T22:00"), at("2011-02-05T00:00"))));
+
+		// elapsed hours, across the change to summer time (at 02:00 on 27
+		// March 2011)
+		b = recurrence(Frequency.HOURLY, 1, null);
+		b.setDtEnd(START.plusMinutes(30));
+		assertEquals(Arrays.asList(at("2011-03-27T01:00"), at("2011-03-27T03:00"), at("2011-03-27T04:00")), starts(b,
+				new Interval(at("2011-03-27T00:45"), at("2011-03-27T04:30"))));
+
+		// limited to Saturdays
+		b = recurrence(Frequency.MINUTELY, 90, null);
+		b.setByDay(days("SA"));
+		List<DateTime> saturday = starts(b, window("2011-02-04", "2011-02-07"));
+		assertEquals(at("2011-02-05T00:30"), saturday.get(0));
+		assertEquals(at("2011-02-05T23:00"), saturday.get(saturday.size() - 1));
+		assertEquals(16, saturday.size());
+	}
+
+	private static List<DateTime> starts(Booking b, Interval window) {
+		List<DateTime> result = new ArrayList<DateTime>();
+		b.iterateOccurrences(window).forEachRemaining(i -> result.add(i.getStart().withZone(MADRID)));
+		return result;
+	}
+
+	/**
+	 * @return <code>true</code> if {@code days} has {@code weekday}, with any
+	 *         ordinal (which sub-daily rules ignore).
+	 */
+	private static boolean hasWeekday(Set<DayOfWeek> days, int weekday) {
+		for (DayOfWeek d : days) {
+			if (d.getWeekday() == weekday) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compare random sub-daily rules against a straightforward implementation
+	 * which looks at every period.
+	 */
+	@Test
+	public void testSubDailyAgainstReferenceImplementation() {
+		Random random = new Random(5);
+		Frequency[] frequencies = { Frequency.SECONDLY, Frequency.MINUTELY, Frequency.HOURLY };
+		long[] periods = { 1000, 60000, 3600000 };
+
+		for (int n = 0; n < 300; n++) {
+			int f = random.nextInt(3);
+			int interval = 1 + random.nextInt(f == 0 ? 30000 : f == 1 ? 2000 : 40);
+			DateTime until = random.nextBoolean() ? null : START.plusHours(random.nextInt(24 * 400));
+			Booking b = recurrence(frequencies[f], interval, until);
+			b.setDtEnd(START.plusMinutes(random.nextInt(180)));
+			if (random.nextBoolean()) {
+				b.setByDay(days(new String[] { "MO", "TU", "WE", "TH", "FR", "SA", "SU" }[random.nextInt(7)], "2SU"));
+			}
+			if (random.nextInt(3) == 0) {
+				b.setByDayOfMonth(shorts(-1 - random.nextInt(31), 1 + random.nextInt(28)));
+			}
+			if (random.nextInt(3) == 0) {
+				b.setByMonth(shorts(1 + random.nextInt(12), 1 + random.nextInt(12)));
+			}
+
+			DateTime from = START.plusMinutes(random.nextInt(60 * 24 * 400) - 60 * 24);
+			Interval window = new Interval(from, from.plusMinutes(random.nextInt(60 * 24 * 20)));
+			long period = periods[f] * interval;
+			long duration = b.getDtEnd().getMillis() - b.getDtStart().getMillis();
+
+			List<DateTime> expected = new ArrayList<DateTime>();
+			for (long s = START.getMillis(); s < window.getEndMillis(); s += period) {
+				DateTime d = new DateTime(s, MADRID);
+				if ((until != null && s > until.getMillis()) || s + duration <= window.getStartMillis()) {
+					continue;
+				}
+				if (b.getByDay() != null && !hasWeekday(b.getByDay(), d.getDayOfWeek())) {
+					continue;
+				}
+				int len = d.dayOfMonth().getMaximumValue();
+				if (b.getByDayOfMonth() != null && !b.getByDayOfMonth().contains((short) d.getDayOfMonth())
+						&& !b.getByDayOfMonth().contains((short) (d.getDayOfMonth() - len - 1))) {
+					continue;
+				}
+				if (b.getByMonth() != null && !b.getByMonth().contains((short) d.getMonthOfYear())) {
+					continue;
+				}
+				expected.add(d);
+			}
+			assertEquals(b.serialize() + " " + window, expected, starts(b, window));
+		}
+	}
+
+	/**
+	 * Compare random rules against a straightforward day by day
+	 * implementation, on windows starting years after the rule.
+	 */
+	@Test
+	public void testAgainstReferenceImplementation() {
+		Random random = new Random(7);
+		Frequency[] frequencies = { Frequency.DAILY, Frequency.WEEKLY, Frequency.MONTHLY, Frequency.YEARLY };
+
+		for (int n = 0; n < 300; n++) {
+			Booking b = recurrence(frequencies[random.nextInt(4)], 1 + random.nextInt(3), null);
+			if (random.nextBoolean()) {
+				Set<DayOfWeek> byDay = new HashSet<DayOfWeek>();
+				for (int i = random.nextInt(3); i >= 0; i--) {
+					int ordinal = random.nextInt(3) == 0 ? 0 : (random.nextBoolean() ? 1 : -1) * (1 + random.nextInt(5));
+					byDay.add(DayOfWeek.of(ordinal, 1 + random.nextInt(7)));
+				}
+				b.setByDay(byDay);
+			}
+			if (random.nextInt(3) == 0) {
+				b.setByDayOfMonth(shorts(random.nextInt(2) == 0 ? -1 - random.nextInt(31) : 1 + random.nextInt(31),
+						1 + random.nextInt(28)));
+			}
+			if (random.nextInt(3) == 0) {
+				b.setByMonth(shorts(1 + random.nextInt(12), 1 + random.nextInt(12)));
+			}
+
+			DateTime from = START.plusDays(random.nextInt(2000));
+			Interval window = new Interval(from, from.plusDays(1 + random.nextInt(800)));
+			String rule = b.serialize();
+			assertEquals(rule + " " + window, reference(b, window), startDates(b, window));
+		}
+	}
+
+	private static List<LocalDate> reference(Booking b, Interval window) {
+		List<LocalDate> result = new ArrayList<LocalDate>();
+		LocalDate start = b.getDtStart().toLocalDate();
+		int interval = b.getInterval();
+		Set<DayOfWeek> byDay = b.getByDay() == null ? new HashSet<DayOfWeek>() : b.getByDay();
+		Set<Short> byMonthDay = b.getByDayOfMonth() == null ? new HashSet<Short>() : b.getByDayOfMonth();
+		Set<Short> byMonth = b.getByMonth() == null ? new HashSet<Short>() : b.getByMonth();
+		Frequency f = b.getFrequency();
+
+		for (LocalDate d = start; d.isBefore(window.getEnd().toLocalDate().plusDays(1)); d = d.plusDays(1)) {
+			boolean periodMatches;
+			switch (f) {
+			case DAILY:
+				periodMatches = Days.daysBetween(start, d).getDays() % interval == 0;
+				break;
+			case WEEKLY:
+				periodMatches = Weeks.weeksBetween(start.withDayOfWeek(1), d.withDayOfWeek(1)).getWeeks() % interval == 0;
+				break;
+			case MONTHLY:
+				periodMatches = Months.monthsBetween(start.withDayOfMonth(1), d.withDayOfMonth(1)).getMonths()
+						% interval == 0;
+				break;
+			default:
+				periodMatches = Years.yearsBetween(start.withDayOfYear(1), d.withDayOfYear(1)).getYears() % interval == 0;
+			}
+			if (!periodMatches) {
+				continue;
+			}
+
+			int len = d.dayOfMonth().getMaximumValue();
+			boolean monthDayMatches = byMonthDay.contains((short) d.getDayOfMonth())
+					|| byMonthDay.contains((short) (d.getDayOfMonth() - len - 1));
+			boolean monthMatches = byMonth.contains((short) d.getMonthOfYear());
+			boolean dayMatches = false;
+			for (DayOfWeek w : byDay) {
+				if (w.getWeekday() != d.getDayOfWeek()) {
+					continue;
+				}
+				int n = w.getOrdinal();
+				if (n == 0 || f == Frequency.DAILY || f == Frequency.WEEKLY) {
+					dayMatches = true;
+				} else if (f == Frequency.MONTHLY || !byMonth.isEmpty()) {
+					dayMatches |= n > 0 ? (d.getDayOfMonth() - 1) / 7 + 1 == n : (len - d.getDayOfMonth()) / 7 + 1 == -n;
+				} else {
+					int doy = d.getDayOfYear();
+					int ylen = d.dayOfYear().getMaximumValue();
+					dayMatches |= n > 0 ? (doy - 1) / 7 + 1 == n : (ylen - doy) / 7 + 1 == -n;
+				}
+			}
+
+			boolean matches;
+			switch (f) {
+			case DAILY:
+				matches = (byDay.isEmpty() || dayMatches) && (byMonthDay.isEmpty() || monthDayMatches)
+						&& (byMonth.isEmpty() || monthMatches);
+				break;
+			case WEEKLY:
+				matches = (byDay.isEmpty() ? d.getDayOfWeek() == start.getDayOfWeek() : dayMatches)
+						&& (byMonthDay.isEmpty() || monthDayMatches) && (byMonth.isEmpty() || monthMatches);
+				break;
+			case MONTHLY:
+				if (byDay.isEmpty() && byMonthDay.isEmpty()) {
+					matches = d.getDayOfMonth() == start.getDayOfMonth();
+				} else {
+					matches = (byDay.isEmpty() || dayMatches) && (byMonthDay.isEmpty() || monthDayMatches);
+				}
+				matches &= byMonth.isEmpty() || monthMatches;
+				break;
+			default:
+				if (byDay.isEmpty() && byMonthDay.isEmpty()) {
+					matches = d.getDayOfMonth() == start.getDayOfMonth()
+							&& (byMonth.isEmpty() ? d.getMonthOfYear() == start.getMonthOfYear() : monthMatches);
+				} else {
+					matches = (byDay.isEmpty() || dayMatches) && (byMonthDay.isEmpty() || monthDayMatches)
+							&& (byMonth.isEmpty() || monthMatches);
+				}
+			}
+			if (!matches) {
+				continue;
+			}
+
+			DateTime s = d.toDateTime(b.getDtStart().toLocalTime(), MADRID);
+			Interval occurrence = new Interval(s, s.plus(b.getDtEnd().getMillis() - b.getDtStart().getMillis()));
+			if (!s.isBefore(b.getDtStart()) && occurrence.overlaps(window)) {
+				result.add(d);
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,171 @@
+package edu.upc.cpl.smeagol.client.ical;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import edu.upc.cpl.smeagol.client.domain.Booking;
+
+@RunWith(JUnit4.class)
+public class RecurrenceOverlapTest extends TestCase {
+
+	private static final DateTimeZone MADRID = DateTimeZone.forID("Europe/Madrid");
+
+	private static DateTime at(String instant) {
+		return new DateTime(instant, MADRID);
+	}
+
+	private static Booking weekly(String start, int hours, int interval, String... days) {
+		Booking b = new Booking();
+		b.setIdResource(1L);
+		b.setIdEvent(2L);
+		b.setDtStart(at(start));
+		b.setDtEnd(at(start).plusHours(hours));
+		b.setFrequency(Frequency.WEEKLY);
+		b.setInterval((short) interval);
+		Set<DayOfWeek> byDay = new HashSet<DayOfWeek>();
+		for (String d : days) {
+			byDay.add(DayOfWeek.of(d));
+		}
+		b.setByDay(byDay);
+		return b;
+	}
+
+	@Test
+	public void testBackToBackBookingsNeverOverlap() {
+		// mondays 8:00 - 10:00 and 10:00 - 12:00, for a thousand years
+		Booking a = weekly("2011-02-07T08:00", 2, 1, "MO");
+		Booking b = weekly("2011-02-07T10:00", 2, 1, "MO", "WE");
+		Interval window = new Interval(at("2011-01-01"), at("3011-01-01"));
+		assertNull(a.firstOverlapWith(b, window));
+		assertFalse(b.overlapsWith(a, window));
+	}
+
+	@Test
+	public void testFirstCollisionOfDifferentIntervals() {
+		// every 4 weeks from 2011-02-07, and every 6 weeks from 2011-02-21:
+		// the weeks meet every 12 weeks, from 2011-04-04
+		Booking a = weekly("2011-02-07T08:00", 2, 4, "MO");
+		Booking b = weekly("2011-02-21T09:00", 2, 6, "MO");
+		Interval window = new Interval(at("2011-01-01"), at("2021-01-01"));
+		assertEquals(new Interval(at("2011-04-04T09:00"), at("2011-04-04T10:00")), a.firstOverlapWith(b, window));
+		assertEquals(new Interval(at("2011-06-27T09:00"), at("2011-06-27T10:00")),
+				a.firstOverlapWith(b, new Interval(at("2011-04-04T10:00"), at("2021-01-01"))));
+
+		// the window clips the overlap
+		assertEquals(new Interval(at("2011-04-04T09:30"), at("2011-04-04T10:00")),
+				a.firstOverlapWith(b, new Interval(at("2011-04-04T09:30"), at("2021-01-01"))));
+
+		// an odd number of weeks apart, they never meet
+		b.setDtStart(at("2011-02-14T09:00"));
+		b.setDtEnd(at("2011-02-14T11:00"));
+		assertNull(a.firstOverlapWith(b, window));
+	}
+
+	@Test
+	public void testUntilLimitsCollisions() {
+		Booking a = weekly("2011-02-07T08:00", 2, 4, "MO");
+		Booking b = weekly("2011-02-21T09:00", 2, 6, "MO");
+		b.setUntil(at("2011-04-01"));
+		assertNull(a.firstOverlapWith(b, new Interval(at("2011-01-01"), at("2021-01-01"))));
+	}
+
+	@Test
+	public void testOvernightOccurrences() {
+		// sundays 22:00 - 02:00 and every day 1:00 - 3:00
+		Booking a = weekly("2011-02-06T22:00", 4, 1, "SU");
+		Booking b = new Booking();
+		b.setIdResource(1L);
+		b.setIdEvent(3L);
+		b.setDtStart(at("2011-02-10T01:00"));
+		b.setDtEnd(at("2011-02-10T03:00"));
+		b.setFrequency(Frequency.DAILY);
+		assertEquals(new Interval(at("2011-02-14T01:00"), at("2011-02-14T02:00")),
+				a.firstOverlapWith(b, new Interval(at("2011-01-01"), at("2012-01-01"))));
+	}
+
+	/**
+	 * Compare random pairs of rules against the overlaps of all their
+	 * occurrences within the window.
+	 */
+	@Test
+	public void testAgainstExpansion() {
+		Random random = new Random(5);
+		DateTimeZone[] zones = { MADRID, MADRID, DateTimeZone.UTC, DateTimeZone.forOffsetHours(2) };
+		Frequency[] frequencies = { Frequency.DAILY, Frequency.WEEKLY, Frequency.WEEKLY, Frequency.MONTHLY, null };
+
+		for (int n = 0; n < 400; n++) {
+			Booking a = random(random, frequencies, MADRID);
+			Booking b = random(random, frequencies, zones[random.nextInt(zones.length)]);
+			DateTime from = new DateTime(2011, 1, 1, 0, 0, 0, 0, MADRID).plusHours(random.nextInt(24 * 400));
+			Interval window = new Interval(from, from.plusHours(random.nextInt(24 * 500)));
+
+			List<Interval> as = a.streamOccurrences(window).collect(Collectors.toList());
+			List<Interval> bs = b.streamOccurrences(window).collect(Collectors.toList());
+			Long first = null;
+			for (Interval x : as) {
+				for (Interval y : bs) {
+					long s = Math.max(window.getStartMillis(), Math.max(x.getStartMillis(), y.getStartMillis()));
+					long e = Math.min(window.getEndMillis(), Math.min(x.getEndMillis(), y.getEndMillis()));
+					if (s < e && (first == null || s < first)) {
+						first = s;
+					}
+				}
+			}
+
+			Interval found = a.firstOverlapWith(b, window);
+			String rules = a.serialize() + " " + b.serialize() + " " + window;
+			if (first == null) {
+				assertNull(rules, found);
+			} else {
+				assertNotNull(rules, found);
+				assertEquals(rules, first.longValue(), found.getStartMillis());
+			}
+		}
+	}
+
+	private static Booking random(Random random, Frequency[] frequencies, DateTimeZone zone) {
+		DateTime start = new DateTime(2011, 1, 1, 0, 0, 0, 0, zone).plusDays(random.nextInt(200)).plusMinutes(
+				30 * random.nextInt(48));
+		Booking b = new Booking();
+		b.setIdResource(1L);
+		b.setIdEvent(2L);
+		b.setDtStart(start);
+		b.setDtEnd(start.plusMinutes(30 * random.nextInt(random.nextInt(8) == 0 ? 100 : 8)));
+		b.setFrequency(frequencies[random.nextInt(frequencies.length)]);
+		if (b.getFrequency() != null) {
+			b.setInterval((short) (1 + random.nextInt(5)));
+			if (random.nextBoolean()) {
+				b.setUntil(start.plusDays(random.nextInt(700)));
+			}
+			if (random.nextBoolean()) {
+				Set<DayOfWeek> byDay = new HashSet<DayOfWeek>();
+				for (int i = random.nextInt(3); i >= 0; i--) {
+					byDay.add(DayOfWeek.of(0, 1 + random.nextInt(7)));
+				}
+				b.setByDay(byDay);
+			}
+			if (random.nextInt(6) == 0) {
+				Set<Short> months = new TreeSet<Short>();
+				for (int i = random.nextInt(6); i >= 0; i--) {
+					months.add((short) (1 + random.nextInt(12)));
+				}
+				b.setByMonth(months);
+			}
+		}
+		return b;
+	}
+
+}
@@ -0,0 +1,240 @@
+package edu.upc.cpl.smeagol.client.ical;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import edu.upc.cpl.smeagol.client.domain.Booking;
+
+@RunWith(JUnit4.class)
+public class RecurrenceRuleTest extends TestCase {
+
+	private static final DateTimeZone MADRID = DateTimeZone.forID("Europe/Madrid");
+	private static final DateTime START = new DateTime(2011, 2, 3, 8, 0, 0, 0, MADRID);
+	private static final DateTime END = START.plusHours(2);
+
+	private static Booking recurrence(Frequency frequency, int interval, DateTime until) {
+		Booking b = new Booking();
+		b.setIdResource(1L);
+		b.setIdEvent(2L);
+		b.setDtStart(START);
+		b.setDtEnd(END);
+		b.setFrequency(frequency);
+		b.setInterval((short) interval);
+		b.setUntil(until);
+		return b;
+	}
+
+	private static DateTime at(String instant) {
+		return new DateTime(instant, MADRID);
+	}
+
+	private static Interval occurrence(String start) {
+		return new Interval(at(start), at(start).plusHours(2));
+	}
+
+	@Test
+	public void testSimpleBooking() {
+		Booking b = recurrence(null, 1, null);
+		assertEquals(new Interval(START, END), b.nextOccurrenceAfter(START.minusDays(1)));
+		assertNull(b.nextOccurrenceAfter(START));
+		assertEquals(new Interval(START, END), b.previousOccurrenceBefore(END));
+		assertNull(b.previousOccurrenceBefore(START));
+		assertEquals(1, b.countOccurrences(new Interval(START.plusHours(1), END.plusDays(1))));
+		assertEquals(0, b.countOccurrences(new Interval(END, END.plusDays(1))));
+	}
+
+	@Test
+	public void testWeeklyFarFromStart() {
+		Booking b = recurrence(Frequency.WEEKLY, 2, null);
+		Set<DayOfWeek> days = new HashSet<DayOfWeek>();
+		days.add(DayOfWeek.MONDAY);
+		days.add(DayOfWeek.THURSDAY);
+		b.setByDay(days);
+
+		// 2011-02-03 is a Thursday: weeks of 2011-01-31, 2011-02-14, ...
+		assertEquals(occurrence("2011-02-14T08:00"), b.nextOccurrenceAfter(START));
+		assertEquals(occurrence("3011-01-10T08:00"), b.nextOccurrenceAfter(at("3011-01-08")));
+		assertEquals(occurrence("3011-01-07T08:00"), b.previousOccurrenceBefore(at("3011-01-10T08:00")));
+		assertNull(b.previousOccurrenceBefore(START));
+
+		// two occurrences every two weeks, and none before dtstart
+		assertEquals(47, b.countOccurrences(new Interval(at("2011-01-01"), at("2012-01-01"))));
+		assertEquals(2 * 26090, b.countOccurrences(new Interval(START, START.plusWeeks(52180))));
+	}
+
+	@Test
+	public void testDailyByDay() {
+		Booking b = recurrence(Frequency.DAILY, 3, at("2011-03-31"));
+		Set<DayOfWeek> days = new HashSet<DayOfWeek>();
+		days.add(DayOfWeek.SATURDAY);
+		b.setByDay(days);
+
+		// every third day from 2011-02-03: 02-12 and 03-05 are saturdays
+		assertEquals(occurrence("2011-02-12T08:00"), b.nextOccurrenceAfter(START));
+		assertEquals(occurrence("2011-03-05T08:00"), b.nextOccurrenceAfter(at("2011-02-12T08:00")));
+		assertEquals(occurrence("2011-03-26T08:00"), b.previousOccurrenceBefore(at("2012-01-01")));
+		assertNull(b.nextOccurrenceAfter(at("2011-03-26T08:00")));
+		assertEquals(3, b.countOccurrences(new Interval(at("2011-01-01"), at("2012-01-01"))));
+	}
+
+	@Test
+	public void testRuleWithoutOccurrences() {
+		Booking b = recurrence(Frequency.YEARLY, 1, null);
+		Set<Short> february = new TreeSet<Short>();
+		february.add((short) 2);
+		b.setByMonth(february);
+		Set<Short> day30 = new TreeSet<Short>();
+		day30.add((short) 30);
+		b.setByDayOfMonth(day30);
+
+		assertNull(b.nextOccurrenceAfter(START));
+		assertNull(b.previousOccurrenceBefore(START.plusYears(100)));
+		assertEquals(0, b.countOccurrences(new Interval(START, START.plusYears(10))));
+	}
+
+	@Test
+	public void testNullArguments() {
+		Booking b = recurrence(Frequency.DAILY, 1, null);
+		try {
+			b.nextOccurrenceAfter(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			b.countOccurrences(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Compare random rules against the occurrences returned by
+	 * {@link OccurrenceIterator}.
+	 */
+	@Test
+	public void testAgainstIterator() {
+		Random random = new Random(11);
+		Frequency[] frequencies = { Frequency.DAILY, Frequency.WEEKLY, Frequency.MONTHLY, Frequency.YEARLY };
+
+		for (int n = 0; n < 300; n++) {
+			DateTime until = random.nextBoolean() ? null : START.plusDays(random.nextInt(3000));
+			Booking b = recurrence(frequencies[random.nextInt(4)], 1 + random.nextInt(4), until);
+			if (random.nextInt(4) == 0) {
+				b.setDtEnd(START);
+			}
+			if (random.nextBoolean()) {
+				Set<DayOfWeek> byDay = new HashSet<DayOfWeek>();
+				for (int i = random.nextInt(3); i >= 0; i--) {
+					int ordinal = random.nextInt(3) == 0 ? 0 : (random.nextBoolean() ? 1 : -1) * (1 + random.nextInt(5));
+					byDay.add(DayOfWeek.of(ordinal, 1 + random.nextInt(7)));
+				}
+				b.setByDay(byDay);
+			}
+			if (random.nextInt(3) == 0) {
+				Set<Short> monthDays = new TreeSet<Short>();
+				monthDays.add((short) (random.nextBoolean() ? -1 - random.nextInt(31) : 1 + random.nextInt(31)));
+				b.setByDayOfMonth(monthDays);
+			}
+			if (random.nextInt(3) == 0) {
+				Set<Short> months = new TreeSet<Short>();
+				months.add((short) (1 + random.nextInt(12)));
+				months.add((short) (1 + random.nextInt(12)));
+				b.setByMonth(months);
+			}
+
+			DateTime from = START.plusHours(random.nextInt(24 * 2000) - 24 * 30);
+			Interval window = new Interval(from, from.plusHours(random.nextInt(24 * 800)));
+			String rule = b.serialize() + " " + window;
+
+			List<Interval> expected = new ArrayList<Interval>();
+			b.iterateOccurrences(new Interval(START.minusDays(1), window.getEnd().plusYears(2))).forEachRemaining(
+					expected::add);
+
+			Interval next = null;
+			Interval previous = null;
+			for (Interval i : expected) {
+				if (next == null && i.getStartMillis() > from.getMillis()) {
+					next = i;
+				}
+				if (i.getStartMillis() < from.getMillis()) {
+					previous = i;
+				}
+			}
+			assertEquals(rule, b.streamOccurrences(window).count(), b.countOccurrences(window));
+			assertTrue(rule, b.estimateOccurrences(window) >= b.countOccurrences(window));
+			assertEquals(rule, previous, b.previousOccurrenceBefore(from));
+			if (next != null || until != null) {
+				assertEquals(rule, next, b.nextOccurrenceAfter(from));
+			}
+		}
+	}
+
+	/**
+	 * Compare random SECONDLY, MINUTELY and HOURLY rules against the
+	 * occurrences returned by {@link OccurrenceIterator}.
+	 */
+	@Test
+	public void testSubDailyAgainstIterator() {
+		Random random = new Random(13);
+		Frequency[] frequencies = { Frequency.SECONDLY, Frequency.MINUTELY, Frequency.HOURLY };
+		int[] maxIntervals = { 30000, 2000, 40 };
+
+		for (int n = 0; n < 300; n++) {
+			int f = random.nextInt(3);
+			DateTime until = random.nextBoolean() ? null : START.plusHours(random.nextInt(24 * 100));
+			Booking b = recurrence(frequencies[f], 1 + random.nextInt(maxIntervals[f]), until);
+			b.setDtEnd(START.plusMinutes(random.nextInt(4) == 0 ? 0 : random.nextInt(300)));
+			if (random.nextBoolean()) {
+				Set<DayOfWeek> byDay = new HashSet<DayOfWeek>();
+				byDay.add(DayOfWeek.of(0, 1 + random.nextInt(7)));
+				b.setByDay(byDay);
+			}
+			if (random.nextInt(3) == 0) {
+				Set<Short> months = new TreeSet<Short>();
+				months.add((short) (1 + random.nextInt(12)));
+				b.setByMonth(months);
+			}
+
+			DateTime from = START.plusMinutes(random.nextInt(60 * 24 * 100) - 60 * 24);
+			Interval window = new Interval(from, from.plusMinutes(random.nextInt(60 * 24 * 10)));
+			String rule = b.serialize() + " " + window;
+
+			List<Interval> expected = new ArrayList<Interval>();
+			b.iterateOccurrences(new Interval(START.minusDays(1), window.getEnd().plusYears(1))).forEachRemaining(
+					expected::add);
+
+			Interval next = null;
+			Interval previous = null;
+			for (Interval i : expected) {
+				if (next == null && i.getStartMillis() > from.getMillis()) {
+					next = i;
+				}
+				if (i.getStartMillis() < from.getMillis()) {
+					previous = i;
+				}
+			}
+			assertEquals(rule, b.streamOccurrences(window).count(), b.countOccurrences(window));
+			assertTrue(rule, b.estimateOccurrences(window) >= b.countOccurrences(window));
+			assertEquals(rule, previous, b.previousOccurrenceBefore(from));
+			if (next != null || until != null) {
+				assertEquals(rule, next, b.nextOccurrenceAfter(from));
+			}
+		}
+	}
+
+}
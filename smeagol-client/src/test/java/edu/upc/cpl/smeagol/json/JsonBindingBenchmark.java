@@ -0,0 +1,124 @@
+package edu.upc.cpl.smeagol.json;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import edu.upc.cpl.smeagol.client.domain.Booking;
+import edu.upc.cpl.smeagol.client.domain.Event;
+import edu.upc.cpl.smeagol.client.ical.DayOfWeek;
+import edu.upc.cpl.smeagol.client.ical.Frequency;
+
+/**
+ * Throughput and allocation of parsing listings of bookings and events with
+ * the streaming adapters of {@link SmeagolGson}, against reflective Gson
+ * binding of classes with the fields the domain classes had before the
+ * adapters (as the client did then). Allocation is measured per thread, so
+ * it needs a JVM supporting {@code com.sun.management.ThreadMXBean}. It is
+ * not a test: run it with
+ * <code>java -cp ... edu.upc.cpl.smeagol.json.JsonBindingBenchmark [entities]</code>
+ * .
+ *
+ */
+public class JsonBindingBenchmark {
+
+	private static final int WARMUP = 10;
+	private static final int ROUNDS = 20;
+
+	/*
+	 * Fields of the domain classes before the streaming adapters, bound by
+	 * reflection.
+	 */
+
+	@SuppressWarnings("unused")
+	private static class ReflectiveEvent {
+		private Long id;
+		private String description;
+		private String info;
+		private DateTime starts;
+		private DateTime ends;
+	}
+
+	@SuppressWarnings("unused")
+	private static class ReflectiveBooking {
+		private Long id;
+		private Long id_resource;
+		private Long id_event;
+		private DateTime dtstart;
+		private DateTime dtend;
+		private Frequency frequency;
+		private Short interval;
+		private DateTime until;
+		private Set<DayOfWeek> by_day;
+		private Set<Short> by_day_month;
+		private Set<Short> by_month;
+	}
+
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+		DateTime origin = new DateTime(2012, 9, 10, 0, 0, 0, 0);
+		Random random = new Random(1);
+		List<Booking> bookings = new ArrayList<Booking>(size);
+		List<Event> events = new ArrayList<Event>(size);
+		for (int i = 0; i < size; i++) {
+			DateTime start = origin.plusMinutes(30 * random.nextInt(2 * 24 * 14));
+			Booking b = Booking.asMonthlyRecurrence((long) random.nextInt(200), (long) i, start,
+					start.plusHours(2), (short) 1, start.plusYears(1), Collections.singleton((short) start
+							.getDayOfMonth()));
+			b.setId((long) i);
+			bookings.add(b);
+			Event e = new Event("event " + i, "info of event " + i, new Interval(b.getDtStart(), b.getDtEnd()));
+			e.setId((long) i);
+			events.add(e);
+		}
+		String bookingsJson = Booking.serialize(bookings);
+		String eventsJson = Event.serialize(events);
+
+		Gson reflective = new GsonBuilder().registerTypeAdapter(DateTime.class, new DateTimeConverter())
+				.registerTypeAdapter(new TypeToken<Set<DayOfWeek>>() {
+				}.getType(), new DayOfWeekListConverter()).registerTypeAdapter(new TypeToken<Set<Short>>() {
+				}.getType(), new ShortSetConverter()).create();
+		Type bookingsType = new TypeToken<Collection<ReflectiveBooking>>() {
+		}.getType();
+		Type eventsType = new TypeToken<Collection<ReflectiveEvent>>() {
+		}.getType();
+
+		run("bookings, reflective", size, () -> reflective.<Collection<?>> fromJson(bookingsJson, bookingsType));
+		run("bookings, adapters", size, () -> Booking.deserializeCollection(bookingsJson));
+		run("events, reflective", size, () -> reflective.<Collection<?>> fromJson(eventsJson, eventsType));
+		run("events, adapters", size, () -> Event.deserializeCollection(eventsJson));
+	}
+
+	private static void run(String name, int size, Supplier<Collection<?>> parse) {
+		for (int i = 0; i < WARMUP; i++) {
+			parse.get();
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long allocated = threads.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		int parsed = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			parsed += parse.get().size();
+		}
+		double nanos = (double) (System.nanoTime() - start) / parsed;
+		double bytes = (double) (threads.getThreadAllocatedBytes(thread) - allocated) / parsed;
+		System.out.printf("%-22s %8.0f ns/entity %8.0f bytes/entity (%d entities)%n", name, nanos, bytes, size);
+	}
+
+}
@@ -0,0 +1,99 @@
+package edu.upc.cpl.smeagol.json;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import edu.upc.cpl.smeagol.client.domain.Booking;
+import edu.upc.cpl.smeagol.client.domain.Event;
+import edu.upc.cpl.smeagol.client.domain.Resource;
+import edu.upc.cpl.smeagol.client.domain.Tag;
+import edu.upc.cpl.smeagol.client.ical.DayOfWeek;
+
+/**
+ * Round trips of entities received from the server through the JSON
+ * adapters. As with the reflective binding they replace, whatever the server
+ * sends is kept and written back as it was, even if the setters of the
+ * domain classes would reject it.
+ *
+ */
+@RunWith(JUnit4.class)
+public class JsonRoundTripTest extends TestCase {
+
+	@Test
+	public void testTags() {
+		for (String json : Arrays.asList("{\"id\":\"a\",\"description\":\"tag a\"}", "{\"id\":\"a\"}",
+				"{\"description\":\"tag without id\"}", "{\"id\":\"\",\"description\":\"\"}")) {
+			assertEquals(json, Tag.deserialize(json).serialize());
+		}
+		assertNull(Tag.deserialize("{\"description\":\"d\"}").getId());
+	}
+
+	@Test
+	public void testResources() {
+		for (String json : Arrays.asList("{\"id\":1,\"description\":\"r\",\"info\":\"i\"}",
+				"{\"id\":2,\"description\":\"   \"}", "{\"id\":3}", "{\"description\":\"\"}")) {
+			assertEquals(json, Resource.deserialize(json).serialize());
+		}
+	}
+
+	@Test
+	public void testEvents() {
+		for (String json : Arrays.asList(
+				"{\"id\":1,\"description\":\"e\",\"info\":\"i\",\"starts\":\"2012-09-10T10:00:00\",\"ends\":\"2012-09-10T12:00:00\"}",
+				"{\"id\":2,\"description\":\"e\",\"starts\":\"2012-09-10T10:00:00\",\"ends\":\"2012-09-10T09:00:00\"}",
+				"{\"id\":3,\"description\":\"e\",\"starts\":\"2012-09-10T10:00:00\"}",
+				"{\"id\":4,\"description\":\"e\",\"ends\":\"2012-09-10T10:00:00\"}",
+				"{\"id\":5,\"description\":\" \"}")) {
+			assertEquals(json, Event.deserialize(json).serialize());
+		}
+
+		Event startOnly = Event.deserialize("{\"id\":3,\"description\":\"e\",\"starts\":\"2012-09-10T10:00:00\"}");
+		assertFalse(startOnly.hasInterval());
+		assertNull(startOnly.getInterval());
+		assertNotNull(startOnly.getStarts());
+		assertNull(startOnly.getEnds());
+	}
+
+	@Test
+	public void testBookings() {
+		String prefix = "{\"id\":1,\"id_resource\":2,\"id_event\":3,\"dtstart\":\"2012-09-10T10:00:00\","
+				+ "\"dtend\":\"2012-09-10T12:00:00\",";
+		for (String json : Arrays.asList(
+				prefix + "\"frequency\":\"DAILY\",\"interval\":2,\"until\":\"2012-12-10T12:00:00\"}",
+				prefix + "\"frequency\":\"DAILY\",\"interval\":1,\"until\":\"2012-09-01T00:00:00\"}",
+				prefix + "\"frequency\":\"MONTHLY\",\"interval\":0,\"by_day_month\":\"0,40\"}",
+				prefix + "\"frequency\":\"MONTHLY\",\"interval\":1,\"by_day_month\":\"-40,-1,0,1,31,32\"}",
+				prefix + "\"frequency\":\"YEARLY\",\"interval\":1,\"by_day_month\":\"1\",\"by_month\":\"0,6,13\"}",
+				prefix + "\"frequency\":\"WEEKLY\",\"interval\":1,\"by_day\":\"FR,MO\"}",
+				prefix + "\"frequency\":\"MONTHLY\",\"interval\":1,\"by_day\":\"+2SU,MO\"}",
+				prefix + "\"frequency\":\"MONTHLY\",\"interval\":1,\"by_day\":\"-01FR,-2TH,1MO\"}")) {
+			assertEquals(json, Booking.deserialize(json).serialize());
+		}
+
+		// equivalent spellings are the same day, but the first one given is kept
+		Booking byDay = Booking.deserialize(prefix + "\"frequency\":\"MONTHLY\",\"by_day\":\"+2SU,2SU\"}");
+		assertEquals(1, byDay.getByDay().size());
+		assertTrue(byDay.getByDay().contains(DayOfWeek.of(2, 7)));
+		assertTrue(byDay.serialize().contains("\"by_day\":\"+2SU\""));
+
+		Booking b = Booking.deserialize(prefix + "\"interval\":1,\"by_day_month\":\"0,40\"}");
+		assertEquals(2, b.getByDayOfMonth().size());
+		assertTrue(b.getByDayOfMonth().contains((short) 40));
+		assertTrue(b.getByDayOfMonth().hasOutOfRangeValues());
+	}
+
+	@Test
+	public void testCollections() {
+		String json = "[{\"id\":\"a\"},{\"description\":\"no id\"}]";
+		Collection<Tag> tags = Tag.deserializeCollection(json);
+		assertEquals(2, tags.size());
+		assertEquals(json, Tag.serialize(tags));
+	}
+
+}
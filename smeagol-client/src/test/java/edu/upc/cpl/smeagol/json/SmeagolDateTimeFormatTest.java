@@ -0,0 +1,128 @@
+package edu.upc.cpl.smeagol.json;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.GJChronology;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SmeagolDateTimeFormatTest extends TestCase {
+
+	private static final DateTimeZone MADRID = DateTimeZone.forID("Europe/Madrid");
+	private static final DateTimeZone[] ZONES = { DateTimeZone.UTC, MADRID,
+			DateTimeZone.forID("America/Sao_Paulo"), DateTimeZone.forID("Asia/Kolkata") };
+
+	private DateTimeZone defaultZone;
+
+	@Before
+	@Override
+	public void setUp() {
+		defaultZone = DateTimeZone.getDefault();
+		DateTimeZone.setDefault(MADRID);
+	}
+
+	@After
+	@Override
+	public void tearDown() {
+		DateTimeZone.setDefault(defaultZone);
+	}
+
+	private void assertParsedAsJoda(String s) {
+		DateTime expected = null;
+		IllegalArgumentException expectedError = null;
+		try {
+			expected = new DateTime(s);
+		} catch (IllegalArgumentException e) {
+			expectedError = e;
+		}
+
+		try {
+			DateTime got = SmeagolDateTimeFormat.parse(s);
+			assertNull("parse should have failed for " + s, expectedError);
+			assertEquals(s, expected, got);
+		} catch (IllegalArgumentException e) {
+			assertNotNull("unexpected error for " + s + ": " + e, expectedError);
+		}
+	}
+
+	@Test
+	public void testParseLocalTimestamps() {
+		assertParsedAsJoda("2011-02-03T08:00:00");
+		assertParsedAsJoda("2000-02-29T23:59:59");
+		assertParsedAsJoda("1970-01-01T00:00:00");
+		assertParsedAsJoda("0001-01-01T00:00:00");
+		assertParsedAsJoda("9999-12-31T23:59:59");
+	}
+
+	@Test
+	public void testParseWithOffset() {
+		assertParsedAsJoda("2011-02-03T08:00:00Z");
+		assertParsedAsJoda("2011-02-03T08:00:00+01:00");
+		assertParsedAsJoda("2011-02-03T08:00:00-03:30");
+		assertParsedAsJoda("2011-02-03T08:00:00+0530");
+		assertParsedAsJoda("2011-02-03T08:00:00+05");
+	}
+
+	@Test
+	public void testParseAroundDaylightSavingTransitions() {
+		// 2011-03-27 02:00 does not exist in Madrid; 2011-10-30 02:00 happens
+		// twice
+		assertParsedAsJoda("2011-03-27T01:59:59");
+		assertParsedAsJoda("2011-03-27T02:30:00");
+		assertParsedAsJoda("2011-03-27T03:00:00");
+		assertParsedAsJoda("2011-10-30T02:30:00");
+		assertParsedAsJoda("2011-10-30T03:00:00");
+	}
+
+	@Test
+	public void testParseFallsBackForOtherShapes() {
+		assertParsedAsJoda("2011-02-03");
+		assertParsedAsJoda("2011-02-03T08:00");
+		assertParsedAsJoda("2011-02-03T08:00:00.123");
+		assertParsedAsJoda("2011-02-03T08:00:00.123+02:00");
+		assertParsedAsJoda("2011-02-30T08:00:00");
+		assertParsedAsJoda("2011-13-01T08:00:00");
+		assertParsedAsJoda("2011-02-03T24:00:00");
+		assertParsedAsJoda("2011-02-03T08:00:00+25:00");
+		assertParsedAsJoda("2011-02-03X08:00:00");
+		assertParsedAsJoda("not a date");
+	}
+
+	@Test
+	public void testParseFollowsDefaultZoneChanges() {
+		DateTimeZone.setDefault(DateTimeZone.UTC);
+		assertParsedAsJoda("2011-02-03T08:00:00");
+		DateTimeZone.setDefault(MADRID);
+		assertParsedAsJoda("2011-02-03T08:00:00");
+	}
+
+	@Test
+	public void testPrint() {
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++) {
+			long millis = (long) ((random.nextDouble() - 0.5) * 2 * 4e12);
+			DateTime d = new DateTime(millis, ZONES[i % ZONES.length]);
+			assertEquals(ISODateTimeFormat.dateHourMinuteSecond().print(d), SmeagolDateTimeFormat.print(d));
+		}
+	}
+
+	@Test
+	public void testPrintFallsBack() {
+		DateTime beforeYearZero = new DateTime(-70000000000000L, DateTimeZone.UTC);
+		assertEquals(ISODateTimeFormat.dateHourMinuteSecond().print(beforeYearZero),
+				SmeagolDateTimeFormat.print(beforeYearZero));
+
+		DateTime julian = new DateTime(1000, 1, 1, 12, 0, 0, 0, GJChronology.getInstance());
+		assertEquals(ISODateTimeFormat.dateHourMinuteSecond().print(julian), SmeagolDateTimeFormat.print(julian));
+	}
+
+}